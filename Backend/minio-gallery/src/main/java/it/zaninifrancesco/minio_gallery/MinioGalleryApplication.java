@@ -2,8 +2,10 @@ package it.zaninifrancesco.minio_gallery;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class MinioGalleryApplication {
 
 	public static void main(String[] args) {
@@ -0,0 +1,266 @@
+package it.zaninifrancesco.minio_gallery.config;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Oggetti di schema specifici di PostgreSQL che Hibernate (ddl-auto=update) non sa gestire:
+ * colonne generate, indici GIN e backfill dei contatori e dei dati denormalizzati.
+ * Tutte le istruzioni sono idempotenti e vengono eseguite all'avvio, dopo l'aggiornamento dello schema JPA.
+ * I riallineamenti che scorrono intere tabelle vengono eseguiti una sola volta e registrati in
+ * schema_migrations; per ripeterne uno al prossimo avvio basta eliminarne la riga.
+ */
+@Component
+@DependsOn("entityManagerFactory")
+public class DatabaseSchemaInitializer {
+
+    private static final Logger logger = LoggerFactory.getLogger(DatabaseSchemaInitializer.class);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${app.search.fts-language:italian}")
+    private String ftsLanguage;
+
+    @PostConstruct
+    public void initialize() {
+        if (!ftsLanguage.matches("[a-z_]+")) {
+            throw new IllegalStateException("Invalid full-text search language: " + ftsLanguage);
+        }
+
+        initializeMigrations();
+        initializeFullTextSearch();
+        initializeTagUsageCounts();
+        initializeLikeCounts();
+        initializeUserLikesIndex();
+        initializeMonthlyLikes();
+        initializeLeaderboardSnapshots();
+        initializeTimeSeries();
+        initializeUserStats();
+    }
+
+    /**
+     * Registro delle migrazioni di dati già eseguite
+     */
+    private void initializeMigrations() {
+        jdbcTemplate.execute(
+                "CREATE TABLE IF NOT EXISTS schema_migrations (" +
+                "name varchar(64) PRIMARY KEY, " +
+                "applied_at timestamp NOT NULL DEFAULT now())");
+    }
+
+    /**
+     * Esegue una migrazione di dati se non è già registrata e poi la registra
+     * Un'interruzione prima della registrazione la fa ripetere al prossimo avvio, quindi deve essere idempotente
+     */
+    private void runOnce(String name, Runnable migration) {
+        Integer applied = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM schema_migrations WHERE name = ?", Integer.class, name);
+        if (applied != null && applied > 0) {
+            logger.debug("Migration {} already applied", name);
+            return;
+        }
+        migration.run();
+        jdbcTemplate.update("INSERT INTO schema_migrations (name) VALUES (?) ON CONFLICT (name) DO NOTHING", name);
+    }
+
+    /**
+     * Colonna tsvector generata su titolo, tag e descrizione con indice GIN
+     * Se la configurazione linguistica è cambiata la colonna viene ricreata
+     */
+    private void initializeFullTextSearch() {
+        String languageConfig = "'" + ftsLanguage + "'::regconfig";
+
+        List<String> currentDefinition = jdbcTemplate.queryForList(
+                "SELECT pg_get_expr(d.adbin, d.adrelid) FROM pg_attrdef d " +
+                "JOIN pg_attribute a ON a.attrelid = d.adrelid AND a.attnum = d.adnum " +
+                "WHERE d.adrelid = 'image_metadata'::regclass AND a.attname = 'search_vector'",
+                String.class);
+
+        if (!currentDefinition.isEmpty() && !currentDefinition.get(0).contains(languageConfig)) {
+            logger.info("Full-text search language changed to '{}', recreating search_vector column", ftsLanguage);
+            jdbcTemplate.execute("ALTER TABLE image_metadata DROP COLUMN search_vector");
+        }
+
+        jdbcTemplate.execute(
+                "ALTER TABLE image_metadata ADD COLUMN IF NOT EXISTS search_vector tsvector " +
+                "GENERATED ALWAYS AS (" +
+                "setweight(to_tsvector(" + languageConfig + ", coalesce(title, '')), 'A') || " +
+                "setweight(to_tsvector(" + languageConfig + ", coalesce(search_tags, '')), 'B') || " +
+                "setweight(to_tsvector(" + languageConfig + ", coalesce(description, '')), 'C')) STORED");
+
+        jdbcTemplate.execute(
+                "CREATE INDEX IF NOT EXISTS idx_image_metadata_search_vector " +
+                "ON image_metadata USING GIN (search_vector)");
+
+        // Backfill dei tag denormalizzati per le immagini caricate prima della ricerca full-text
+        int backfilled = jdbcTemplate.update(
+                "UPDATE image_metadata im SET search_tags = sub.names " +
+                "FROM (SELECT it.image_id, string_agg(t.name, ' ' ORDER BY t.name) AS names " +
+                "      FROM image_tags it JOIN tags t ON t.id = it.tag_id GROUP BY it.image_id) sub " +
+                "WHERE sub.image_id = im.id AND im.search_tags IS NULL");
+
+        logger.info("Full-text search initialized with language '{}' ({} images backfilled)", ftsLanguage, backfilled);
+    }
+
+    /**
+     * Allinea una sola volta il contatore usage_count dei tag al numero reale di immagini
+     * (tag creati prima del contatore); aggiorna solo le righe diverse
+     */
+    private void initializeTagUsageCounts() {
+        runOnce("tag_usage_count_backfill", () -> {
+            int reconciled = jdbcTemplate.update(
+                    "UPDATE tags t SET usage_count = c.image_count " +
+                    "FROM (SELECT tg.id, COUNT(it.image_id) AS image_count " +
+                    "      FROM tags tg LEFT JOIN image_tags it ON it.tag_id = tg.id GROUP BY tg.id) c " +
+                    "WHERE c.id = t.id AND t.usage_count <> c.image_count");
+
+            logger.info("Tag usage counts initialized ({} tags reconciled)", reconciled);
+        });
+    }
+
+    /**
+     * Allinea una sola volta il contatore like_count delle immagini al numero reale di like
+     * (immagini con like precedenti al contatore); aggiorna solo le righe diverse
+     */
+    private void initializeLikeCounts() {
+        runOnce("like_count_backfill", () -> {
+            int reconciled = jdbcTemplate.update(
+                    "UPDATE image_metadata im SET like_count = c.like_count " +
+                    "FROM (SELECT i.id, COUNT(l.id) AS like_count " +
+                    "      FROM image_metadata i LEFT JOIN image_likes l ON l.image_id = i.id GROUP BY i.id) c " +
+                    "WHERE c.id = im.id AND im.like_count <> c.like_count");
+
+            logger.info("Image like counts initialized ({} images reconciled)", reconciled);
+        });
+    }
+
+    /**
+     * Indice dei like per utente: il vincolo di unicità (image_id, user_id) non serve le ricerche per utente,
+     * come le immagini con like di un utente (cache dello stato dei like) e la rimozione dei suoi like
+     * durante l'eliminazione dell'account
+     */
+    private void initializeUserLikesIndex() {
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_image_likes_user_image ON image_likes (user_id, image_id)");
+    }
+
+    /**
+     * Tabella di rollup dei like per mese e immagine, mantenuta dal toggle dei like, con indice
+     * per la classifica mensile; alla creazione viene popolata una sola volta da image_likes
+     */
+    private void initializeMonthlyLikes() {
+        jdbcTemplate.execute(
+                "CREATE TABLE IF NOT EXISTS monthly_image_likes (" +
+                "year integer NOT NULL, " +
+                "month integer NOT NULL, " +
+                "image_id uuid NOT NULL REFERENCES image_metadata(id) ON DELETE CASCADE, " +
+                "likes integer NOT NULL DEFAULT 0, " +
+                "PRIMARY KEY (year, month, image_id))");
+
+        jdbcTemplate.execute(
+                "CREATE INDEX IF NOT EXISTS idx_monthly_image_likes_ranking " +
+                "ON monthly_image_likes (year, month, likes DESC, image_id)");
+
+        runOnce("monthly_image_likes_backfill", () -> {
+            int reconciled = jdbcTemplate.update(
+                    "INSERT INTO monthly_image_likes (year, month, image_id, likes) " +
+                    "SELECT CAST(EXTRACT(YEAR FROM liked_at) AS integer), CAST(EXTRACT(MONTH FROM liked_at) AS integer), " +
+                    "       image_id, COUNT(*) " +
+                    "FROM image_likes GROUP BY 1, 2, 3 " +
+                    "ON CONFLICT (year, month, image_id) DO UPDATE SET likes = EXCLUDED.likes " +
+                    "WHERE monthly_image_likes.likes <> EXCLUDED.likes");
+
+            int removed = jdbcTemplate.update(
+                    "DELETE FROM monthly_image_likes m WHERE NOT EXISTS (" +
+                    "SELECT 1 FROM image_likes l WHERE l.image_id = m.image_id " +
+                    "AND l.liked_at >= make_date(m.year, m.month, 1) " +
+                    "AND l.liked_at < make_date(m.year, m.month, 1) + interval '1 month')");
+
+            logger.info("Monthly like rollup initialized ({} rows reconciled, {} removed)", reconciled, removed);
+        });
+    }
+
+    /**
+     * Classifiche congelate dei mesi chiusi (prime posizioni per mese), scritte una sola volta
+     * al cambio di mese e mai più aggiornate
+     */
+    private void initializeLeaderboardSnapshots() {
+        jdbcTemplate.execute(
+                "CREATE TABLE IF NOT EXISTS monthly_leaderboard_snapshots (" +
+                "year integer NOT NULL, " +
+                "month integer NOT NULL, " +
+                "rank integer NOT NULL, " +
+                "image_id uuid NOT NULL REFERENCES image_metadata(id) ON DELETE CASCADE, " +
+                "likes integer NOT NULL, " +
+                "PRIMARY KEY (year, month, rank))");
+
+        logger.info("Monthly leaderboard snapshots initialized");
+    }
+
+    /**
+     * Rollup orari e giornalieri delle metriche di utilizzo (upload, like, nuovi utenti, byte),
+     * mantenuti da TimeSeriesService; la chiave primaria serve anche le query per intervallo.
+     * Gli indici sulle date delle tabelle di origine servono il backfill, che legge un giorno alla volta
+     */
+    private void initializeTimeSeries() {
+        jdbcTemplate.execute(
+                "CREATE TABLE IF NOT EXISTS stats_hourly (" +
+                "metric varchar(16) NOT NULL, " +
+                "bucket timestamp NOT NULL, " +
+                "value bigint NOT NULL DEFAULT 0, " +
+                "PRIMARY KEY (metric, bucket))");
+
+        jdbcTemplate.execute(
+                "CREATE TABLE IF NOT EXISTS stats_daily (" +
+                "metric varchar(16) NOT NULL, " +
+                "bucket date NOT NULL, " +
+                "value bigint NOT NULL DEFAULT 0, " +
+                "PRIMARY KEY (metric, bucket))");
+
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_image_metadata_uploaded_at ON image_metadata (uploaded_at)");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_image_likes_liked_at ON image_likes (liked_at)");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_users_created_at ON users (created_at)");
+
+        logger.info("Time series rollups initialized");
+    }
+
+    /**
+     * Statistiche per utente (immagini, byte caricati, like ricevuti) per la lista utenti admin,
+     * con un indice per ogni ordinamento. Una sola volta vengono create le righe degli utenti esistenti
+     * e riallineate quelle diverse; in seguito le righe sono create alla registrazione e aggiornate
+     * in modo incrementale
+     */
+    private void initializeUserStats() {
+        jdbcTemplate.execute(
+                "CREATE TABLE IF NOT EXISTS user_stats (" +
+                "user_id bigint PRIMARY KEY REFERENCES users(id) ON DELETE CASCADE, " +
+                "image_count integer NOT NULL DEFAULT 0, " +
+                "bytes_stored bigint NOT NULL DEFAULT 0, " +
+                "likes_received bigint NOT NULL DEFAULT 0)");
+
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_user_stats_image_count ON user_stats (image_count DESC, user_id)");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_user_stats_bytes_stored ON user_stats (bytes_stored DESC, user_id)");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_user_stats_likes_received ON user_stats (likes_received DESC, user_id)");
+
+        runOnce("user_stats_backfill", () -> {
+            int reconciled = jdbcTemplate.update(
+                    "INSERT INTO user_stats (user_id, image_count, bytes_stored, likes_received) " +
+                    "SELECT u.id, COUNT(im.id), COALESCE(SUM(im.size), 0), COALESCE(SUM(im.like_count), 0) " +
+                    "FROM users u LEFT JOIN image_metadata im ON im.user_id = u.id GROUP BY u.id " +
+                    "ON CONFLICT (user_id) DO UPDATE SET image_count = EXCLUDED.image_count, " +
+                    "bytes_stored = EXCLUDED.bytes_stored, likes_received = EXCLUDED.likes_received " +
+                    "WHERE (user_stats.image_count, user_stats.bytes_stored, user_stats.likes_received) " +
+                    "IS DISTINCT FROM (EXCLUDED.image_count, EXCLUDED.bytes_stored, EXCLUDED.likes_received)");
+
+            logger.info("User stats initialized ({} users reconciled)", reconciled);
+        });
+    }
+}
@@ -4,6 +4,7 @@ import it.zaninifrancesco.minio_gallery.service.CustomUserDetailsService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpMethod;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.AuthenticationProvider;
 import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
@@ -34,7 +35,9 @@ public class SecurityConfig {
                 .cors(withDefaults()) // Apply CORS configuration
                 .authorizeHttpRequests(authorizeRequests ->
                         authorizeRequests
-                                .requestMatchers("/api/test", "/api/auth/**", "/api/images/view/**", "/api/statistics/**").permitAll() // Allow public access to view images and statistics
+                                .requestMatchers("/api/test", "/api/auth/**", "/api/images/view/**", "/api/statistics/**", "/api/tags/popular").permitAll() // Allow public access to view images, statistics and popular tags
+                                // Live SSE streams are public: EventSource cannot send the Authorization header
+                                .requestMatchers(HttpMethod.GET, "/api/likes/leaderboard/stream", "/api/likes/stream").permitAll()
                                 // Swagger UI endpoints
                                 .requestMatchers("/swagger-ui/**", "/swagger-ui.html", "/v3/api-docs/**", "/api-docs/**", "/webjars/**").permitAll()
                                 // Root redirects
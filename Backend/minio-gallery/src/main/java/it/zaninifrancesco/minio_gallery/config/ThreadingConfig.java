@@ -0,0 +1,68 @@
+package it.zaninifrancesco.minio_gallery.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Configurazione dei thread per le operazioni bloccanti (MinIO, JDBC)
+ * Con spring.threads.virtual.enabled=true sia Tomcat sia l'executor di fan-out
+ * usano virtual thread, altrimenti l'executor di fan-out è un pool fisso di thread platform
+ */
+@Configuration
+public class ThreadingConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(ThreadingConfig.class);
+
+    public static final String FAN_OUT_EXECUTOR = "fanOutExecutor";
+
+    public static final String SSE_EXECUTOR = "sseExecutor";
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreadsEnabled;
+
+    @Value("${app.fanout.pool-size:16}")
+    private int fanOutPoolSize;
+
+    /**
+     * Executor usato dai service per parallelizzare le chiamate bloccanti verso MinIO
+     * Le metriche sono esposte con prefisso "executor" e tag name=fanout
+     */
+    @Bean(name = FAN_OUT_EXECUTOR, destroyMethod = "shutdown")
+    public ExecutorService fanOutExecutor(MeterRegistry meterRegistry) {
+        ExecutorService executor = newFanOutExecutor(virtualThreadsEnabled, fanOutPoolSize);
+        logger.info("Fan-out executor initialized with {} threads",
+                virtualThreadsEnabled ? "virtual" : fanOutPoolSize + " platform");
+        return ExecutorServiceMetrics.monitor(meterRegistry, executor, "fanout",
+                Tags.of("mode", virtualThreadsEnabled ? "virtual" : "platform"));
+    }
+
+    /**
+     * Executor che scrive gli eventi verso i client SSE: sempre virtual thread, così un client lento
+     * bloccato in scrittura sul socket non occupa un thread platform né un thread del fan-out
+     * Le metriche sono esposte con prefisso "executor" e tag name=sse
+     */
+    @Bean(name = SSE_EXECUTOR, destroyMethod = "shutdown")
+    public ExecutorService sseExecutor(MeterRegistry meterRegistry) {
+        ExecutorService executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("sse-vt-", 0).factory());
+        return ExecutorServiceMetrics.monitor(meterRegistry, executor, "sse");
+    }
+
+    /**
+     * Crea l'executor di fan-out: un virtual thread per task oppure un pool fisso di thread platform
+     */
+    public static ExecutorService newFanOutExecutor(boolean virtual, int poolSize) {
+        if (virtual) {
+            return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("fanout-vt-", 0).factory());
+        }
+        return Executors.newFixedThreadPool(poolSize, Thread.ofPlatform().name("fanout-", 0).daemon(true).factory());
+    }
+}
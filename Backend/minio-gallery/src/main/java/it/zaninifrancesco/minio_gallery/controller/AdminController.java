@@ -4,6 +4,8 @@ import it.zaninifrancesco.minio_gallery.dto.ImageResponse;
 import it.zaninifrancesco.minio_gallery.dto.MessageResponse;
 import it.zaninifrancesco.minio_gallery.dto.UserResponse;
 import it.zaninifrancesco.minio_gallery.service.AdminService;
+import it.zaninifrancesco.minio_gallery.service.TimeSeriesService;
+import it.zaninifrancesco.minio_gallery.service.UserDeletionService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -19,11 +21,16 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
+import java.net.URI;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.UUID;
 
@@ -43,6 +50,9 @@ public class AdminController {
     @Autowired
     private AdminService adminService;
     
+    @Autowired
+    private TimeSeriesService timeSeriesService;
+    
     /**
      * Ottieni tutti gli utenti con paginazione
      * GET /api/admin/users?page=0&size=20
@@ -65,17 +75,22 @@ public class AdminController {
             @Parameter(description = "Numero della pagina (inizia da 0)", example = "0")
             @RequestParam(defaultValue = "0") int page,
             @Parameter(description = "Numero di elementi per pagina", example = "20")
-            @RequestParam(defaultValue = "20") int size) {
+            @RequestParam(defaultValue = "20") int size,
+            @Parameter(description = "Ordinamento decrescente per statistica: imageCount, bytesStored, likesReceived",
+                       example = "bytesStored")
+            @RequestParam(required = false) String sort) {
         try {
-            logger.info("Admin requesting all users - page: {}, size: {}", page, size);
+            logger.info("Admin requesting all users - page: {}, size: {}, sort: {}", page, size, sort);
             
             Pageable pageable = PageRequest.of(page, size);
-            Page<UserResponse> users = adminService.getAllUsers(pageable);
+            Page<UserResponse> users = adminService.getAllUsers(pageable, sort);
             
             logger.info("Retrieved {} users out of {} total", users.getNumberOfElements(), users.getTotalElements());
             
             return ResponseEntity.ok(users);
             
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         } catch (Exception e) {
             logger.error("Error fetching users", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -111,17 +126,21 @@ public class AdminController {
     /**
      * Elimina un utente (admin only)
      * DELETE /api/admin/users/{userId}
+     * L'eliminazione prosegue in background: la risposta 202 contiene lo stato del job,
+     * consultabile con GET /api/admin/jobs/{jobId}
      */
     @DeleteMapping("/users/{userId}")
     public ResponseEntity<?> deleteUser(@PathVariable Long userId) {
         try {
             logger.info("Admin requesting deletion of user ID: {}", userId);
             
-            adminService.deleteUser(userId);
+            UserDeletionService.JobStatus job = adminService.deleteUser(userId);
             
-            logger.info("User deleted successfully: {}", userId);
+            logger.info("User deletion job {} started for user {}", job.jobId(), userId);
             
-            return ResponseEntity.ok(new MessageResponse("User deleted successfully"));
+            return ResponseEntity.accepted()
+                    .location(URI.create("/api/admin/jobs/" + job.jobId()))
+                    .body(job);
             
         } catch (RuntimeException e) {
             if (e.getMessage().contains("not found")) {
@@ -139,6 +158,17 @@ public class AdminController {
         }
     }
     
+    /**
+     * Stato di un job di eliminazione utente
+     * GET /api/admin/jobs/{jobId}
+     */
+    @GetMapping("/jobs/{jobId}")
+    public ResponseEntity<?> getUserDeletionStatus(@PathVariable UUID jobId) {
+        return adminService.getUserDeletionStatus(jobId)
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+    
     /**
      * Elimina un'immagine (admin può eliminare qualsiasi immagine)
      * DELETE /api/admin/images/{imageId}
@@ -267,4 +297,33 @@ public class AdminController {
                     .body(Map.of("error", "Failed to fetch system statistics: " + e.getMessage()));
         }
     }
+    
+    /**
+     * Serie temporale di una metrica dai rollup orari o giornalieri
+     * GET /api/admin/stats/timeseries?metric=likes&from=2025-01-01&to=2025-01-31&granularity=day
+     * metric: uploads, likes, users, bytes; granularity: hour, day; from e to inclusi
+     */
+    @GetMapping("/stats/timeseries")
+    public ResponseEntity<?> getTimeSeries(
+            @RequestParam String metric,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(defaultValue = "day") String granularity) {
+        try {
+            TimeSeriesService.Metric parsedMetric = TimeSeriesService.Metric.valueOf(metric.toUpperCase(Locale.ROOT));
+            TimeSeriesService.Granularity parsedGranularity =
+                    TimeSeriesService.Granularity.valueOf(granularity.toUpperCase(Locale.ROOT));
+            
+            List<TimeSeriesService.Point> series = timeSeriesService.getSeries(parsedMetric, from, to, parsedGranularity);
+            
+            return ResponseEntity.ok(series);
+            
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            logger.error("Error fetching time series for metric {}", metric, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Failed to fetch time series: " + e.getMessage()));
+        }
+    }
 }
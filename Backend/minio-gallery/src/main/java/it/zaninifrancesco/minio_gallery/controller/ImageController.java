@@ -3,6 +3,7 @@ package it.zaninifrancesco.minio_gallery.controller;
 import it.zaninifrancesco.minio_gallery.dto.ImageResponse;
 import it.zaninifrancesco.minio_gallery.dto.ImageUploadRequest;
 import it.zaninifrancesco.minio_gallery.dto.MessageResponse;
+import it.zaninifrancesco.minio_gallery.dto.SearchResponse;
 import it.zaninifrancesco.minio_gallery.service.ImageService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -19,6 +20,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
@@ -26,6 +28,7 @@ import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.time.LocalDate;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -222,24 +225,99 @@ public class ImageController {
         }
     }
     
+    /**
+     * Feed delle immagini di tendenza (like recenti pesati per età dell'upload)
+     * GET /api/images/trending?page=0&size=12
+     */
+    @GetMapping("/trending")
+    public ResponseEntity<?> getTrendingImages(
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "12") int size) {
+        
+        try {
+            logger.info("Fetching trending images - page: {}, size: {}", page, size);
+            
+            Pageable pageable = PageRequest.of(page, size);
+            Page<ImageResponse> images = imageService.getTrendingImages(pageable);
+            
+            logger.info("Found {} trending images", images.getNumberOfElements());
+            
+            return ResponseEntity.ok(images);
+            
+        } catch (Exception e) {
+            logger.error("Error fetching trending images", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Failed to fetch trending images: " + e.getMessage()));
+        }
+    }
+    
+    /**
+     * Immagini visivamente simili a quella indicata ("altre come questa")
+     * GET /api/images/{id}/similar?page=0&size=12
+     */
+    @GetMapping("/{id}/similar")
+    public ResponseEntity<?> getSimilarImages(
+            @PathVariable UUID id,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "12") int size) {
+        
+        try {
+            logger.info("Fetching images similar to {} - page: {}, size: {}", id, page, size);
+            
+            Pageable pageable = PageRequest.of(page, size);
+            Page<ImageResponse> images = imageService.findSimilarImages(id, pageable);
+            
+            logger.info("Found {} images similar to {}", images.getNumberOfElements(), id);
+            
+            return ResponseEntity.ok(images);
+            
+        } catch (RuntimeException e) {
+            logger.warn("Image not found with ID: {}", id);
+            return ResponseEntity.notFound().build();
+        } catch (Exception e) {
+            logger.error("Error fetching images similar to {}", id, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Failed to fetch similar images: " + e.getMessage()));
+        }
+    }
+    
     /**
      * Cerca immagini per testo (titolo o descrizione)
      * GET /api/images/search?query=landscape&page=0&size=12
+     * GET /api/images/search?query=landscpe&mode=fuzzy (tollerante agli errori, con suggerimenti)
+     * GET /api/images/search?query=landscape&facets=true (risultati con conteggi per faccette)
      */
     @GetMapping("/search")
     public ResponseEntity<?> searchImages(
             @RequestParam String query,
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "12") int size) {
+            @RequestParam(defaultValue = "12") int size,
+            @RequestParam(defaultValue = "standard") String mode,
+            @RequestParam(defaultValue = "false") boolean facets) {
         
         try {
-            logger.info("Searching images with query: '{}' - page: {}, size: {}", query, page, size);
+            logger.info("Searching images with query: '{}' - mode: {}, page: {}, size: {}", query, mode, page, size);
             
             Pageable pageable = PageRequest.of(page, size);
+            
+            if ("fuzzy".equalsIgnoreCase(mode)) {
+                SearchResponse response = imageService.fuzzySearchImages(query, pageable);
+                if (facets) {
+                    String facetQuery = response.getCorrectedQuery() != null ? response.getCorrectedQuery() : query;
+                    response.setFacets(imageService.searchFacets(facetQuery));
+                }
+                logger.info("Found {} images for fuzzy query '{}' (did you mean: {})",
+                        response.getResults().getNumberOfElements(), query, response.getCorrectedQuery());
+                return ResponseEntity.ok(response);
+            }
+            
             Page<ImageResponse> images = imageService.searchImages(query, pageable);
             
             logger.info("Found {} images matching query '{}'", images.getNumberOfElements(), query);
             
+            if (facets) {
+                return ResponseEntity.ok(new SearchResponse(images, imageService.searchFacets(query)));
+            }
             return ResponseEntity.ok(images);
             
         } catch (Exception e) {
@@ -252,21 +330,31 @@ public class ImageController {
     /**
      * Cerca immagini per tag
      * GET /api/images/search/tags?tags=nature,landscape&page=0&size=12
+     * GET /api/images/search/tags?tags=nature,landscape&match=all (immagini con tutti i tag)
+     * GET /api/images/search/tags?tags=nature&facets=true (risultati con conteggi per faccette)
      */
     @GetMapping("/search/tags")
     public ResponseEntity<?> searchImagesByTags(
             @RequestParam List<String> tags,
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "12") int size) {
+            @RequestParam(defaultValue = "12") int size,
+            @RequestParam(defaultValue = "any") String match,
+            @RequestParam(defaultValue = "false") boolean facets) {
         
         try {
-            logger.info("Searching images with tags: {} - page: {}, size: {}", tags, page, size);
+            logger.info("Searching images with tags: {} - match: {}, page: {}, size: {}", tags, match, page, size);
             
             Pageable pageable = PageRequest.of(page, size);
-            Page<ImageResponse> images = imageService.searchImagesByTags(tags, pageable);
+            boolean matchAll = "all".equalsIgnoreCase(match);
+            Page<ImageResponse> images = matchAll
+                    ? imageService.searchImagesByAllTags(tags, pageable)
+                    : imageService.searchImagesByTags(tags, pageable);
             
             logger.info("Found {} images matching tags {}", images.getNumberOfElements(), tags);
             
+            if (facets) {
+                return ResponseEntity.ok(new SearchResponse(images, imageService.tagFacets(tags, matchAll)));
+            }
             return ResponseEntity.ok(images);
             
         } catch (Exception e) {
@@ -276,6 +364,80 @@ public class ImageController {
         }
     }
     
+    /**
+     * Cerca immagini con un'espressione booleana sui tag
+     * '+' o spazio = AND, '|' o ',' = OR, '-' = NOT
+     * GET /api/images/search/tags/query?tags=nature+sunset-night&page=0&size=12
+     */
+    @GetMapping("/search/tags/query")
+    public ResponseEntity<?> searchImagesByTagExpression(
+            @RequestParam String tags,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "12") int size,
+            @RequestParam(defaultValue = "false") boolean facets) {
+        
+        try {
+            logger.info("Searching images with tag expression: '{}' - page: {}, size: {}", tags, page, size);
+            
+            Pageable pageable = PageRequest.of(page, size);
+            Page<ImageResponse> images = imageService.searchImagesByTagExpression(tags, pageable);
+            
+            logger.info("Found {} images matching tag expression '{}'", images.getTotalElements(), tags);
+            
+            if (facets) {
+                return ResponseEntity.ok(new SearchResponse(images, imageService.tagExpressionFacets(tags)));
+            }
+            return ResponseEntity.ok(images);
+            
+        } catch (Exception e) {
+            logger.error("Error searching images by tag expression", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Failed to search images by tag expression: " + e.getMessage()));
+        }
+    }
+    
+    /**
+     * Ricerca combinata con qualsiasi combinazione di criteri
+     * GET /api/images/query?uploader=mario&tags=nature+sunset&contentType=image/jpeg&minSize=100000&maxSize=2000000
+     *     &from=2024-01-01&to=2024-06-30&text=mare&sort=newest&page=0&size=12
+     * Ordinamenti ammessi: newest (default), oldest, relevance (richiede text)
+     */
+    @GetMapping("/query")
+    public ResponseEntity<?> queryImages(
+            @RequestParam(required = false) String uploader,
+            @RequestParam(required = false) String tags,
+            @RequestParam(required = false) String contentType,
+            @RequestParam(required = false) Long minSize,
+            @RequestParam(required = false) Long maxSize,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(required = false) String text,
+            @RequestParam(defaultValue = "newest") String sort,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "12") int size) {
+        
+        try {
+            logger.info("Querying images - uploader: {}, tags: '{}', contentType: {}, size: {}-{}, uploaded: {} - {}, text: '{}', sort: {}",
+                    uploader, tags, contentType, minSize, maxSize, from, to, text, sort);
+            
+            Pageable pageable = PageRequest.of(page, size);
+            Page<ImageResponse> images = imageService.queryImages(uploader, tags, contentType, minSize, maxSize,
+                    from, to, text, sort, pageable);
+            
+            logger.info("Found {} images matching the query", images.getTotalElements());
+            
+            return ResponseEntity.ok(images);
+            
+        } catch (IllegalArgumentException e) {
+            logger.warn("Invalid image query: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            logger.error("Error querying images", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Failed to query images: " + e.getMessage()));
+        }
+    }
+    
     /**
      * Cerca immagini dell'utente corrente per tag
      * GET /api/images/my/search/tags?tags=nature,landscape&page=0&size=12
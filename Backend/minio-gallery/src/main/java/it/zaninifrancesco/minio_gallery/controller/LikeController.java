@@ -3,17 +3,26 @@ package it.zaninifrancesco.minio_gallery.controller;
 import it.zaninifrancesco.minio_gallery.dto.LeaderboardEntry;
 import it.zaninifrancesco.minio_gallery.dto.LikeResponse;
 import it.zaninifrancesco.minio_gallery.entity.ImageMetadata;
+import it.zaninifrancesco.minio_gallery.entity.User;
+import it.zaninifrancesco.minio_gallery.service.LikeCountStreamService;
 import it.zaninifrancesco.minio_gallery.service.LikeService;
+import it.zaninifrancesco.minio_gallery.service.LiveLeaderboardService;
 import it.zaninifrancesco.minio_gallery.service.MinioService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.time.Duration;
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -26,6 +35,16 @@ public class LikeController {
     
     @Autowired
     private MinioService minioService;
+    
+    @Autowired
+    private LiveLeaderboardService liveLeaderboardService;
+    
+    @Autowired
+    private LikeCountStreamService likeCountStreamService;
+    
+    // Cache HTTP delle risposte dei mesi chiusi: inferiore alla scadenza (30 minuti) degli URL presigned
+    @Value("${app.likes.leaderboard.closed-month-max-age-seconds:1200}")
+    private long closedMonthMaxAgeSeconds;
       /**
      * Toggle like for an image
      */
@@ -37,10 +56,10 @@ public class LikeController {
                 return ResponseEntity.status(401).build();
             }
             
-            UserDetails userDetails = (UserDetails) auth.getPrincipal();
-            String username = userDetails.getUsername();
+            // Il principal è l'entità User caricata all'autenticazione: l'ID è già disponibile
+            User user = (User) auth.getPrincipal();
             
-            LikeResponse response = likeService.toggleLike(imageId, username);
+            LikeResponse response = likeService.toggleLike(imageId, user.getId());
             
             return ResponseEntity.ok(response);
         } catch (Exception e) {
@@ -58,10 +77,8 @@ public class LikeController {
             int likeCount = likeService.getLikeCount(imageId);
             boolean isLiked = false;
             
-            if (auth != null && auth.isAuthenticated()) {
-                UserDetails userDetails = (UserDetails) auth.getPrincipal();
-                String username = userDetails.getUsername();
-                isLiked = likeService.isLikedByUser(imageId, username);
+            if (auth != null && auth.isAuthenticated() && auth.getPrincipal() instanceof User user) {
+                isLiked = likeService.isLikedByUser(imageId, user.getId());
             }
             
             return ResponseEntity.ok(new LikeResponse(isLiked, likeCount));
@@ -69,25 +86,94 @@ public class LikeController {
             return ResponseEntity.badRequest().build();
         }
     }
+    
+    /**
+     * Stato dei like di più immagini in una sola richiesta (es. le immagini visibili nella griglia)
+     * Restituisce contatore e flag liked per ogni immagine esistente, indicizzati per ID
+     */
+    @PostMapping("/status")
+    public ResponseEntity<?> getLikeStatuses(@RequestBody List<UUID> imageIds) {
+        try {
+            Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+            Long userId = auth != null && auth.isAuthenticated() && auth.getPrincipal() instanceof User user
+                    ? user.getId() : null;
+            
+            Map<UUID, LikeResponse> statuses = likeService.getLikeStatuses(imageIds, userId);
+            
+            return ResponseEntity.ok(statuses);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Failed to get like statuses: " + e.getMessage()));
+        }
+    }
       /**
      * Get monthly leaderboard
      */
     @GetMapping("/leaderboard")
     public ResponseEntity<List<LeaderboardEntry>> getMonthlyLeaderboard(
             @RequestParam(required = false) Integer year,
-            @RequestParam(required = false) Integer month) {
+            @RequestParam(required = false) Integer month,
+            @RequestParam(defaultValue = "10") int limit) {
         try {
             LocalDate now = LocalDate.now();
             int targetYear = year != null ? year : now.getYear();
             int targetMonth = month != null ? month : now.getMonthValue();
             
-            List<LeaderboardEntry> leaderboard = likeService.getMonthlyLeaderboard(targetYear, targetMonth);
+            List<LeaderboardEntry> leaderboard = likeService.getMonthlyLeaderboard(targetYear, targetMonth, limit);
             
+            if (likeService.isClosedMonth(targetYear, targetMonth)) {
+                return ResponseEntity.ok().cacheControl(closedMonthCacheControl()).body(leaderboard);
+            }
             return ResponseEntity.ok(leaderboard);
         } catch (Exception e) {
             return ResponseEntity.badRequest().build();        }
     }
     
+    /**
+     * Stream SSE dei contatori di like delle immagini visibili, una connessione per client
+     * Il primo evento "subscribed" contiene il subscriberId; gli eventi "counts" contengono i contatori cambiati
+     * Risponde 503 quando è già connesso il numero massimo di client
+     */
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamLikeCounts() {
+        try {
+            return ResponseEntity.ok(likeCountStreamService.subscribe());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+    }
+    
+    /**
+     * Imposta le immagini di cui un client dello stream riceve i contatori (sostituisce le precedenti)
+     */
+    @PutMapping("/stream/{subscriberId}")
+    public ResponseEntity<?> watchLikeCounts(@PathVariable UUID subscriberId, @RequestBody List<UUID> imageIds) {
+        try {
+            likeCountStreamService.watch(subscriberId, imageIds);
+            return ResponseEntity.noContent().build();
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (RuntimeException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+    
+    /**
+     * Stream SSE della classifica live del mese corrente
+     * Evento "snapshot" con le posizioni correnti alla connessione, poi eventi "ranks" con le sole variazioni
+     * Risponde 503 quando è già connesso il numero massimo di client
+     */
+    @GetMapping(value = "/leaderboard/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamLeaderboard() {
+        try {
+            return ResponseEntity.ok(liveLeaderboardService.subscribe());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+    }
+    
     /**
      * Get photo of the month
      */
@@ -100,6 +186,13 @@ public class LikeController {
             int targetYear = year != null ? year : now.getYear();
             int targetMonth = month != null ? month : now.getMonthValue();
             
+            // Mese chiuso: vincitore e like del mese dalla classifica congelata
+            if (likeService.isClosedMonth(targetYear, targetMonth)) {
+                return likeService.getClosedPhotoOfMonth(targetYear, targetMonth)
+                        .map(entry -> ResponseEntity.ok().cacheControl(closedMonthCacheControl()).body(entry))
+                        .orElseGet(() -> ResponseEntity.notFound().build());
+            }
+            
             Optional<ImageMetadata> photoOfMonth = likeService.getPhotoOfMonth(targetYear, targetMonth);
               if (photoOfMonth.isPresent()) {
                 ImageMetadata image = photoOfMonth.get();
@@ -122,4 +215,12 @@ public class LikeController {
             return ResponseEntity.badRequest().build();
         }
     }
+    
+    /**
+     * Le risposte dei mesi chiusi non cambiano più: il client le riusa senza rivalidarle
+     * finché gli URL presigned contenuti sono validi
+     */
+    private CacheControl closedMonthCacheControl() {
+        return CacheControl.maxAge(Duration.ofSeconds(closedMonthMaxAgeSeconds)).cachePublic().immutable();
+    }
 }
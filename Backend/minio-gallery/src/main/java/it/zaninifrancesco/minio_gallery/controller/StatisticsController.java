@@ -4,9 +4,12 @@ import it.zaninifrancesco.minio_gallery.service.StatisticsService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.Duration;
 import java.util.Map;
 
 /**
@@ -22,23 +25,22 @@ public class StatisticsController {
     @Autowired
     private StatisticsService statisticsService;
     
+    @Value("${app.statistics.cache-max-age-seconds:10}")
+    private long cacheMaxAgeSeconds;
+    
     /**
      * Ottieni statistiche pubbliche per la dashboard home
      * GET /api/statistics/public
+     * I totali vengono da contatori in memoria; la risposta è cacheabile per pochi secondi
      */
     @GetMapping("/public")
     public ResponseEntity<?> getPublicStatistics() {
         try {
-            logger.info("Fetching public statistics for home dashboard");
-            
             Map<String, Object> stats = statisticsService.getPublicStats();
             
-            logger.info("Public statistics generated: {} photos, {} likes, {} participants", 
-                       stats.get("totalPhotos"), 
-                       stats.get("totalLikes"), 
-                       stats.get("totalParticipants"));
-            
-            return ResponseEntity.ok(stats);
+            return ResponseEntity.ok()
+                    .cacheControl(CacheControl.maxAge(Duration.ofSeconds(cacheMaxAgeSeconds)).cachePublic())
+                    .body(stats);
             
         } catch (Exception e) {
             logger.error("Error fetching public statistics", e);
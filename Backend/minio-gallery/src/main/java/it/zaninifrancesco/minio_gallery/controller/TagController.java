@@ -0,0 +1,64 @@
+package it.zaninifrancesco.minio_gallery.controller;
+
+import it.zaninifrancesco.minio_gallery.dto.TagSuggestion;
+import it.zaninifrancesco.minio_gallery.service.TagService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Controller REST per i tag
+ * Fornisce l'autocompletamento usato dal form di upload e i tag popolari per la home
+ */
+@RestController
+@RequestMapping("/api/tags")
+public class TagController {
+    
+    private static final Logger logger = LoggerFactory.getLogger(TagController.class);
+    
+    @Autowired
+    private TagService tagService;
+    
+    /**
+     * Suggerisce i tag che iniziano con il prefisso indicato
+     * GET /api/tags/autocomplete?prefix=nat&limit=10
+     */
+    @GetMapping("/autocomplete")
+    public ResponseEntity<?> autocomplete(
+            @RequestParam String prefix,
+            @RequestParam(defaultValue = "10") int limit) {
+        
+        try {
+            List<TagSuggestion> suggestions = tagService.autocomplete(prefix, limit);
+            return ResponseEntity.ok(suggestions);
+            
+        } catch (Exception e) {
+            logger.error("Error autocompleting tags for prefix '{}'", prefix, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Failed to autocomplete tags: " + e.getMessage()));
+        }
+    }
+    
+    /**
+     * Tag più usati per la tag cloud della home (accesso pubblico)
+     * GET /api/tags/popular?limit=20
+     */
+    @GetMapping("/popular")
+    public ResponseEntity<?> getPopularTags(@RequestParam(defaultValue = "20") int limit) {
+        try {
+            List<TagSuggestion> popularTags = tagService.getPopularTags(limit);
+            return ResponseEntity.ok(popularTags);
+            
+        } catch (Exception e) {
+            logger.error("Error fetching popular tags", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Failed to fetch popular tags: " + e.getMessage()));
+        }
+    }
+}
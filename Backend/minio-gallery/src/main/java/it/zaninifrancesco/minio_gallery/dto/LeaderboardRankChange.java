@@ -0,0 +1,55 @@
+package it.zaninifrancesco.minio_gallery.dto;
+
+import java.util.UUID;
+
+/**
+ * Variazione di posizione di un'immagine nella classifica live (posizioni a partire da 1)
+ * rank è null se l'immagine è uscita dalla classifica, previousRank se è appena entrata
+ */
+public class LeaderboardRankChange {
+    private UUID imageId;
+    private Integer rank;
+    private Integer previousRank;
+    private int likeCount;
+
+    public LeaderboardRankChange() {}
+
+    public LeaderboardRankChange(UUID imageId, Integer rank, Integer previousRank, int likeCount) {
+        this.imageId = imageId;
+        this.rank = rank;
+        this.previousRank = previousRank;
+        this.likeCount = likeCount;
+    }
+
+    public UUID getImageId() {
+        return imageId;
+    }
+
+    public void setImageId(UUID imageId) {
+        this.imageId = imageId;
+    }
+
+    public Integer getRank() {
+        return rank;
+    }
+
+    public void setRank(Integer rank) {
+        this.rank = rank;
+    }
+
+    public Integer getPreviousRank() {
+        return previousRank;
+    }
+
+    public void setPreviousRank(Integer previousRank) {
+        this.previousRank = previousRank;
+    }
+
+    public int getLikeCount() {
+        return likeCount;
+    }
+
+    public void setLikeCount(int likeCount) {
+        this.likeCount = likeCount;
+    }
+}
@@ -0,0 +1,62 @@
+package it.zaninifrancesco.minio_gallery.dto;
+
+import it.zaninifrancesco.minio_gallery.search.FacetCounts;
+import org.springframework.data.domain.Page;
+
+import java.util.List;
+
+/**
+ * Risposta della ricerca con dati aggiuntivi alla pagina dei risultati:
+ * suggerimenti "forse cercavi" (ricerca fuzzy) e conteggi per faccette (se richiesti)
+ */
+public class SearchResponse {
+    private Page<ImageResponse> results;
+    private String correctedQuery;
+    private List<String> suggestions;
+    private FacetCounts facets;
+
+    public SearchResponse() {}
+
+    public SearchResponse(Page<ImageResponse> results, String correctedQuery, List<String> suggestions) {
+        this.results = results;
+        this.correctedQuery = correctedQuery;
+        this.suggestions = suggestions;
+    }
+
+    public SearchResponse(Page<ImageResponse> results, FacetCounts facets) {
+        this(results, null, List.of());
+        this.facets = facets;
+    }
+
+    public Page<ImageResponse> getResults() {
+        return results;
+    }
+
+    public void setResults(Page<ImageResponse> results) {
+        this.results = results;
+    }
+
+    public String getCorrectedQuery() {
+        return correctedQuery;
+    }
+
+    public void setCorrectedQuery(String correctedQuery) {
+        this.correctedQuery = correctedQuery;
+    }
+
+    public List<String> getSuggestions() {
+        return suggestions;
+    }
+
+    public void setSuggestions(List<String> suggestions) {
+        this.suggestions = suggestions;
+    }
+
+    public FacetCounts getFacets() {
+        return facets;
+    }
+
+    public void setFacets(FacetCounts facets) {
+        this.facets = facets;
+    }
+}
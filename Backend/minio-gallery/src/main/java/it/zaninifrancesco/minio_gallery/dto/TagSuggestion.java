@@ -0,0 +1,29 @@
+package it.zaninifrancesco.minio_gallery.dto;
+
+public class TagSuggestion {
+    private String name;
+    private int usageCount;
+    
+    public TagSuggestion() {}
+    
+    public TagSuggestion(String name, int usageCount) {
+        this.name = name;
+        this.usageCount = usageCount;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public void setName(String name) {
+        this.name = name;
+    }
+    
+    public int getUsageCount() {
+        return usageCount;
+    }
+    
+    public void setUsageCount(int usageCount) {
+        this.usageCount = usageCount;
+    }
+}
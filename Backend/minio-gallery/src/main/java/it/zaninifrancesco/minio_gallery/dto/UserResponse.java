@@ -12,6 +12,8 @@ public class UserResponse {
     private String role;
     private boolean enabled;
     private int imageCount;
+    private long bytesStored;
+    private long likesReceived;
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
     
@@ -40,6 +42,12 @@ public class UserResponse {
         this.updatedAt = user.getUpdatedAt();
     }
     
+    public UserResponse(User user, int imageCount, long bytesStored, long likesReceived) {
+        this(user, imageCount);
+        this.bytesStored = bytesStored;
+        this.likesReceived = likesReceived;
+    }
+    
     // Getters and Setters
     public Long getId() {
         return id;
@@ -104,4 +112,20 @@ public class UserResponse {
     public void setImageCount(int imageCount) {
         this.imageCount = imageCount;
     }
+    
+    public long getBytesStored() {
+        return bytesStored;
+    }
+    
+    public void setBytesStored(long bytesStored) {
+        this.bytesStored = bytesStored;
+    }
+    
+    public long getLikesReceived() {
+        return likesReceived;
+    }
+    
+    public void setLikesReceived(long likesReceived) {
+        this.likesReceived = likesReceived;
+    }
 }
@@ -8,6 +8,7 @@ import java.time.LocalDateTime;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 @Entity
 @Table(name = "image_metadata")
@@ -49,6 +50,14 @@ public class ImageMetadata {
     @Column(name = "uploaded_at", nullable = false)
     private LocalDateTime uploadedAt;
     
+    // Nomi dei tag denormalizzati, indicizzati dalla colonna generata search_vector (full-text)
+    @Column(name = "search_tags", columnDefinition = "TEXT")
+    private String searchTags;
+    
+    // Numero di like denormalizzato, mantenuto solo dal toggle atomico in SQL (mai scritto da Hibernate in update)
+    @Column(name = "like_count", nullable = false, updatable = false, columnDefinition = "integer not null default 0")
+    private int likeCount;
+    
     // Relazione Many-to-One con User
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id", nullable = false)
@@ -88,6 +97,23 @@ public class ImageMetadata {
         if (uploadedAt == null) {
             uploadedAt = LocalDateTime.now();
         }
+        refreshSearchTags();
+    }
+    
+    @PreUpdate
+    protected void onUpdate() {
+        refreshSearchTags();
+    }
+    
+    private void refreshSearchTags() {
+        if (tags == null || tags.isEmpty()) {
+            searchTags = null;
+            return;
+        }
+        searchTags = tags.stream()
+                .map(Tag::getName)
+                .sorted()
+                .collect(Collectors.joining(" "));
     }
     
     // Getters and Setters
@@ -163,6 +189,10 @@ public class ImageMetadata {
         this.uploadedAt = uploadedAt;
     }
     
+    public String getSearchTags() {
+        return searchTags;
+    }
+    
     public User getUser() {
         return user;
     }
@@ -208,7 +238,7 @@ public class ImageMetadata {
     }
     
     public int getLikeCount() {
-        return this.likes != null ? this.likes.size() : 0;
+        return likeCount;
     }
     
     public boolean isLikedByUser(User user) {
@@ -9,7 +9,9 @@ import java.util.HashSet;
 import java.util.Set;
 
 @Entity
-@Table(name = "tags")
+@Table(name = "tags", indexes = {
+    @Index(name = "idx_tags_usage_count", columnList = "usage_count")
+})
 public class Tag {
     
     @Id
@@ -24,6 +26,10 @@ public class Tag {
     @Column(name = "created_at", nullable = false)
     private LocalDateTime createdAt;
     
+    // Numero di immagini che usano il tag, aggiornato atomicamente su assegnazione e rimozione
+    @Column(name = "usage_count", nullable = false, columnDefinition = "integer not null default 0")
+    private int usageCount;
+    
     // Relazione Many-to-Many con ImageMetadata
     @ManyToMany(mappedBy = "tags", fetch = FetchType.LAZY)
     private Set<ImageMetadata> images = new HashSet<>();
@@ -66,6 +72,14 @@ public class Tag {
         this.createdAt = createdAt;
     }
     
+    public int getUsageCount() {
+        return usageCount;
+    }
+    
+    public void setUsageCount(int usageCount) {
+        this.usageCount = usageCount;
+    }
+    
     public Set<ImageMetadata> getImages() {
         return images;
     }
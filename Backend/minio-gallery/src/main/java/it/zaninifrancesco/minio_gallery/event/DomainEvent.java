@@ -0,0 +1,20 @@
+package it.zaninifrancesco.minio_gallery.event;
+
+/**
+ * Evento di dominio pubblicato all'interno di una transazione
+ * Porta l'ID della transazione PostgreSQL che ha scritto la modifica: chi carica uno stato dal
+ * database lo confronta con lo snapshot della propria query per sapere se la modifica è già inclusa
+ */
+public abstract class DomainEvent {
+    
+    // null se la transazione non ha scritto la modifica (es. toggle in modalità write-behind)
+    private volatile Long transactionId;
+    
+    public Long getTransactionId() {
+        return transactionId;
+    }
+    
+    public void setTransactionId(Long transactionId) {
+        this.transactionId = transactionId;
+    }
+}
@@ -0,0 +1,32 @@
+package it.zaninifrancesco.minio_gallery.event;
+
+import it.zaninifrancesco.minio_gallery.entity.ImageMetadata;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * Pubblicato quando un'immagine viene eliminata (dal proprietario o da un admin)
+ */
+public class ImageDeletedEvent extends ImageEvent {
+    
+    // Like dell'immagine al momento dell'eliminazione, rimossi insieme a lei
+    private final int likeCount;
+    
+    // Like rimossi per ora in cui erano stati messi (inizio dell'ora → numero di like)
+    private final Map<LocalDateTime, Integer> likesByHour;
+    
+    public ImageDeletedEvent(ImageMetadata image, Map<LocalDateTime, Integer> likesByHour) {
+        super(image);
+        this.likeCount = image.getLikeCount();
+        this.likesByHour = Map.copyOf(likesByHour);
+    }
+    
+    public int getLikeCount() {
+        return likeCount;
+    }
+    
+    public Map<LocalDateTime, Integer> getLikesByHour() {
+        return likesByHour;
+    }
+}
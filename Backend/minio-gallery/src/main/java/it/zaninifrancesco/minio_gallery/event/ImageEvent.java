@@ -0,0 +1,82 @@
+package it.zaninifrancesco.minio_gallery.event;
+
+import it.zaninifrancesco.minio_gallery.entity.ImageMetadata;
+import it.zaninifrancesco.minio_gallery.entity.Tag;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Evento di dominio relativo a un'immagine
+ * Contiene una copia dei metadati, così i listener non devono accedere all'entità dopo il commit
+ */
+public abstract class ImageEvent extends DomainEvent {
+    
+    private final UUID imageId;
+    private final Long userId;
+    private final String username;
+    private final String title;
+    private final String description;
+    private final String fileName;
+    private final List<String> tagNames;
+    private final String contentType;
+    private final long size;
+    private final LocalDateTime uploadedAt;
+    
+    protected ImageEvent(ImageMetadata image) {
+        this.imageId = image.getId();
+        this.userId = image.getUser().getId();
+        this.username = image.getUser().getUsername();
+        this.title = image.getTitle();
+        this.description = image.getDescription();
+        this.fileName = image.getFileName();
+        this.tagNames = image.getTags().stream()
+                .map(Tag::getName)
+                .sorted()
+                .toList();
+        this.contentType = image.getContentType();
+        this.size = image.getSize() != null ? image.getSize() : 0L;
+        this.uploadedAt = image.getUploadedAt();
+    }
+    
+    public UUID getImageId() {
+        return imageId;
+    }
+    
+    public Long getUserId() {
+        return userId;
+    }
+    
+    public String getUsername() {
+        return username;
+    }
+    
+    public String getTitle() {
+        return title;
+    }
+    
+    public String getDescription() {
+        return description;
+    }
+    
+    public String getFileName() {
+        return fileName;
+    }
+    
+    public List<String> getTagNames() {
+        return tagNames;
+    }
+    
+    public String getContentType() {
+        return contentType;
+    }
+    
+    public long getSize() {
+        return size;
+    }
+    
+    public LocalDateTime getUploadedAt() {
+        return uploadedAt;
+    }
+}
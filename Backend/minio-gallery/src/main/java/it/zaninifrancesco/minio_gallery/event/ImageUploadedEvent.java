@@ -0,0 +1,13 @@
+package it.zaninifrancesco.minio_gallery.event;
+
+import it.zaninifrancesco.minio_gallery.entity.ImageMetadata;
+
+/**
+ * Pubblicato quando un'immagine viene caricata e i suoi metadati salvati
+ */
+public class ImageUploadedEvent extends ImageEvent {
+    
+    public ImageUploadedEvent(ImageMetadata image) {
+        super(image);
+    }
+}
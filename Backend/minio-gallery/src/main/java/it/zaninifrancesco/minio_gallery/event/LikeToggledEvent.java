@@ -0,0 +1,45 @@
+package it.zaninifrancesco.minio_gallery.event;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Pubblicato quando un utente mette o toglie un like a un'immagine
+ */
+public class LikeToggledEvent extends DomainEvent {
+    
+    private final UUID imageId;
+    private final Long userId;
+    private final boolean liked;
+    private final int likeCount;
+    // Data del like aggiunto o di quello rimosso; null se il toggle non ha cambiato nulla (toggle concorrente)
+    private final LocalDateTime likedAt;
+    
+    public LikeToggledEvent(UUID imageId, Long userId, boolean liked, int likeCount, LocalDateTime likedAt) {
+        this.imageId = imageId;
+        this.userId = userId;
+        this.liked = liked;
+        this.likeCount = likeCount;
+        this.likedAt = likedAt;
+    }
+    
+    public UUID getImageId() {
+        return imageId;
+    }
+    
+    public Long getUserId() {
+        return userId;
+    }
+    
+    public boolean isLiked() {
+        return liked;
+    }
+    
+    public int getLikeCount() {
+        return likeCount;
+    }
+    
+    public LocalDateTime getLikedAt() {
+        return likedAt;
+    }
+}
@@ -0,0 +1,49 @@
+package it.zaninifrancesco.minio_gallery.event;
+
+import java.time.LocalDateTime;
+
+/**
+ * Pubblicato quando un utente viene registrato, eliminato o cambia ruolo o stato
+ * Contiene lo stato di abilitazione prima e dopo la modifica (un utente inesistente conta come disabilitato)
+ */
+public class UserChangedEvent extends DomainEvent {
+    
+    public enum Change {
+        REGISTERED, UPDATED, DELETED
+    }
+    
+    private final Long userId;
+    private final Change change;
+    private final boolean enabledBefore;
+    private final boolean enabledAfter;
+    private final LocalDateTime createdAt;
+    
+    public UserChangedEvent(Long userId, Change change, boolean enabledBefore, boolean enabledAfter,
+                            LocalDateTime createdAt) {
+        this.userId = userId;
+        this.change = change;
+        this.enabledBefore = enabledBefore;
+        this.enabledAfter = enabledAfter;
+        this.createdAt = createdAt;
+    }
+    
+    public Long getUserId() {
+        return userId;
+    }
+    
+    public Change getChange() {
+        return change;
+    }
+    
+    public boolean isEnabledBefore() {
+        return enabledBefore;
+    }
+    
+    public boolean isEnabledAfter() {
+        return enabledAfter;
+    }
+    
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+}
@@ -6,10 +6,12 @@ import it.zaninifrancesco.minio_gallery.entity.User;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -38,6 +40,106 @@ public interface ImageLikeRepository extends JpaRepository<ImageLike, UUID> {
     @Query("SELECT COUNT(l) FROM ImageLike l WHERE l.image.id = :imageId")
     int countByImageId(@Param("imageId") UUID imageId);
     
+    /**
+     * Toggle atomico del like in un'unica istruzione: elimina il like se esiste, altrimenti lo inserisce,
+     * e aggiorna nella stessa istruzione il contatore like_count dell'immagine, il rollup mensile
+     * (il like rimosso viene sottratto dal mese in cui era stato messo) e i like ricevuti dal proprietario.
+     * Un inserimento concorrente dello stesso like viene ignorato da ON CONFLICT invece di fallire.
+     * Restituisce una riga (liked, like_count, liked_at, transaction_id) con la data del like aggiunto o rimosso
+     * (null se un toggle concorrente ha già inserito lo stesso like) e l'ID della transazione,
+     * oppure nessuna riga se l'immagine non esiste.
+     */
+    @Modifying
+    @Query(value = "WITH deleted AS (" +
+           "    DELETE FROM image_likes WHERE image_id = :imageId AND user_id = :userId RETURNING liked_at), " +
+           "inserted AS (" +
+           "    INSERT INTO image_likes (id, image_id, user_id, liked_at) " +
+           "    SELECT :likeId, im.id, :userId, now() FROM image_metadata im " +
+           "    WHERE im.id = :imageId AND NOT EXISTS (SELECT 1 FROM deleted) " +
+           "    ON CONFLICT (image_id, user_id) DO NOTHING RETURNING liked_at), " +
+           "updated AS (" +
+           "    UPDATE image_metadata SET like_count = like_count " +
+           "        + (SELECT COUNT(*) FROM inserted) - (SELECT COUNT(*) FROM deleted) " +
+           "    WHERE id = :imageId RETURNING like_count), " +
+           "month_added AS (" +
+           "    INSERT INTO monthly_image_likes (year, month, image_id, likes) " +
+           "    SELECT CAST(EXTRACT(YEAR FROM liked_at) AS integer), CAST(EXTRACT(MONTH FROM liked_at) AS integer), " +
+           "           :imageId, 1 FROM inserted " +
+           "    ON CONFLICT (year, month, image_id) DO UPDATE SET likes = monthly_image_likes.likes + 1), " +
+           "month_removed AS (" +
+           "    UPDATE monthly_image_likes m SET likes = m.likes - 1 FROM deleted d " +
+           "    WHERE m.year = CAST(EXTRACT(YEAR FROM d.liked_at) AS integer) " +
+           "    AND m.month = CAST(EXTRACT(MONTH FROM d.liked_at) AS integer) " +
+           "    AND m.image_id = :imageId), " +
+           "owner_updated AS (" +
+           "    UPDATE user_stats us SET likes_received = us.likes_received " +
+           "        + (SELECT COUNT(*) FROM inserted) - (SELECT COUNT(*) FROM deleted) " +
+           "    FROM image_metadata im WHERE im.id = :imageId AND us.user_id = im.user_id) " +
+           "SELECT NOT EXISTS (SELECT 1 FROM deleted) AS liked, like_count, " +
+           "COALESCE((SELECT liked_at FROM deleted), (SELECT liked_at FROM inserted)) AS liked_at, " +
+           "CAST(CAST(pg_current_xact_id() AS text) AS bigint) AS transaction_id FROM updated",
+           nativeQuery = true)
+    List<Object[]> toggleLike(@Param("imageId") UUID imageId, @Param("userId") Long userId,
+                              @Param("likeId") UUID likeId);
+    
+    /**
+     * Contatore like_count dell'immagine e data del like dell'utente, in una sola lettura
+     * Restituisce una riga (like_count, liked_at) con liked_at null se l'utente non ha messo like,
+     * oppure nessuna riga se l'immagine non esiste.
+     */
+    @Query(value = "SELECT im.like_count, (SELECT l.liked_at FROM image_likes l " +
+           "WHERE l.image_id = im.id AND l.user_id = :userId) AS liked_at " +
+           "FROM image_metadata im WHERE im.id = :imageId",
+           nativeQuery = true)
+    List<Object[]> findLikeCountAndState(@Param("imageId") UUID imageId, @Param("userId") Long userId);
+    
+    /**
+     * Like delle immagini indicate per ora in cui sono stati messi, come terne (ID immagine, inizio dell'ora, like)
+     * Letti prima di eliminare le immagini, per sottrarli dalle serie temporali
+     */
+    @Query(value = "SELECT image_id, date_trunc('hour', liked_at), COUNT(*) FROM image_likes " +
+           "WHERE image_id IN :imageIds GROUP BY 1, 2",
+           nativeQuery = true)
+    List<Object[]> countLikesByHour(@Param("imageIds") Collection<UUID> imageIds);
+    
+    /**
+     * Elimina i like delle immagini indicate
+     */
+    @Modifying
+    @Query(value = "DELETE FROM image_likes WHERE image_id IN :imageIds", nativeQuery = true)
+    int deleteByImageIdIn(@Param("imageIds") Collection<UUID> imageIds);
+    
+    /**
+     * Rimuove un blocco di like messi da un utente, aggiornando nella stessa istruzione like_count,
+     * rollup mensile e like ricevuti dei proprietari (come il toggle).
+     * Restituisce una riga (ID immagine, liked_at, like_count) per ogni like rimosso.
+     */
+    @Modifying
+    @Query(value = "WITH removed AS (" +
+           "    DELETE FROM image_likes WHERE id IN (" +
+           "        SELECT id FROM image_likes WHERE user_id = :userId LIMIT :limit) " +
+           "    RETURNING image_id, liked_at), " +
+           "updated AS (" +
+           "    UPDATE image_metadata im SET like_count = im.like_count - 1 FROM removed r " +
+           "    WHERE im.id = r.image_id RETURNING im.id, im.user_id, im.like_count), " +
+           "month_removed AS (" +
+           "    UPDATE monthly_image_likes m SET likes = m.likes - 1 FROM removed r " +
+           "    WHERE m.year = CAST(EXTRACT(YEAR FROM r.liked_at) AS integer) " +
+           "    AND m.month = CAST(EXTRACT(MONTH FROM r.liked_at) AS integer) " +
+           "    AND m.image_id = r.image_id), " +
+           "owners_updated AS (" +
+           "    UPDATE user_stats us SET likes_received = us.likes_received - o.likes " +
+           "    FROM (SELECT user_id, COUNT(*) AS likes FROM updated GROUP BY user_id) o WHERE us.user_id = o.user_id) " +
+           "SELECT r.image_id, r.liked_at, u.like_count FROM removed r JOIN updated u ON u.id = r.image_id",
+           nativeQuery = true)
+    List<Object[]> removeLikesByUser(@Param("userId") Long userId, @Param("limit") int limit);
+    
+    /**
+     * ID delle immagini a cui un utente ha messo like
+     */
+    @Query("SELECT l.image.id FROM ImageLike l WHERE l.user.id = :userId")
+    List<UUID> findImageIdsByUserId(@Param("userId") Long userId);
+    
     /**
      * Find all likes by user
      */
@@ -47,23 +149,40 @@ public interface ImageLikeRepository extends JpaRepository<ImageLike, UUID> {
      * Find all likes for a specific image
      */
     Page<ImageLike> findByImage(ImageMetadata image, Pageable pageable);    /**
-     * Get monthly leaderboard - images with most likes in a specific month/year
-     */
-    @Query("SELECT l.image.id, l.image.title, l.image.user.username, COUNT(l) as likeCount " +
-           "FROM ImageLike l " +
-           "WHERE YEAR(l.likedAt) = :year AND MONTH(l.likedAt) = :month " +
-           "GROUP BY l.image.id, l.image.title, l.image.user.username " +
-           "ORDER BY COUNT(l) DESC")
-    List<Object[]> getMonthlyLeaderboard(@Param("year") int year, @Param("month") int month);
-      /**
-     * Get photo of the month - image with most likes in a specific month/year
-     */
-    @Query("SELECT l.image.id " +
-           "FROM ImageLike l " +
-           "WHERE YEAR(l.likedAt) = :year AND MONTH(l.likedAt) = :month " +
-           "GROUP BY l.image.id " +
-           "ORDER BY COUNT(l) DESC")
-    List<UUID> getPhotoOfMonth(@Param("year") int year, @Param("month") int month, Pageable pageable);
+     * Classifica mensile dal rollup monthly_image_likes: le prime immagini per numero di like
+     * messi nel mese indicato, come coppie (ID immagine, like)
+     */
+    @Query(value = "SELECT image_id, likes FROM monthly_image_likes " +
+           "WHERE year = :year AND month = :month AND likes > 0 " +
+           "ORDER BY likes DESC, image_id LIMIT :limit",
+           nativeQuery = true)
+    List<Object[]> findMonthlyTopImages(@Param("year") int year, @Param("month") int month, @Param("limit") int limit);
+    
+    /**
+     * Congela la classifica di un mese chiuso in monthly_leaderboard_snapshots (le prime :size posizioni)
+     */
+    @Modifying
+    @Query(value = "INSERT INTO monthly_leaderboard_snapshots (year, month, rank, image_id, likes) " +
+           "SELECT :year, :month, ROW_NUMBER() OVER (ORDER BY likes DESC, image_id), image_id, likes " +
+           "FROM monthly_image_likes WHERE year = :year AND month = :month AND likes > 0 " +
+           "ORDER BY likes DESC, image_id LIMIT :size " +
+           "ON CONFLICT (year, month, rank) DO NOTHING",
+           nativeQuery = true)
+    int saveLeaderboardSnapshot(@Param("year") int year, @Param("month") int month, @Param("size") int size);
+    
+    /**
+     * Classifica congelata di un mese chiuso, come coppie (ID immagine, like) in ordine di posizione
+     */
+    @Query(value = "SELECT image_id, likes FROM monthly_leaderboard_snapshots " +
+           "WHERE year = :year AND month = :month ORDER BY rank",
+           nativeQuery = true)
+    List<Object[]> findLeaderboardSnapshot(@Param("year") int year, @Param("month") int month);
+    
+    /**
+     * Count likes grouped by image (image ID, like count)
+     */
+    @Query("SELECT l.image.id, COUNT(l) FROM ImageLike l GROUP BY l.image.id")
+    List<Object[]> countLikesPerImage();
     
     /**
      * Delete like by image and user
@@ -9,6 +9,8 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -75,11 +77,167 @@ public interface ImageMetadataRepository extends JpaRepository<ImageMetadata, UU
            "OR LOWER(im.description) LIKE LOWER(CONCAT('%', :query, '%')) ORDER BY im.uploadedAt DESC")
     Page<ImageMetadata> findByTitleOrDescriptionContainingIgnoreCase(@Param("query") String query, Pageable pageable);
     
+    /**
+     * Ricerca full-text su titolo, tag e descrizione ordinata per rilevanza (ts_rank)
+     * Usa l'indice GIN sulla colonna generata search_vector
+     */
+    @Query(value = "SELECT im.* FROM image_metadata im " +
+                   "WHERE im.search_vector @@ to_tsquery(CAST(:language AS regconfig), :tsQuery) " +
+                   "ORDER BY ts_rank(im.search_vector, to_tsquery(CAST(:language AS regconfig), :tsQuery)) DESC, " +
+                   "im.uploaded_at DESC",
+           countQuery = "SELECT COUNT(*) FROM image_metadata im " +
+                        "WHERE im.search_vector @@ to_tsquery(CAST(:language AS regconfig), :tsQuery)",
+           nativeQuery = true)
+    Page<ImageMetadata> searchByFullText(@Param("tsQuery") String tsQuery,
+                                         @Param("language") String language,
+                                         Pageable pageable);
+    
+    /**
+     * Ricerca full-text tra le immagini di un utente ordinata per rilevanza (ts_rank)
+     */
+    @Query(value = "SELECT im.* FROM image_metadata im " +
+                   "WHERE im.user_id = :userId AND im.search_vector @@ to_tsquery(CAST(:language AS regconfig), :tsQuery) " +
+                   "ORDER BY ts_rank(im.search_vector, to_tsquery(CAST(:language AS regconfig), :tsQuery)) DESC, " +
+                   "im.uploaded_at DESC",
+           countQuery = "SELECT COUNT(*) FROM image_metadata im " +
+                        "WHERE im.user_id = :userId AND im.search_vector @@ to_tsquery(CAST(:language AS regconfig), :tsQuery)",
+           nativeQuery = true)
+    Page<ImageMetadata> searchUserImagesByFullText(@Param("userId") Long userId,
+                                                   @Param("tsQuery") String tsQuery,
+                                                   @Param("language") String language,
+                                                   Pageable pageable);
+    
+    /**
+     * Pagina degli ID delle immagini che soddisfano la ricerca full-text, ordinati per rilevanza (ts_rank)
+     */
+    @Query(value = "SELECT im.id FROM image_metadata im " +
+                   "WHERE im.search_vector @@ to_tsquery(CAST(:language AS regconfig), :tsQuery) " +
+                   "ORDER BY ts_rank(im.search_vector, to_tsquery(CAST(:language AS regconfig), :tsQuery)) DESC, " +
+                   "im.uploaded_at DESC, im.id " +
+                   "LIMIT :limit OFFSET :offset",
+           nativeQuery = true)
+    List<UUID> findIdsByFullText(@Param("tsQuery") String tsQuery,
+                                 @Param("language") String language,
+                                 @Param("limit") int limit,
+                                 @Param("offset") long offset);
+    
+    @Query(value = "SELECT COUNT(*) FROM image_metadata im " +
+                   "WHERE im.search_vector @@ to_tsquery(CAST(:language AS regconfig), :tsQuery)",
+           nativeQuery = true)
+    long countByFullText(@Param("tsQuery") String tsQuery, @Param("language") String language);
+    
+    /**
+     * Pagina degli ID, tra le immagini candidate, che soddisfano la ricerca full-text, ordinati per rilevanza
+     * I candidati sono passati come un unico array PostgreSQL testuale (es. "{id1,id2}"), senza limite di parametri
+     */
+    @Query(value = "SELECT im.id FROM image_metadata im " +
+                   "WHERE im.id = ANY(CAST(:ids AS uuid[])) " +
+                   "AND im.search_vector @@ to_tsquery(CAST(:language AS regconfig), :tsQuery) " +
+                   "ORDER BY ts_rank(im.search_vector, to_tsquery(CAST(:language AS regconfig), :tsQuery)) DESC, " +
+                   "im.uploaded_at DESC, im.id " +
+                   "LIMIT :limit OFFSET :offset",
+           nativeQuery = true)
+    List<UUID> findIdsByFullTextAmong(@Param("tsQuery") String tsQuery,
+                                      @Param("language") String language,
+                                      @Param("ids") String ids,
+                                      @Param("limit") int limit,
+                                      @Param("offset") long offset);
+    
+    @Query(value = "SELECT COUNT(*) FROM image_metadata im " +
+                   "WHERE im.id = ANY(CAST(:ids AS uuid[])) " +
+                   "AND im.search_vector @@ to_tsquery(CAST(:language AS regconfig), :tsQuery)",
+           nativeQuery = true)
+    long countByFullTextAmong(@Param("tsQuery") String tsQuery,
+                              @Param("language") String language,
+                              @Param("ids") String ids);
+    
+    /**
+     * Restituisce gli ID di tutte le immagini in ordine di upload (per la costruzione degli indici in memoria)
+     */
+    @Query("SELECT im.id FROM ImageMetadata im ORDER BY im.uploadedAt ASC, im.id ASC")
+    List<UUID> findAllIdsOrderByUploadedAtAsc();
+    
+    /**
+     * Restituisce ID, proprietario, tipo di contenuto, data di upload e dimensione di tutte le immagini
+     * in ordine di upload (per l'indice a bitmap)
+     */
+    @Query("SELECT im.id, im.user.id, im.contentType, im.uploadedAt, im.size FROM ImageMetadata im ORDER BY im.uploadedAt ASC, im.id ASC")
+    List<Object[]> findAllBitmapFieldsOrderByUploadedAtAsc();
+    
+    /**
+     * Restituisce tutte le coppie (ID immagine, nome del tag)
+     */
+    @Query("SELECT im.id, t.name FROM ImageMetadata im JOIN im.tags t")
+    List<Object[]> findAllImageTagNames();
+    
+    /**
+     * Restituisce le coppie (ID immagine, nome del file su MinIO) delle immagini indicate
+     */
+    @Query("SELECT im.id, im.fileName FROM ImageMetadata im WHERE im.id IN :ids")
+    List<Object[]> findFileNamesByIdIn(@Param("ids") Collection<UUID> ids);
+    
+    /**
+     * Data di upload della prima immagine (null se non ci sono immagini)
+     */
+    @Query("SELECT MIN(im.uploadedAt) FROM ImageMetadata im")
+    LocalDateTime findFirstUploadedAt();
+
+    /**
+     * Immagini attive per il feed di tendenza: caricate dopo "since" o con like dopo "since".
+     * Restituisce (ID, data di upload, somma dei like con decadimento esponenziale calcolata a "now")
+     */
+    @Query(value = "SELECT im.id, im.uploaded_at, " +
+                   "COALESCE(SUM(EXP(-:decayPerSecond * CAST(EXTRACT(EPOCH FROM (CAST(:now AS timestamp) - l.liked_at)) AS double precision))), 0) " +
+                   "FROM image_metadata im " +
+                   "LEFT JOIN image_likes l ON l.image_id = im.id AND l.liked_at >= :since " +
+                   "WHERE im.uploaded_at >= :since OR l.id IS NOT NULL " +
+                   "GROUP BY im.id, im.uploaded_at",
+           nativeQuery = true)
+    List<Object[]> findTrendingCandidates(@Param("since") LocalDateTime since,
+                                          @Param("now") LocalDateTime now,
+                                          @Param("decayPerSecond") double decayPerSecond);
+    
+    /**
+     * Restituisce le coppie (ID immagine, data di upload) delle immagini indicate
+     */
+    @Query("SELECT im.id, im.uploadedAt FROM ImageMetadata im WHERE im.id IN :ids")
+    List<Object[]> findUploadedAtByIdIn(@Param("ids") Collection<UUID> ids);
+    
+    /**
+     * Carica le immagini indicate insieme all'utente in un'unica query
+     */
+    @Query("SELECT im FROM ImageMetadata im JOIN FETCH im.user WHERE im.id IN :ids")
+    List<ImageMetadata> findAllWithUserByIdIn(@Param("ids") Collection<UUID> ids);
+    
+    /**
+     * Carica le immagini indicate insieme a utente e tag in un'unica query
+     */
+    @Query("SELECT DISTINCT im FROM ImageMetadata im JOIN FETCH im.user LEFT JOIN FETCH im.tags WHERE im.id IN :ids")
+    List<ImageMetadata> findAllWithUserAndTagsByIdIn(@Param("ids") Collection<UUID> ids);
+    
+    /**
+     * Restituisce il contatore di like denormalizzato di un'immagine
+     */
+    @Query("SELECT im.likeCount FROM ImageMetadata im WHERE im.id = :id")
+    Optional<Integer> findLikeCountById(@Param("id") UUID id);
+    
+    /**
+     * Contatori di like denormalizzati delle immagini indicate, come coppie (ID immagine, like)
+     */
+    @Query("SELECT im.id, im.likeCount FROM ImageMetadata im WHERE im.id IN :ids")
+    List<Object[]> findLikeCountsByIdIn(@Param("ids") Collection<UUID> ids);
+    
     /**
      * Conta il numero totale di immagini di un utente
      */
     long countByUserId(Long userId);
     
+    /**
+     * Un blocco di ID delle immagini di un utente (per eliminarle a blocchi)
+     */
+    @Query(value = "SELECT id FROM image_metadata WHERE user_id = :userId LIMIT :limit", nativeQuery = true)
+    List<UUID> findIdsByUserId(@Param("userId") Long userId, @Param("limit") int limit);
+    
     /**
      * Conta il numero totale di immagini nel sistema
      */
@@ -120,4 +278,19 @@ public interface ImageMetadataRepository extends JpaRepository<ImageMetadata, UU
      */
     @Query("SELECT COUNT(il) FROM ImageLike il")
     long getTotalLikes();
+    
+    /**
+     * Statistiche di sistema in un'unica query: una scansione di users e una di image_metadata
+     * (utenti totali, admin, utenti normali, abilitati, immagini, dimensione totale, like totali)
+     */
+    @Query(value = "SELECT u.total, u.admins, u.regular_users, u.enabled, i.total, i.total_size, i.total_likes FROM " +
+           "(SELECT COUNT(*) AS total, " +
+           "        COUNT(*) FILTER (WHERE role = 'ADMIN') AS admins, " +
+           "        COUNT(*) FILTER (WHERE role = 'USER') AS regular_users, " +
+           "        COUNT(*) FILTER (WHERE enabled) AS enabled " +
+           " FROM users) u, " +
+           "(SELECT COUNT(*) AS total, COALESCE(SUM(size), 0) AS total_size, COALESCE(SUM(like_count), 0) AS total_likes " +
+           " FROM image_metadata) i",
+           nativeQuery = true)
+    List<Object[]> aggregateSystemStats();
 }
@@ -1,14 +1,18 @@
 package it.zaninifrancesco.minio_gallery.repository;
 
 import it.zaninifrancesco.minio_gallery.entity.Tag;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.UUID;
 
 @Repository
 public interface TagRepository extends JpaRepository<Tag, Long> {
@@ -32,14 +36,37 @@ public interface TagRepository extends JpaRepository<Tag, Long> {
     /**
      * Trova i tag più popolari (con più immagini associate)
      */
-    @Query("SELECT t FROM Tag t LEFT JOIN t.images i GROUP BY t ORDER BY COUNT(i) DESC")
+    @Query("SELECT t FROM Tag t ORDER BY t.usageCount DESC, t.name ASC")
     List<Tag> findMostPopularTags();
     
     /**
-     * Trova i tag più popolari limitati ad un numero specifico
+     * Trova i tag più popolari limitati ad un numero specifico (usa l'indice su usage_count)
      */
-    @Query("SELECT t FROM Tag t LEFT JOIN t.images i GROUP BY t ORDER BY COUNT(i) DESC")
-    List<Tag> findTopPopularTags(@Param("limit") int limit);
+    @Query("SELECT t FROM Tag t WHERE t.usageCount > 0 ORDER BY t.usageCount DESC, t.name ASC")
+    List<Tag> findTopPopularTags(Pageable pageable);
+    
+    /**
+     * Restituisce nome e numero di utilizzi di tutti i tag
+     */
+    @Query("SELECT t.name, t.usageCount FROM Tag t")
+    List<Object[]> findAllNamesAndUsageCounts();
+    
+    /**
+     * Aggiorna atomicamente il numero di utilizzi dei tag indicati
+     */
+    @Modifying
+    @Query("UPDATE Tag t SET t.usageCount = t.usageCount + :delta WHERE t.id IN :tagIds")
+    int incrementUsageCount(@Param("tagIds") Collection<Long> tagIds, @Param("delta") int delta);
+    
+    /**
+     * Toglie le immagini indicate dal numero di utilizzi dei loro tag e ne elimina le associazioni
+     */
+    @Modifying
+    @Query(value = "WITH unlinked AS (DELETE FROM image_tags WHERE image_id IN :imageIds RETURNING tag_id) " +
+           "UPDATE tags t SET usage_count = t.usage_count - c.images " +
+           "FROM (SELECT tag_id, COUNT(*) AS images FROM unlinked GROUP BY tag_id) c WHERE t.id = c.tag_id",
+           nativeQuery = true)
+    int unlinkImages(@Param("imageIds") Collection<UUID> imageIds);
     
     /**
      * Conta il numero di immagini associate ad un tag
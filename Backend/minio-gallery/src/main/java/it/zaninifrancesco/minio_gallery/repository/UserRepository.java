@@ -1,10 +1,16 @@
 package it.zaninifrancesco.minio_gallery.repository;
 
 import it.zaninifrancesco.minio_gallery.entity.User;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -50,4 +56,48 @@ public interface UserRepository extends JpaRepository<User, Long> {
      * Conta gli utenti disabilitati
      */
     long countByEnabledFalse();
+    
+    /**
+     * Aggiorna in modo incrementale le statistiche di un utente (crea la riga se manca)
+     */
+    @Modifying
+    @Query(value = "INSERT INTO user_stats (user_id, image_count, bytes_stored, likes_received) " +
+           "VALUES (:userId, :images, :bytes, :likes) " +
+           "ON CONFLICT (user_id) DO UPDATE SET image_count = user_stats.image_count + EXCLUDED.image_count, " +
+           "bytes_stored = user_stats.bytes_stored + EXCLUDED.bytes_stored, " +
+           "likes_received = user_stats.likes_received + EXCLUDED.likes_received",
+           nativeQuery = true)
+    int adjustStats(@Param("userId") Long userId, @Param("images") int images, @Param("bytes") long bytes,
+                    @Param("likes") long likes);
+    
+    /**
+     * Statistiche degli utenti indicati, come righe (ID utente, immagini, byte caricati, like ricevuti)
+     */
+    @Query(value = "SELECT user_id, image_count, bytes_stored, likes_received FROM user_stats WHERE user_id IN :userIds",
+           nativeQuery = true)
+    List<Object[]> findStatsByUserIdIn(@Param("userIds") Collection<Long> userIds);
+    
+    /**
+     * Utenti ordinati per numero di immagini (decrescente), sull'indice di user_stats
+     */
+    @Query(value = "SELECT u.* FROM users u JOIN user_stats s ON s.user_id = u.id ORDER BY s.image_count DESC, s.user_id",
+           countQuery = "SELECT COUNT(*) FROM user_stats",
+           nativeQuery = true)
+    Page<User> findAllOrderByImageCountDesc(Pageable pageable);
+    
+    /**
+     * Utenti ordinati per byte caricati (decrescente), sull'indice di user_stats
+     */
+    @Query(value = "SELECT u.* FROM users u JOIN user_stats s ON s.user_id = u.id ORDER BY s.bytes_stored DESC, s.user_id",
+           countQuery = "SELECT COUNT(*) FROM user_stats",
+           nativeQuery = true)
+    Page<User> findAllOrderByBytesStoredDesc(Pageable pageable);
+    
+    /**
+     * Utenti ordinati per like ricevuti (decrescente), sull'indice di user_stats
+     */
+    @Query(value = "SELECT u.* FROM users u JOIN user_stats s ON s.user_id = u.id ORDER BY s.likes_received DESC, s.user_id",
+           countQuery = "SELECT COUNT(*) FROM user_stats",
+           nativeQuery = true)
+    Page<User> findAllOrderByLikesReceivedDesc(Pageable pageable);
 }
@@ -0,0 +1,56 @@
+package it.zaninifrancesco.minio_gallery.search;
+
+import java.util.List;
+
+/**
+ * Conteggi per faccette di un insieme di risultati: tag co-occorrenti, tipo di contenuto e mese di upload
+ */
+public class FacetCounts {
+
+    private final List<Bucket> tags;
+    private final List<Bucket> contentTypes;
+    private final List<Bucket> uploadMonths;
+
+    /**
+     * Valore di una faccetta e numero di risultati che lo hanno
+     */
+    public static class Bucket {
+        private final String value;
+        private final int count;
+
+        public Bucket(String value, int count) {
+            this.value = value;
+            this.count = count;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        public int getCount() {
+            return count;
+        }
+    }
+
+    public FacetCounts(List<Bucket> tags, List<Bucket> contentTypes, List<Bucket> uploadMonths) {
+        this.tags = tags;
+        this.contentTypes = contentTypes;
+        this.uploadMonths = uploadMonths;
+    }
+
+    public static FacetCounts empty() {
+        return new FacetCounts(List.of(), List.of(), List.of());
+    }
+
+    public List<Bucket> getTags() {
+        return tags;
+    }
+
+    public List<Bucket> getContentTypes() {
+        return contentTypes;
+    }
+
+    public List<Bucket> getUploadMonths() {
+        return uploadMonths;
+    }
+}
@@ -0,0 +1,704 @@
+package it.zaninifrancesco.minio_gallery.search;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Grafo HNSW (Hierarchical Navigable Small World) in memoria per la ricerca dei vicini più prossimi
+ *
+ * I vettori sono quantizzati a un byte per dimensione e salvati in un unico array contiguo;
+ * la distanza è il coseno. Ogni nodo ha fino a M collegamenti per livello (2M al livello 0),
+ * scelti con l'euristica di diversificazione dell'articolo originale. Le eliminazioni sono
+ * tombstone: i vicini del nodo eliminato vengono ricollegati tra loro e il nodo non compare
+ * più nei risultati; quando sono troppe l'indice va ricostruito con {@link #withoutDeleted()}.
+ * Thread-safe: letture concorrenti, scritture esclusive.
+ */
+public class HnswIndex {
+
+    private static final int SNAPSHOT_MAGIC = 0x4D47_4856; // "MGHV"
+    private static final int SNAPSHOT_VERSION = 1;
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int MAX_LEVEL = 16;
+
+    private final int dimensions;
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final Random random = new Random(42);
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Dati dei nodi indicizzati per ordinale: vettore quantizzato, norma, ID immagine e liste di adiacenza
+    // (links[nodo][livello][0] è il numero di vicini, seguito dai loro ordinali)
+    private byte[] vectors;
+    private float[] norms;
+    private UUID[] imageIds;
+    private int[][][] links;
+    private int nodeCount;
+
+    private final Map<UUID, Integer> nodesByImageId = new HashMap<>();
+    private final BitSet deleted = new BitSet();
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    // Insiemi dei nodi visitati riutilizzati tra le ricerche (niente ThreadLocal: va bene anche con i virtual thread)
+    private final ConcurrentLinkedQueue<VisitedSet> visitedPool = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param dimensions numero di dimensioni dei vettori
+     * @param m numero di collegamenti per nodo ai livelli superiori
+     * @param efConstruction ampiezza della ricerca durante l'inserimento
+     */
+    public HnswIndex(int dimensions, int m, int efConstruction) {
+        this.dimensions = dimensions;
+        this.m = m;
+        this.maxM0 = 2 * m;
+        this.efConstruction = efConstruction;
+        this.levelMultiplier = 1 / Math.log(m);
+        this.vectors = new byte[INITIAL_CAPACITY * dimensions];
+        this.norms = new float[INITIAL_CAPACITY];
+        this.imageIds = new UUID[INITIAL_CAPACITY];
+        this.links = new int[INITIAL_CAPACITY][][];
+    }
+
+    public int dimensions() {
+        return dimensions;
+    }
+
+    /**
+     * Numero di immagini indicizzate (esclusi i nodi eliminati)
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return nodesByImageId.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Quota di nodi del grafo eliminati, usata per decidere quando ricostruire l'indice
+     */
+    public double deletedRatio() {
+        lock.readLock().lock();
+        try {
+            return nodeCount == 0 ? 0 : (double) (nodeCount - nodesByImageId.size()) / nodeCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean contains(UUID imageId) {
+        lock.readLock().lock();
+        try {
+            return nodesByImageId.containsKey(imageId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Set<UUID> imageIds() {
+        lock.readLock().lock();
+        try {
+            return new HashSet<>(nodesByImageId.keySet());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Inserisce il vettore di un'immagine, sostituendo quello precedente se già presente
+     *
+     * @param vector vettore con valori in [0, 1] (es. istogrammi normalizzati)
+     */
+    public void add(UUID imageId, float[] vector) {
+        if (vector.length != dimensions) {
+            throw new IllegalArgumentException("Expected " + dimensions + " dimensions, got " + vector.length);
+        }
+        byte[] quantized = new byte[dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            quantized[i] = (byte) Math.round(Math.min(1f, Math.max(0f, vector[i])) * 255);
+        }
+        add(imageId, quantized);
+    }
+
+    /**
+     * Rimuove un'immagine dall'indice
+     *
+     * @return true se l'immagine era presente
+     */
+    public boolean remove(UUID imageId) {
+        lock.writeLock().lock();
+        try {
+            Integer node = nodesByImageId.remove(imageId);
+            if (node == null) {
+                return false;
+            }
+            markDeleted(node);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Immagini più simili a un'immagine già indicizzata, in ordine di distanza
+     *
+     * @param imageId immagine di riferimento (esclusa dai risultati)
+     * @param k numero massimo di risultati
+     * @param ef ampiezza della ricerca (maggiore = recall più alto, ricerca più lenta)
+     */
+    public List<UUID> nearest(UUID imageId, int k, int ef) {
+        lock.readLock().lock();
+        try {
+            Integer query = nodesByImageId.get(imageId);
+            if (query == null || k <= 0) {
+                return List.of();
+            }
+
+            int current = entryPoint;
+            for (int level = maxLevel; level > 0; level--) {
+                current = greedyClosest(query, current, level);
+            }
+            long[] candidates = searchLayer(query, current, Math.max(ef, k + 1), 0, true);
+
+            List<UUID> neighbors = new ArrayList<>(k);
+            for (long candidate : candidates) {
+                int node = node(candidate);
+                if (node != query) {
+                    neighbors.add(imageIds[node]);
+                    if (neighbors.size() == k) {
+                        break;
+                    }
+                }
+            }
+            return neighbors;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Crea un nuovo indice con le sole immagini non eliminate
+     * I vettori vengono copiati sotto lock di lettura, il grafo viene costruito senza bloccare questo indice
+     */
+    public HnswIndex withoutDeleted() {
+        List<UUID> liveIds = new ArrayList<>();
+        List<byte[]> liveVectors = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (int node = 0; node < nodeCount; node++) {
+                if (!deleted.get(node)) {
+                    liveIds.add(imageIds[node]);
+                    liveVectors.add(Arrays.copyOfRange(vectors, node * dimensions, (node + 1) * dimensions));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        HnswIndex rebuilt = new HnswIndex(dimensions, m, efConstruction);
+        for (int i = 0; i < liveIds.size(); i++) {
+            rebuilt.add(liveIds.get(i), liveVectors.get(i));
+        }
+        return rebuilt;
+    }
+
+    /**
+     * Scrive l'indice (vettori e grafo) in formato binario
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        lock.readLock().lock();
+        try {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeInt(dimensions);
+            out.writeInt(m);
+            out.writeInt(efConstruction);
+            out.writeInt(nodeCount);
+            out.writeInt(entryPoint);
+            out.writeInt(maxLevel);
+
+            for (int node = 0; node < nodeCount; node++) {
+                out.writeLong(imageIds[node].getMostSignificantBits());
+                out.writeLong(imageIds[node].getLeastSignificantBits());
+                out.writeBoolean(deleted.get(node));
+                out.write(vectors, node * dimensions, dimensions);
+
+                out.writeByte(links[node].length);
+                for (int[] neighbors : links[node]) {
+                    out.writeShort(neighbors[0]);
+                    for (int i = 1; i <= neighbors[0]; i++) {
+                        out.writeInt(neighbors[i]);
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Ricostruisce un indice da uno snapshot scritto con {@link #writeTo(DataOutputStream)}
+     */
+    public static HnswIndex readFrom(DataInputStream in) throws IOException {
+        if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+            throw new IOException("Unsupported similarity index snapshot format");
+        }
+
+        HnswIndex index = new HnswIndex(in.readInt(), in.readInt(), in.readInt());
+        int nodeCount = in.readInt();
+        index.ensureCapacity(nodeCount);
+        index.nodeCount = nodeCount;
+        index.entryPoint = in.readInt();
+        index.maxLevel = in.readInt();
+
+        for (int node = 0; node < nodeCount; node++) {
+            UUID imageId = new UUID(in.readLong(), in.readLong());
+            index.imageIds[node] = imageId;
+            if (in.readBoolean()) {
+                index.deleted.set(node);
+            } else {
+                index.nodesByImageId.put(imageId, node);
+            }
+            in.readFully(index.vectors, node * index.dimensions, index.dimensions);
+            index.norms[node] = index.computeNorm(node);
+
+            int levels = in.readUnsignedByte();
+            index.links[node] = new int[levels][];
+            for (int level = 0; level < levels; level++) {
+                int[] neighbors = new int[index.maxConnections(level) + 1];
+                neighbors[0] = in.readUnsignedShort();
+                for (int i = 1; i <= neighbors[0]; i++) {
+                    neighbors[i] = in.readInt();
+                }
+                index.links[node][level] = neighbors;
+            }
+        }
+        return index;
+    }
+
+    private void add(UUID imageId, byte[] vector) {
+        lock.writeLock().lock();
+        try {
+            Integer existing = nodesByImageId.remove(imageId);
+            if (existing != null) {
+                markDeleted(existing);
+            }
+
+            int node = nodeCount;
+            ensureCapacity(node + 1);
+            nodeCount++;
+            System.arraycopy(vector, 0, vectors, node * dimensions, dimensions);
+            norms[node] = computeNorm(node);
+            imageIds[node] = imageId;
+            nodesByImageId.put(imageId, node);
+
+            int level = randomLevel();
+            links[node] = new int[level + 1][];
+            for (int l = 0; l <= level; l++) {
+                links[node][l] = new int[maxConnections(l) + 1];
+            }
+
+            if (entryPoint < 0) {
+                entryPoint = node;
+                maxLevel = level;
+                return;
+            }
+
+            int current = entryPoint;
+            for (int l = maxLevel; l > level; l--) {
+                current = greedyClosest(node, current, l);
+            }
+            for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+                long[] candidates = searchLayer(node, current, efConstruction, l, false);
+                int[] selected = selectNeighbors(node, candidates, m);
+                setNeighbors(node, l, selected);
+                for (int neighbor : selected) {
+                    connect(neighbor, node, l);
+                }
+                if (candidates.length > 0) {
+                    current = node(candidates[0]);
+                }
+            }
+
+            if (level > maxLevel || deleted.get(entryPoint)) {
+                entryPoint = node;
+                maxLevel = Math.max(level, maxLevel);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Segna un nodo come eliminato e ricollega i suoi vicini tra loro, così il grafo resta navigabile
+     * Da chiamare con il lock di scrittura
+     */
+    private void markDeleted(int node) {
+        deleted.set(node);
+
+        for (int level = 0; level < links[node].length; level++) {
+            int[] removedNeighbors = links[node][level];
+            for (int i = 1; i <= removedNeighbors[0]; i++) {
+                int neighbor = removedNeighbors[i];
+                if (deleted.get(neighbor) || level >= links[neighbor].length) {
+                    continue;
+                }
+
+                // Candidati: i vicini attuali più quelli del nodo eliminato
+                Set<Integer> candidateSet = new HashSet<>();
+                int[] current = links[neighbor][level];
+                for (int j = 1; j <= current[0]; j++) {
+                    candidateSet.add(current[j]);
+                }
+                if (!candidateSet.remove(node)) {
+                    continue;
+                }
+                for (int j = 1; j <= removedNeighbors[0]; j++) {
+                    candidateSet.add(removedNeighbors[j]);
+                }
+                candidateSet.remove(neighbor);
+
+                setNeighbors(neighbor, level, selectNeighbors(neighbor, sortByDistance(neighbor, candidateSet),
+                        maxConnections(level)));
+            }
+        }
+
+        if (node == entryPoint) {
+            replaceEntryPoint();
+        }
+    }
+
+    /**
+     * Sceglie come nuovo punto di ingresso il nodo non eliminato con il livello più alto
+     */
+    private void replaceEntryPoint() {
+        entryPoint = -1;
+        maxLevel = -1;
+        for (int node = 0; node < nodeCount; node++) {
+            if (!deleted.get(node) && links[node].length - 1 > maxLevel) {
+                entryPoint = node;
+                maxLevel = links[node].length - 1;
+            }
+        }
+    }
+
+    /**
+     * Aggiunge un collegamento da node a target; se la lista è piena la riseleziona con l'euristica
+     */
+    private void connect(int node, int target, int level) {
+        int[] neighbors = links[node][level];
+        int capacity = maxConnections(level);
+        if (neighbors[0] < capacity) {
+            neighbors[++neighbors[0]] = target;
+            return;
+        }
+
+        Set<Integer> candidateSet = new HashSet<>();
+        for (int i = 1; i <= neighbors[0]; i++) {
+            candidateSet.add(neighbors[i]);
+        }
+        candidateSet.add(target);
+        setNeighbors(node, level, selectNeighbors(node, sortByDistance(node, candidateSet), capacity));
+    }
+
+    private void setNeighbors(int node, int level, int[] selected) {
+        int[] neighbors = links[node][level];
+        neighbors[0] = selected.length;
+        System.arraycopy(selected, 0, neighbors, 1, selected.length);
+    }
+
+    /**
+     * Euristica di selezione dei vicini: un candidato viene scelto solo se è più vicino al nodo
+     * che a tutti i vicini già scelti, così i collegamenti coprono direzioni diverse
+     *
+     * @param candidates candidati codificati con {@link #encode(float, int)} in ordine di distanza crescente
+     */
+    private int[] selectNeighbors(int node, long[] candidates, int max) {
+        int[] selected = new int[Math.min(max, candidates.length)];
+        int count = 0;
+        for (long candidate : candidates) {
+            if (count == selected.length) {
+                break;
+            }
+            int candidateNode = node(candidate);
+            if (candidateNode == node || deleted.get(candidateNode)) {
+                continue;
+            }
+
+            float candidateDistance = distance(candidate);
+            boolean diverse = true;
+            for (int i = 0; i < count; i++) {
+                if (distance(candidateNode, selected[i]) < candidateDistance) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected[count++] = candidateNode;
+            }
+        }
+        return count == selected.length ? selected : Arrays.copyOf(selected, count);
+    }
+
+    private long[] sortByDistance(int node, Set<Integer> candidateSet) {
+        long[] candidates = new long[candidateSet.size()];
+        int i = 0;
+        for (int candidate : candidateSet) {
+            candidates[i++] = encode(distance(node, candidate), candidate);
+        }
+        Arrays.sort(candidates);
+        return candidates;
+    }
+
+    /**
+     * Discesa greedy su un livello superiore: si sposta sul vicino più vicino finché migliora
+     */
+    private int greedyClosest(int query, int start, int level) {
+        int current = start;
+        float currentDistance = distance(query, current);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            if (level >= links[current].length) {
+                break;
+            }
+            int[] neighbors = links[current][level];
+            for (int i = 1; i <= neighbors[0]; i++) {
+                float neighborDistance = distance(query, neighbors[i]);
+                if (neighborDistance < currentDistance) {
+                    current = neighbors[i];
+                    currentDistance = neighborDistance;
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Ricerca best-first su un livello del grafo
+     *
+     * @param skipDeleted se true i nodi eliminati sono attraversati ma non restituiti
+     * @return i migliori ef nodi codificati con {@link #encode(float, int)}, in ordine di distanza crescente
+     */
+    private long[] searchLayer(int query, int entry, int ef, int level, boolean skipDeleted) {
+        VisitedSet visited = visitedPool.poll();
+        if (visited == null) {
+            visited = new VisitedSet();
+        }
+        visited.reset(nodeCount);
+
+        try {
+            // Candidati da espandere (min-heap) e migliori risultati finora (max-heap, chiavi negate)
+            LongHeap candidates = new LongHeap();
+            LongHeap results = new LongHeap();
+
+            long entryKey = encode(distance(query, entry), entry);
+            visited.add(entry);
+            candidates.push(entryKey);
+            if (!skipDeleted || !deleted.get(entry)) {
+                results.push(-entryKey);
+            }
+
+            while (candidates.size() > 0) {
+                long closest = candidates.pop();
+                if (results.size() >= ef && distance(closest) > distance(-results.peek())) {
+                    break;
+                }
+
+                int node = node(closest);
+                if (level >= links[node].length) {
+                    continue;
+                }
+                int[] neighbors = links[node][level];
+                for (int i = 1; i <= neighbors[0]; i++) {
+                    int neighbor = neighbors[i];
+                    if (!visited.add(neighbor)) {
+                        continue;
+                    }
+
+                    float neighborDistance = distance(query, neighbor);
+                    if (results.size() < ef || neighborDistance < distance(-results.peek())) {
+                        long key = encode(neighborDistance, neighbor);
+                        candidates.push(key);
+                        if (!skipDeleted || !deleted.get(neighbor)) {
+                            results.push(-key);
+                            if (results.size() > ef) {
+                                results.pop();
+                            }
+                        }
+                    }
+                }
+            }
+
+            long[] sorted = new long[results.size()];
+            for (int i = sorted.length - 1; i >= 0; i--) {
+                sorted[i] = -results.pop();
+            }
+            return sorted;
+        } finally {
+            visitedPool.offer(visited);
+        }
+    }
+
+    /**
+     * Distanza coseno tra due nodi
+     */
+    private float distance(int a, int b) {
+        float normProduct = norms[a] * norms[b];
+        if (normProduct == 0) {
+            return 1f;
+        }
+        int offsetA = a * dimensions;
+        int offsetB = b * dimensions;
+        int dot = 0;
+        for (int i = 0; i < dimensions; i++) {
+            dot += (vectors[offsetA + i] & 0xFF) * (vectors[offsetB + i] & 0xFF);
+        }
+        return Math.max(0f, 1f - dot / normProduct);
+    }
+
+    private float computeNorm(int node) {
+        int offset = node * dimensions;
+        long sum = 0;
+        for (int i = 0; i < dimensions; i++) {
+            int value = vectors[offset + i] & 0xFF;
+            sum += value * value;
+        }
+        return (float) Math.sqrt(sum);
+    }
+
+    private int randomLevel() {
+        return Math.min(MAX_LEVEL, (int) (-Math.log(1 - random.nextDouble()) * levelMultiplier));
+    }
+
+    private int maxConnections(int level) {
+        return level == 0 ? maxM0 : m;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= imageIds.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, imageIds.length * 2);
+        vectors = Arrays.copyOf(vectors, newCapacity * dimensions);
+        norms = Arrays.copyOf(norms, newCapacity);
+        imageIds = Arrays.copyOf(imageIds, newCapacity);
+        links = Arrays.copyOf(links, newCapacity);
+    }
+
+    /**
+     * Codifica distanza e nodo in un long ordinabile: per float non negativi l'ordine dei bit coincide con quello dei valori
+     */
+    private static long encode(float distance, int node) {
+        return ((long) Float.floatToRawIntBits(distance) << 32) | (node & 0xFFFFFFFFL);
+    }
+
+    private static float distance(long encoded) {
+        return Float.intBitsToFloat((int) (encoded >>> 32));
+    }
+
+    private static int node(long encoded) {
+        return (int) encoded;
+    }
+
+    /**
+     * Min-heap di long senza boxing
+     */
+    private static final class LongHeap {
+        private long[] heap = new long[32];
+        private int size;
+
+        int size() {
+            return size;
+        }
+
+        long peek() {
+            return heap[0];
+        }
+
+        void push(long value) {
+            if (size == heap.length) {
+                heap = Arrays.copyOf(heap, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (heap[parent] <= value) {
+                    break;
+                }
+                heap[i] = heap[parent];
+                i = parent;
+            }
+            heap[i] = value;
+        }
+
+        long pop() {
+            long top = heap[0];
+            long last = heap[--size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && heap[child + 1] < heap[child]) {
+                    child++;
+                }
+                if (last <= heap[child]) {
+                    break;
+                }
+                heap[i] = heap[child];
+                i = child;
+            }
+            heap[i] = last;
+            return top;
+        }
+    }
+
+    /**
+     * Insieme dei nodi visitati con marcatura a epoche: l'azzeramento tra una ricerca e l'altra è O(1)
+     */
+    private static final class VisitedSet {
+        private int[] marks = new int[0];
+        private int epoch;
+
+        void reset(int capacity) {
+            if (marks.length < capacity) {
+                marks = new int[Math.max(capacity, marks.length * 2)];
+                epoch = 0;
+            }
+            epoch++;
+            if (epoch == Integer.MAX_VALUE) {
+                Arrays.fill(marks, 0);
+                epoch = 1;
+            }
+        }
+
+        boolean add(int node) {
+            if (marks[node] == epoch) {
+                return false;
+            }
+            marks[node] = epoch;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,620 @@
+package it.zaninifrancesco.minio_gallery.search;
+
+import org.roaringbitmap.FastAggregation;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+import java.util.function.Supplier;
+
+/**
+ * Indice a bitmap compresse (Roaring) delle immagini per tag, utente, tipo di contenuto, mese di upload
+ * e fascia di dimensione (potenze di due)
+ *
+ * Ogni immagine riceve un ordinale crescente in ordine di upload, quindi l'ordine inverso degli
+ * ordinali è l'ordine di recenza e una pagina di risultati si estrae direttamente dalla bitmap.
+ * Le query booleane sui tag diventano operazioni AND / OR / ANDNOT tra bitmap e i conteggi
+ * per faccette sono cardinalità di intersezioni, senza materializzare i risultati.
+ * Le ricerche combinate ({@link ImageQuery}) sono pianificate partendo dal predicato più selettivo.
+ * Thread-safe: letture concorrenti, scritture esclusive.
+ */
+public class ImageBitmapIndex {
+
+    // Sotto questa cardinalità i predicati rimanenti si verificano per singola immagine invece di materializzarne la bitmap
+    private static final int PROBE_THRESHOLD = 1024;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final List<UUID> imageIds = new ArrayList<>();
+    private final Map<UUID, Integer> ordinals = new HashMap<>();
+    private final RoaringBitmap live = new RoaringBitmap();
+    private final Map<String, RoaringBitmap> tagBitmaps = new HashMap<>();
+    private final Map<Long, RoaringBitmap> userBitmaps = new HashMap<>();
+    private final Map<String, RoaringBitmap> contentTypeBitmaps = new HashMap<>();
+    private final Map<String, RoaringBitmap> monthBitmaps = new HashMap<>();
+    private final Map<Integer, RoaringBitmap> sizeBitmaps = new HashMap<>();
+
+    // Valori esatti per ordinale, per i confini degli intervalli (mesi e fasce di dimensione parziali)
+    private long[] uploadedAtMillis = new long[1024];
+    private long[] sizes = new long[1024];
+
+    /**
+     * Predicato di una ricerca combinata: stima della cardinalità, valutazione come bitmap
+     * e verifica di un singolo ordinale
+     */
+    private static final class Step {
+        private final long estimate;
+        private final Supplier<RoaringBitmap> evaluate;
+        private final IntPredicate test;
+
+        Step(long estimate, Supplier<RoaringBitmap> evaluate, IntPredicate test) {
+            this.estimate = estimate;
+            this.evaluate = evaluate;
+            this.test = test;
+        }
+    }
+
+    /**
+     * Aggiunge un'immagine più recente di tutte quelle già indicizzate; se presente aggiunge solo i tag
+     */
+    public void add(UUID imageId, Long userId, String contentType, LocalDateTime uploadedAt, long size, Collection<String> tagNames) {
+        lock.writeLock().lock();
+        try {
+            Integer ordinal = ordinals.get(imageId);
+            if (ordinal == null) {
+                ordinal = imageIds.size();
+                imageIds.add(imageId);
+                ordinals.put(imageId, ordinal);
+                live.add(ordinal);
+                ensureCapacity(ordinal + 1);
+                uploadedAtMillis[ordinal] = uploadedAt != null ? toEpochMillis(uploadedAt) : Long.MIN_VALUE;
+                sizes[ordinal] = size;
+                sizeBitmaps.computeIfAbsent(sizeBucket(size), bucket -> new RoaringBitmap()).add(ordinal);
+                if (userId != null) {
+                    userBitmaps.computeIfAbsent(userId, id -> new RoaringBitmap()).add(ordinal);
+                }
+                contentTypeBitmaps.computeIfAbsent(contentTypeKey(contentType), key -> new RoaringBitmap()).add(ordinal);
+                if (uploadedAt != null) {
+                    monthBitmaps.computeIfAbsent(monthKey(uploadedAt), key -> new RoaringBitmap()).add(ordinal);
+                }
+            }
+            for (String tagName : tagNames) {
+                tagBitmaps.computeIfAbsent(normalize(tagName), name -> new RoaringBitmap()).add(ordinal);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Associa un tag a un'immagine già indicizzata (caricamento iniziale)
+     */
+    public void addTag(UUID imageId, String tagName) {
+        lock.writeLock().lock();
+        try {
+            Integer ordinal = ordinals.get(imageId);
+            if (ordinal != null) {
+                tagBitmaps.computeIfAbsent(normalize(tagName), name -> new RoaringBitmap()).add(ordinal);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Rimuove un'immagine da tutte le bitmap; l'ordinale non viene riutilizzato
+     */
+    public boolean remove(UUID imageId, Long userId, String contentType, LocalDateTime uploadedAt, Collection<String> tagNames) {
+        lock.writeLock().lock();
+        try {
+            Integer ordinal = ordinals.remove(imageId);
+            if (ordinal == null) {
+                return false;
+            }
+            imageIds.set(ordinal, null);
+            live.remove(ordinal);
+            if (userId != null) {
+                removeFrom(userBitmaps.get(userId), ordinal);
+            }
+            removeFrom(contentTypeBitmaps.get(contentTypeKey(contentType)), ordinal);
+            removeFrom(sizeBitmaps.get(sizeBucket(sizes[ordinal])), ordinal);
+            if (uploadedAt != null) {
+                removeFrom(monthBitmaps.get(monthKey(uploadedAt)), ordinal);
+            }
+            for (String tagName : tagNames) {
+                removeFrom(tagBitmaps.get(normalize(tagName)), ordinal);
+            }
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Indica se esiste un tag con questo nome (anche se al momento senza immagini)
+     */
+    public boolean hasTag(String tagName) {
+        lock.readLock().lock();
+        try {
+            return tagBitmaps.containsKey(normalize(tagName));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return live.getCardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Valuta la query e restituisce la pagina richiesta in ordine di recenza
+     *
+     * @param query query booleana sui tag
+     * @param userId se non null limita la ricerca alle immagini di questo utente
+     * @param offset primo risultato da restituire
+     * @param limit numero massimo di risultati
+     */
+    public SearchHits search(TagQuery query, Long userId, int offset, int limit) {
+        if (query.isEmpty()) {
+            return SearchHits.empty();
+        }
+
+        lock.readLock().lock();
+        try {
+            return page(evaluate(query, userId), true, offset, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Valuta una ricerca combinata e restituisce la pagina richiesta
+     *
+     * Il planner stima la cardinalità di ogni predicato (dalle bitmap, o dall'indice testuale per il testo)
+     * e parte dal più selettivo: se è il testo, le immagini trovate vengono verificate sulle bitmap una per una;
+     * altrimenti si intersecano le bitmap in ordine di cardinalità crescente, passando alla verifica per
+     * singola immagine quando i candidati sono pochi, e il testo viene valutato per ultimo sui candidati.
+     * Il testo è sempre valutato fuori dal lock, perché può richiedere una query al database.
+     *
+     * @param query criteri della ricerca
+     * @param text predicato testuale, null se la query non contiene testo
+     * @param offset primo risultato da restituire
+     * @param limit numero massimo di risultati
+     */
+    public SearchHits query(ImageQuery query, TextMatcher text, int offset, int limit) {
+        boolean byRelevance = query.getSort() == ImageQuery.Sort.RELEVANCE;
+        boolean newestFirst = query.getSort() != ImageQuery.Sort.OLDEST;
+        long textEstimate = text != null ? text.estimate() : Long.MAX_VALUE;
+        if (textEstimate == 0) {
+            return SearchHits.empty();
+        }
+
+        boolean textFirst;
+        Set<UUID> candidates = null;
+        lock.readLock().lock();
+        try {
+            List<Step> steps = plan(query);
+            if (steps.stream().anyMatch(step -> step.estimate == 0)) {
+                return SearchHits.empty();
+            }
+            if (text == null) {
+                return page(evaluate(steps), newestFirst, offset, limit);
+            }
+            textFirst = !steps.isEmpty() && textEstimate < steps.get(0).estimate;
+            if (!steps.isEmpty() && !textFirst) {
+                candidates = toImageIds(evaluate(steps));
+                if (candidates.isEmpty()) {
+                    return SearchHits.empty();
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        if (textFirst) {
+            // Il testo è il predicato più selettivo: guida la ricerca e le bitmap si verificano per immagine
+            Collection<UUID> textMatches = text.matches(null);
+            RoaringBitmap matches;
+            lock.readLock().lock();
+            try {
+                List<Step> steps = plan(query);
+                matches = toOrdinals(textMatches, ordinal -> steps.stream().allMatch(step -> step.test.test(ordinal)));
+                if (!byRelevance) {
+                    return page(matches, newestFirst, offset, limit);
+                }
+                candidates = toImageIds(matches);
+            } finally {
+                lock.readLock().unlock();
+            }
+            return candidates.isEmpty() ? SearchHits.empty() : text.rank(candidates, offset, limit);
+        }
+
+        if (byRelevance) {
+            return text.rank(candidates, offset, limit);
+        }
+        Collection<UUID> textMatches = text.matches(candidates);
+        lock.readLock().lock();
+        try {
+            return page(toOrdinals(textMatches, ordinal -> true), newestFirst, offset, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Conteggi per faccette delle immagini che soddisfano la query sui tag
+     * I tag richiesti dalla query non compaiono tra i tag co-occorrenti
+     */
+    public FacetCounts facets(TagQuery query, Long userId, int tagLimit) {
+        if (query.isEmpty()) {
+            return FacetCounts.empty();
+        }
+
+        Set<String> queriedTags = new HashSet<>();
+        query.getRequired().stream()
+                .filter(group -> group.size() == 1)
+                .forEach(queriedTags::addAll);
+
+        lock.readLock().lock();
+        try {
+            return facets(evaluate(query, userId), queriedTags, tagLimit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Conteggi per faccette di un insieme di immagini (es. i risultati della ricerca testuale)
+     */
+    public FacetCounts facets(Collection<UUID> resultImageIds, int tagLimit) {
+        lock.readLock().lock();
+        try {
+            RoaringBitmap result = new RoaringBitmap();
+            for (UUID imageId : resultImageIds) {
+                Integer ordinal = ordinals.get(imageId);
+                if (ordinal != null) {
+                    result.add(ordinal);
+                }
+            }
+            return facets(result, Set.of(), tagLimit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private FacetCounts facets(RoaringBitmap result, Set<String> excludedTags, int tagLimit) {
+        if (result.isEmpty()) {
+            return FacetCounts.empty();
+        }
+
+        // Top-k dei tag: si visitano i tag dal più usato e ci si ferma quando la cardinalità
+        // del tag non può più superare il k-esimo conteggio trovato
+        List<Map.Entry<String, RoaringBitmap>> candidates = new ArrayList<>(tagBitmaps.entrySet());
+        candidates.sort(Comparator.comparingInt((Map.Entry<String, RoaringBitmap> entry) -> entry.getValue().getCardinality()).reversed());
+        PriorityQueue<FacetCounts.Bucket> topTags = new PriorityQueue<>(Comparator.comparingInt(FacetCounts.Bucket::getCount));
+        for (Map.Entry<String, RoaringBitmap> entry : candidates) {
+            if (topTags.size() == tagLimit && entry.getValue().getCardinality() <= topTags.peek().getCount()) {
+                break;
+            }
+            if (excludedTags.contains(entry.getKey())) {
+                continue;
+            }
+            int count = RoaringBitmap.andCardinality(result, entry.getValue());
+            if (count > 0) {
+                topTags.add(new FacetCounts.Bucket(entry.getKey(), count));
+                if (topTags.size() > tagLimit) {
+                    topTags.poll();
+                }
+            }
+        }
+        List<FacetCounts.Bucket> tags = new ArrayList<>(topTags);
+        tags.sort(Comparator.comparingInt(FacetCounts.Bucket::getCount).reversed().thenComparing(FacetCounts.Bucket::getValue));
+
+        List<FacetCounts.Bucket> contentTypes = countBuckets(result, contentTypeBitmaps);
+        contentTypes.sort(Comparator.comparingInt(FacetCounts.Bucket::getCount).reversed().thenComparing(FacetCounts.Bucket::getValue));
+
+        List<FacetCounts.Bucket> uploadMonths = countBuckets(result, monthBitmaps);
+        uploadMonths.sort(Comparator.comparing(FacetCounts.Bucket::getValue).reversed());
+
+        return new FacetCounts(tags, contentTypes, uploadMonths);
+    }
+
+    /**
+     * Predicati della query indicizzati dalle bitmap, in ordine di cardinalità stimata crescente
+     */
+    private List<Step> plan(ImageQuery query) {
+        List<Step> steps = new ArrayList<>();
+
+        if (query.getUserId() != null) {
+            RoaringBitmap bitmap = userBitmaps.getOrDefault(query.getUserId(), new RoaringBitmap());
+            steps.add(new Step(bitmap.getCardinality(), () -> bitmap, bitmap::contains));
+        }
+
+        if (query.getContentType() != null) {
+            RoaringBitmap bitmap = contentTypeBitmaps.getOrDefault(contentTypeKey(query.getContentType()), new RoaringBitmap());
+            steps.add(new Step(bitmap.getCardinality(), () -> bitmap, bitmap::contains));
+        }
+
+        TagQuery tags = query.getTags();
+        if (tags != null) {
+            // Stima: il gruppo richiesto più piccolo (somma delle cardinalità dei suoi tag)
+            long estimate = live.getCardinality();
+            for (List<String> group : tags.getRequired()) {
+                long groupSize = 0;
+                for (String tagName : group) {
+                    RoaringBitmap bitmap = tagBitmaps.get(tagName);
+                    groupSize += bitmap != null ? bitmap.getCardinality() : 0;
+                }
+                estimate = Math.min(estimate, groupSize);
+            }
+            steps.add(new Step(estimate, () -> evaluate(tags, null), ordinal -> matchesTags(tags, ordinal)));
+        }
+
+        if (query.hasUploadRange()) {
+            long from = query.getUploadedFrom() != null ? toEpochMillis(query.getUploadedFrom()) : Long.MIN_VALUE + 1;
+            long to = query.getUploadedTo() != null ? toEpochMillis(query.getUploadedTo()) : Long.MAX_VALUE;
+            IntPredicate inRange = ordinal -> uploadedAtMillis[ordinal] >= from && uploadedAtMillis[ordinal] < to;
+
+            List<RoaringBitmap> full = new ArrayList<>();
+            List<RoaringBitmap> partial = new ArrayList<>();
+            monthBitmaps.forEach((month, bitmap) -> {
+                YearMonth yearMonth = YearMonth.parse(month);
+                long monthStart = toEpochMillis(yearMonth.atDay(1).atStartOfDay());
+                long monthEnd = toEpochMillis(yearMonth.plusMonths(1).atDay(1).atStartOfDay());
+                if (monthStart >= from && monthEnd <= to) {
+                    full.add(bitmap);
+                } else if (monthStart < to && monthEnd > from) {
+                    partial.add(bitmap);
+                }
+            });
+            steps.add(rangeStep(full, partial, inRange));
+        }
+
+        if (query.hasSizeRange()) {
+            long min = query.getMinSize() != null ? query.getMinSize() : 0;
+            long max = query.getMaxSize() != null ? query.getMaxSize() : Long.MAX_VALUE;
+            IntPredicate inRange = ordinal -> sizes[ordinal] >= min && sizes[ordinal] <= max;
+
+            List<RoaringBitmap> full = new ArrayList<>();
+            List<RoaringBitmap> partial = new ArrayList<>();
+            sizeBitmaps.forEach((bucket, bitmap) -> {
+                long bucketMin = bucket == 0 ? 0 : 1L << (bucket - 1);
+                long bucketMax = bucket == 0 ? 0 : bucket >= 63 ? Long.MAX_VALUE : (1L << bucket) - 1;
+                if (bucketMin >= min && bucketMax <= max) {
+                    full.add(bitmap);
+                } else if (bucketMin <= max && bucketMax >= min) {
+                    partial.add(bitmap);
+                }
+            });
+            steps.add(rangeStep(full, partial, inRange));
+        }
+
+        steps.sort((a, b) -> Long.compare(a.estimate, b.estimate));
+        return steps;
+    }
+
+    /**
+     * Predicato su un intervallo: unione delle bitmap interamente comprese più quelle di confine
+     * filtrate sui valori esatti; la stima è la somma delle cardinalità coinvolte
+     */
+    private Step rangeStep(List<RoaringBitmap> full, List<RoaringBitmap> partial, IntPredicate inRange) {
+        long estimate = 0;
+        for (RoaringBitmap bitmap : full) {
+            estimate += bitmap.getCardinality();
+        }
+        for (RoaringBitmap bitmap : partial) {
+            estimate += bitmap.getCardinality();
+        }
+        return new Step(estimate, () -> {
+            RoaringBitmap result = full.isEmpty() ? new RoaringBitmap() : FastAggregation.or(full.iterator());
+            for (RoaringBitmap bitmap : partial) {
+                result.or(filter(bitmap, inRange));
+            }
+            return result;
+        }, inRange);
+    }
+
+    private boolean matchesTags(TagQuery query, int ordinal) {
+        for (List<String> group : query.getRequired()) {
+            if (!containsAny(group, ordinal)) {
+                return false;
+            }
+        }
+        for (List<String> group : query.getExcluded()) {
+            if (containsAny(group, ordinal)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean containsAny(List<String> group, int ordinal) {
+        for (String tagName : group) {
+            RoaringBitmap bitmap = tagBitmaps.get(tagName);
+            if (bitmap != null && bitmap.contains(ordinal)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static RoaringBitmap filter(RoaringBitmap bitmap, IntPredicate predicate) {
+        RoaringBitmap filtered = new RoaringBitmap();
+        bitmap.forEach((int ordinal) -> {
+            if (predicate.test(ordinal)) {
+                filtered.add(ordinal);
+            }
+        });
+        return filtered;
+    }
+
+    /**
+     * Interseca le bitmap dei predicati in ordine di cardinalità crescente (risultato clonato)
+     */
+    private RoaringBitmap evaluate(List<Step> steps) {
+        RoaringBitmap matches = steps.isEmpty() ? live.clone() : steps.get(0).evaluate.get().clone();
+        for (int i = 1; i < steps.size() && !matches.isEmpty(); i++) {
+            Step step = steps.get(i);
+            if (matches.getCardinality() <= PROBE_THRESHOLD) {
+                matches = filter(matches, step.test);
+            } else {
+                matches.and(step.evaluate.get());
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Ordinali delle immagini ancora indicizzate che soddisfano il predicato
+     */
+    private RoaringBitmap toOrdinals(Collection<UUID> ids, IntPredicate predicate) {
+        RoaringBitmap result = new RoaringBitmap();
+        for (UUID imageId : ids) {
+            Integer ordinal = ordinals.get(imageId);
+            if (ordinal != null && predicate.test(ordinal)) {
+                result.add(ordinal);
+            }
+        }
+        return result;
+    }
+
+    private Set<UUID> toImageIds(RoaringBitmap bitmap) {
+        Set<UUID> result = new HashSet<>(Math.max(16, bitmap.getCardinality() * 4 / 3 + 1));
+        bitmap.forEach((int ordinal) -> result.add(imageIds.get(ordinal)));
+        return result;
+    }
+
+    /**
+     * Pagina di risultati per recenza: gli ordinali più alti sono le immagini più recenti
+     */
+    private SearchHits page(RoaringBitmap matches, boolean newestFirst, int offset, int limit) {
+        int total = matches.getCardinality();
+        List<UUID> pageIds = new ArrayList<>(Math.max(0, Math.min(limit, total - offset)));
+        if (newestFirst) {
+            for (int rank = total - 1 - offset; rank >= 0 && pageIds.size() < limit; rank--) {
+                pageIds.add(imageIds.get(matches.select(rank)));
+            }
+        } else {
+            for (int rank = offset; rank < total && pageIds.size() < limit; rank++) {
+                pageIds.add(imageIds.get(matches.select(rank)));
+            }
+        }
+        return new SearchHits(pageIds, total);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= sizes.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, sizes.length * 2);
+        uploadedAtMillis = Arrays.copyOf(uploadedAtMillis, newCapacity);
+        sizes = Arrays.copyOf(sizes, newCapacity);
+    }
+
+    private static List<FacetCounts.Bucket> countBuckets(RoaringBitmap result, Map<String, RoaringBitmap> bitmaps) {
+        List<FacetCounts.Bucket> buckets = new ArrayList<>();
+        bitmaps.forEach((value, bitmap) -> {
+            int count = RoaringBitmap.andCardinality(result, bitmap);
+            if (count > 0) {
+                buckets.add(new FacetCounts.Bucket(value, count));
+            }
+        });
+        return buckets;
+    }
+
+    private RoaringBitmap evaluate(TagQuery query, Long userId) {
+        List<RoaringBitmap> requiredBitmaps = new ArrayList<>(query.getRequired().size() + 1);
+        for (List<String> group : query.getRequired()) {
+            requiredBitmaps.add(union(group));
+        }
+        if (userId != null) {
+            requiredBitmaps.add(userBitmaps.getOrDefault(userId, new RoaringBitmap()));
+        }
+
+        RoaringBitmap result;
+        if (requiredBitmaps.isEmpty()) {
+            result = live.clone();
+        } else {
+            // Intersezione partendo dalla bitmap più piccola
+            requiredBitmaps.sort((a, b) -> Integer.compare(a.getCardinality(), b.getCardinality()));
+            result = requiredBitmaps.get(0).clone();
+            for (int i = 1; i < requiredBitmaps.size() && !result.isEmpty(); i++) {
+                result.and(requiredBitmaps.get(i));
+            }
+        }
+
+        for (List<String> group : query.getExcluded()) {
+            if (result.isEmpty()) {
+                break;
+            }
+            result.andNot(union(group));
+        }
+        return result;
+    }
+
+    /**
+     * Unione delle bitmap dei tag di un gruppo; con un solo tag restituisce la bitmap condivisa (sola lettura)
+     */
+    private RoaringBitmap union(List<String> group) {
+        if (group.size() == 1) {
+            return tagBitmaps.getOrDefault(group.get(0), new RoaringBitmap());
+        }
+        List<RoaringBitmap> bitmaps = new ArrayList<>(group.size());
+        for (String tagName : group) {
+            RoaringBitmap bitmap = tagBitmaps.get(tagName);
+            if (bitmap != null) {
+                bitmaps.add(bitmap);
+            }
+        }
+        return FastAggregation.or(bitmaps.iterator());
+    }
+
+    private static void removeFrom(RoaringBitmap bitmap, int ordinal) {
+        if (bitmap != null) {
+            bitmap.remove(ordinal);
+        }
+    }
+
+    private static String normalize(String tagName) {
+        return tagName.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static String contentTypeKey(String contentType) {
+        return contentType != null ? contentType.toLowerCase(Locale.ROOT) : "unknown";
+    }
+
+    private static long toEpochMillis(LocalDateTime dateTime) {
+        return dateTime.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    /**
+     * Fascia di dimensione: numero di bit del valore (0 per i file vuoti), cioè [2^(b-1), 2^b - 1]
+     */
+    private static int sizeBucket(long size) {
+        return 64 - Long.numberOfLeadingZeros(Math.max(0, size));
+    }
+
+    private static String monthKey(LocalDateTime uploadedAt) {
+        return YearMonth.from(uploadedAt).toString();
+    }
+}
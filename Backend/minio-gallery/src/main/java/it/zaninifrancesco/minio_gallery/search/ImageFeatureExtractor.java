@@ -0,0 +1,251 @@
+package it.zaninifrancesco.minio_gallery.search;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+
+/**
+ * Estrae da un'immagine un vettore compatto di caratteristiche visive per la ricerca per similarità
+ *
+ * L'immagine viene decodificata con sottocampionamento e ridotta a {@value #SAMPLE_SIZE} pixel di lato;
+ * il vettore concatena un istogramma dei colori (HSV), un istogramma delle orientazioni dei bordi
+ * (Sobel, su una griglia 2x2) e un istogramma di texture (LBP uniforme invariante alla rotazione).
+ * Ogni blocco è normalizzato e ne viene presa la radice quadrata, così il prodotto scalare tra due
+ * vettori è una somma pesata dei coefficienti di Bhattacharyya dei singoli istogrammi.
+ */
+public final class ImageFeatureExtractor {
+
+    // Lato dell'immagine ridotta su cui si calcolano gli istogrammi
+    static final int SAMPLE_SIZE = 64;
+
+    private static final int HUE_BINS = 8;
+    private static final int SATURATION_BINS = 2;
+    private static final int VALUE_BINS = 2;
+    private static final int GRAY_BINS = 4;
+    private static final int COLOR_BINS = HUE_BINS * SATURATION_BINS * VALUE_BINS + GRAY_BINS;
+
+    private static final int ORIENTATION_BINS = 8;
+    private static final int EDGE_GRID = 2;
+    private static final int EDGE_BINS = ORIENTATION_BINS * EDGE_GRID * EDGE_GRID;
+
+    // LBP a 8 vicini: 9 pattern uniformi (numero di bit a 1) più uno per i non uniformi
+    private static final int TEXTURE_BINS = 10;
+
+    public static final int DIMENSIONS = COLOR_BINS + EDGE_BINS + TEXTURE_BINS;
+
+    // Peso di ciascun blocco nella similarità complessiva
+    private static final double COLOR_WEIGHT = 0.5;
+    private static final double EDGE_WEIGHT = 0.3;
+    private static final double TEXTURE_WEIGHT = 0.2;
+
+    // Saturazione sotto la quale un pixel è considerato grigio (tonalità non significativa)
+    private static final float GRAY_SATURATION = 0.15f;
+
+    // Intensità minima del gradiente (su 0-1) perché un pixel conti come bordo
+    private static final double EDGE_THRESHOLD = 0.1;
+
+    private static final int[] NEIGHBOR_DX = {-1, 0, 1, 1, 1, 0, -1, -1};
+    private static final int[] NEIGHBOR_DY = {-1, -1, -1, 0, 1, 1, 1, 0};
+
+    private ImageFeatureExtractor() {
+    }
+
+    /**
+     * Calcola il vettore di caratteristiche di un'immagine
+     *
+     * @param in contenuto dell'immagine (non viene chiuso)
+     * @return vettore di {@link #DIMENSIONS} valori con norma unitaria, oppure null se il formato non è decodificabile
+     */
+    public static float[] extract(InputStream in) throws IOException {
+        BufferedImage sample = decodeSample(in);
+        return sample != null ? extract(sample) : null;
+    }
+
+    /**
+     * Calcola il vettore di caratteristiche di un'immagine già decodificata
+     */
+    public static float[] extract(BufferedImage image) {
+        int[] rgb = resize(image).getRGB(0, 0, SAMPLE_SIZE, SAMPLE_SIZE, null, 0, SAMPLE_SIZE);
+        double[] gray = new double[rgb.length];
+
+        double[] color = new double[COLOR_BINS];
+        float[] hsv = new float[3];
+        for (int i = 0; i < rgb.length; i++) {
+            int r = (rgb[i] >> 16) & 0xFF;
+            int g = (rgb[i] >> 8) & 0xFF;
+            int b = rgb[i] & 0xFF;
+            gray[i] = (0.299 * r + 0.587 * g + 0.114 * b) / 255.0;
+
+            Color.RGBtoHSB(r, g, b, hsv);
+            color[colorBin(hsv)]++;
+        }
+
+        float[] features = new float[DIMENSIONS];
+        int offset = appendBlock(features, 0, color, COLOR_WEIGHT);
+        offset = appendBlock(features, offset, edgeHistogram(gray), EDGE_WEIGHT);
+        appendBlock(features, offset, textureHistogram(gray), TEXTURE_WEIGHT);
+        normalize(features);
+        return features;
+    }
+
+    /**
+     * Decodifica l'immagine sottocampionando le righe e le colonne, così un file grande
+     * non viene mai espanso in memoria alla risoluzione piena
+     */
+    private static BufferedImage decodeSample(InputStream in) throws IOException {
+        try (ImageInputStream imageStream = ImageIO.createImageInputStream(in)) {
+            if (imageStream == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(imageStream);
+            if (!readers.hasNext()) {
+                return null;
+            }
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(imageStream, true, true);
+                int shortestSide = Math.min(reader.getWidth(0), reader.getHeight(0));
+                int step = Math.max(1, shortestSide / (SAMPLE_SIZE * 2));
+
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(step, step, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static BufferedImage resize(BufferedImage image) {
+        BufferedImage sample = new BufferedImage(SAMPLE_SIZE, SAMPLE_SIZE, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = sample.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.drawImage(image, 0, 0, SAMPLE_SIZE, SAMPLE_SIZE, Color.WHITE, null);
+        } finally {
+            graphics.dispose();
+        }
+        return sample;
+    }
+
+    private static int colorBin(float[] hsv) {
+        float saturation = hsv[1];
+        float value = hsv[2];
+        if (saturation < GRAY_SATURATION) {
+            int grayBin = Math.min(GRAY_BINS - 1, (int) (value * GRAY_BINS));
+            return HUE_BINS * SATURATION_BINS * VALUE_BINS + grayBin;
+        }
+
+        int hueBin = Math.min(HUE_BINS - 1, (int) (hsv[0] * HUE_BINS));
+        int saturationBin = Math.min(SATURATION_BINS - 1,
+                (int) ((saturation - GRAY_SATURATION) / (1 - GRAY_SATURATION) * SATURATION_BINS));
+        int valueBin = Math.min(VALUE_BINS - 1, (int) (value * VALUE_BINS));
+        return (hueBin * SATURATION_BINS + saturationBin) * VALUE_BINS + valueBin;
+    }
+
+    /**
+     * Istogramma delle orientazioni del gradiente (Sobel) pesato per intensità, per ogni cella della griglia
+     */
+    private static double[] edgeHistogram(double[] gray) {
+        double[] histogram = new double[EDGE_BINS];
+        for (int y = 1; y < SAMPLE_SIZE - 1; y++) {
+            for (int x = 1; x < SAMPLE_SIZE - 1; x++) {
+                double gx = pixel(gray, x + 1, y - 1) + 2 * pixel(gray, x + 1, y) + pixel(gray, x + 1, y + 1)
+                        - pixel(gray, x - 1, y - 1) - 2 * pixel(gray, x - 1, y) - pixel(gray, x - 1, y + 1);
+                double gy = pixel(gray, x - 1, y + 1) + 2 * pixel(gray, x, y + 1) + pixel(gray, x + 1, y + 1)
+                        - pixel(gray, x - 1, y - 1) - 2 * pixel(gray, x, y - 1) - pixel(gray, x + 1, y - 1);
+                double magnitude = Math.sqrt(gx * gx + gy * gy) / 4;
+                if (magnitude < EDGE_THRESHOLD) {
+                    continue;
+                }
+
+                // Orientazione senza verso, in [0, pi)
+                double angle = Math.atan2(gy, gx);
+                if (angle < 0) {
+                    angle += Math.PI;
+                }
+                int orientationBin = Math.min(ORIENTATION_BINS - 1, (int) (angle / Math.PI * ORIENTATION_BINS));
+                int cell = (y * EDGE_GRID / SAMPLE_SIZE) * EDGE_GRID + (x * EDGE_GRID / SAMPLE_SIZE);
+                histogram[cell * ORIENTATION_BINS + orientationBin] += magnitude;
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * Istogramma dei Local Binary Pattern uniformi invarianti alla rotazione (riu2, 8 vicini)
+     */
+    private static double[] textureHistogram(double[] gray) {
+        double[] histogram = new double[TEXTURE_BINS];
+        for (int y = 1; y < SAMPLE_SIZE - 1; y++) {
+            for (int x = 1; x < SAMPLE_SIZE - 1; x++) {
+                double center = pixel(gray, x, y);
+                int ones = 0;
+                int transitions = 0;
+                boolean first = false;
+                boolean previous = false;
+                for (int i = 0; i < NEIGHBOR_DX.length; i++) {
+                    boolean bit = pixel(gray, x + NEIGHBOR_DX[i], y + NEIGHBOR_DY[i]) >= center;
+                    if (bit) {
+                        ones++;
+                    }
+                    if (i == 0) {
+                        first = bit;
+                    } else if (bit != previous) {
+                        transitions++;
+                    }
+                    previous = bit;
+                }
+                if (previous != first) {
+                    transitions++;
+                }
+                histogram[transitions <= 2 ? ones : TEXTURE_BINS - 1]++;
+            }
+        }
+        return histogram;
+    }
+
+    private static double pixel(double[] gray, int x, int y) {
+        return gray[y * SAMPLE_SIZE + x];
+    }
+
+    /**
+     * Copia un istogramma nel vettore come radice della distribuzione normalizzata, scalata per il peso del blocco
+     */
+    private static int appendBlock(float[] features, int offset, double[] histogram, double weight) {
+        double total = 0;
+        for (double value : histogram) {
+            total += value;
+        }
+        if (total > 0) {
+            double scale = Math.sqrt(weight);
+            for (int i = 0; i < histogram.length; i++) {
+                features[offset + i] = (float) (scale * Math.sqrt(histogram[i] / total));
+            }
+        }
+        return offset + histogram.length;
+    }
+
+    private static void normalize(float[] features) {
+        double norm = 0;
+        for (float value : features) {
+            norm += value * value;
+        }
+        if (norm == 0) {
+            return;
+        }
+        float inverse = (float) (1 / Math.sqrt(norm));
+        for (int i = 0; i < features.length; i++) {
+            features[i] *= inverse;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package it.zaninifrancesco.minio_gallery.search;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Criteri di una ricerca combinata sulle immagini: uploader, tag, tipo di contenuto,
+ * intervallo di dimensione, intervallo di upload e testo. I criteri null non filtrano.
+ *
+ * Gli ordinamenti ammessi sono solo quelli serviti da un indice: recenza (ordinali dell'indice a bitmap)
+ * e rilevanza (indice di ricerca testuale, richiede il testo).
+ */
+public class ImageQuery {
+
+    /**
+     * Ordinamenti ammessi
+     */
+    public enum Sort {
+        NEWEST, OLDEST, RELEVANCE;
+
+        /**
+         * Converte il parametro della richiesta (es. "newest"), rifiutando gli ordinamenti non indicizzati
+         */
+        public static Sort parse(String value) {
+            for (Sort sort : values()) {
+                if (sort.name().equalsIgnoreCase(value)) {
+                    return sort;
+                }
+            }
+            throw new IllegalArgumentException("Unsupported sort '" + value + "'. Supported sorts: "
+                    + Arrays.stream(values()).map(sort -> sort.name().toLowerCase(Locale.ROOT)).toList());
+        }
+    }
+
+    private final Long userId;
+    private final TagQuery tags;
+    private final String contentType;
+    private final Long minSize;
+    private final Long maxSize;
+    private final LocalDateTime uploadedFrom;
+    private final LocalDateTime uploadedTo;
+    private final String text;
+    private final Sort sort;
+
+    /**
+     * @param uploadedFrom inizio dell'intervallo di upload (incluso)
+     * @param uploadedTo fine dell'intervallo di upload (esclusa)
+     * @param minSize dimensione minima in byte (inclusa)
+     * @param maxSize dimensione massima in byte (inclusa)
+     */
+    public ImageQuery(Long userId, TagQuery tags, String contentType, Long minSize, Long maxSize,
+                      LocalDateTime uploadedFrom, LocalDateTime uploadedTo, String text, Sort sort) {
+        if (minSize != null && maxSize != null && minSize > maxSize) {
+            throw new IllegalArgumentException("minSize must not be greater than maxSize");
+        }
+        if (uploadedFrom != null && uploadedTo != null && !uploadedFrom.isBefore(uploadedTo)) {
+            throw new IllegalArgumentException("The upload date range is empty");
+        }
+        boolean hasText = text != null && !TextAnalyzer.tokenize(text).isEmpty();
+        if (sort == Sort.RELEVANCE && !hasText) {
+            throw new IllegalArgumentException("Sorting by relevance requires a text query");
+        }
+
+        this.userId = userId;
+        this.tags = tags != null && !tags.isEmpty() ? tags : null;
+        this.contentType = contentType != null && !contentType.isBlank() ? contentType.trim() : null;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.uploadedFrom = uploadedFrom;
+        this.uploadedTo = uploadedTo;
+        this.text = hasText ? text : null;
+        this.sort = sort != null ? sort : Sort.NEWEST;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public TagQuery getTags() {
+        return tags;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public Long getMinSize() {
+        return minSize;
+    }
+
+    public Long getMaxSize() {
+        return maxSize;
+    }
+
+    public LocalDateTime getUploadedFrom() {
+        return uploadedFrom;
+    }
+
+    public LocalDateTime getUploadedTo() {
+        return uploadedTo;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public Sort getSort() {
+        return sort;
+    }
+
+    public boolean hasText() {
+        return text != null;
+    }
+
+    public boolean hasSizeRange() {
+        return minSize != null || maxSize != null;
+    }
+
+    public boolean hasUploadRange() {
+        return uploadedFrom != null || uploadedTo != null;
+    }
+}
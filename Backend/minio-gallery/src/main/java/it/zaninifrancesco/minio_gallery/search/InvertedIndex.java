@@ -0,0 +1,760 @@
+package it.zaninifrancesco.minio_gallery.search;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+
+/**
+ * Indice invertito in memoria su titolo, descrizione, tag e uploader delle immagini
+ *
+ * I documenti ricevono ordinali crescenti, le liste di posting sono compresse (delta + varint)
+ * e le eliminazioni sono tombstone compattate quando superano una soglia.
+ * Il punteggio combina BM25 (con pesi per campo) con un boost per recenza e per numero di like.
+ * Un indice a trigrammi sul dizionario dei termini permette la ricerca tollerante agli errori di battitura.
+ * Thread-safe: letture concorrenti, scritture esclusive.
+ */
+public class InvertedIndex {
+
+    private static final int SNAPSHOT_MAGIC = 0x4D47_4958; // "MGIX"
+    private static final int SNAPSHOT_VERSION = 1;
+
+    // Pesi dei campi nel calcolo della frequenza dei termini
+    private static final int TITLE_WEIGHT = 3;
+    private static final int TAG_WEIGHT = 2;
+    private static final int UPLOADER_WEIGHT = 2;
+    private static final int DESCRIPTION_WEIGHT = 1;
+
+    // Parametri BM25
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    // Numero massimo di termini in cui viene espanso il prefisso dell'ultimo termine della query
+    private static final int MAX_PREFIX_EXPANSIONS = 64;
+
+    // Ricerca fuzzy: similarità minima, espansioni per termine e numero di suggerimenti
+    private static final double MIN_TERM_SIMILARITY = 0.3;
+    private static final int MAX_FUZZY_EXPANSIONS = 8;
+    private static final int MAX_SUGGESTIONS = 5;
+    private static final int MIN_FUZZY_TERM_LENGTH = 3;
+
+    // Compattazione quando i documenti eliminati superano questa frazione (e un minimo assoluto)
+    private static final double COMPACTION_RATIO = 0.25;
+    private static final int COMPACTION_MIN_DELETED = 1024;
+
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final TreeMap<String, PostingList> postings = new TreeMap<>();
+    private final TrigramIndex trigrams = new TrigramIndex();
+    private final List<UUID> imageIds = new ArrayList<>();
+    private final Map<UUID, Integer> ordinals = new HashMap<>();
+    private final BitSet deleted = new BitSet();
+
+    private long[] userIds = new long[1024];
+    private long[] uploadedAtMillis = new long[1024];
+    private int[] likeCounts = new int[1024];
+    private int[] documentLengths = new int[1024];
+
+    private int deletedCount;
+    private long totalLength;
+
+    /**
+     * Aggiunge un documento; se l'immagine è già indicizzata non fa nulla
+     */
+    public void add(SearchDocument document) {
+        Map<String, Integer> frequencies = new HashMap<>();
+        addField(frequencies, document.getTitle(), TITLE_WEIGHT);
+        addField(frequencies, document.getDescription(), DESCRIPTION_WEIGHT);
+        addField(frequencies, document.getUsername(), UPLOADER_WEIGHT);
+        if (document.getTags() != null) {
+            document.getTags().forEach(tag -> addField(frequencies, tag, TAG_WEIGHT));
+        }
+        int documentLength = frequencies.values().stream().mapToInt(Integer::intValue).sum();
+
+        lock.writeLock().lock();
+        try {
+            if (ordinals.containsKey(document.getImageId())) {
+                return;
+            }
+
+            int ordinal = imageIds.size();
+            ensureCapacity(ordinal + 1);
+            imageIds.add(document.getImageId());
+            ordinals.put(document.getImageId(), ordinal);
+            userIds[ordinal] = document.getUserId() != null ? document.getUserId() : -1L;
+            uploadedAtMillis[ordinal] = toEpochMillis(document.getUploadedAt());
+            likeCounts[ordinal] = document.getLikeCount();
+            documentLengths[ordinal] = documentLength;
+            totalLength += documentLength;
+
+            frequencies.forEach((term, frequency) ->
+                    postings.computeIfAbsent(term, this::newPostingList).add(ordinal, frequency));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Rimuove un documento (tombstone); restituisce false se l'immagine non era indicizzata
+     */
+    public boolean remove(UUID imageId) {
+        lock.writeLock().lock();
+        try {
+            Integer ordinal = ordinals.remove(imageId);
+            if (ordinal == null) {
+                return false;
+            }
+            deleted.set(ordinal);
+            deletedCount++;
+            totalLength -= documentLengths[ordinal];
+
+            if (deletedCount >= COMPACTION_MIN_DELETED && deletedCount > imageIds.size() * COMPACTION_RATIO) {
+                compact();
+            }
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Aggiorna il numero di like usato nel boost di ranking
+     */
+    public void updateLikeCount(UUID imageId, int likeCount) {
+        lock.writeLock().lock();
+        try {
+            Integer ordinal = ordinals.get(imageId);
+            if (ordinal != null) {
+                likeCounts[ordinal] = likeCount;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean contains(UUID imageId) {
+        lock.readLock().lock();
+        try {
+            return ordinals.containsKey(imageId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return ordinals.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Set<UUID> imageIds() {
+        lock.readLock().lock();
+        try {
+            return new HashSet<>(ordinals.keySet());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Cerca i documenti che contengono tutti i termini della query (l'ultimo come prefisso)
+     *
+     * @param query testo della ricerca
+     * @param userId se non null limita la ricerca alle immagini di questo utente
+     * @param offset primo risultato da restituire
+     * @param limit numero massimo di risultati
+     * @param scoring parametri dei boost di recenza e like
+     */
+    public SearchHits search(String query, Long userId, int offset, int limit, SearchScoring scoring) {
+        List<String> terms = TextAnalyzer.tokenize(query);
+        if (terms.isEmpty() || limit <= 0) {
+            return SearchHits.empty();
+        }
+
+        lock.readLock().lock();
+        try {
+            int liveDocuments = ordinals.size();
+            if (liveDocuments == 0) {
+                return SearchHits.empty();
+            }
+            return rank(matchAllTerms(terms, liveDocuments), belongsTo(userId), offset, limit, scoring);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Come {@link #search(String, Long, int, int, SearchScoring)}, ma limitata alle immagini accettate dal filtro
+     * (es. i candidati di un altro indice); il filtro è valutato solo sui documenti che contengono i termini
+     */
+    public SearchHits search(String query, Predicate<UUID> filter, int offset, int limit, SearchScoring scoring) {
+        List<String> terms = TextAnalyzer.tokenize(query);
+        if (terms.isEmpty() || limit <= 0) {
+            return SearchHits.empty();
+        }
+
+        lock.readLock().lock();
+        try {
+            int liveDocuments = ordinals.size();
+            if (liveDocuments == 0) {
+                return SearchHits.empty();
+            }
+            return rank(matchAllTerms(terms, liveDocuments), ordinal -> filter.test(imageIds.get(ordinal)),
+                    offset, limit, scoring);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Stima per eccesso del numero di immagini che soddisfano la query, senza scorrere le liste di posting:
+     * la frequenza documentale minima tra i termini (per l'ultimo, la somma delle espansioni del prefisso)
+     */
+    public long estimateMatches(String query) {
+        List<String> terms = TextAnalyzer.tokenize(query);
+        if (terms.isEmpty()) {
+            return 0;
+        }
+
+        lock.readLock().lock();
+        try {
+            long estimate = ordinals.size();
+            for (int i = 0; i < terms.size() && estimate > 0; i++) {
+                String term = terms.get(i);
+                long documentCount = 0;
+                if (i == terms.size() - 1) {
+                    for (PostingList list : postings.subMap(term, term + Character.MAX_VALUE).values()) {
+                        documentCount += list.documentCount();
+                        if (documentCount >= estimate) {
+                            break;
+                        }
+                    }
+                } else {
+                    PostingList list = postings.get(term);
+                    documentCount = list != null ? list.documentCount() : 0;
+                }
+                estimate = Math.min(estimate, documentCount);
+            }
+            return estimate;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Tutte le immagini che soddisfano la query, senza ordinamento (es. per i conteggi per faccette)
+     *
+     * @param query testo della ricerca
+     * @param userId se non null limita la ricerca alle immagini di questo utente
+     */
+    public List<UUID> matchingImageIds(String query, Long userId) {
+        List<String> terms = TextAnalyzer.tokenize(query);
+        if (terms.isEmpty()) {
+            return List.of();
+        }
+
+        lock.readLock().lock();
+        try {
+            if (ordinals.isEmpty()) {
+                return List.of();
+            }
+            TermMatches matches = matchAllTerms(terms, ordinals.size());
+            List<UUID> matchingIds = new ArrayList<>(matches.size);
+            for (int i = 0; i < matches.size; i++) {
+                int ordinal = matches.ordinals[i];
+                if (userId == null || userIds[ordinal] == userId) {
+                    matchingIds.add(imageIds.get(ordinal));
+                }
+            }
+            return matchingIds;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Ricerca tollerante agli errori di battitura
+     *
+     * Ogni termine della query viene espanso nei termini del dizionario con trigrammi simili
+     * (il punteggio BM25 è pesato per la similarità) e i termini senza corrispondenza esatta
+     * vengono corretti con il candidato migliore per costruire i suggerimenti.
+     * Stessi parametri di {@link #search(String, Long, int, int, SearchScoring)}.
+     */
+    public SearchHits fuzzySearch(String query, Long userId, int offset, int limit, SearchScoring scoring) {
+        List<String> terms = TextAnalyzer.tokenize(query);
+        if (terms.isEmpty() || limit <= 0) {
+            return SearchHits.empty();
+        }
+
+        lock.readLock().lock();
+        try {
+            int liveDocuments = ordinals.size();
+            if (liveDocuments == 0) {
+                return SearchHits.empty();
+            }
+            double averageLength = Math.max(1.0, (double) totalLength / liveDocuments);
+
+            List<TermMatches> matchesPerTerm = new ArrayList<>(terms.size());
+            List<List<String>> corrections = new ArrayList<>(terms.size());
+            for (int i = 0; i < terms.size(); i++) {
+                String term = terms.get(i);
+                boolean prefix = i == terms.size() - 1;
+                TermMatches exact = matchTerm(term, prefix, liveDocuments, averageLength);
+
+                List<TrigramIndex.Candidate> candidates = term.length() >= MIN_FUZZY_TERM_LENGTH
+                        ? trigrams.similar(term, MIN_TERM_SIMILARITY, MAX_FUZZY_EXPANSIONS)
+                        : new ArrayList<>();
+                // A parità di similarità si preferiscono i termini più frequenti
+                candidates.sort((a, b) -> {
+                    int bySimilarity = Double.compare(b.getSimilarity(), a.getSimilarity());
+                    return bySimilarity != 0 ? bySimilarity
+                            : Integer.compare(postings.get(b.getTerm()).documentCount(), postings.get(a.getTerm()).documentCount());
+                });
+
+                TermMatches matches = exact;
+                for (TrigramIndex.Candidate candidate : candidates) {
+                    TermMatches fuzzy = scorePostings(postings.get(candidate.getTerm()), liveDocuments, averageLength,
+                            candidate.getSimilarity());
+                    matches = matches.union(fuzzy);
+                }
+                matchesPerTerm.add(matches);
+                corrections.add(exact.size == 0
+                        ? candidates.stream().map(TrigramIndex.Candidate::getTerm).toList()
+                        : List.of());
+            }
+
+            String correctedQuery = null;
+            List<String> suggestions = new ArrayList<>();
+            if (corrections.stream().anyMatch(alternatives -> !alternatives.isEmpty())) {
+                List<String> corrected = new ArrayList<>(terms);
+                for (int i = 0; i < terms.size(); i++) {
+                    if (!corrections.get(i).isEmpty()) {
+                        corrected.set(i, corrections.get(i).get(0));
+                    }
+                }
+                correctedQuery = String.join(" ", corrected);
+                suggestions.add(correctedQuery);
+
+                // Alternative: una sostituzione alla volta rispetto alla query corretta
+                for (int i = 0; i < terms.size() && suggestions.size() < MAX_SUGGESTIONS; i++) {
+                    List<String> alternatives = corrections.get(i);
+                    for (int j = 1; j < alternatives.size() && suggestions.size() < MAX_SUGGESTIONS; j++) {
+                        List<String> alternative = new ArrayList<>(corrected);
+                        alternative.set(i, alternatives.get(j));
+                        suggestions.add(String.join(" ", alternative));
+                    }
+                }
+            }
+
+            matchesPerTerm.sort((a, b) -> Integer.compare(a.size, b.size));
+            TermMatches result = matchesPerTerm.get(0);
+            for (int i = 1; i < matchesPerTerm.size() && result.size > 0; i++) {
+                result = result.intersect(matchesPerTerm.get(i));
+            }
+
+            SearchHits hits = rank(result, belongsTo(userId), offset, limit, scoring);
+            return new SearchHits(hits.getImageIds(), hits.getTotalHits(), correctedQuery, suggestions);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Serializza l'indice su uno stream (snapshot per riavvii veloci)
+     * Sotto il lock viene presa solo una copia dello stato (le liste di posting condividono i buffer),
+     * la scrittura su disco avviene dopo, senza bloccare aggiornamenti e ricerche
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        List<UUID> snapshotIds;
+        BitSet snapshotDeleted;
+        long[] snapshotUserIds;
+        long[] snapshotUploadedAt;
+        int[] snapshotLikeCounts;
+        int[] snapshotLengths;
+        List<Map.Entry<String, PostingList>> snapshotPostings;
+
+        lock.readLock().lock();
+        try {
+            int documentCount = imageIds.size();
+            snapshotIds = new ArrayList<>(imageIds);
+            snapshotDeleted = (BitSet) deleted.clone();
+            snapshotUserIds = Arrays.copyOf(userIds, documentCount);
+            snapshotUploadedAt = Arrays.copyOf(uploadedAtMillis, documentCount);
+            snapshotLikeCounts = Arrays.copyOf(likeCounts, documentCount);
+            snapshotLengths = Arrays.copyOf(documentLengths, documentCount);
+            snapshotPostings = new ArrayList<>(postings.size());
+            for (Map.Entry<String, PostingList> entry : postings.entrySet()) {
+                snapshotPostings.add(Map.entry(entry.getKey(), entry.getValue().snapshot()));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        out.writeInt(SNAPSHOT_MAGIC);
+        out.writeInt(SNAPSHOT_VERSION);
+
+        int documentCount = snapshotIds.size();
+        out.writeInt(documentCount);
+        for (int ordinal = 0; ordinal < documentCount; ordinal++) {
+            UUID imageId = snapshotIds.get(ordinal);
+            out.writeLong(imageId.getMostSignificantBits());
+            out.writeLong(imageId.getLeastSignificantBits());
+            out.writeBoolean(snapshotDeleted.get(ordinal));
+            out.writeLong(snapshotUserIds[ordinal]);
+            out.writeLong(snapshotUploadedAt[ordinal]);
+            out.writeInt(snapshotLikeCounts[ordinal]);
+            out.writeInt(snapshotLengths[ordinal]);
+        }
+
+        out.writeInt(snapshotPostings.size());
+        for (Map.Entry<String, PostingList> entry : snapshotPostings) {
+            out.writeUTF(entry.getKey());
+            entry.getValue().writeTo(out);
+        }
+    }
+
+    /**
+     * Ricostruisce un indice da uno snapshot scritto con {@link #writeTo(DataOutputStream)}
+     */
+    public static InvertedIndex readFrom(DataInputStream in) throws IOException {
+        if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+            throw new IOException("Unsupported search index snapshot format");
+        }
+
+        InvertedIndex index = new InvertedIndex();
+        int documentCount = in.readInt();
+        index.ensureCapacity(documentCount);
+        for (int ordinal = 0; ordinal < documentCount; ordinal++) {
+            UUID imageId = new UUID(in.readLong(), in.readLong());
+            boolean isDeleted = in.readBoolean();
+            index.imageIds.add(imageId);
+            index.userIds[ordinal] = in.readLong();
+            index.uploadedAtMillis[ordinal] = in.readLong();
+            index.likeCounts[ordinal] = in.readInt();
+            index.documentLengths[ordinal] = in.readInt();
+            if (isDeleted) {
+                index.deleted.set(ordinal);
+                index.deletedCount++;
+            } else {
+                index.ordinals.put(imageId, ordinal);
+                index.totalLength += index.documentLengths[ordinal];
+            }
+        }
+
+        int termCount = in.readInt();
+        for (int i = 0; i < termCount; i++) {
+            String term = in.readUTF();
+            index.postings.put(term, PostingList.readFrom(in));
+            index.trigrams.add(term);
+        }
+        return index;
+    }
+
+    // --- Implementazione ---
+
+    private static void addField(Map<String, Integer> frequencies, String text, int weight) {
+        for (String term : TextAnalyzer.tokenize(text)) {
+            frequencies.merge(term, weight, Integer::sum);
+        }
+    }
+
+    private static long toEpochMillis(LocalDateTime dateTime) {
+        return dateTime != null ? dateTime.toInstant(ZoneOffset.UTC).toEpochMilli() : 0L;
+    }
+
+    private PostingList newPostingList(String term) {
+        trigrams.add(term);
+        return new PostingList();
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= userIds.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, userIds.length * 2);
+        userIds = Arrays.copyOf(userIds, newCapacity);
+        uploadedAtMillis = Arrays.copyOf(uploadedAtMillis, newCapacity);
+        likeCounts = Arrays.copyOf(likeCounts, newCapacity);
+        documentLengths = Arrays.copyOf(documentLengths, newCapacity);
+    }
+
+    /**
+     * Documenti che contengono tutti i termini (l'ultimo come prefisso) con il punteggio BM25 sommato
+     */
+    private TermMatches matchAllTerms(List<String> terms, int liveDocuments) {
+        double averageLength = Math.max(1.0, (double) totalLength / liveDocuments);
+
+        List<TermMatches> matchesPerTerm = new ArrayList<>(terms.size());
+        for (int i = 0; i < terms.size(); i++) {
+            boolean prefix = i == terms.size() - 1;
+            TermMatches matches = matchTerm(terms.get(i), prefix, liveDocuments, averageLength);
+            if (matches.size == 0) {
+                return matches;
+            }
+            matchesPerTerm.add(matches);
+        }
+
+        // Intersezione partendo dal termine più selettivo
+        matchesPerTerm.sort((a, b) -> Integer.compare(a.size, b.size));
+        TermMatches result = matchesPerTerm.get(0);
+        for (int i = 1; i < matchesPerTerm.size() && result.size > 0; i++) {
+            result = result.intersect(matchesPerTerm.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * Documenti che contengono il termine (o un termine che inizia con il prefisso) con il punteggio BM25
+     */
+    private TermMatches matchTerm(String term, boolean prefix, int liveDocuments, double averageLength) {
+        Collection<PostingList> lists;
+        if (prefix) {
+            SortedMap<String, PostingList> expansions = postings.subMap(term, term + Character.MAX_VALUE);
+            lists = expansions.size() <= MAX_PREFIX_EXPANSIONS
+                    ? expansions.values()
+                    : mostFrequent(expansions.values());
+        } else {
+            PostingList list = postings.get(term);
+            lists = list != null ? List.of(list) : List.of();
+        }
+
+        if (lists.size() == 1) {
+            return scorePostings(lists.iterator().next(), liveDocuments, averageLength, 1.0);
+        }
+
+        // Unione delle espansioni del prefisso, tenendo il punteggio massimo per documento
+        TermMatches union = new TermMatches(0);
+        for (PostingList list : lists) {
+            union = union.union(scorePostings(list, liveDocuments, averageLength, 1.0));
+        }
+        return union;
+    }
+
+    private static Collection<PostingList> mostFrequent(Collection<PostingList> lists) {
+        PriorityQueue<PostingList> top = new PriorityQueue<>((a, b) -> Integer.compare(a.documentCount(), b.documentCount()));
+        for (PostingList list : lists) {
+            top.add(list);
+            if (top.size() > MAX_PREFIX_EXPANSIONS) {
+                top.poll();
+            }
+        }
+        return top;
+    }
+
+    /**
+     * Punteggio BM25 dei documenti di una lista di posting, moltiplicato per il peso indicato
+     * (1 per i termini esatti, la similarità per le espansioni fuzzy)
+     */
+    private TermMatches scorePostings(PostingList list, int liveDocuments, double averageLength, double weight) {
+        int documentFrequency = list.documentCount();
+        double idf = Math.log(1 + (liveDocuments - documentFrequency + 0.5) / (documentFrequency + 0.5));
+
+        TermMatches matches = new TermMatches(documentFrequency);
+        PostingList.Cursor cursor = list.cursor();
+        while (cursor.next()) {
+            int ordinal = cursor.ordinal();
+            if (deleted.get(ordinal)) {
+                continue;
+            }
+            double frequency = cursor.frequency();
+            double normalization = K1 * (1 - B + B * documentLengths[ordinal] / averageLength);
+            matches.append(ordinal, (float) (weight * idf * frequency * (K1 + 1) / (frequency + normalization)));
+        }
+        return matches;
+    }
+
+    private IntPredicate belongsTo(Long userId) {
+        return ordinal -> userId == null || userIds[ordinal] == userId;
+    }
+
+    private SearchHits rank(TermMatches matches, IntPredicate accept, int offset, int limit, SearchScoring scoring) {
+        long now = System.currentTimeMillis();
+        int window = offset + limit;
+        PriorityQueue<ScoredDocument> top = new PriorityQueue<>(Math.min(window, Math.max(1, matches.size)));
+        long totalHits = 0;
+
+        for (int i = 0; i < matches.size; i++) {
+            int ordinal = matches.ordinals[i];
+            if (!accept.test(ordinal)) {
+                continue;
+            }
+            totalHits++;
+
+            double ageDays = Math.max(0, now - uploadedAtMillis[ordinal]) / (double) MILLIS_PER_DAY;
+            double recency = Math.pow(2, -ageDays / scoring.getRecencyHalfLifeDays());
+            double score = matches.scores[i]
+                    * (1 + scoring.getRecencyBoost() * recency)
+                    * (1 + scoring.getLikeBoost() * Math.log1p(likeCounts[ordinal]));
+
+            ScoredDocument candidate = new ScoredDocument(ordinal, score, uploadedAtMillis[ordinal]);
+            if (top.size() < window) {
+                top.add(candidate);
+            } else if (candidate.compareTo(top.peek()) > 0) {
+                top.poll();
+                top.add(candidate);
+            }
+        }
+
+        List<ScoredDocument> ranked = new ArrayList<>(top);
+        ranked.sort((a, b) -> b.compareTo(a));
+        List<UUID> pageIds = new ArrayList<>(limit);
+        for (int i = offset; i < ranked.size(); i++) {
+            pageIds.add(imageIds.get(ranked.get(i).ordinal));
+        }
+        return new SearchHits(pageIds, totalHits);
+    }
+
+    /**
+     * Ricostruisce le strutture eliminando i documenti cancellati e rinumerando gli ordinali
+     */
+    private void compact() {
+        int documentCount = imageIds.size();
+        int[] remap = new int[documentCount];
+        List<UUID> liveIds = new ArrayList<>(ordinals.size());
+
+        int next = 0;
+        for (int ordinal = 0; ordinal < documentCount; ordinal++) {
+            if (deleted.get(ordinal)) {
+                remap[ordinal] = -1;
+                continue;
+            }
+            remap[ordinal] = next;
+            userIds[next] = userIds[ordinal];
+            uploadedAtMillis[next] = uploadedAtMillis[ordinal];
+            likeCounts[next] = likeCounts[ordinal];
+            documentLengths[next] = documentLengths[ordinal];
+            liveIds.add(imageIds.get(ordinal));
+            next++;
+        }
+
+        var iterator = postings.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, PostingList> entry = iterator.next();
+            PostingList compacted = new PostingList();
+            PostingList.Cursor cursor = entry.getValue().cursor();
+            while (cursor.next()) {
+                int newOrdinal = remap[cursor.ordinal()];
+                if (newOrdinal >= 0) {
+                    compacted.add(newOrdinal, cursor.frequency());
+                }
+            }
+            if (compacted.documentCount() == 0) {
+                trigrams.remove(entry.getKey());
+                iterator.remove();
+            } else {
+                entry.setValue(compacted);
+            }
+        }
+
+        imageIds.clear();
+        imageIds.addAll(liveIds);
+        ordinals.clear();
+        for (int ordinal = 0; ordinal < liveIds.size(); ordinal++) {
+            ordinals.put(liveIds.get(ordinal), ordinal);
+        }
+        deleted.clear();
+        deletedCount = 0;
+    }
+
+    /**
+     * Documenti (ordinali crescenti) con il relativo punteggio per un termine della query
+     */
+    private static final class TermMatches {
+        private int[] ordinals;
+        private float[] scores;
+        private int size;
+
+        TermMatches(int capacity) {
+            this.ordinals = new int[Math.max(capacity, 4)];
+            this.scores = new float[Math.max(capacity, 4)];
+        }
+
+        void append(int ordinal, float score) {
+            if (size == ordinals.length) {
+                ordinals = Arrays.copyOf(ordinals, size * 2);
+                scores = Arrays.copyOf(scores, size * 2);
+            }
+            ordinals[size] = ordinal;
+            scores[size] = score;
+            size++;
+        }
+
+        TermMatches intersect(TermMatches other) {
+            TermMatches result = new TermMatches(Math.min(size, other.size));
+            int i = 0;
+            int j = 0;
+            while (i < size && j < other.size) {
+                if (ordinals[i] == other.ordinals[j]) {
+                    result.append(ordinals[i], scores[i] + other.scores[j]);
+                    i++;
+                    j++;
+                } else if (ordinals[i] < other.ordinals[j]) {
+                    i++;
+                } else {
+                    j++;
+                }
+            }
+            return result;
+        }
+
+        TermMatches union(TermMatches other) {
+            TermMatches result = new TermMatches(size + other.size);
+            int i = 0;
+            int j = 0;
+            while (i < size || j < other.size) {
+                if (j >= other.size || (i < size && ordinals[i] < other.ordinals[j])) {
+                    result.append(ordinals[i], scores[i]);
+                    i++;
+                } else if (i >= size || other.ordinals[j] < ordinals[i]) {
+                    result.append(other.ordinals[j], other.scores[j]);
+                    j++;
+                } else {
+                    result.append(ordinals[i], Math.max(scores[i], other.scores[j]));
+                    i++;
+                    j++;
+                }
+            }
+            return result;
+        }
+    }
+
+    private static final class ScoredDocument implements Comparable<ScoredDocument> {
+        private final int ordinal;
+        private final double score;
+        private final long uploadedAtMillis;
+
+        ScoredDocument(int ordinal, double score, long uploadedAtMillis) {
+            this.ordinal = ordinal;
+            this.score = score;
+            this.uploadedAtMillis = uploadedAtMillis;
+        }
+
+        @Override
+        public int compareTo(ScoredDocument other) {
+            int byScore = Double.compare(score, other.score);
+            return byScore != 0 ? byScore : Long.compare(uploadedAtMillis, other.uploadedAtMillis);
+        }
+    }
+}
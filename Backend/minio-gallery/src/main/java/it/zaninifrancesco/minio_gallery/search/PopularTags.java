@@ -0,0 +1,179 @@
+package it.zaninifrancesco.minio_gallery.search;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Classifica limitata dei primi N tag per numero di utilizzi, aggiornata incrementalmente
+ *
+ * Un tag che cresce entra in classifica se supera l'ultimo; se invece un tag in classifica
+ * cala, un tag esterno potrebbe superarlo e la classifica viene segnata come da ricaricare
+ * (dal database, tramite l'indice su usage_count) alla lettura successiva.
+ * Ogni aggiornamento incrementa una generazione: un caricamento iniziato prima di un aggiornamento
+ * viene scartato, perché la lettura dal database potrebbe non includerlo.
+ */
+public class PopularTags {
+
+    private static final Comparator<Entry> RANKING = Comparator
+            .comparingInt((Entry entry) -> entry.usageCount).reversed()
+            .thenComparing(entry -> entry.tagName);
+
+    private final int capacity;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final TreeSet<Entry> ranking = new TreeSet<>(RANKING);
+    private final Map<String, Entry> members = new HashMap<>();
+
+    // true se la classifica contiene tutti i tag con utilizzi (meno di capacity)
+    private boolean complete;
+    private boolean stale = true;
+    private long generation;
+
+    /**
+     * Tag in classifica con il relativo numero di utilizzi
+     */
+    public static final class Entry {
+        private final String tagName;
+        private final int usageCount;
+
+        public Entry(String tagName, int usageCount) {
+            this.tagName = tagName;
+            this.usageCount = usageCount;
+        }
+
+        public String getTagName() {
+            return tagName;
+        }
+
+        public int getUsageCount() {
+            return usageCount;
+        }
+    }
+
+    public PopularTags(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Sostituisce la classifica con i primi tag letti dal database (al massimo capacity, già ordinati)
+     *
+     * @param readGeneration generazione letta prima della query al database
+     * @return false se nel frattempo è arrivato un aggiornamento: la lettura viene scartata e la classifica
+     *         resta da ricaricare
+     */
+    public boolean reload(long readGeneration, List<Entry> topEntries) {
+        lock.lock();
+        try {
+            if (readGeneration != generation) {
+                return false;
+            }
+            ranking.clear();
+            members.clear();
+            for (Entry entry : topEntries) {
+                if (members.size() == capacity) {
+                    break;
+                }
+                if (entry.usageCount > 0) {
+                    ranking.add(entry);
+                    members.put(entry.tagName, entry);
+                }
+            }
+            complete = members.size() < capacity;
+            stale = false;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Registra il nuovo numero di utilizzi di un tag
+     */
+    public void update(String tagName, int usageCount) {
+        lock.lock();
+        try {
+            generation++;
+            Entry previous = members.remove(tagName);
+            if (previous != null) {
+                ranking.remove(previous);
+            }
+
+            Entry entry = new Entry(tagName, usageCount);
+            if (previous != null && usageCount < previous.usageCount && !complete) {
+                // Un tag fuori classifica potrebbe ora precedere questo: si ricarica alla prossima lettura
+                stale = true;
+            }
+            if (usageCount <= 0) {
+                if (previous != null && !complete) {
+                    stale = true;
+                }
+                return;
+            }
+
+            if (members.size() < capacity) {
+                if (previous != null || complete) {
+                    add(entry);
+                } else {
+                    // Posto libero ma tag finora escluso: non si sa se precede i tag fuori classifica
+                    stale = true;
+                }
+            } else if (RANKING.compare(entry, ranking.last()) < 0) {
+                Entry evicted = ranking.pollLast();
+                members.remove(evicted.tagName);
+                complete = false;
+                add(entry);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Generazione corrente, da leggere prima di interrogare il database per {@link #reload}
+     */
+    public long generation() {
+        lock.lock();
+        try {
+            return generation;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isStale() {
+        lock.lock();
+        try {
+            return stale;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Primi tag della classifica
+     */
+    public List<Entry> top(int limit) {
+        lock.lock();
+        try {
+            List<Entry> top = new ArrayList<>(Math.min(limit, ranking.size()));
+            for (Entry entry : ranking) {
+                if (top.size() == limit) {
+                    break;
+                }
+                top.add(entry);
+            }
+            return top;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void add(Entry entry) {
+        ranking.add(entry);
+        members.put(entry.tagName, entry);
+    }
+}
@@ -0,0 +1,124 @@
+package it.zaninifrancesco.minio_gallery.search;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Lista di posting compressa di un termine
+ * Ogni posting è la coppia (ordinale documento, frequenza) codificata come delta + varint,
+ * quindi gli ordinali devono essere aggiunti in ordine crescente
+ */
+final class PostingList {
+    
+    private byte[] data;
+    private int length;
+    private int documentCount;
+    private int lastOrdinal = -1;
+    
+    PostingList() {
+        this.data = new byte[8];
+    }
+    
+    private PostingList(byte[] data, int length, int documentCount, int lastOrdinal) {
+        this.data = data;
+        this.length = length;
+        this.documentCount = documentCount;
+        this.lastOrdinal = lastOrdinal;
+    }
+    
+    void add(int ordinal, int frequency) {
+        if (ordinal <= lastOrdinal) {
+            throw new IllegalArgumentException("Postings must be appended in ascending ordinal order");
+        }
+        writeVarInt(ordinal - lastOrdinal);
+        writeVarInt(frequency);
+        lastOrdinal = ordinal;
+        documentCount++;
+    }
+    
+    int documentCount() {
+        return documentCount;
+    }
+    
+    int sizeInBytes() {
+        return length;
+    }
+    
+    /**
+     * Copia in sola lettura dei posting presenti ora; condivide il buffer perché
+     * le aggiunte successive scrivono solo oltre la lunghezza attuale
+     */
+    PostingList snapshot() {
+        return new PostingList(data, length, documentCount, lastOrdinal);
+    }
+    
+    Cursor cursor() {
+        return new Cursor();
+    }
+    
+    private void writeVarInt(int value) {
+        if (length + 5 > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, length + 5));
+        }
+        while ((value & ~0x7F) != 0) {
+            data[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        data[length++] = (byte) value;
+    }
+    
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(documentCount);
+        out.writeInt(lastOrdinal);
+        out.writeInt(length);
+        out.write(data, 0, length);
+    }
+    
+    static PostingList readFrom(DataInputStream in) throws IOException {
+        int documentCount = in.readInt();
+        int lastOrdinal = in.readInt();
+        byte[] data = new byte[in.readInt()];
+        in.readFully(data);
+        return new PostingList(data, data.length, documentCount, lastOrdinal);
+    }
+    
+    /**
+     * Iteratore sequenziale sui posting decodificati
+     */
+    final class Cursor {
+        private int position;
+        private int ordinal = -1;
+        private int frequency;
+        
+        boolean next() {
+            if (position >= length) {
+                return false;
+            }
+            ordinal += readVarInt();
+            frequency = readVarInt();
+            return true;
+        }
+        
+        int ordinal() {
+            return ordinal;
+        }
+        
+        int frequency() {
+            return frequency;
+        }
+        
+        private int readVarInt() {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[position++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+    }
+}
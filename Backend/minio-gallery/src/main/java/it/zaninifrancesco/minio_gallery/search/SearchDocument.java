@@ -0,0 +1,64 @@
+package it.zaninifrancesco.minio_gallery.search;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Documento da indicizzare: i campi testuali e i segnali di ranking di un'immagine
+ */
+public class SearchDocument {
+    
+    private final UUID imageId;
+    private final Long userId;
+    private final String username;
+    private final String title;
+    private final String description;
+    private final List<String> tags;
+    private final LocalDateTime uploadedAt;
+    private final int likeCount;
+    
+    public SearchDocument(UUID imageId, Long userId, String username, String title, String description,
+                          List<String> tags, LocalDateTime uploadedAt, int likeCount) {
+        this.imageId = imageId;
+        this.userId = userId;
+        this.username = username;
+        this.title = title;
+        this.description = description;
+        this.tags = tags;
+        this.uploadedAt = uploadedAt;
+        this.likeCount = likeCount;
+    }
+    
+    public UUID getImageId() {
+        return imageId;
+    }
+    
+    public Long getUserId() {
+        return userId;
+    }
+    
+    public String getUsername() {
+        return username;
+    }
+    
+    public String getTitle() {
+        return title;
+    }
+    
+    public String getDescription() {
+        return description;
+    }
+    
+    public List<String> getTags() {
+        return tags;
+    }
+    
+    public LocalDateTime getUploadedAt() {
+        return uploadedAt;
+    }
+    
+    public int getLikeCount() {
+        return likeCount;
+    }
+}
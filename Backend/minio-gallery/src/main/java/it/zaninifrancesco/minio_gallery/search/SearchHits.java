@@ -0,0 +1,47 @@
+package it.zaninifrancesco.minio_gallery.search;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Risultato di una ricerca: gli ID della pagina richiesta in ordine di rilevanza e il totale dei match
+ * Nella ricerca fuzzy contiene anche la query corretta e i suggerimenti "forse cercavi"
+ */
+public class SearchHits {
+    
+    private final List<UUID> imageIds;
+    private final long totalHits;
+    private final String correctedQuery;
+    private final List<String> suggestions;
+    
+    public SearchHits(List<UUID> imageIds, long totalHits) {
+        this(imageIds, totalHits, null, List.of());
+    }
+    
+    public SearchHits(List<UUID> imageIds, long totalHits, String correctedQuery, List<String> suggestions) {
+        this.imageIds = imageIds;
+        this.totalHits = totalHits;
+        this.correctedQuery = correctedQuery;
+        this.suggestions = suggestions;
+    }
+    
+    public static SearchHits empty() {
+        return new SearchHits(List.of(), 0);
+    }
+    
+    public List<UUID> getImageIds() {
+        return imageIds;
+    }
+    
+    public long getTotalHits() {
+        return totalHits;
+    }
+    
+    public String getCorrectedQuery() {
+        return correctedQuery;
+    }
+    
+    public List<String> getSuggestions() {
+        return suggestions;
+    }
+}
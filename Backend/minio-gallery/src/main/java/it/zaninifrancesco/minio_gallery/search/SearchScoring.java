@@ -0,0 +1,30 @@
+package it.zaninifrancesco.minio_gallery.search;
+
+/**
+ * Parametri dei boost applicati al punteggio BM25
+ * score = bm25 * (1 + recencyBoost * 2^(-età/halfLife)) * (1 + likeBoost * ln(1 + like))
+ */
+public class SearchScoring {
+    
+    private final double recencyHalfLifeDays;
+    private final double recencyBoost;
+    private final double likeBoost;
+    
+    public SearchScoring(double recencyHalfLifeDays, double recencyBoost, double likeBoost) {
+        this.recencyHalfLifeDays = recencyHalfLifeDays;
+        this.recencyBoost = recencyBoost;
+        this.likeBoost = likeBoost;
+    }
+    
+    public double getRecencyHalfLifeDays() {
+        return recencyHalfLifeDays;
+    }
+    
+    public double getRecencyBoost() {
+        return recencyBoost;
+    }
+    
+    public double getLikeBoost() {
+        return likeBoost;
+    }
+}
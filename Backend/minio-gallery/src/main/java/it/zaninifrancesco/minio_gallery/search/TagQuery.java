@@ -0,0 +1,158 @@
+package it.zaninifrancesco.minio_gallery.search;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * Query booleana sui tag, valutata con le bitmap di {@link ImageBitmapIndex}
+ *
+ * Sintassi: i termini separati da '+' o spazi sono in AND, le alternative separate da '|' o ','
+ * sono in OR e il prefisso '-' esclude un gruppo. Esempio: "nature+sunset|sunrise-night".
+ * Un nome con trattino che corrisponde a un tag esistente (es. "black-and-white") resta un unico tag.
+ */
+public class TagQuery {
+
+    private static final Pattern AND_SEPARATORS = Pattern.compile("[\\s+]+");
+
+    // Gruppi di tag in OR: l'immagine deve appartenere a tutti i gruppi richiesti e a nessuno di quelli esclusi
+    private final List<List<String>> required;
+    private final List<List<String>> excluded;
+
+    private TagQuery(List<List<String>> required, List<List<String>> excluded) {
+        this.required = required;
+        this.excluded = excluded;
+    }
+
+    /**
+     * Analizza un'espressione booleana
+     *
+     * @param expression espressione da analizzare
+     * @param isKnownTag indica se un nome (normalizzato) è un tag esistente, per i tag con trattino
+     */
+    public static TagQuery parse(String expression, Predicate<String> isKnownTag) {
+        List<List<String>> required = new ArrayList<>();
+        List<List<String>> excluded = new ArrayList<>();
+
+        for (String term : AND_SEPARATORS.split(normalize(expression))) {
+            boolean negated = term.startsWith("-");
+
+            // Nomi e separatori del termine: separators.get(k) sta tra names.get(k) e names.get(k + 1)
+            List<String> names = new ArrayList<>();
+            List<Character> separators = new ArrayList<>();
+            StringBuilder name = new StringBuilder();
+            for (char c : (negated ? term.substring(1) : term).toCharArray()) {
+                if (c == '-' || c == '|' || c == ',') {
+                    names.add(name.toString());
+                    separators.add(c == '-' ? '-' : '|');
+                    name.setLength(0);
+                } else {
+                    name.append(c);
+                }
+            }
+            names.add(name.toString());
+
+            List<String> group = new ArrayList<>();
+            boolean excludedGroup = negated;
+            int k = 0;
+            while (k < names.size()) {
+                // Unisce i nomi separati solo da trattini finché formano il tag esistente più lungo
+                int end = k;
+                for (int j = names.size() - 1; j > k; j--) {
+                    if (!separators.subList(k, j).contains('|')
+                            && isKnownTag.test(String.join("-", names.subList(k, j + 1)))) {
+                        end = j;
+                        break;
+                    }
+                }
+                String tagName = String.join("-", names.subList(k, end + 1));
+                if (!tagName.isEmpty()) {
+                    group.add(tagName);
+                }
+                // Un trattino (o la fine del termine) chiude il gruppo; i successivi sono esclusi
+                if (end == names.size() - 1 || separators.get(end) == '-') {
+                    if (!group.isEmpty()) {
+                        (excludedGroup ? excluded : required).add(group);
+                    }
+                    group = new ArrayList<>();
+                    excludedGroup = true;
+                }
+                k = end + 1;
+            }
+        }
+        return new TagQuery(required, excluded);
+    }
+
+    /**
+     * Immagini con tutti i tag indicati
+     */
+    public static TagQuery allOf(Collection<String> tagNames) {
+        List<List<String>> required = tagNames.stream()
+                .map(TagQuery::normalize)
+                .filter(name -> !name.isEmpty())
+                .map(List::of)
+                .toList();
+        return new TagQuery(required, List.of());
+    }
+
+    /**
+     * Immagini con almeno uno dei tag indicati
+     */
+    public static TagQuery anyOf(Collection<String> tagNames) {
+        List<String> group = tagNames.stream()
+                .map(TagQuery::normalize)
+                .filter(name -> !name.isEmpty())
+                .toList();
+        return new TagQuery(group.isEmpty() ? List.of() : List.of(group), List.of());
+    }
+
+    public List<List<String>> getRequired() {
+        return required;
+    }
+
+    public List<List<String>> getExcluded() {
+        return excluded;
+    }
+
+    public boolean isEmpty() {
+        return required.isEmpty() && excluded.isEmpty();
+    }
+
+    /**
+     * Indica se un'immagine con questi tag (normalizzati) soddisfa la query
+     */
+    public boolean matches(Set<String> tagNames) {
+        if (isEmpty()) {
+            return false;
+        }
+        return required.stream().allMatch(group -> group.stream().anyMatch(tagNames::contains))
+                && excluded.stream().noneMatch(group -> group.stream().anyMatch(tagNames::contains));
+    }
+
+    /**
+     * Forma canonica della query: gruppi e tag ordinati, indipendente da come è stata scritta
+     * (es. "Sunset nature" e "nature+sunset" producono la stessa stringa)
+     */
+    public String toCanonicalString() {
+        StringBuilder canonical = new StringBuilder();
+        appendGroups(canonical, '+', required);
+        appendGroups(canonical, '-', excluded);
+        return canonical.toString();
+    }
+
+    private static void appendGroups(StringBuilder canonical, char operator, List<List<String>> groups) {
+        groups.stream()
+                .map(group -> String.join("|", group.stream().distinct().sorted().toList()))
+                .distinct()
+                .sorted()
+                .forEach(group -> canonical.append(operator).append(group));
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.trim().toLowerCase(Locale.ROOT);
+    }
+}
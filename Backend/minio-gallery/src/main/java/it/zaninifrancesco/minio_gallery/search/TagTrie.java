@@ -0,0 +1,206 @@
+package it.zaninifrancesco.minio_gallery.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Trie in memoria dei nomi dei tag per l'autocompletamento
+ *
+ * I figli di ogni nodo sono array ordinati di caratteri (niente mappe per nodo) e ogni nodo
+ * conserva i primi K completamenti per numero di utilizzi, ricalcolati dal basso verso l'alto
+ * lungo il percorso del tag modificato. Una ricerca costa quindi O(lunghezza del prefisso).
+ * Thread-safe: letture concorrenti, scritture esclusive.
+ */
+public class TagTrie {
+
+    private static final Comparator<Node> BY_USAGE = Comparator
+            .comparingInt((Node node) -> node.usageCount).reversed()
+            .thenComparing(node -> node.tagName);
+
+    private final int maxCompletions;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Node root = new Node();
+    private int size;
+
+    /**
+     * Completamento suggerito: nome del tag e numero di immagini che lo usano
+     */
+    public static final class Completion {
+        private final String tagName;
+        private final int usageCount;
+
+        Completion(String tagName, int usageCount) {
+            this.tagName = tagName;
+            this.usageCount = usageCount;
+        }
+
+        public String getTagName() {
+            return tagName;
+        }
+
+        public int getUsageCount() {
+            return usageCount;
+        }
+    }
+
+    /**
+     * @param maxCompletions numero di completamenti precalcolati per ogni nodo
+     */
+    public TagTrie(int maxCompletions) {
+        this.maxCompletions = maxCompletions;
+    }
+
+    /**
+     * Imposta il numero di utilizzi di un tag, inserendolo se non presente
+     */
+    public void put(String tagName, int usageCount) {
+        update(tagName, usageCount, false);
+    }
+
+    /**
+     * Somma delta al numero di utilizzi di un tag, inserendolo se non presente (mai sotto zero)
+     *
+     * @return il nuovo numero di utilizzi
+     */
+    public int increment(String tagName, int delta) {
+        return update(tagName, delta, true);
+    }
+
+    /**
+     * Primi completamenti del prefisso ordinati per numero di utilizzi e poi per nome
+     */
+    public List<Completion> complete(String prefix, int limit) {
+        String key = normalize(prefix);
+        lock.readLock().lock();
+        try {
+            Node node = root;
+            for (int i = 0; i < key.length() && node != null; i++) {
+                node = node.child(key.charAt(i));
+            }
+            if (node == null) {
+                return List.of();
+            }
+
+            int count = Math.min(limit, node.topSize);
+            List<Completion> completions = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                Node completion = node.top[i];
+                completions.add(new Completion(completion.tagName, completion.usageCount));
+            }
+            return completions;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int update(String tagName, int value, boolean relative) {
+        String key = normalize(tagName);
+        if (key.isEmpty()) {
+            return 0;
+        }
+
+        lock.writeLock().lock();
+        try {
+            Node[] path = new Node[key.length() + 1];
+            Node node = root;
+            path[0] = node;
+            for (int i = 0; i < key.length(); i++) {
+                node = node.childOrCreate(key.charAt(i));
+                path[i + 1] = node;
+            }
+
+            if (node.tagName == null) {
+                node.tagName = key;
+                size++;
+            }
+            node.usageCount = Math.max(0, relative ? node.usageCount + value : value);
+
+            for (int i = path.length - 1; i >= 0; i--) {
+                path[i].recomputeTop(maxCompletions);
+            }
+            return node.usageCount;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static final class Node {
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+
+        // Valorizzati solo se il nodo corrisponde a un tag
+        private String tagName;
+        private int usageCount;
+
+        // Primi completamenti del sottoalbero (nodi terminali) in ordine di utilizzo
+        private Node[] top = new Node[0];
+        private int topSize;
+
+        Node child(char c) {
+            int index = Arrays.binarySearch(keys, c);
+            return index >= 0 ? children[index] : null;
+        }
+
+        Node childOrCreate(char c) {
+            int index = Arrays.binarySearch(keys, c);
+            if (index >= 0) {
+                return children[index];
+            }
+
+            int insertAt = -index - 1;
+            Node child = new Node();
+            char[] newKeys = new char[keys.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, insertAt);
+            System.arraycopy(children, 0, newChildren, 0, insertAt);
+            newKeys[insertAt] = c;
+            newChildren[insertAt] = child;
+            System.arraycopy(keys, insertAt, newKeys, insertAt + 1, keys.length - insertAt);
+            System.arraycopy(children, insertAt, newChildren, insertAt + 1, children.length - insertAt);
+            keys = newKeys;
+            children = newChildren;
+            return child;
+        }
+
+        /**
+         * Unisce il tag del nodo con i completamenti precalcolati dei figli
+         */
+        void recomputeTop(int maxCompletions) {
+            List<Node> candidates = new ArrayList<>();
+            if (tagName != null) {
+                candidates.add(this);
+            }
+            for (Node child : children) {
+                for (int i = 0; i < child.topSize; i++) {
+                    candidates.add(child.top[i]);
+                }
+            }
+            candidates.sort(BY_USAGE);
+
+            topSize = Math.min(maxCompletions, candidates.size());
+            if (top.length < topSize) {
+                top = new Node[maxCompletions];
+            }
+            for (int i = 0; i < topSize; i++) {
+                top[i] = candidates.get(i);
+            }
+        }
+    }
+}
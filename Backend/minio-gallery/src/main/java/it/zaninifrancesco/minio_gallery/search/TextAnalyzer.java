@@ -0,0 +1,43 @@
+package it.zaninifrancesco.minio_gallery.search;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Analizzatore di testo condiviso dagli indici di ricerca in memoria
+ * Converte in minuscolo, rimuove gli accenti e separa i termini su tutto ciò che non è lettera o cifra
+ */
+public final class TextAnalyzer {
+    
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+    
+    private TextAnalyzer() {}
+    
+    /**
+     * Normalizza un testo: minuscolo e senza accenti
+     */
+    public static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        return DIACRITICS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+    
+    /**
+     * Suddivide un testo nei termini indicizzabili
+     */
+    public static List<String> tokenize(String text) {
+        List<String> terms = new ArrayList<>();
+        for (String term : SEPARATORS.split(normalize(text))) {
+            if (!term.isEmpty()) {
+                terms.add(term);
+            }
+        }
+        return terms;
+    }
+}
@@ -0,0 +1,29 @@
+package it.zaninifrancesco.minio_gallery.search;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Predicato testuale di una {@link ImageQuery}, valutato dall'indice di ricerca (o dal full-text del database)
+ *
+ * I candidati sono le immagini già selezionate dagli altri predicati (null se il testo è l'unico criterio);
+ * l'indice a bitmap invoca questi metodi senza tenere il proprio lock.
+ */
+public interface TextMatcher {
+
+    /**
+     * Stima per eccesso del numero di immagini che soddisfano il testo, usata dal planner per ordinare i predicati
+     */
+    long estimate();
+
+    /**
+     * Immagini che soddisfano il testo tra i candidati, senza ordinamento
+     */
+    Collection<UUID> matches(Set<UUID> candidates);
+
+    /**
+     * Pagina delle immagini che soddisfano il testo tra i candidati, in ordine di rilevanza
+     */
+    SearchHits rank(Set<UUID> candidates, int offset, int limit);
+}
@@ -0,0 +1,129 @@
+package it.zaninifrancesco.minio_gallery.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Indice a trigrammi sul dizionario dei termini, usato per la correzione degli errori di battitura
+ *
+ * Ogni termine è scomposto nei trigrammi della forma "  termine " (con padding), così anche
+ * inizio e fine parola contano nella similarità. La ricerca visita solo le liste dei trigrammi
+ * del termine cercato, senza scorrere tutto il dizionario.
+ * Non è thread-safe: la sincronizzazione è a carico di {@link InvertedIndex}.
+ */
+class TrigramIndex {
+
+    private final List<String> terms = new ArrayList<>();
+    private final Map<String, Integer> termIds = new HashMap<>();
+    private final Map<String, int[]> postings = new HashMap<>();
+    private final Map<String, Integer> postingSizes = new HashMap<>();
+    private final BitSet removed = new BitSet();
+
+    /**
+     * Termine simile trovato nel dizionario con la relativa similarità (Jaccard sui trigrammi)
+     */
+    static final class Candidate {
+        private final String term;
+        private final double similarity;
+
+        Candidate(String term, double similarity) {
+            this.term = term;
+            this.similarity = similarity;
+        }
+
+        String getTerm() {
+            return term;
+        }
+
+        double getSimilarity() {
+            return similarity;
+        }
+    }
+
+    void add(String term) {
+        Integer existing = termIds.get(term);
+        if (existing != null && !removed.get(existing)) {
+            return;
+        }
+
+        int termId = terms.size();
+        terms.add(term);
+        termIds.put(term, termId);
+        for (String trigram : trigrams(term)) {
+            int size = postingSizes.getOrDefault(trigram, 0);
+            int[] list = postings.computeIfAbsent(trigram, t -> new int[4]);
+            if (size == list.length) {
+                list = Arrays.copyOf(list, size * 2);
+                postings.put(trigram, list);
+            }
+            list[size] = termId;
+            postingSizes.put(trigram, size + 1);
+        }
+    }
+
+    void remove(String term) {
+        Integer termId = termIds.remove(term);
+        if (termId != null) {
+            removed.set(termId);
+        }
+    }
+
+    /**
+     * Termini del dizionario con similarità almeno minSimilarity, dal più simile
+     *
+     * @param term termine normalizzato da correggere (escluso dai risultati)
+     * @param minSimilarity soglia minima di similarità
+     * @param limit numero massimo di candidati
+     */
+    List<Candidate> similar(String term, double minSimilarity, int limit) {
+        Set<String> queryTrigrams = trigrams(term);
+        Map<Integer, Integer> shared = new HashMap<>();
+        for (String trigram : queryTrigrams) {
+            int[] list = postings.get(trigram);
+            if (list == null) {
+                continue;
+            }
+            int size = postingSizes.get(trigram);
+            for (int i = 0; i < size; i++) {
+                if (!removed.get(list[i])) {
+                    shared.merge(list[i], 1, Integer::sum);
+                }
+            }
+        }
+
+        List<Candidate> candidates = new ArrayList<>();
+        shared.forEach((termId, common) -> {
+            String candidate = terms.get(termId);
+            if (candidate.equals(term)) {
+                return;
+            }
+            int candidateTrigrams = trigramCount(candidate);
+            double similarity = (double) common / (queryTrigrams.size() + candidateTrigrams - common);
+            if (similarity >= minSimilarity) {
+                candidates.add(new Candidate(candidate, similarity));
+            }
+        });
+
+        candidates.sort((a, b) -> Double.compare(b.similarity, a.similarity));
+        return candidates.size() > limit ? new ArrayList<>(candidates.subList(0, limit)) : candidates;
+    }
+
+    private static Set<String> trigrams(String term) {
+        String padded = "  " + term + " ";
+        Set<String> trigrams = new HashSet<>();
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            trigrams.add(padded.substring(i, i + 3));
+        }
+        return trigrams;
+    }
+
+    private static int trigramCount(String term) {
+        return trigrams(term).size();
+    }
+}
@@ -4,18 +4,23 @@ import it.zaninifrancesco.minio_gallery.dto.ImageResponse;
 import it.zaninifrancesco.minio_gallery.dto.UserResponse;
 import it.zaninifrancesco.minio_gallery.entity.ImageMetadata;
 import it.zaninifrancesco.minio_gallery.entity.User;
+import it.zaninifrancesco.minio_gallery.event.UserChangedEvent;
 import it.zaninifrancesco.minio_gallery.repository.ImageMetadataRepository;
 import it.zaninifrancesco.minio_gallery.repository.UserRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
 
 /**
@@ -40,16 +45,42 @@ public class AdminService {
     @Autowired
     private MinioService minioService;
     
+    @Autowired
+    private SystemStatsService systemStatsService;
+    
+    @Autowired
+    private UserDeletionService userDeletionService;
+    
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+    
     /**
      * Ottiene tutti gli utenti con paginazione
+     * Le statistiche degli utenti della pagina vengono da user_stats con un'unica query
+     * @param sort Ordinamento decrescente per statistica (imageCount, bytesStored, likesReceived) o null
      */
-    public Page<UserResponse> getAllUsers(Pageable pageable) {
+    @Transactional(readOnly = true)
+    public Page<UserResponse> getAllUsers(Pageable pageable, String sort) {
         logger.info("Fetching all users with pagination");
-        Page<User> users = userRepository.findAll(pageable);
-        return users.map(user -> {
-            int imageCount = (int) imageMetadataRepository.countByUserId(user.getId());
-            return new UserResponse(user, imageCount);
-        });
+        Page<User> users;
+        if (sort == null || sort.isBlank()) {
+            users = userRepository.findAll(pageable);
+        } else {
+            users = switch (sort) {
+                case "imageCount" -> userRepository.findAllOrderByImageCountDesc(pageable);
+                case "bytesStored" -> userRepository.findAllOrderByBytesStoredDesc(pageable);
+                case "likesReceived" -> userRepository.findAllOrderByLikesReceivedDesc(pageable);
+                default -> throw new IllegalArgumentException(
+                        "Invalid sort: " + sort + ". Valid values are: imageCount, bytesStored, likesReceived");
+            };
+        }
+        
+        Map<Long, Object[]> stats = new HashMap<>();
+        List<Long> userIds = users.getContent().stream().map(User::getId).toList();
+        if (!userIds.isEmpty()) {
+            userRepository.findStatsByUserIdIn(userIds).forEach(row -> stats.put(((Number) row[0]).longValue(), row));
+        }
+        return users.map(user -> toUserResponse(user, stats.get(user.getId())));
     }
     
     /**
@@ -62,38 +93,21 @@ public class AdminService {
     
     /**
      * Elimina un utente (admin only)
+     * L'utente viene disabilitato subito; like, immagini e account vengono eliminati da un job
+     * in background di cui viene restituito lo stato
      */
-    public void deleteUser(Long userId) {
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public UserDeletionService.JobStatus deleteUser(Long userId) {
         logger.info("Admin deleting user with ID: {}", userId);
-        
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("User not found: " + userId));
-        
-        // Trova tutte le immagini dell'utente
-        Page<ImageMetadata> userImages = imageMetadataRepository.findByUserOrderByUploadedAtDesc(user, Pageable.unpaged());
-        
-        // Elimina tutte le immagini dell'utente da MinIO e dal database
-        for (ImageMetadata image : userImages.getContent()) {
-            try {
-                // Elimina da MinIO
-                boolean deleted = minioService.deleteFile(image.getFileName());
-                if (!deleted) {
-                    logger.warn("Failed to delete file from MinIO: {}", image.getFileName());
-                }
-                
-                // Elimina dal database
-                imageMetadataRepository.delete(image);
-                logger.info("Deleted image {} from user {}", image.getId(), userId);
-                
-            } catch (Exception e) {
-                logger.error("Error deleting image {} during user deletion", image.getId(), e);
-                // Continua con le altre immagini anche se una fallisce
-            }
-        }
-        
-        // Elimina l'utente
-        userRepository.delete(user);
-        logger.info("User {} and all associated images deleted successfully", userId);
+        return userDeletionService.startDeletion(userId);
+    }
+    
+    /**
+     * Stato di un job di eliminazione utente
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public Optional<UserDeletionService.JobStatus> getUserDeletionStatus(UUID jobId) {
+        return userDeletionService.getStatus(jobId);
     }
     
     /**
@@ -113,7 +127,7 @@ public class AdminService {
             }
             
             // Elimina dal database
-            imageMetadataRepository.delete(imageMetadata);
+            imageService.deleteImageMetadata(imageMetadata);
             
             logger.info("Image deleted successfully by admin: {}", imageId);
             
@@ -136,10 +150,11 @@ public class AdminService {
             User.Role role = User.Role.valueOf(newRole.toUpperCase());
             user.setRole(role);
             user = userRepository.save(user);
+            eventPublisher.publishEvent(new UserChangedEvent(userId, UserChangedEvent.Change.UPDATED,
+                    user.isEnabled(), user.isEnabled(), user.getCreatedAt()));
             
-            int imageCount = (int) imageMetadataRepository.countByUserId(user.getId());
             logger.info("User role changed successfully: {} -> {}", userId, newRole);
-            return new UserResponse(user, imageCount);
+            return toUserResponse(user);
             
         } catch (IllegalArgumentException e) {
             throw new RuntimeException("Invalid role: " + newRole + ". Valid roles are: USER, ADMIN");
@@ -155,62 +170,65 @@ public class AdminService {
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new RuntimeException("User not found: " + userId));
         
+        boolean wasEnabled = user.isEnabled();
         user.setEnabled(enabled);
         user = userRepository.save(user);
+        eventPublisher.publishEvent(new UserChangedEvent(userId, UserChangedEvent.Change.UPDATED,
+                wasEnabled, enabled, user.getCreatedAt()));
         
-        int imageCount = (int) imageMetadataRepository.countByUserId(user.getId());
         logger.info("User status changed successfully: {} -> enabled: {}", userId, enabled);
-        return new UserResponse(user, imageCount);
+        return toUserResponse(user);
+    }
+    
+    private UserResponse toUserResponse(User user) {
+        List<Object[]> rows = userRepository.findStatsByUserIdIn(List.of(user.getId()));
+        return toUserResponse(user, rows.isEmpty() ? null : rows.get(0));
+    }
+    
+    /**
+     * Risposta con le statistiche da una riga (ID utente, immagini, byte caricati, like ricevuti) di user_stats
+     */
+    private static UserResponse toUserResponse(User user, Object[] stats) {
+        if (stats == null) {
+            return new UserResponse(user, 0, 0, 0);
+        }
+        return new UserResponse(user, ((Number) stats[1]).intValue(), ((Number) stats[2]).longValue(),
+                ((Number) stats[3]).longValue());
     }
     
     /**
      * Ottiene statistiche del sistema
+     * I valori vengono dallo snapshot mantenuto da SystemStatsService (nessuna query se è aggiornato);
+     * generatedAt indica quando è stato calcolato o aggiornato l'ultima volta
      */
+    @Transactional(readOnly = true)
     public Map<String, Object> getSystemStats() {
-        logger.info("Generating system statistics");
+        SystemStatsService.Snapshot snapshot = systemStatsService.getSnapshot();
         
         Map<String, Object> stats = new HashMap<>();
         
-        // Conteggio utenti
-        long totalUsers = userRepository.count();
-        long adminUsers = userRepository.countByRole(User.Role.ADMIN);
-        long regularUsers = userRepository.countByRole(User.Role.USER);
-        long enabledUsers = userRepository.countByEnabledTrue();
-        long disabledUsers = userRepository.countByEnabledFalse();
-        
-        // Conteggio immagini
-        long totalImages = imageMetadataRepository.count();
-        
-        // Conteggio like totali
-        long totalLikes = imageMetadataRepository.getTotalLikes();
-        
-        // Dimensione totale delle immagini
-        long totalSize = imageMetadataRepository.getTotalImageSize();
-        
         // Statistiche utenti
         Map<String, Object> userStats = new HashMap<>();
-        userStats.put("total", totalUsers);
-        userStats.put("admins", adminUsers);
-        userStats.put("regularUsers", regularUsers);
-        userStats.put("enabled", enabledUsers);
-        userStats.put("disabled", disabledUsers);
+        userStats.put("total", snapshot.totalUsers());
+        userStats.put("admins", snapshot.adminUsers());
+        userStats.put("regularUsers", snapshot.regularUsers());
+        userStats.put("enabled", snapshot.enabledUsers());
+        userStats.put("disabled", snapshot.disabledUsers());
         
         // Statistiche immagini
         Map<String, Object> imageStats = new HashMap<>();
-        imageStats.put("total", totalImages);
-        imageStats.put("totalSizeBytes", totalSize);
-        imageStats.put("totalSizeMB", Math.round(totalSize / (1024.0 * 1024.0) * 100.0) / 100.0);
+        imageStats.put("total", snapshot.totalImages());
+        imageStats.put("totalSizeBytes", snapshot.totalSizeBytes());
+        imageStats.put("totalSizeMB", Math.round(snapshot.totalSizeBytes() / (1024.0 * 1024.0) * 100.0) / 100.0);
         
         // Statistiche like
         Map<String, Object> likeStats = new HashMap<>();
-        likeStats.put("total", totalLikes);
+        likeStats.put("total", snapshot.totalLikes());
         
         stats.put("users", userStats);
         stats.put("images", imageStats);
         stats.put("likes", likeStats);
-        
-        logger.info("System stats generated: {} users, {} images, {} likes, {}MB total", 
-                   totalUsers, totalImages, totalLikes, imageStats.get("totalSizeMB"));
+        stats.put("generatedAt", snapshot.generatedAt());
         
         return stats;
     }
@@ -5,15 +5,18 @@ import it.zaninifrancesco.minio_gallery.dto.LoginRequest;
 import it.zaninifrancesco.minio_gallery.dto.RegisterRequest;
 import it.zaninifrancesco.minio_gallery.dto.UserResponse;
 import it.zaninifrancesco.minio_gallery.entity.User;
+import it.zaninifrancesco.minio_gallery.event.UserChangedEvent;
 import it.zaninifrancesco.minio_gallery.repository.UserRepository;
 import it.zaninifrancesco.minio_gallery.service.JwtService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 import java.util.stream.Collectors;
@@ -38,6 +41,10 @@ public class AuthService {
     @Autowired
     private CustomUserDetailsService userDetailsService;
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Transactional
     public AuthResponse register(RegisterRequest request) {
         // Check if username already exists
         if (userRepository.existsByUsername(request.getUsername())) {
@@ -57,6 +64,9 @@ public class AuthService {
         user.setRole(User.Role.USER);
 
         User savedUser = userRepository.save(user);
+        userRepository.adjustStats(savedUser.getId(), 0, 0, 0);
+        eventPublisher.publishEvent(new UserChangedEvent(savedUser.getId(), UserChangedEvent.Change.REGISTERED,
+                false, savedUser.isEnabled(), savedUser.getCreatedAt()));
         // Generate tokens
         UserDetails userDetails = userDetailsService.loadUserByUsername(savedUser.getUsername());
         String token = jwtService.generateToken(userDetails);
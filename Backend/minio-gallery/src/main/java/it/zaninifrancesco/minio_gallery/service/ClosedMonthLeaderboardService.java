@@ -0,0 +1,229 @@
+package it.zaninifrancesco.minio_gallery.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import it.zaninifrancesco.minio_gallery.config.ThreadingConfig;
+import it.zaninifrancesco.minio_gallery.dto.LeaderboardEntry;
+import it.zaninifrancesco.minio_gallery.entity.ImageMetadata;
+import it.zaninifrancesco.minio_gallery.event.ImageDeletedEvent;
+import it.zaninifrancesco.minio_gallery.repository.ImageLikeRepository;
+import it.zaninifrancesco.minio_gallery.repository.ImageMetadataRepository;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Classifiche dei mesi chiusi, congelate in monthly_leaderboard_snapshots
+ *
+ * Al cambio di mese un job salva le prime posizioni del mese appena chiuso; un mese mai salvato
+ * (applicazione ferma al cambio di mese) viene salvato al primo accesso. Le classifiche salvate non
+ * cambiano più, quindi restano in memoria con i metadati delle immagini: per servirle basta generare
+ * gli URL presigned. Solo il mese corrente usa l'aggregazione live. Sono accettati solo i mesi tra il
+ * primo upload e il mese corrente, e in memoria restano al più closed-month-cache-size mesi.
+ */
+@Service
+public class ClosedMonthLeaderboardService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClosedMonthLeaderboardService.class);
+
+    /**
+     * Posizione congelata di un mese chiuso con i metadati necessari a mostrarla
+     */
+    private record ClosedEntry(UUID imageId, String title, String uploaderUsername, String fileName, int likes) {
+    }
+
+    @Autowired
+    private ImageLikeRepository imageLikeRepository;
+
+    @Autowired
+    private ImageMetadataRepository imageMetadataRepository;
+
+    @Autowired
+    private MinioService minioService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    @Qualifier(ThreadingConfig.FAN_OUT_EXECUTOR)
+    private ExecutorService fanOutExecutor;
+
+    // Posizioni salvate per ogni mese chiuso (coincide con il limite massimo della classifica)
+    @Value("${app.likes.leaderboard.max-limit:100}")
+    private int snapshotSize;
+
+    @Value("${app.likes.leaderboard.closed-month-cache-size:120}")
+    private int cacheSize;
+
+    private Cache<YearMonth, List<ClosedEntry>> months;
+
+    // Mese del primo upload: non cambia più una volta che esiste un'immagine
+    private volatile YearMonth firstUploadMonth;
+
+    @PostConstruct
+    public void init() {
+        months = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, months, "likes.leaderboard.closed");
+    }
+
+    /**
+     * Indica se il mese è chiuso, cioè servito dalla classifica congelata
+     */
+    public boolean isClosed(YearMonth month) {
+        return month.isBefore(YearMonth.now());
+    }
+
+    /**
+     * Verifica che il mese abbia una classifica: non nel futuro e, se chiuso, non prima del primo upload
+     * @throws IllegalArgumentException se il mese è fuori intervallo
+     */
+    public void validateMonth(YearMonth month) {
+        if (month.isAfter(YearMonth.now())) {
+            throw new IllegalArgumentException("Month " + month + " is in the future");
+        }
+        if (isClosed(month)) {
+            YearMonth first = firstUploadMonth();
+            if (first == null || month.isBefore(first)) {
+                throw new IllegalArgumentException("Month " + month + " is before the first upload");
+            }
+        }
+    }
+
+    /**
+     * Prime posizioni di un mese chiuso
+     */
+    public List<LeaderboardEntry> getLeaderboard(YearMonth month, int limit) {
+        List<ClosedEntry> entries = entriesFor(month);
+        return toLeaderboardEntries(entries.subList(0, Math.min(limit, entries.size())));
+    }
+
+    /**
+     * Foto del mese (prima posizione) di un mese chiuso, con i like ricevuti in quel mese
+     */
+    public Optional<LeaderboardEntry> getPhotoOfMonth(YearMonth month) {
+        List<ClosedEntry> entries = entriesFor(month);
+        return entries.isEmpty() ? Optional.empty() : Optional.of(toLeaderboardEntries(entries.subList(0, 1)).get(0));
+    }
+
+    /**
+     * Salva la classifica del mese appena chiuso
+     */
+    @Scheduled(cron = "${app.likes.leaderboard.snapshot-cron:0 5 0 1 * *}")
+    public void snapshotPreviousMonth() {
+        YearMonth previous = YearMonth.now().minusMonths(1);
+        try {
+            entriesFor(previous);
+        } catch (IllegalArgumentException e) {
+            logger.debug("No leaderboard snapshot for {}: {}", previous, e.getMessage());
+        } catch (Exception e) {
+            logger.error("Failed to snapshot leaderboard for {}", previous, e);
+        }
+    }
+
+    /**
+     * Recupera all'avvio il salvataggio del mese precedente, se l'applicazione era ferma al cambio di mese
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void snapshotPreviousMonthAsync() {
+        fanOutExecutor.execute(this::snapshotPreviousMonth);
+    }
+
+    /**
+     * Un'immagine eliminata sparisce anche dalle classifiche congelate (su database per ON DELETE CASCADE)
+     */
+    @TransactionalEventListener
+    public void onImageDeleted(ImageDeletedEvent event) {
+        months.asMap().replaceAll((month, entries) -> entries.stream()
+                .anyMatch(entry -> entry.imageId().equals(event.getImageId()))
+                ? entries.stream().filter(entry -> !entry.imageId().equals(event.getImageId())).toList()
+                : entries);
+    }
+
+    private List<ClosedEntry> entriesFor(YearMonth month) {
+        if (!isClosed(month)) {
+            throw new IllegalArgumentException("Month " + month + " is not closed yet");
+        }
+        validateMonth(month);
+        return months.get(month, this::load);
+    }
+
+    private YearMonth firstUploadMonth() {
+        YearMonth first = firstUploadMonth;
+        if (first == null) {
+            LocalDateTime firstUploadedAt = imageMetadataRepository.findFirstUploadedAt();
+            if (firstUploadedAt != null) {
+                first = YearMonth.from(firstUploadedAt);
+                firstUploadMonth = first;
+            }
+        }
+        return first;
+    }
+
+    private List<ClosedEntry> load(YearMonth month) {
+        // Transazione propria: il chiamante può essere dentro una transazione di sola lettura
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        List<Object[]> rows = transaction.execute(status -> {
+            List<Object[]> snapshot = imageLikeRepository.findLeaderboardSnapshot(month.getYear(), month.getMonthValue());
+            if (!snapshot.isEmpty()) {
+                return snapshot;
+            }
+            int saved = imageLikeRepository.saveLeaderboardSnapshot(month.getYear(), month.getMonthValue(), snapshotSize);
+            logger.info("Leaderboard snapshot saved for {} ({} entries)", month, saved);
+            return imageLikeRepository.findLeaderboardSnapshot(month.getYear(), month.getMonthValue());
+        });
+
+        List<UUID> imageIds = rows.stream().map(row -> (UUID) row[0]).toList();
+        Map<UUID, ImageMetadata> images = imageMetadataRepository.findAllWithUserByIdIn(imageIds).stream()
+                .collect(Collectors.toMap(ImageMetadata::getId, Function.identity()));
+
+        List<ClosedEntry> entries = new ArrayList<>();
+        for (Object[] row : rows) {
+            ImageMetadata image = images.get((UUID) row[0]);
+            if (image != null) {
+                entries.add(new ClosedEntry(image.getId(), image.getTitle(), image.getUser().getUsername(),
+                        image.getFileName(), ((Number) row[1]).intValue()));
+            }
+        }
+        return List.copyOf(entries);
+    }
+
+    private List<LeaderboardEntry> toLeaderboardEntries(List<ClosedEntry> entries) {
+        Map<String, String> imageUrls = minioService.generatePresignedUrls(
+                entries.stream().map(ClosedEntry::fileName).toList(), 30);
+        return entries.stream()
+                .map(entry -> new LeaderboardEntry(entry.imageId(), entry.title(), imageUrls.get(entry.fileName()),
+                        entry.uploaderUsername(), entry.likes()))
+                .toList();
+    }
+}
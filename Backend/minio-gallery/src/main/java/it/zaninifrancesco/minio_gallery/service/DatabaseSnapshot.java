@@ -0,0 +1,42 @@
+package it.zaninifrancesco.minio_gallery.service;
+
+import it.zaninifrancesco.minio_gallery.event.DomainEvent;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Snapshot MVCC di PostgreSQL (pg_current_snapshot) con cui è stata eseguita una query di caricamento
+ *
+ * Una transazione conclusa è visibile nello snapshot se è precedente a xmin, oppure precedente a xmax
+ * e non ancora in corso quando lo snapshot è stato preso.
+ */
+record DatabaseSnapshot(long xmin, long xmax, Set<Long> inProgress) {
+
+    /**
+     * Interpreta il formato testuale xmin:xmax:xid1,xid2,...
+     */
+    static DatabaseSnapshot parse(String text) {
+        String[] parts = text.split(":", -1);
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("Invalid PostgreSQL snapshot: " + text);
+        }
+        Set<Long> inProgress = parts[2].isEmpty() ? Set.of() : Arrays.stream(parts[2].split(","))
+                .map(Long::valueOf)
+                .collect(Collectors.toUnmodifiableSet());
+        return new DatabaseSnapshot(Long.parseLong(parts[0]), Long.parseLong(parts[1]), inProgress);
+    }
+
+    /**
+     * Indica se la modifica dell'evento (già confermata) è inclusa nei dati letti con lo snapshot;
+     * un evento senza transazione non lo è mai
+     */
+    boolean includes(DomainEvent event) {
+        Long transactionId = event.getTransactionId();
+        if (transactionId == null) {
+            return false;
+        }
+        return transactionId < xmin || (transactionId < xmax && !inProgress.contains(transactionId));
+    }
+}
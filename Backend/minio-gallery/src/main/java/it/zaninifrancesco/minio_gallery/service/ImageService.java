@@ -2,23 +2,38 @@ package it.zaninifrancesco.minio_gallery.service;
 
 import it.zaninifrancesco.minio_gallery.dto.ImageResponse;
 import it.zaninifrancesco.minio_gallery.dto.ImageUploadRequest;
+import it.zaninifrancesco.minio_gallery.dto.SearchResponse;
 import it.zaninifrancesco.minio_gallery.entity.ImageMetadata;
 import it.zaninifrancesco.minio_gallery.entity.Tag;
 import it.zaninifrancesco.minio_gallery.entity.User;
+import it.zaninifrancesco.minio_gallery.event.ImageDeletedEvent;
+import it.zaninifrancesco.minio_gallery.event.ImageUploadedEvent;
+import it.zaninifrancesco.minio_gallery.repository.ImageLikeRepository;
 import it.zaninifrancesco.minio_gallery.repository.ImageMetadataRepository;
 import it.zaninifrancesco.minio_gallery.repository.TagRepository;
 import it.zaninifrancesco.minio_gallery.repository.UserRepository;
+import it.zaninifrancesco.minio_gallery.search.FacetCounts;
+import it.zaninifrancesco.minio_gallery.search.ImageQuery;
+import it.zaninifrancesco.minio_gallery.search.SearchHits;
+import it.zaninifrancesco.minio_gallery.search.TagQuery;
+import it.zaninifrancesco.minio_gallery.search.TextMatcher;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -40,9 +55,20 @@ public class ImageService {
     // Dimensione massima file: 5MB
     private static final long MAX_FILE_SIZE = 5 * 1024 * 1024;
     
+    // Configurazione linguistica della ricerca full-text (stemming)
+    @Value("${app.search.fts-language:italian}")
+    private String ftsLanguage;
+    
+    // Numero massimo di corrispondenze del full-text quando il testo è l'unico criterio di una ricerca per data
+    @Value("${app.search.fts-max-matches:10000}")
+    private int ftsMaxMatches;
+    
     @Autowired
     private ImageMetadataRepository imageMetadataRepository;
     
+    @Autowired
+    private ImageLikeRepository imageLikeRepository;
+    
     @Autowired
     private TagRepository tagRepository;
       @Autowired
@@ -53,6 +79,24 @@ public class ImageService {
     @Autowired
     private LikeService likeService;
     
+    @Autowired
+    private SearchIndexService searchIndexService;
+    
+    @Autowired
+    private TagService tagService;
+    
+    @Autowired
+    private SearchCacheService searchCacheService;
+    
+    @Autowired
+    private SimilarityIndexService similarityIndexService;
+    
+    @Autowired
+    private TrendingService trendingService;
+    
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+    
     /**
      * Carica un'immagine con i suoi metadati
      * 
@@ -110,6 +154,11 @@ public class ImageService {
             
             logger.info("Image metadata saved successfully with ID: {}", imageMetadata.getId());
             
+            updateTagUsageCounts(imageMetadata, 1);
+            userRepository.adjustStats(user.getId(), 1, imageMetadata.getSize(), 0);
+            
+            eventPublisher.publishEvent(new ImageUploadedEvent(imageMetadata));
+            
             // Crea e restituisci la risposta
             return createImageResponse(imageMetadata);
             
@@ -126,7 +175,7 @@ public class ImageService {
      */
     public Page<ImageResponse> getAllImages(Pageable pageable) {
         Page<ImageMetadata> imagePage = imageMetadataRepository.findAllByOrderByUploadedAtDesc(pageable);
-        return imagePage.map(this::createImageResponse);
+        return toResponsePage(imagePage);
     }
     
     /**
@@ -137,7 +186,7 @@ public class ImageService {
                 .orElseThrow(() -> new RuntimeException("User not found: " + username));
         
         Page<ImageMetadata> imagePage = imageMetadataRepository.findByUserOrderByUploadedAtDesc(user, pageable);
-        return imagePage.map(this::createImageResponse);
+        return toResponsePage(imagePage);
     }
     
     /**
@@ -150,20 +199,197 @@ public class ImageService {
         return createImageResponse(imageMetadata);
     }
     
+    /**
+     * Immagini visivamente simili a quella indicata (colori, bordi e texture), in ordine di similarità
+     * Restituisce una pagina vuota se l'immagine non è ancora stata indicizzata
+     */
+    public Page<ImageResponse> findSimilarImages(UUID imageId, Pageable pageable) {
+        if (!imageMetadataRepository.existsById(imageId)) {
+            throw new RuntimeException("Image not found: " + imageId);
+        }
+        
+        SearchHits hits = similarityIndexService.findSimilar(imageId, pageable);
+        return toResponsePage(findPageInOrder(hits.getImageIds(), pageable, hits.getTotalHits()));
+    }
+    
+    /**
+     * Feed delle immagini di tendenza (like recenti pesati per età dell'upload)
+     * Finché la classifica non è pronta restituisce le immagini più recenti
+     */
+    public Page<ImageResponse> getTrendingImages(Pageable pageable) {
+        SearchHits hits = trendingService.findTrending(pageable);
+        if (hits == null) {
+            return getAllImages(pageable);
+        }
+        return toResponsePage(findPageInOrder(hits.getImageIds(), pageable, hits.getTotalHits()));
+    }
+    
     /**
      * Cerca immagini per tag
      */
     public Page<ImageResponse> searchImagesByTags(List<String> tagNames, Pageable pageable) {
-        Page<ImageMetadata> imagePage = imageMetadataRepository.findByAnyTags(tagNames, pageable);
-        return imagePage.map(this::createImageResponse);
+        return searchImagesByTagQuery(TagQuery.anyOf(tagNames), null, pageable);
     }
     
     /**
-     * Cerca immagini per titolo o descrizione
+     * Cerca immagini che hanno tutti i tag specificati (AND logic)
+     */
+    public Page<ImageResponse> searchImagesByAllTags(List<String> tagNames, Pageable pageable) {
+        return searchImagesByTagQuery(TagQuery.allOf(tagNames), null, pageable);
+    }
+    
+    /**
+     * Cerca immagini con un'espressione booleana sui tag (es. "nature+sunset-night")
+     */
+    public Page<ImageResponse> searchImagesByTagExpression(String expression, Pageable pageable) {
+        return searchImagesByTagQuery(tagService.parseTagQuery(expression), null, pageable);
+    }
+    
+    /**
+     * Conteggi per faccette delle immagini con i tag specificati (tutti o almeno uno)
+     */
+    public FacetCounts tagFacets(List<String> tagNames, boolean matchAll) {
+        return tagService.facetsForTagQuery(matchAll ? TagQuery.allOf(tagNames) : TagQuery.anyOf(tagNames), null);
+    }
+    
+    /**
+     * Conteggi per faccette delle immagini che soddisfano un'espressione booleana sui tag
+     */
+    public FacetCounts tagExpressionFacets(String expression) {
+        return tagService.facetsForTagQuery(tagService.parseTagQuery(expression), null);
+    }
+    
+    /**
+     * Cerca immagini per titolo, descrizione, tag o uploader (ordinate per rilevanza)
+     * Usa l'indice in memoria; finché non è pronto ricade sul full-text di PostgreSQL
      */
     public Page<ImageResponse> searchImages(String query, Pageable pageable) {
-        Page<ImageMetadata> imagePage = imageMetadataRepository.findByTitleOrDescriptionContainingIgnoreCase(query, pageable);
-        return imagePage.map(this::createImageResponse);
+        if (searchIndexService.isReady()) {
+            SearchHits hits = searchCacheService.getTextSearch(query, null, pageable,
+                    () -> searchIndexService.search(query, null, pageable));
+            return toResponsePage(findPageInOrder(hits.getImageIds(), pageable, hits.getTotalHits()));
+        }
+        
+        String tsQuery = toTsQuery(query);
+        if (tsQuery == null) {
+            return Page.empty(pageable);
+        }
+        
+        Page<ImageMetadata> imagePage = imageMetadataRepository.searchByFullText(tsQuery, ftsLanguage, pageable);
+        return toResponsePage(imagePage);
+    }
+    
+    /**
+     * Conteggi per faccette dei risultati di una ricerca testuale
+     * Calcolati sugli ID restituiti dall'indice in memoria; vuoti finché l'indice non è pronto
+     */
+    public FacetCounts searchFacets(String query) {
+        if (!searchIndexService.isReady()) {
+            return FacetCounts.empty();
+        }
+        return tagService.facetsForImages(searchIndexService.matchingImageIds(query, null));
+    }
+    
+    /**
+     * Ricerca tollerante agli errori di battitura, ordinata per similarità e rilevanza
+     * I termini sono abbinati tramite l'indice a trigrammi del dizionario; se l'indice
+     * non è ancora pronto restituisce la ricerca full-text senza suggerimenti
+     */
+    public SearchResponse fuzzySearchImages(String query, Pageable pageable) {
+        if (!searchIndexService.isReady()) {
+            return new SearchResponse(searchImages(query, pageable), null, List.of());
+        }
+        
+        SearchHits hits = searchCacheService.getFuzzySearch(query, null, pageable,
+                () -> searchIndexService.fuzzySearch(query, null, pageable));
+        Page<ImageResponse> results = toResponsePage(findPageInOrder(hits.getImageIds(), pageable, hits.getTotalHits()));
+        return new SearchResponse(results, hits.getCorrectedQuery(), hits.getSuggestions());
+    }
+    
+    /**
+     * Ricerca combinata: uploader, espressione sui tag, tipo di contenuto, intervallo di dimensione,
+     * intervallo di upload (date incluse) e testo, in qualsiasi combinazione
+     * Il planner dell'indice a bitmap valuta per primo il criterio più selettivo; gli ordinamenti
+     * ammessi sono solo quelli indicizzati (newest, oldest, relevance)
+     *
+     * @throws IllegalArgumentException se i criteri non sono validi o l'ordinamento non è ammesso
+     */
+    public Page<ImageResponse> queryImages(String uploader, String tags, String contentType, Long minSize, Long maxSize,
+                                           LocalDate uploadedFrom, LocalDate uploadedTo, String text, String sort,
+                                           Pageable pageable) {
+        Long userId = null;
+        if (uploader != null && !uploader.isBlank()) {
+            Optional<User> user = userRepository.findByUsername(uploader.trim());
+            if (user.isEmpty()) {
+                return Page.empty(pageable);
+            }
+            userId = user.get().getId();
+        }
+        
+        ImageQuery query = new ImageQuery(
+                userId,
+                tags != null && !tags.isBlank() ? tagService.parseTagQuery(tags) : null,
+                contentType,
+                minSize,
+                maxSize,
+                uploadedFrom != null ? uploadedFrom.atStartOfDay() : null,
+                uploadedTo != null ? uploadedTo.plusDays(1).atStartOfDay() : null,
+                text,
+                ImageQuery.Sort.parse(sort)
+        );
+        
+        TextMatcher textMatcher = null;
+        if (query.hasText()) {
+            textMatcher = searchIndexService.isReady()
+                    ? searchIndexService.textMatcher(query.getText())
+                    : fullTextMatcher(query.getText());
+        }
+        
+        SearchHits hits = tagService.queryImages(query, textMatcher, pageable);
+        return toResponsePage(findPageInOrder(hits.getImageIds(), pageable, hits.getTotalHits()));
+    }
+    
+    /**
+     * Predicato testuale sul full-text di PostgreSQL, usato finché l'indice in memoria non è pronto
+     * La cardinalità non è stimabile senza eseguire la query, quindi viene valutato per ultimo:
+     * i candidati degli altri predicati vengono filtrati e paginati direttamente nella query.
+     * Senza candidati le corrispondenze restituite sono limitate a app.search.fts-max-matches.
+     */
+    private TextMatcher fullTextMatcher(String text) {
+        String tsQuery = toTsQuery(text);
+        return new TextMatcher() {
+            @Override
+            public long estimate() {
+                return tsQuery == null ? 0 : Long.MAX_VALUE - 1;
+            }
+            
+            @Override
+            public Collection<UUID> matches(Set<UUID> candidates) {
+                if (candidates == null) {
+                    return imageMetadataRepository.findIdsByFullText(tsQuery, ftsLanguage, ftsMaxMatches, 0);
+                }
+                return imageMetadataRepository.findIdsByFullTextAmong(tsQuery, ftsLanguage, toUuidArray(candidates),
+                        candidates.size(), 0);
+            }
+            
+            @Override
+            public SearchHits rank(Set<UUID> candidates, int offset, int limit) {
+                if (candidates == null) {
+                    List<UUID> page = imageMetadataRepository.findIdsByFullText(tsQuery, ftsLanguage, limit, offset);
+                    return new SearchHits(page, imageMetadataRepository.countByFullText(tsQuery, ftsLanguage));
+                }
+                String ids = toUuidArray(candidates);
+                List<UUID> page = imageMetadataRepository.findIdsByFullTextAmong(tsQuery, ftsLanguage, ids, limit, offset);
+                return new SearchHits(page, imageMetadataRepository.countByFullTextAmong(tsQuery, ftsLanguage, ids));
+            }
+        };
+    }
+    
+    /**
+     * Letterale di array PostgreSQL (es. "{id1,id2}") da passare come singolo parametro
+     */
+    private static String toUuidArray(Collection<UUID> ids) {
+        return ids.stream().map(UUID::toString).collect(Collectors.joining(",", "{", "}"));
     }
     
     /**
@@ -173,19 +399,39 @@ public class ImageService {
         User user = userRepository.findByUsername(username)
                 .orElseThrow(() -> new RuntimeException("User not found: " + username));
         
-        Page<ImageMetadata> imagePage = imageMetadataRepository.findByUserAndAnyTags(user, tagNames, pageable);
-        return imagePage.map(this::createImageResponse);
+        return searchImagesByTagQuery(TagQuery.anyOf(tagNames), user.getId(), pageable);
     }
     
     /**
-     * Cerca immagini dell'utente corrente per titolo o descrizione
+     * Valuta una query sui tag con l'indice a bitmap (risultati in ordine di recenza)
+     */
+    private Page<ImageResponse> searchImagesByTagQuery(TagQuery query, Long userId, Pageable pageable) {
+        SearchHits hits = searchCacheService.getTagSearch(query, userId, pageable,
+                () -> tagService.searchByTags(query, userId, pageable));
+        return toResponsePage(findPageInOrder(hits.getImageIds(), pageable, hits.getTotalHits()));
+    }
+    
+    /**
+     * Cerca immagini dell'utente corrente per titolo, descrizione o tag (ordinate per rilevanza)
+     * Usa l'indice in memoria; finché non è pronto ricade sul full-text di PostgreSQL
      */
     public Page<ImageResponse> searchUserImages(String username, String query, Pageable pageable) {
         User user = userRepository.findByUsername(username)
                 .orElseThrow(() -> new RuntimeException("User not found: " + username));
         
-        Page<ImageMetadata> imagePage = imageMetadataRepository.findByUserAndTitleOrDescriptionContainingIgnoreCase(user, query, pageable);
-        return imagePage.map(this::createImageResponse);
+        if (searchIndexService.isReady()) {
+            SearchHits hits = searchCacheService.getTextSearch(query, user.getId(), pageable,
+                    () -> searchIndexService.search(query, user.getId(), pageable));
+            return toResponsePage(findPageInOrder(hits.getImageIds(), pageable, hits.getTotalHits()));
+        }
+        
+        String tsQuery = toTsQuery(query);
+        if (tsQuery == null) {
+            return Page.empty(pageable);
+        }
+        
+        Page<ImageMetadata> imagePage = imageMetadataRepository.searchUserImagesByFullText(user.getId(), tsQuery, ftsLanguage, pageable);
+        return toResponsePage(imagePage);
     }
     
     /**
@@ -208,7 +454,7 @@ public class ImageService {
             }
             
             // Elimina dal database
-            imageMetadataRepository.delete(imageMetadata);
+            deleteImageMetadata(imageMetadata);
             
             logger.info("Image deleted successfully: {}", imageId);
             
@@ -218,6 +464,45 @@ public class ImageService {
         }
     }
     
+    /**
+     * Elimina i metadati di un'immagine dal database e notifica l'eliminazione
+     * Il file su MinIO deve essere eliminato dal chiamante
+     */
+    void deleteImageMetadata(ImageMetadata imageMetadata) {
+        Map<LocalDateTime, Integer> likesByHour = likesByHour(
+                imageLikeRepository.countLikesByHour(List.of(imageMetadata.getId())))
+                .getOrDefault(imageMetadata.getId(), Map.of());
+        ImageDeletedEvent event = new ImageDeletedEvent(imageMetadata, likesByHour);
+        updateTagUsageCounts(imageMetadata, -1);
+        userRepository.adjustStats(event.getUserId(), -1, -event.getSize(), -event.getLikeCount());
+        imageMetadataRepository.delete(imageMetadata);
+        eventPublisher.publishEvent(event);
+    }
+    
+    /**
+     * Raggruppa per immagine le righe di countLikesByHour (ID immagine, inizio dell'ora, like)
+     */
+    static Map<UUID, Map<LocalDateTime, Integer>> likesByHour(List<Object[]> rows) {
+        Map<UUID, Map<LocalDateTime, Integer>> likesByImage = new HashMap<>();
+        for (Object[] row : rows) {
+            likesByImage.computeIfAbsent((UUID) row[0], id -> new HashMap<>())
+                    .put(LikeService.toLocalDateTime(row[1]), ((Number) row[2]).intValue());
+        }
+        return likesByImage;
+    }
+    
+    /**
+     * Aggiorna atomicamente il contatore di utilizzi dei tag dell'immagine
+     */
+    private void updateTagUsageCounts(ImageMetadata imageMetadata, int delta) {
+        List<Long> tagIds = imageMetadata.getTags().stream()
+                .map(Tag::getId)
+                .toList();
+        if (!tagIds.isEmpty()) {
+            tagRepository.incrementUsageCount(tagIds, delta);
+        }
+    }
+    
     /**
      * Valida il file caricato
      */
@@ -248,6 +533,27 @@ public class ImageService {
         }
     }
     
+    /**
+     * Converte il testo digitato dall'utente in una tsquery di PostgreSQL
+     * I termini sono in AND e l'ultimo è un prefisso, così la ricerca funziona mentre si digita
+     *
+     * @return la tsquery oppure null se il testo non contiene termini ricercabili
+     */
+    private String toTsQuery(String query) {
+        if (query == null) {
+            return null;
+        }
+        
+        List<String> terms = Arrays.stream(query.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+"))
+                .filter(term -> !term.isEmpty())
+                .toList();
+        if (terms.isEmpty()) {
+            return null;
+        }
+        
+        return String.join(" & ", terms) + ":*";
+    }
+    
     /**
      * Estrae l'estensione dal nome file
      */
@@ -297,13 +603,63 @@ public class ImageService {
         
         return tags;
     }
-      /**
+    
+    /**
+     * Carica le immagini indicate mantenendo l'ordine degli ID (es. ordine di rilevanza)
+     * Gli ID non più presenti nel database vengono ignorati
+     */
+    private Page<ImageMetadata> findPageInOrder(List<UUID> imageIds, Pageable pageable, long total) {
+        if (imageIds.isEmpty()) {
+            return new PageImpl<>(List.of(), pageable, total);
+        }
+        
+        Map<UUID, ImageMetadata> imagesById = imageMetadataRepository.findAllWithUserAndTagsByIdIn(imageIds).stream()
+                .collect(Collectors.toMap(ImageMetadata::getId, image -> image));
+        List<ImageMetadata> ordered = imageIds.stream()
+                .map(imagesById::get)
+                .filter(Objects::nonNull)
+                .toList();
+        return new PageImpl<>(ordered, pageable, total);
+    }
+    
+    /**
+     * Converte una pagina di ImageMetadata in ImageResponse
+     * Gli URL presigned della pagina vengono generati in un solo passaggio
+     */
+    private Page<ImageResponse> toResponsePage(Page<ImageMetadata> imagePage) {
+        List<String> fileNames = imagePage.map(ImageMetadata::getFileName).getContent();
+        Map<String, String> imageUrls = minioService.generatePresignedUrls(fileNames, 30);
+        Set<UUID> likedImageIds = likedByCurrentUser(imagePage.map(ImageMetadata::getId).getContent());
+        return imagePage.map(image -> createImageResponse(image, imageUrls.get(image.getFileName()),
+                likedImageIds.contains(image.getId())));
+    }
+    
+    /**
      * Crea un ImageResponse da un ImageMetadata
      */
     private ImageResponse createImageResponse(ImageMetadata imageMetadata) {
         // Genera URL presigned per l'immagine (validità: 30 minuti)
         String imageUrl = minioService.generatePresignedUrl(imageMetadata.getFileName(), 30);
-        
+        boolean liked = likedByCurrentUser(List.of(imageMetadata.getId())).contains(imageMetadata.getId());
+        return createImageResponse(imageMetadata, imageUrl, liked);
+    }
+    
+    /**
+     * Immagini, tra quelle indicate, a cui l'utente autenticato ha messo like (vuoto per gli anonimi)
+     * Il calcolo avviene in memoria sulla cache per utente, una volta per pagina
+     */
+    private Set<UUID> likedByCurrentUser(Collection<UUID> imageIds) {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if (imageIds.isEmpty() || auth == null || !(auth.getPrincipal() instanceof User user)) {
+            return Set.of();
+        }
+        return likeService.getLikedImageIds(user.getId(), imageIds);
+    }
+    
+    /**
+     * Crea un ImageResponse da un ImageMetadata con un URL presigned già generato
+     */
+    private ImageResponse createImageResponse(ImageMetadata imageMetadata, String imageUrl, boolean isLikedByCurrentUser) {
         // Estrai nomi dei tag
         List<String> tagNames = imageMetadata.getTags().stream()
                 .map(Tag::getName)
@@ -311,20 +667,7 @@ public class ImageService {
                 .collect(Collectors.toList());
         
         // Ottieni like count
-        int likeCount = imageMetadata.getLikeCount();
-        
-        // Determina se l'utente corrente ha messo like
-        boolean isLikedByCurrentUser = false;
-        try {
-            // Ottieni l'utente autenticato corrente
-            String currentUsername = SecurityContextHolder.getContext().getAuthentication().getName();
-            if (currentUsername != null && !currentUsername.equals("anonymousUser")) {
-                isLikedByCurrentUser = likeService.isLikedByUser(imageMetadata.getId(), currentUsername);
-            }
-        } catch (Exception e) {
-            // Se non c'è un utente autenticato o si verifica un errore, 
-            // isLikedByCurrentUser rimane false
-        }
+        int likeCount = likeService.getLikeCount(imageMetadata);
         
         ImageResponse response = new ImageResponse(
                 imageMetadata.getId(),
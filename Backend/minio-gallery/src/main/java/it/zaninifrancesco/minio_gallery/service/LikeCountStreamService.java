@@ -0,0 +1,203 @@
+package it.zaninifrancesco.minio_gallery.service;
+
+import it.zaninifrancesco.minio_gallery.config.ThreadingConfig;
+import it.zaninifrancesco.minio_gallery.event.LikeToggledEvent;
+import it.zaninifrancesco.minio_gallery.repository.ImageMetadataRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hub di fan-out dei contatori di like verso i client SSE
+ *
+ * Ogni client apre una sola connessione e indica le immagini visibili a schermo. I toggle segnano
+ * l'immagine come cambiata (una raffica di like produce un solo aggiornamento) e a ogni intervallo
+ * i contatori delle immagini cambiate vengono riletti con un'unica query, così gli eventi consegnati
+ * fuori ordine non possono pubblicare un valore superato; ciascun client riceve in un unico evento
+ * i contatori delle immagini che osserva. Ogni client ha una coda limitata svuotata sull'executor SSE (virtual
+ * thread dedicati, separati dal fan-out usato dalle richieste): se la coda è piena il client è troppo
+ * lento e viene disconnesso, senza rallentare gli altri.
+ */
+@Service
+public class LikeCountStreamService {
+
+    private static final Logger logger = LoggerFactory.getLogger(LikeCountStreamService.class);
+
+    // ID per query di rilettura dei contatori
+    private static final int COUNT_QUERY_CHUNK = 1000;
+
+    @Autowired
+    private ImageMetadataRepository imageMetadataRepository;
+
+    @Autowired
+    private LikeWriteBehindService likeWriteBehindService;
+
+    @Autowired
+    @Qualifier(ThreadingConfig.SSE_EXECUTOR)
+    private ExecutorService sseExecutor;
+
+    @Value("${app.likes.stream.queue-capacity:16}")
+    private int queueCapacity;
+
+    @Value("${app.likes.stream.max-images:200}")
+    private int maxImages;
+
+    @Value("${app.likes.stream.timeout-ms:1800000}")
+    private long timeoutMs;
+
+    @Value("${app.likes.stream.max-subscribers:1000}")
+    private int maxSubscribers;
+
+    /**
+     * Client connesso con le immagini osservate
+     */
+    private static final class Subscriber {
+        private SseClient client;
+        private Set<UUID> watched = Set.of();
+    }
+
+    private final Map<UUID, Subscriber> subscribers = new ConcurrentHashMap<>();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+
+    // Immagine → client che la osservano, per inoltrare un aggiornamento solo a chi interessa
+    private final Map<UUID, Set<Subscriber>> watchers = new ConcurrentHashMap<>();
+    private final ReentrantLock watchLock = new ReentrantLock();
+
+    // Immagini osservate con like cambiati dall'ultimo invio
+    private final Set<UUID> changedImages = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Apre lo stream di un client; il primo evento "subscribed" contiene l'ID con cui indicare le immagini
+     * Oltre il numero massimo di client connessi lancia IllegalStateException
+     */
+    public SseEmitter subscribe() {
+        if (subscriberCount.incrementAndGet() > maxSubscribers) {
+            subscriberCount.decrementAndGet();
+            throw new IllegalStateException("Too many like-count stream subscribers");
+        }
+        Subscriber subscriber = new Subscriber();
+        subscriber.client = new SseClient(timeoutMs, queueCapacity, sseExecutor, client -> close(subscriber));
+
+        subscribers.put(subscriber.client.id(), subscriber);
+        subscriber.client.offer("subscribed", Map.of("subscriberId", subscriber.client.id()));
+        return subscriber.client.emitter();
+    }
+
+    /**
+     * Sostituisce le immagini osservate da un client (tipicamente quelle visibili a schermo)
+     */
+    public void watch(UUID subscriberId, Collection<UUID> imageIds) {
+        if (imageIds.size() > maxImages) {
+            throw new IllegalArgumentException("At most " + maxImages + " images can be watched");
+        }
+        Subscriber subscriber = subscribers.get(subscriberId);
+        if (subscriber == null) {
+            throw new RuntimeException("Subscriber not found: " + subscriberId);
+        }
+
+        watchLock.lock();
+        try {
+            // Il client potrebbe essersi disconnesso nel frattempo: non va più registrato
+            if (subscribers.get(subscriberId) != subscriber) {
+                throw new RuntimeException("Subscriber not found: " + subscriberId);
+            }
+            Set<UUID> next = Set.copyOf(new LinkedHashSet<>(imageIds));
+            for (UUID imageId : subscriber.watched) {
+                if (!next.contains(imageId)) {
+                    unwatch(imageId, subscriber);
+                }
+            }
+            for (UUID imageId : next) {
+                watchers.computeIfAbsent(imageId, id -> ConcurrentHashMap.newKeySet()).add(subscriber);
+            }
+            subscriber.watched = next;
+        } finally {
+            watchLock.unlock();
+        }
+    }
+
+    @TransactionalEventListener
+    public void onLikeToggled(LikeToggledEvent event) {
+        if (watchers.containsKey(event.getImageId())) {
+            changedImages.add(event.getImageId());
+        }
+    }
+
+    /**
+     * Raggruppa per client i contatori cambiati dall'ultimo intervallo e li mette nelle code
+     */
+    @Scheduled(fixedDelayString = "${app.likes.stream.interval-ms:500}")
+    public void publishChanges() {
+        if (changedImages.isEmpty()) {
+            return;
+        }
+
+        // Un toggle arrivato dopo la rimozione viene riletto anche al prossimo intervallo
+        List<UUID> changed = new ArrayList<>();
+        for (UUID imageId : List.copyOf(changedImages)) {
+            if (changedImages.remove(imageId) && watchers.containsKey(imageId)) {
+                changed.add(imageId);
+            }
+        }
+
+        Map<Subscriber, Map<UUID, Integer>> batches = new HashMap<>();
+        for (int from = 0; from < changed.size(); from += COUNT_QUERY_CHUNK) {
+            List<UUID> chunk = changed.subList(from, Math.min(from + COUNT_QUERY_CHUNK, changed.size()));
+            for (Object[] row : imageMetadataRepository.findLikeCountsByIdIn(chunk)) {
+                UUID imageId = (UUID) row[0];
+                int likeCount = ((Number) row[1]).intValue() + likeWriteBehindService.pendingDelta(imageId);
+                Set<Subscriber> imageWatchers = watchers.getOrDefault(imageId, Set.of());
+                for (Subscriber subscriber : imageWatchers) {
+                    batches.computeIfAbsent(subscriber, s -> new HashMap<>()).put(imageId, likeCount);
+                }
+            }
+        }
+
+        batches.forEach((subscriber, batch) -> {
+            if (!subscriber.client.offer("counts", batch)) {
+                logger.debug("Dropped slow like-count subscriber {}", subscriber.client.id());
+            }
+        });
+    }
+
+    /**
+     * Chiamato una sola volta da SseClient alla chiusura del client
+     */
+    private void close(Subscriber subscriber) {
+        subscribers.remove(subscriber.client.id());
+        subscriberCount.decrementAndGet();
+        watchLock.lock();
+        try {
+            subscriber.watched.forEach(imageId -> unwatch(imageId, subscriber));
+            subscriber.watched = Set.of();
+        } finally {
+            watchLock.unlock();
+        }
+    }
+
+    private void unwatch(UUID imageId, Subscriber subscriber) {
+        watchers.computeIfPresent(imageId, (id, imageWatchers) -> {
+            imageWatchers.remove(subscriber);
+            return imageWatchers.isEmpty() ? null : imageWatchers;
+        });
+    }
+}
@@ -5,21 +5,33 @@ import it.zaninifrancesco.minio_gallery.dto.LikeResponse;
 import it.zaninifrancesco.minio_gallery.entity.ImageLike;
 import it.zaninifrancesco.minio_gallery.entity.ImageMetadata;
 import it.zaninifrancesco.minio_gallery.entity.User;
+import it.zaninifrancesco.minio_gallery.event.LikeToggledEvent;
 import it.zaninifrancesco.minio_gallery.repository.ImageLikeRepository;
 import it.zaninifrancesco.minio_gallery.repository.ImageMetadataRepository;
 import it.zaninifrancesco.minio_gallery.repository.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.sql.Timestamp;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 @Transactional
@@ -34,33 +46,67 @@ public class LikeService {    @Autowired
     
     @Autowired
     private MinioService minioService;
+    
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+    
+    @Autowired
+    private LikeWriteBehindService likeWriteBehindService;
+    
+    @Autowired
+    private LikedImagesCacheService likedImagesCacheService;
+    
+    @Autowired
+    private LiveLeaderboardService liveLeaderboardService;
+    
+    @Autowired
+    private ClosedMonthLeaderboardService closedMonthLeaderboardService;
+    
+    @Value("${app.likes.leaderboard.max-limit:100}")
+    private int leaderboardMaxLimit;
+    
+    @Value("${app.likes.status.max-images:200}")
+    private int statusMaxImages;
       /**
      * Toggle like for an image by a user
+     * Il like viene inserito o rimosso e il contatore dell'immagine aggiornato con un'unica
+     * istruzione SQL, quindi due toggle concorrenti non possono violare il vincolo di unicità
      * @param imageId The image ID
-     * @param username The username
+     * @param userId The ID of the authenticated user
      * @return LikeResponse with current like status and count
      */
-    public LikeResponse toggleLike(UUID imageId, String username) {
-        ImageMetadata image = imageMetadataRepository.findById(imageId)
-                .orElseThrow(() -> new RuntimeException("Image not found"));
-        
-        User user = userRepository.findByUsername(username)
-                .orElseThrow(() -> new RuntimeException("User not found"));
-        
-        Optional<ImageLike> existingLike = imageLikeRepository.findByImageAndUser(image, user);
+    public LikeResponse toggleLike(UUID imageId, Long userId) {
+        LikeToggledEvent event;
+        if (likeWriteBehindService.isEnabled()) {
+            // Il write-behind verifica il blocco sotto il proprio lock
+            event = likeWriteBehindService.toggle(imageId, userId);
+        } else if (likeWriteBehindService.isBlocked(userId)) {
+            throw new IllegalStateException("User " + userId + " is being deleted");
+        } else {
+            List<Object[]> result = imageLikeRepository.toggleLike(imageId, userId, UUID.randomUUID());
+            if (result.isEmpty()) {
+                throw new RuntimeException("Image not found");
+            }
+            
+            Object[] row = result.get(0);
+            event = new LikeToggledEvent(imageId, userId, (Boolean) row[0], ((Number) row[1]).intValue(),
+                    toLocalDateTime(row[2]));
+            // L'ID della transazione arriva con il toggle: TransactionIdStamper non deve interrogare il database
+            event.setTransactionId(((Number) row[3]).longValue());
+        }
         
-        if (existingLike.isPresent()) {
-            // Unlike
-            imageLikeRepository.delete(existingLike.get());
-            return new LikeResponse(false, getLikeCount(imageId));
-        } else {            // Like
-            ImageLike like = new ImageLike();
-            like.setImage(image);
-            like.setUser(user);
-            like.setLikedAt(LocalDateTime.now());
-            imageLikeRepository.save(like);
-            return new LikeResponse(true, getLikeCount(imageId));
+        eventPublisher.publishEvent(event);
+        return new LikeResponse(event.isLiked(), event.getLikeCount());
+    }
+    
+    /**
+     * Converte un valore temporale restituito da una query nativa (Timestamp o LocalDateTime)
+     */
+    static LocalDateTime toLocalDateTime(Object value) {
+        if (value instanceof Timestamp timestamp) {
+            return timestamp.toLocalDateTime();
         }
+        return (LocalDateTime) value;
     }
     
     /**
@@ -69,48 +115,128 @@ public class LikeService {    @Autowired
      * @return The number of likes
      */
     public int getLikeCount(UUID imageId) {
-        return imageLikeRepository.countByImageId(imageId);
+        return imageMetadataRepository.findLikeCountById(imageId)
+                .map(count -> count + likeWriteBehindService.pendingDelta(imageId))
+                .orElse(0);
+    }
+    
+    /**
+     * Get like count for an already loaded image, including likes not yet written (write-behind mode)
+     * @param image The image
+     * @return The number of likes
+     */
+    public int getLikeCount(ImageMetadata image) {
+        return image.getLikeCount() + likeWriteBehindService.pendingDelta(image.getId());
     }
     
     /**
      * Check if an image is liked by a user
+     * Lo stato viene dalla cache per utente delle immagini con like, senza query per immagine
      * @param imageId The image ID
      * @param userId The user ID
      * @return true if liked, false otherwise
-     */    public boolean isLikedByUser(UUID imageId, String username) {
-        ImageMetadata image = imageMetadataRepository.findById(imageId)
-                .orElseThrow(() -> new RuntimeException("Image not found"));
-        
-        User user = userRepository.findByUsername(username)
-                .orElseThrow(() -> new RuntimeException("User not found"));
+     */
+    @Transactional(readOnly = true)
+    public boolean isLikedByUser(UUID imageId, Long userId) {
+        Boolean pendingState = likeWriteBehindService.pendingState(imageId, userId);
+        if (pendingState != null) {
+            return pendingState;
+        }
+        return likedImagesCacheService.isLiked(userId, imageId);
+    }
+    
+    /**
+     * Get the images liked by a user among the given ones (e.g. a page of results)
+     * @param userId The user ID
+     * @param imageIds The image IDs to check
+     * @return The subset of imageIds liked by the user
+     */
+    @Transactional(readOnly = true)
+    public Set<UUID> getLikedImageIds(Long userId, Collection<UUID> imageIds) {
+        Set<UUID> liked = likedImagesCacheService.likedAmong(userId, imageIds);
+        if (likeWriteBehindService.isEnabled()) {
+            for (UUID imageId : imageIds) {
+                Boolean pendingState = likeWriteBehindService.pendingState(imageId, userId);
+                if (Boolean.TRUE.equals(pendingState)) {
+                    liked.add(imageId);
+                } else if (Boolean.FALSE.equals(pendingState)) {
+                    liked.remove(imageId);
+                }
+            }
+        }
+        return liked;
+    }
+    
+    /**
+     * Get like count and liked flag for many images at once (e.g. the images visible in a grid)
+     * I contatori vengono da un'unica query sugli ID, i flag dalla cache delle immagini con like dell'utente
+     * @param imageIds The image IDs (at most max-images)
+     * @param userId The user ID, or null for anonymous callers
+     * @return LikeResponse for each existing image, keyed by image ID
+     */
+    @Transactional(readOnly = true)
+    public Map<UUID, LikeResponse> getLikeStatuses(Collection<UUID> imageIds, Long userId) {
+        if (imageIds.size() > statusMaxImages) {
+            throw new IllegalArgumentException("At most " + statusMaxImages + " images per request");
+        }
+        if (imageIds.isEmpty()) {
+            return Map.of();
+        }
         
-        return imageLikeRepository.existsByImageAndUser(image, user);
+        Set<UUID> uniqueIds = new HashSet<>(imageIds);
+        Set<UUID> liked = userId != null ? getLikedImageIds(userId, uniqueIds) : Set.of();
+        Map<UUID, LikeResponse> statuses = new LinkedHashMap<>();
+        for (Object[] row : imageMetadataRepository.findLikeCountsByIdIn(uniqueIds)) {
+            UUID imageId = (UUID) row[0];
+            int likeCount = ((Number) row[1]).intValue() + likeWriteBehindService.pendingDelta(imageId);
+            statuses.put(imageId, new LikeResponse(liked.contains(imageId), likeCount));
+        }
+        return statuses;
     }    /**
      * Get monthly leaderboard
+     * Le posizioni vengono dal rollup mensile (top-N su indice), i metadati delle immagini da
+     * un'unica query e gli URL presigned sono generati in un solo passaggio
      * @param year The year
      * @param month The month (1-12)
+     * @param limit Maximum number of entries (1 - max-limit)
      * @return List of LeaderboardEntry with image details and like counts
      */
     @Transactional(readOnly = true)
-    public List<LeaderboardEntry> getMonthlyLeaderboard(int year, int month) {
-        List<Object[]> rawResults = imageLikeRepository.getMonthlyLeaderboard(year, month);
-        return rawResults.stream()
-                .map(row -> {
-                    UUID imageId = (UUID) row[0];
-                    String title = (String) row[1];
-                    String authorUsername = (String) row[2];
-                    int likeCount = ((Number) row[3]).intValue();
-                    
-                    // Get the image metadata to retrieve the filename
-                    ImageMetadata imageMetadata = imageMetadataRepository.findById(imageId)
-                            .orElseThrow(() -> new RuntimeException("Image not found"));
-                    
-                    // Generate the image URL
-                    String imageUrl = minioService.generatePresignedUrl(imageMetadata.getFileName(), 30);
-                    
-                    return new LeaderboardEntry(imageId, title, imageUrl, authorUsername, likeCount);
-                })
-                .toList();
+    public List<LeaderboardEntry> getMonthlyLeaderboard(int year, int month, int limit) {
+        if (limit < 1 || limit > leaderboardMaxLimit) {
+            throw new IllegalArgumentException("Limit must be between 1 and " + leaderboardMaxLimit);
+        }
+        
+        // I mesi chiusi vengono serviti dalla classifica congelata, il mese corrente da quella live in memoria
+        YearMonth requested = YearMonth.of(year, month);
+        closedMonthLeaderboardService.validateMonth(requested);
+        if (closedMonthLeaderboardService.isClosed(requested)) {
+            return closedMonthLeaderboardService.getLeaderboard(requested, limit);
+        }
+        List<LiveLeaderboardService.RankedImage> ranking;
+        if (liveLeaderboardService.serves(requested)) {
+            ranking = liveLeaderboardService.top(limit);
+        } else {
+            ranking = imageLikeRepository.findMonthlyTopImages(year, month, limit).stream()
+                    .map(row -> new LiveLeaderboardService.RankedImage((UUID) row[0], ((Number) row[1]).intValue()))
+                    .toList();
+        }
+        List<UUID> imageIds = ranking.stream().map(LiveLeaderboardService.RankedImage::imageId).toList();
+        Map<UUID, ImageMetadata> images = imageMetadataRepository.findAllWithUserByIdIn(imageIds).stream()
+                .collect(Collectors.toMap(ImageMetadata::getId, Function.identity()));
+        Map<String, String> imageUrls = minioService.generatePresignedUrls(
+                images.values().stream().map(ImageMetadata::getFileName).toList(), 30);
+        
+        List<LeaderboardEntry> leaderboard = new ArrayList<>();
+        for (LiveLeaderboardService.RankedImage entry : ranking) {
+            ImageMetadata image = images.get(entry.imageId());
+            if (image == null) {
+                continue;
+            }
+            leaderboard.add(new LeaderboardEntry(image.getId(), image.getTitle(),
+                    imageUrls.get(image.getFileName()), image.getUser().getUsername(), entry.likes()));
+        }
+        return leaderboard;
     }
     
     /**
@@ -118,17 +244,35 @@ public class LikeService {    @Autowired
      * @param year The year
      * @param month The month (1-12)
      * @return The image with most likes that month
-     */    @Transactional(readOnly = true)
+     */
+    @Transactional(readOnly = true)
     public Optional<ImageMetadata> getPhotoOfMonth(int year, int month) {
-        Pageable pageable = PageRequest.of(0, 1);
-        List<UUID> result = imageLikeRepository.getPhotoOfMonth(year, month, pageable);
+        closedMonthLeaderboardService.validateMonth(YearMonth.of(year, month));
+        List<Object[]> result = imageLikeRepository.findMonthlyTopImages(year, month, 1);
         if (!result.isEmpty()) {
-            UUID imageId = result.get(0);
+            UUID imageId = (UUID) result.get(0)[0];
             return imageMetadataRepository.findById(imageId);
         }
         return Optional.empty();
     }
     
+    /**
+     * Indica se il mese è chiuso: classifica e foto del mese non cambiano più
+     */
+    public boolean isClosedMonth(int year, int month) {
+        return closedMonthLeaderboardService.isClosed(YearMonth.of(year, month));
+    }
+    
+    /**
+     * Foto del mese di un mese chiuso dalla classifica congelata, con i like ricevuti in quel mese
+     * @param year The year
+     * @param month The month (1-12)
+     * @return The winning entry, if any image was liked that month
+     */
+    public Optional<LeaderboardEntry> getClosedPhotoOfMonth(int year, int month) {
+        return closedMonthLeaderboardService.getPhotoOfMonth(YearMonth.of(year, month));
+    }
+    
     /**
      * Get current month's photo of the month
      * @return The image with most likes this month
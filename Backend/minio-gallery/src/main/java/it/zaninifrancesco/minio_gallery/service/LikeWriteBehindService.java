@@ -0,0 +1,696 @@
+package it.zaninifrancesco.minio_gallery.service;
+
+import it.zaninifrancesco.minio_gallery.event.LikeToggledEvent;
+import it.zaninifrancesco.minio_gallery.repository.ImageLikeRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Modalità write-behind per i like delle immagini virali
+ *
+ * Ogni toggle viene registrato in un write-ahead log su disco locale e applicato subito allo stato
+ * in memoria (stato per coppia immagine/utente e delta del contatore per immagine), senza scrivere
+ * su image_likes. Un job periodico scrive a blocchi lo stato accumulato: inserimenti con
+ * ON CONFLICT DO NOTHING ed eliminazioni restituiscono le righe davvero cambiate, da cui vengono
+ * applicate le sole differenze nette a like_count, rollup mensile e like ricevuti dei proprietari.
+ * Un toggle viene confermato solo dopo che il suo record è stato forzato su disco: i toggle concorrenti
+ * condividono lo stesso fsync (group commit), che avviene fuori dai lock per coppia.
+ * Sono operazioni idempotenti, quindi dopo un crash i segmenti del log non ancora eliminati
+ * vengono semplicemente riapplicati all'avvio.
+ */
+@Service
+@DependsOn("databaseSchemaInitializer") // la riapplicazione del log scrive su user_stats e monthly_image_likes
+public class LikeWriteBehindService {
+
+    private static final Logger logger = LoggerFactory.getLogger(LikeWriteBehindService.class);
+
+    private static final int LOG_MAGIC = 0x4D474C57; // "MGLW"
+    private static final int LOG_VERSION = 1;
+
+    // sequenza, ID immagine (2 long), ID utente, stato, istante del toggle
+    private static final int RECORD_BYTES = Long.BYTES * 5 + 1;
+
+    private static final Pattern SEGMENT_NAME = Pattern.compile("likes-(\\d+)\\.wal");
+
+    // Lock per coppia immagine/utente: toggle diversi sulla stessa immagine non si bloccano a vicenda
+    private static final int STRIPES = 64;
+
+    // Righe per istruzione di inserimento o eliminazione durante il flush
+    private static final int WRITE_CHUNK = 500;
+
+    @Autowired
+    private ImageLikeRepository imageLikeRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${app.likes.write-behind.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.likes.write-behind.wal-dir:data/likes-wal}")
+    private String walDir;
+
+    /**
+     * Coppia immagine/utente
+     */
+    private record LikeKey(UUID imageId, Long userId) {
+    }
+
+    /**
+     * Riga del rollup mensile
+     */
+    private record MonthKey(int year, int month, UUID imageId) {
+    }
+
+    /**
+     * Stato non ancora scritto su database di una coppia immagine/utente
+     *
+     * @param liked stato richiesto dall'ultimo toggle
+     * @param storedLiked stato presente su database quando la coppia è entrata in memoria
+     * @param sequence numero di sequenza dell'ultimo record nel log
+     * @param likedAtMillis istante dell'ultimo toggle
+     */
+    private record PendingLike(boolean liked, boolean storedLiked, long sequence, long likedAtMillis) {
+
+        // Contributo della coppia al contatore dell'immagine rispetto al database
+        int delta() {
+            return (liked ? 1 : 0) - (storedLiked ? 1 : 0);
+        }
+    }
+
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+
+    private final Map<LikeKey, PendingLike> pending = new ConcurrentHashMap<>();
+
+    // Delta dei contatori per immagine; una voce che torna a zero viene rimossa
+    private final Map<UUID, Integer> deltas = new ConcurrentHashMap<>();
+
+    // Segmento corrente del log e segmento chiuso dall'ultima rotazione non ancora forzato su disco, protetti da logLock
+    private final ReentrantLock logLock = new ReentrantLock();
+    private FileChannel segment;
+    private FileChannel retiredSegment;
+    private long segmentIndex;
+    private long sequence;
+
+    // Un solo fsync alla volta; i record fino a durableSequence sono già su disco
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private volatile long durableSequence;
+
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    // Utenti in corso di eliminazione: i loro toggle vengono rifiutati (anche senza write-behind, vedi LikeService)
+    private final Set<Long> blockedUsers = ConcurrentHashMap.newKeySet();
+
+    public LikeWriteBehindService() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Riapplica i segmenti rimasti da un'esecuzione precedente (anche con la modalità ora disattivata)
+     * e apre un nuovo segmento
+     */
+    @PostConstruct
+    public void init() throws IOException {
+        Path directory = Paths.get(walDir).toAbsolutePath();
+        TreeMap<Long, Path> segments = listSegments(directory);
+        if (!segments.isEmpty()) {
+            recover(segments);
+            segmentIndex = segments.lastKey();
+        }
+
+        if (enabled) {
+            Files.createDirectories(directory);
+            segment = openSegment(++segmentIndex);
+            logger.info("Like write-behind enabled, write-ahead log in {}", directory);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Inverte il like dell'utente sull'immagine registrandolo nel log e nello stato in memoria
+     *
+     * @return evento del toggle, con il contatore comprensivo delle modifiche non ancora scritte
+     */
+    public LikeToggledEvent toggle(UUID imageId, Long userId) {
+        LikeKey key = new LikeKey(imageId, userId);
+        ReentrantLock stripe = stripeFor(key);
+        long recordSequence;
+        LikeToggledEvent event;
+        stripe.lock();
+        try {
+            // Verificato sotto lo stripe: blockUser vede tutti i toggle accettati prima del blocco
+            if (blockedUsers.contains(userId)) {
+                throw new IllegalStateException("User " + userId + " is being deleted");
+            }
+            List<Object[]> stored = imageLikeRepository.findLikeCountAndState(imageId, userId);
+            if (stored.isEmpty()) {
+                throw new RuntimeException("Image not found");
+            }
+            int storedCount = ((Number) stored.get(0)[0]).intValue();
+            LocalDateTime storedLikedAt = LikeService.toLocalDateTime(stored.get(0)[1]);
+            boolean storedLiked = storedLikedAt != null;
+
+            // Lo stato in memoria prevale sul database, che può non riflettere ancora l'ultimo toggle
+            PendingLike current = pending.get(key);
+            boolean liked = current != null ? !current.liked() : !storedLiked;
+            boolean base = current != null ? current.storedLiked() : storedLiked;
+
+            long now = System.currentTimeMillis();
+            recordSequence = append(imageId, userId, liked, now);
+
+            PendingLike next = new PendingLike(liked, base, recordSequence, now);
+            pending.put(key, next);
+            int change = next.delta() - (current != null ? current.delta() : 0);
+            Integer delta = deltas.merge(imageId, change, LikeWriteBehindService::sumOrRemove);
+
+            // Per un unlike la data è quella del like rimosso, in memoria o su database
+            LocalDateTime likedAt;
+            if (liked) {
+                likedAt = toLocalDateTime(now);
+            } else if (current != null) {
+                likedAt = toLocalDateTime(current.likedAtMillis());
+            } else {
+                likedAt = storedLikedAt;
+            }
+
+            int likeCount = Math.max(0, storedCount + (delta != null ? delta : 0));
+            event = new LikeToggledEvent(imageId, userId, liked, likeCount, likedAt);
+        } finally {
+            stripe.unlock();
+        }
+
+        // Il toggle è confermato solo quando il record è su disco
+        try {
+            sync(recordSequence);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to sync like write-ahead log", e);
+        }
+        return event;
+    }
+
+    /**
+     * Rifiuta i nuovi toggle dell'utente e scrive su database quelli già accettati, così che
+     * l'eliminazione dei suoi like li trovi su image_likes e ne notifichi la rimozione
+     *
+     * @throws IllegalStateException se i like dell'utente non sono stati scritti (flush fallito)
+     */
+    public void blockUser(Long userId) {
+        blockedUsers.add(userId);
+        if (!enabled) {
+            return;
+        }
+
+        // Il flush acquisisce tutti gli stripe, quindi include ogni toggle accettato prima del blocco
+        flush();
+        if (pending.keySet().stream().anyMatch(key -> key.userId().equals(userId))) {
+            throw new IllegalStateException("Failed to flush pending likes of user " + userId);
+        }
+    }
+
+    /**
+     * Accetta di nuovo i toggle dell'utente (eliminazione terminata o fallita)
+     */
+    public void unblockUser(Long userId) {
+        blockedUsers.remove(userId);
+    }
+
+    public boolean isBlocked(Long userId) {
+        return blockedUsers.contains(userId);
+    }
+
+    /**
+     * Stato del like non ancora scritto su database, oppure null se il database è aggiornato
+     */
+    public Boolean pendingState(UUID imageId, Long userId) {
+        PendingLike current = pending.get(new LikeKey(imageId, userId));
+        return current != null ? current.liked() : null;
+    }
+
+    /**
+     * Variazione del contatore di like dell'immagine non ancora scritta su database
+     */
+    public int pendingDelta(UUID imageId) {
+        return deltas.getOrDefault(imageId, 0);
+    }
+
+    /**
+     * Scrive su database lo stato accumulato ed elimina i segmenti del log già applicati
+     */
+    @Scheduled(fixedDelayString = "${app.likes.write-behind.flush-interval-ms:1000}")
+    public void flush() {
+        if (!enabled) {
+            return;
+        }
+
+        flushLock.lock();
+        try {
+            Map<LikeKey, PendingLike> snapshot;
+            long closedSegment;
+
+            // Un fsync fallito al flush precedente lascia da forzare il segmento chiuso allora
+            try {
+                if (hasRetiredSegment()) {
+                    sync(Long.MAX_VALUE);
+                }
+            } catch (IOException e) {
+                logger.error("Failed to sync like write-ahead log, flush postponed", e);
+                return;
+            }
+
+            // Con tutti gli stripe acquisiti lo snapshot corrisponde esattamente ai segmenti chiusi
+            lockAllStripes();
+            try {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                snapshot = new HashMap<>(pending);
+                closedSegment = rotate();
+            } catch (IOException e) {
+                logger.error("Failed to rotate like write-ahead log, flush postponed", e);
+                return;
+            } finally {
+                unlockAllStripes();
+            }
+
+            // L'fsync del segmento chiuso avviene fuori dagli stripe, senza bloccare i toggle;
+            // l'ultimo record del segmento è quello con la sequenza più alta nello snapshot
+            try {
+                sync(snapshot.values().stream().mapToLong(PendingLike::sequence).max().orElse(0));
+            } catch (IOException e) {
+                logger.error("Failed to sync like write-ahead log, flush postponed", e);
+                return;
+            }
+
+            try {
+                writeToDatabase(snapshot);
+            } catch (RuntimeException e) {
+                // Stato e segmenti restano: il prossimo flush li riscrive
+                logger.error("Failed to flush {} pending likes", snapshot.size(), e);
+                return;
+            }
+
+            deleteSegmentsUpTo(closedSegment);
+            settle(snapshot);
+            logger.debug("Flushed {} pending likes", snapshot.size());
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (!enabled) {
+            return;
+        }
+
+        flush();
+        logLock.lock();
+        try {
+            long size = segment.size();
+            segment.close();
+            if (size <= Integer.BYTES * 2) {
+                Files.deleteIfExists(segmentPath(segmentIndex));
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to close like write-ahead log", e);
+        } finally {
+            logLock.unlock();
+        }
+    }
+
+    /**
+     * Toglie dallo stato in memoria le coppie scritte; quelle modificate nel frattempo restano,
+     * con lo stato appena scritto come nuovo riferimento per il delta
+     */
+    private void settle(Map<LikeKey, PendingLike> flushed) {
+        for (Map.Entry<LikeKey, PendingLike> entry : flushed.entrySet()) {
+            LikeKey key = entry.getKey();
+            PendingLike written = entry.getValue();
+            ReentrantLock stripe = stripeFor(key);
+            stripe.lock();
+            try {
+                PendingLike current = pending.get(key);
+                if (current.sequence() == written.sequence()) {
+                    pending.remove(key);
+                    deltas.merge(key.imageId(), -written.delta(), LikeWriteBehindService::sumOrRemove);
+                } else {
+                    PendingLike rebased = new PendingLike(current.liked(), written.liked(),
+                            current.sequence(), current.likedAtMillis());
+                    pending.put(key, rebased);
+                    deltas.merge(key.imageId(), rebased.delta() - current.delta(), LikeWriteBehindService::sumOrRemove);
+                }
+            } finally {
+                stripe.unlock();
+            }
+        }
+    }
+
+    /**
+     * Applica lo stato finale di ogni coppia in un'unica transazione; inserimenti su immagini
+     * o utenti eliminati nel frattempo vengono ignorati. Contatori e rollup ricevono le differenze
+     * nette delle righe davvero inserite o eliminate, quindi il costo dipende dalla dimensione del blocco
+     * e non dai like totali delle immagini, e un like già rimosso da un'altra transazione non viene contato
+     */
+    private void writeToDatabase(Map<LikeKey, PendingLike> states) {
+        List<Object[]> inserts = new ArrayList<>();
+        List<Object[]> deletes = new ArrayList<>();
+        for (Map.Entry<LikeKey, PendingLike> entry : states.entrySet()) {
+            LikeKey key = entry.getKey();
+            PendingLike state = entry.getValue();
+            if (state.liked()) {
+                inserts.add(new Object[]{UUID.randomUUID(), new Timestamp(state.likedAtMillis()), key.imageId(), key.userId()});
+            } else {
+                deletes.add(new Object[]{key.imageId(), key.userId()});
+            }
+        }
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            Map<UUID, Integer> imageDeltas = new HashMap<>();
+            Map<MonthKey, Integer> monthDeltas = new HashMap<>();
+
+            for (int from = 0; from < inserts.size(); from += WRITE_CHUNK) {
+                List<Object[]> chunk = inserts.subList(from, Math.min(from + WRITE_CHUNK, inserts.size()));
+                List<Map<String, Object>> inserted = jdbcTemplate.queryForList(
+                        "INSERT INTO image_likes (id, liked_at, image_id, user_id) " +
+                        "SELECT v.id, v.liked_at, v.image_id, v.user_id FROM (VALUES " +
+                        placeholders(chunk.size(), "(CAST(? AS uuid), CAST(? AS timestamp), CAST(? AS uuid), CAST(? AS bigint))") +
+                        ") AS v(id, liked_at, image_id, user_id) " +
+                        "WHERE EXISTS (SELECT 1 FROM image_metadata im WHERE im.id = v.image_id) " +
+                        "AND EXISTS (SELECT 1 FROM users u WHERE u.id = v.user_id) " +
+                        "ON CONFLICT (image_id, user_id) DO NOTHING RETURNING image_id, liked_at",
+                        flatten(chunk));
+                addChanges(inserted, 1, imageDeltas, monthDeltas);
+            }
+
+            for (int from = 0; from < deletes.size(); from += WRITE_CHUNK) {
+                List<Object[]> chunk = deletes.subList(from, Math.min(from + WRITE_CHUNK, deletes.size()));
+                List<Map<String, Object>> deleted = jdbcTemplate.queryForList(
+                        "DELETE FROM image_likes l USING (VALUES " +
+                        placeholders(chunk.size(), "(CAST(? AS uuid), CAST(? AS bigint))") +
+                        ") AS d(image_id, user_id) " +
+                        "WHERE l.image_id = d.image_id AND l.user_id = d.user_id RETURNING l.image_id, l.liked_at",
+                        flatten(chunk));
+                addChanges(deleted, -1, imageDeltas, monthDeltas);
+            }
+
+            List<Object[]> imageUpdates = imageDeltas.entrySet().stream()
+                    .filter(entry -> entry.getValue() != 0)
+                    .map(entry -> new Object[]{entry.getValue(), entry.getKey()})
+                    .toList();
+            List<Object[]> monthUpdates = monthDeltas.entrySet().stream()
+                    .filter(entry -> entry.getValue() != 0)
+                    .map(entry -> new Object[]{entry.getKey().year(), entry.getKey().month(),
+                            entry.getKey().imageId(), entry.getValue()})
+                    .toList();
+
+            jdbcTemplate.batchUpdate(
+                    "UPDATE image_metadata SET like_count = like_count + ? WHERE id = ?", imageUpdates);
+            jdbcTemplate.batchUpdate(
+                    "UPDATE user_stats us SET likes_received = us.likes_received + ? " +
+                    "FROM image_metadata im WHERE im.id = ? AND us.user_id = im.user_id", imageUpdates);
+            jdbcTemplate.batchUpdate(
+                    "INSERT INTO monthly_image_likes (year, month, image_id, likes) VALUES (?, ?, ?, ?) " +
+                    "ON CONFLICT (year, month, image_id) DO UPDATE SET likes = monthly_image_likes.likes + EXCLUDED.likes",
+                    monthUpdates);
+        });
+    }
+
+    /**
+     * Somma le righe (ID immagine, data del like) inserite o eliminate alle differenze per immagine e per mese
+     */
+    private static void addChanges(List<Map<String, Object>> rows, int sign,
+                                   Map<UUID, Integer> imageDeltas, Map<MonthKey, Integer> monthDeltas) {
+        for (Map<String, Object> row : rows) {
+            UUID imageId = (UUID) row.get("image_id");
+            LocalDateTime likedAt = LikeService.toLocalDateTime(row.get("liked_at"));
+            imageDeltas.merge(imageId, sign, Integer::sum);
+            monthDeltas.merge(new MonthKey(likedAt.getYear(), likedAt.getMonthValue(), imageId), sign, Integer::sum);
+        }
+    }
+
+    private static String placeholders(int rows, String row) {
+        return String.join(", ", Collections.nCopies(rows, row));
+    }
+
+    private static Object[] flatten(List<Object[]> rows) {
+        return rows.stream().flatMap(Arrays::stream).toArray();
+    }
+
+    private long append(UUID imageId, Long userId, boolean liked, long timestamp) {
+        logLock.lock();
+        try {
+            long recordSequence = ++sequence;
+            ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES)
+                    .putLong(recordSequence)
+                    .putLong(imageId.getMostSignificantBits())
+                    .putLong(imageId.getLeastSignificantBits())
+                    .putLong(userId)
+                    .put((byte) (liked ? 1 : 0))
+                    .putLong(timestamp)
+                    .flip();
+            while (record.hasRemaining()) {
+                segment.write(record);
+            }
+            return recordSequence;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to record like in write-ahead log", e);
+        } finally {
+            logLock.unlock();
+        }
+    }
+
+    /**
+     * Forza su disco i record fino alla sequenza indicata (e quelli scritti nel frattempo)
+     * Chi attende il lock trova spesso il proprio record già forzato da un fsync precedente
+     */
+    private void sync(long upTo) throws IOException {
+        if (durableSequence >= upTo) {
+            return;
+        }
+        syncLock.lock();
+        try {
+            if (durableSequence >= upTo) {
+                return;
+            }
+            FileChannel current;
+            FileChannel retired;
+            long target;
+            logLock.lock();
+            try {
+                current = segment;
+                retired = retiredSegment;
+                target = sequence;
+            } finally {
+                logLock.unlock();
+            }
+
+            // Il segmento chiuso dall'ultima rotazione contiene i record precedenti a quelli del corrente
+            if (retired != null) {
+                retired.force(false);
+                retired.close();
+                logLock.lock();
+                try {
+                    retiredSegment = null;
+                } finally {
+                    logLock.unlock();
+                }
+            }
+            current.force(false);
+            durableSequence = target;
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * Apre un nuovo segmento e passa il corrente a sync, che lo forza su disco e lo chiude
+     *
+     * @return indice del segmento chiuso
+     */
+    private long rotate() throws IOException {
+        logLock.lock();
+        try {
+            FileChannel next = openSegment(segmentIndex + 1);
+            retiredSegment = segment;
+            segment = next;
+            return segmentIndex++;
+        } finally {
+            logLock.unlock();
+        }
+    }
+
+    private boolean hasRetiredSegment() {
+        logLock.lock();
+        try {
+            return retiredSegment != null;
+        } finally {
+            logLock.unlock();
+        }
+    }
+
+    private FileChannel openSegment(long index) throws IOException {
+        FileChannel channel = FileChannel.open(segmentPath(index),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        ByteBuffer header = ByteBuffer.allocate(Integer.BYTES * 2).putInt(LOG_MAGIC).putInt(LOG_VERSION).flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        return channel;
+    }
+
+    /**
+     * Elimina i segmenti applicati dal più vecchio; se un'eliminazione fallisce si ferma,
+     * così all'avvio non viene mai riapplicato un segmento più vecchio dopo uno più recente
+     */
+    private void deleteSegmentsUpTo(long lastIndex) {
+        try {
+            for (Map.Entry<Long, Path> entry : listSegments(Paths.get(walDir).toAbsolutePath()).entrySet()) {
+                if (entry.getKey() > lastIndex) {
+                    break;
+                }
+                Files.delete(entry.getValue());
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to delete flushed like write-ahead log segments", e);
+        }
+    }
+
+    private void recover(TreeMap<Long, Path> segments) throws IOException {
+        Map<LikeKey, PendingLike> states = new LinkedHashMap<>();
+        int records = 0;
+        for (Path path : segments.values()) {
+            records += readSegment(path, states);
+        }
+
+        try {
+            writeToDatabase(states);
+        } catch (RuntimeException e) {
+            throw new IllegalStateException("Failed to replay like write-ahead log in " + walDir, e);
+        }
+        for (Path path : segments.values()) {
+            Files.delete(path);
+        }
+        logger.info("Like write-ahead log replayed: {} records from {} segments, {} likes applied",
+                records, segments.size(), states.size());
+    }
+
+    /**
+     * Legge i record di un segmento; un record troncato in coda (scrittura interrotta da un crash) viene ignorato
+     */
+    private int readSegment(Path path, Map<LikeKey, PendingLike> states) throws IOException {
+        int records = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != LOG_MAGIC || in.readInt() != LOG_VERSION) {
+                throw new IOException("Invalid like write-ahead log segment: " + path);
+            }
+            while (true) {
+                long recordSequence = in.readLong();
+                UUID imageId = new UUID(in.readLong(), in.readLong());
+                long userId = in.readLong();
+                boolean liked = in.readBoolean();
+                long timestamp = in.readLong();
+
+                LikeKey key = new LikeKey(imageId, userId);
+                states.remove(key);
+                states.put(key, new PendingLike(liked, liked, recordSequence, timestamp));
+                records++;
+            }
+        } catch (EOFException e) {
+            return records;
+        }
+    }
+
+    private TreeMap<Long, Path> listSegments(Path directory) throws IOException {
+        TreeMap<Long, Path> segments = new TreeMap<>();
+        if (!Files.isDirectory(directory)) {
+            return segments;
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.collect(Collectors.toList())) {
+                Matcher matcher = SEGMENT_NAME.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    segments.put(Long.parseLong(matcher.group(1)), file);
+                }
+            }
+        }
+        return segments;
+    }
+
+    private Path segmentPath(long index) {
+        return Paths.get(walDir).toAbsolutePath().resolve(String.format("likes-%020d.wal", index));
+    }
+
+    private ReentrantLock stripeFor(LikeKey key) {
+        return stripes[Math.floorMod(key.hashCode(), STRIPES)];
+    }
+
+    private void lockAllStripes() {
+        for (ReentrantLock stripe : stripes) {
+            stripe.lock();
+        }
+    }
+
+    private void unlockAllStripes() {
+        for (ReentrantLock stripe : stripes) {
+            stripe.unlock();
+        }
+    }
+
+    private static LocalDateTime toLocalDateTime(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
+    }
+
+    private static Integer sumOrRemove(Integer current, Integer change) {
+        int sum = current + change;
+        return sum == 0 ? null : sum;
+    }
+}
@@ -0,0 +1,220 @@
+package it.zaninifrancesco.minio_gallery.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import it.zaninifrancesco.minio_gallery.event.LikeToggledEvent;
+import it.zaninifrancesco.minio_gallery.repository.ImageLikeRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Cache per utente degli ID delle immagini a cui ha messo like
+ *
+ * L'insieme viene caricato con una sola query al primo accesso e aggiornato a ogni toggle,
+ * così il flag likedByCurrentUser di un'intera pagina si calcola in memoria.
+ * La cache è limitata nel numero di utenti e le voci scadono se non usate.
+ */
+@Service
+public class LikedImagesCacheService {
+
+    @Autowired
+    private ImageLikeRepository imageLikeRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.likes.user-cache.max-users:10000}")
+    private long maxUsers;
+
+    @Value("${app.likes.user-cache.expire-after-access-minutes:30}")
+    private long expireAfterAccessMinutes;
+
+    private Cache<Long, LikedImageSet> cache;
+
+    /**
+     * Insieme di UUID a indirizzamento aperto su un array di long (due slot per ID),
+     * senza oggetti per elemento; gli accessi sono serializzati da un lock per utente
+     */
+    static final class LikedImageSet {
+
+        private static final long HASH_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private long[] slots;
+        private int size;
+
+        LikedImageSet(Collection<UUID> imageIds) {
+            slots = new long[2 * capacityFor(imageIds.size())];
+            for (UUID imageId : imageIds) {
+                insert(imageId.getMostSignificantBits(), imageId.getLeastSignificantBits());
+            }
+        }
+
+        boolean contains(UUID imageId) {
+            lock.lock();
+            try {
+                return find(imageId.getMostSignificantBits(), imageId.getLeastSignificantBits()) >= 0;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void update(UUID imageId, boolean liked) {
+            long most = imageId.getMostSignificantBits();
+            long least = imageId.getLeastSignificantBits();
+            lock.lock();
+            try {
+                if (liked) {
+                    if (find(most, least) < 0) {
+                        if (2 * (size + 1) > slots.length / 2) {
+                            grow();
+                        }
+                        insert(most, least);
+                    }
+                } else {
+                    delete(most, least);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private int find(long most, long least) {
+            int mask = slots.length / 2 - 1;
+            for (int slot = home(most, least, mask); ; slot = (slot + 1) & mask) {
+                if (isEmpty(slot)) {
+                    return -1;
+                }
+                if (slots[2 * slot] == most && slots[2 * slot + 1] == least) {
+                    return slot;
+                }
+            }
+        }
+
+        private void insert(long most, long least) {
+            int mask = slots.length / 2 - 1;
+            int slot = home(most, least, mask);
+            while (!isEmpty(slot)) {
+                if (slots[2 * slot] == most && slots[2 * slot + 1] == least) {
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+            slots[2 * slot] = most;
+            slots[2 * slot + 1] = least;
+            size++;
+        }
+
+        /**
+         * Eliminazione con spostamento all'indietro: nessuna tombstone, le sequenze di probing restano compatte
+         */
+        private void delete(long most, long least) {
+            int hole = find(most, least);
+            if (hole < 0) {
+                return;
+            }
+            int mask = slots.length / 2 - 1;
+            for (int slot = (hole + 1) & mask; !isEmpty(slot); slot = (slot + 1) & mask) {
+                int home = home(slots[2 * slot], slots[2 * slot + 1], mask);
+                // L'elemento può riempire il buco solo se la sua posizione naturale non cade in (hole, slot]
+                boolean reachable = hole <= slot ? (home <= hole || home > slot) : (home <= hole && home > slot);
+                if (reachable) {
+                    slots[2 * hole] = slots[2 * slot];
+                    slots[2 * hole + 1] = slots[2 * slot + 1];
+                    hole = slot;
+                }
+            }
+            slots[2 * hole] = 0;
+            slots[2 * hole + 1] = 0;
+            size--;
+        }
+
+        private void grow() {
+            long[] previous = slots;
+            slots = new long[previous.length * 2];
+            size = 0;
+            for (int i = 0; i < previous.length; i += 2) {
+                if (previous[i] != 0 || previous[i + 1] != 0) {
+                    insert(previous[i], previous[i + 1]);
+                }
+            }
+        }
+
+        // Lo slot vuoto è l'UUID nullo, mai usato come ID di un'immagine
+        private boolean isEmpty(int slot) {
+            return slots[2 * slot] == 0 && slots[2 * slot + 1] == 0;
+        }
+
+        private static int home(long most, long least, int mask) {
+            return (int) (((most ^ least) * HASH_MULTIPLIER) >>> 33) & mask;
+        }
+
+        // Potenza di due con fattore di carico massimo 0.5
+        private static int capacityFor(int elements) {
+            return Math.max(16, Integer.highestOneBit(Math.max(1, elements * 2 - 1)) << 1);
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        cache = Caffeine.newBuilder()
+                .maximumSize(maxUsers)
+                .expireAfterAccess(Duration.ofMinutes(expireAfterAccessMinutes))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "likes.user");
+    }
+
+    /**
+     * Indica se l'utente ha messo like all'immagine
+     */
+    public boolean isLiked(Long userId, UUID imageId) {
+        return likedImages(userId).contains(imageId);
+    }
+
+    /**
+     * Sottoinsieme delle immagini indicate a cui l'utente ha messo like
+     */
+    public Set<UUID> likedAmong(Long userId, Collection<UUID> imageIds) {
+        LikedImageSet liked = likedImages(userId);
+        Set<UUID> result = new HashSet<>();
+        for (UUID imageId : imageIds) {
+            if (liked.contains(imageId)) {
+                result.add(imageId);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Aggiorna l'insieme dell'utente solo se è in cache. Se il caricamento è in corso, computeIfPresent
+     * attende che termini, quindi un caricamento che ha letto lo stato precedente al toggle viene corretto
+     */
+    @TransactionalEventListener
+    public void onLikeToggled(LikeToggledEvent event) {
+        cache.asMap().computeIfPresent(event.getUserId(), (userId, liked) -> {
+            liked.update(event.getImageId(), event.isLiked());
+            return liked;
+        });
+    }
+
+    private LikedImageSet likedImages(Long userId) {
+        return cache.get(userId, id -> {
+            List<UUID> imageIds = imageLikeRepository.findImageIdsByUserId(id);
+            return new LikedImageSet(imageIds);
+        });
+    }
+}
@@ -0,0 +1,312 @@
+package it.zaninifrancesco.minio_gallery.service;
+
+import it.zaninifrancesco.minio_gallery.config.ThreadingConfig;
+import it.zaninifrancesco.minio_gallery.dto.LeaderboardRankChange;
+import it.zaninifrancesco.minio_gallery.event.DomainEvent;
+import it.zaninifrancesco.minio_gallery.event.ImageDeletedEvent;
+import it.zaninifrancesco.minio_gallery.event.LikeToggledEvent;
+import it.zaninifrancesco.minio_gallery.repository.ImageLikeRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Classifica live dei like del mese corrente, mantenuta in memoria
+ *
+ * Le immagini sono ordinate in una skip list per (like decrescenti, ID) con una mappa ID → like
+ * per trovare la voce da spostare: ogni toggle costa O(log n) e le prime posizioni si leggono
+ * senza query. All'avvio la classifica viene caricata dal rollup mensile; al cambio di mese riparte
+ * vuota. Le variazioni di posizione vengono accumulate e accodate ai client SSE al massimo
+ * una volta per intervallo; l'invio avviene sull'executor SSE, quindi un client lento non blocca
+ * il thread dei job schedulati.
+ */
+@Service
+public class LiveLeaderboardService {
+
+    private static final Logger logger = LoggerFactory.getLogger(LiveLeaderboardService.class);
+
+    /**
+     * Immagine in classifica con il numero di like del mese
+     */
+    public record RankedImage(UUID imageId, int likes) {
+    }
+
+    // Stesso ordine della classifica su database: like decrescenti, poi ID come uuid di PostgreSQL (byte senza segno)
+    private static final Comparator<RankedImage> RANKING_ORDER = Comparator
+            .comparingInt((RankedImage entry) -> -entry.likes())
+            .thenComparing((a, b) -> Long.compareUnsigned(a.imageId().getMostSignificantBits(), b.imageId().getMostSignificantBits()))
+            .thenComparing((a, b) -> Long.compareUnsigned(a.imageId().getLeastSignificantBits(), b.imageId().getLeastSignificantBits()));
+
+    @Autowired
+    private ImageLikeRepository imageLikeRepository;
+
+    @Autowired
+    private SnapshotReader snapshotReader;
+
+    @Autowired
+    @Qualifier(ThreadingConfig.FAN_OUT_EXECUTOR)
+    private ExecutorService fanOutExecutor;
+
+    @Autowired
+    @Qualifier(ThreadingConfig.SSE_EXECUTOR)
+    private ExecutorService sseExecutor;
+
+    @Value("${app.likes.leaderboard.stream-size:10}")
+    private int streamSize;
+
+    @Value("${app.likes.leaderboard.stream-timeout-ms:1800000}")
+    private long streamTimeoutMs;
+
+    @Value("${app.likes.leaderboard.stream-queue-capacity:16}")
+    private int streamQueueCapacity;
+
+    @Value("${app.likes.leaderboard.stream-max-subscribers:1000}")
+    private int streamMaxSubscribers;
+
+    // Le modifiche sono serializzate dal lock; le letture scorrono la skip list senza lock
+    private final ReentrantLock updateLock = new ReentrantLock();
+    private final ConcurrentSkipListSet<RankedImage> ranking = new ConcurrentSkipListSet<>(RANKING_ORDER);
+    private final Map<UUID, Integer> likesByImage = new ConcurrentHashMap<>();
+    private volatile YearMonth month;
+    private volatile boolean ready;
+
+    // Eventi ricevuti durante il caricamento, protetti dal lock
+    private final PendingEvents pendingEvents = new PendingEvents();
+
+    private final AtomicBoolean changed = new AtomicBoolean();
+    private List<RankedImage> lastBroadcast = List.of();
+    private final Set<SseClient> clients = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger clientCount = new AtomicInteger();
+
+    /**
+     * Carica la classifica del mese in background all'avvio dell'applicazione
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadAsync() {
+        updateLock.lock();
+        try {
+            pendingEvents.start();
+        } finally {
+            updateLock.unlock();
+        }
+        fanOutExecutor.execute(this::load);
+    }
+
+    /**
+     * Indica se la classifica in memoria può servire il mese indicato
+     */
+    public boolean serves(YearMonth requested) {
+        return ready && requested.equals(YearMonth.now()) && requested.equals(month);
+    }
+
+    /**
+     * Prime posizioni della classifica del mese corrente
+     */
+    public List<RankedImage> top(int limit) {
+        List<RankedImage> top = new ArrayList<>(limit);
+        Set<UUID> seen = new HashSet<>();
+        for (RankedImage entry : ranking) {
+            if (top.size() == limit) {
+                break;
+            }
+            // Durante uno spostamento la stessa immagine può comparire per un istante due volte
+            if (seen.add(entry.imageId())) {
+                top.add(entry);
+            }
+        }
+        return top;
+    }
+
+    /**
+     * Registra un client dello stream: riceve subito le posizioni correnti, poi solo le variazioni
+     * Oltre il numero massimo di client connessi lancia IllegalStateException
+     */
+    public SseEmitter subscribe() {
+        if (clientCount.incrementAndGet() > streamMaxSubscribers) {
+            clientCount.decrementAndGet();
+            throw new IllegalStateException("Too many leaderboard stream subscribers");
+        }
+        SseClient client = new SseClient(streamTimeoutMs, streamQueueCapacity, sseExecutor, closed -> {
+            clients.remove(closed);
+            clientCount.decrementAndGet();
+        });
+        clients.add(client);
+        client.offer("snapshot", diff(List.of(), top(streamSize)));
+        return client.emitter();
+    }
+
+    @TransactionalEventListener
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void onLikeToggled(LikeToggledEvent event) {
+        handle(event);
+    }
+
+    @TransactionalEventListener
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void onImageDeleted(ImageDeletedEvent event) {
+        handle(event);
+    }
+
+    /**
+     * Accoda ai client le variazioni accumulate dall'ultimo invio (al più una volta per intervallo)
+     */
+    @Scheduled(fixedDelayString = "${app.likes.leaderboard.stream-interval-ms:1000}")
+    public void broadcastChanges() {
+        updateLock.lock();
+        try {
+            rollOverIfNeeded();
+        } finally {
+            updateLock.unlock();
+        }
+        if (!changed.getAndSet(false)) {
+            return;
+        }
+
+        List<RankedImage> current = top(streamSize);
+        List<LeaderboardRankChange> changes = diff(lastBroadcast, current);
+        lastBroadcast = current;
+        if (changes.isEmpty()) {
+            return;
+        }
+        for (SseClient client : clients) {
+            client.offer("ranks", changes);
+        }
+    }
+
+    private void load() {
+        try {
+            YearMonth loadedMonth = YearMonth.now();
+            SnapshotReader.Result<List<Object[]>> loaded = snapshotReader.read(() -> imageLikeRepository.findMonthlyTopImages(
+                    loadedMonth.getYear(), loadedMonth.getMonthValue(), Integer.MAX_VALUE));
+            List<Object[]> rows = loaded.value();
+
+            updateLock.lock();
+            try {
+                month = loadedMonth;
+                for (Object[] row : rows) {
+                    setLikes((UUID) row[0], ((Number) row[1]).intValue());
+                }
+                // Solo gli eventi delle transazioni non ancora visibili alla query mancano dal rollup
+                pendingEvents.replay(loaded.snapshot(), this::apply);
+                ready = true;
+                changed.set(true);
+            } finally {
+                updateLock.unlock();
+            }
+            logger.info("Live leaderboard loaded for {} ({} images)", loadedMonth, rows.size());
+        } catch (Exception e) {
+            updateLock.lock();
+            try {
+                pendingEvents.discard();
+            } finally {
+                updateLock.unlock();
+            }
+            logger.error("Failed to load live leaderboard, falling back to database queries", e);
+        }
+    }
+
+    private void handle(DomainEvent event) {
+        updateLock.lock();
+        try {
+            // Durante il caricamento l'evento viene trattenuto e riapplicato solo se manca dal rollup
+            if (!pendingEvents.offer(event) && ready) {
+                rollOverIfNeeded();
+                apply(event);
+            }
+        } finally {
+            updateLock.unlock();
+        }
+    }
+
+    private void apply(DomainEvent event) {
+        if (event instanceof LikeToggledEvent like) {
+            // Conta solo i like messi nel mese corrente (anche per gli unlike, il mese del like rimosso)
+            if (like.getLikedAt() != null && YearMonth.from(like.getLikedAt()).equals(month)) {
+                setLikes(like.getImageId(), likesByImage.getOrDefault(like.getImageId(), 0) + (like.isLiked() ? 1 : -1));
+            }
+        } else if (event instanceof ImageDeletedEvent deleted) {
+            setLikes(deleted.getImageId(), 0);
+        }
+    }
+
+    /**
+     * Sposta l'immagine nella skip list: inserisce la nuova voce prima di togliere la vecchia,
+     * così una lettura concorrente non la perde mai (al più la vede due volte)
+     */
+    private void setLikes(UUID imageId, int likes) {
+        Integer previous = likes > 0 ? likesByImage.put(imageId, likes) : likesByImage.remove(imageId);
+        if (previous != null && previous == likes) {
+            return;
+        }
+        if (likes > 0) {
+            ranking.add(new RankedImage(imageId, likes));
+        }
+        if (previous != null) {
+            ranking.remove(new RankedImage(imageId, previous));
+        }
+        changed.set(true);
+    }
+
+    private void rollOverIfNeeded() {
+        YearMonth now = YearMonth.now();
+        if (ready && !now.equals(month)) {
+            ranking.clear();
+            likesByImage.clear();
+            month = now;
+            changed.set(true);
+            logger.info("Live leaderboard reset for {}", now);
+        }
+    }
+
+    private static List<LeaderboardRankChange> diff(List<RankedImage> previous, List<RankedImage> current) {
+        Map<UUID, Integer> previousRanks = new HashMap<>();
+        for (int i = 0; i < previous.size(); i++) {
+            previousRanks.put(previous.get(i).imageId(), i + 1);
+        }
+
+        List<LeaderboardRankChange> changes = new ArrayList<>();
+        Set<UUID> stillRanked = new HashSet<>();
+        for (int i = 0; i < current.size(); i++) {
+            RankedImage entry = current.get(i);
+            Integer previousRank = previousRanks.get(entry.imageId());
+            stillRanked.add(entry.imageId());
+            boolean sameLikes = previousRank != null && previous.get(previousRank - 1).likes() == entry.likes();
+            if (previousRank == null || previousRank != i + 1 || !sameLikes) {
+                changes.add(new LeaderboardRankChange(entry.imageId(), i + 1, previousRank, entry.likes()));
+            }
+        }
+        for (RankedImage entry : previous) {
+            if (!stillRanked.contains(entry.imageId())) {
+                changes.add(new LeaderboardRankChange(entry.imageId(), null, previousRanks.get(entry.imageId()),
+                        entry.likes()));
+            }
+        }
+        return changes;
+    }
+}
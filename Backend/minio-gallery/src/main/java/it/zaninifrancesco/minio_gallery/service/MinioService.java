@@ -2,14 +2,28 @@ package it.zaninifrancesco.minio_gallery.service;
 
 import io.minio.*;
 import io.minio.http.Method;
+import io.minio.messages.DeleteError;
+import io.minio.messages.DeleteObject;
+import it.zaninifrancesco.minio_gallery.config.ThreadingConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import jakarta.annotation.PostConstruct;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 
 @Service
@@ -17,6 +31,9 @@ public class MinioService {
     
     private static final Logger logger = LoggerFactory.getLogger(MinioService.class);
     
+    // Numero massimo di oggetti in una richiesta di eliminazione multipla (limite dell'API S3)
+    private static final int REMOVE_OBJECTS_BATCH_SIZE = 1000;
+    
     @Value("${minio.endpoint}")
     private String endpoint;
     
@@ -29,6 +46,10 @@ public class MinioService {
     @Value("${minio.bucket.name}")
     private String bucketName;
     
+    @Autowired
+    @Qualifier(ThreadingConfig.FAN_OUT_EXECUTOR)
+    private ExecutorService fanOutExecutor;
+    
     private MinioClient minioClient;
     
     @PostConstruct
@@ -158,6 +179,22 @@ public class MinioService {
         }
     }
     
+    /**
+     * Genera gli URL presigned per più file
+     * La firma è un calcolo HMAC locale, senza richieste a MinIO: viene eseguita in sequenza
+     *
+     * @param fileNames nomi dei file
+     * @param expiryMinutes durata in minuti della validità degli URL
+     * @return mappa nome file -> URL presigned (null se la generazione è fallita)
+     */
+    public Map<String, String> generatePresignedUrls(Collection<String> fileNames, int expiryMinutes) {
+        Map<String, String> urls = new HashMap<>();
+        for (String fileName : fileNames) {
+            urls.computeIfAbsent(fileName, name -> generatePresignedUrl(name, expiryMinutes));
+        }
+        return urls;
+    }
+    
     /**
      * Genera un URL temporaneo con scadenza di default (5 minuti)
      *
@@ -192,6 +229,77 @@ public class MinioService {
         }
     }
     
+    /**
+     * Elimina più file da MinIO con richieste di eliminazione multipla (fino a 1000 oggetti per richiesta)
+     * Ogni richiesta è una chiamata bloccante: con più blocchi le richieste partono in parallelo
+     * sull'executor di fan-out
+     *
+     * @param fileNames nomi dei file da eliminare
+     * @return nomi dei file la cui eliminazione è fallita
+     */
+    public List<String> deleteFiles(Collection<String> fileNames) {
+        List<String> distinct = List.copyOf(new LinkedHashSet<>(fileNames));
+        List<List<String>> batches = new ArrayList<>();
+        for (int from = 0; from < distinct.size(); from += REMOVE_OBJECTS_BATCH_SIZE) {
+            batches.add(distinct.subList(from, Math.min(from + REMOVE_OBJECTS_BATCH_SIZE, distinct.size())));
+        }
+        if (batches.size() <= 1) {
+            return batches.isEmpty() ? List.of() : new ArrayList<>(deleteBatch(batches.get(0)));
+        }
+        
+        List<CompletableFuture<Set<String>>> futures = batches.stream()
+                .map(batch -> CompletableFuture.supplyAsync(() -> deleteBatch(batch), fanOutExecutor))
+                .toList();
+        Set<String> failed = new LinkedHashSet<>();
+        futures.forEach(future -> failed.addAll(future.join()));
+        return new ArrayList<>(failed);
+    }
+    
+    /**
+     * Elimina un blocco di file con una sola richiesta e restituisce quelli non eliminati
+     */
+    private Set<String> deleteBatch(List<String> batch) {
+        Set<String> failed = new LinkedHashSet<>();
+        try {
+            // La richiesta viene inviata solo scorrendo i risultati, che contengono i soli errori
+            Iterable<Result<DeleteError>> results = minioClient.removeObjects(
+                    RemoveObjectsArgs.builder()
+                            .bucket(bucketName)
+                            .objects(batch.stream().map(DeleteObject::new).toList())
+                            .build()
+            );
+            for (Result<DeleteError> result : results) {
+                DeleteError error = result.get();
+                logger.error("Error deleting file: {} ({})", error.objectName(), error.message());
+                failed.add(error.objectName());
+            }
+        } catch (Exception e) {
+            logger.error("Error deleting {} files", batch.size(), e);
+            failed.addAll(batch);
+        }
+        return failed;
+    }
+    
+    /**
+     * Scarica il contenuto di un file da MinIO
+     *
+     * @param fileName nome del file
+     * @return stream del contenuto (da chiudere a cura del chiamante) oppure null se il download fallisce
+     */
+    public InputStream downloadFile(String fileName) {
+        try {
+            return minioClient.getObject(
+                    GetObjectArgs.builder()
+                            .bucket(bucketName)
+                            .object(fileName)
+                            .build()
+            );
+        } catch (Exception e) {
+            logger.error("Error downloading file: {}", fileName, e);
+            return null;
+        }
+    }
+    
     /**
      * Verifica se un file esiste su MinIO
      *
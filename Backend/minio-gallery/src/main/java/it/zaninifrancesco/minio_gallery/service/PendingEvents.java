@@ -0,0 +1,80 @@
+package it.zaninifrancesco.minio_gallery.service;
+
+import it.zaninifrancesco.minio_gallery.event.DomainEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Eventi ricevuti mentre uno stato in memoria viene caricato dal database
+ *
+ * Al termine del caricamento vengono riapplicati solo gli eventi delle transazioni non incluse
+ * nello snapshot della query: una modifica già letta non viene contata due volte, qualunque sia
+ * l'ordine tra commit, consegna dell'evento e query. Non è thread-safe: va usato sotto il lock
+ * del service che lo possiede.
+ */
+final class PendingEvents {
+
+    private boolean buffering;
+    private final List<DomainEvent> events = new ArrayList<>();
+
+    /**
+     * Inizia a trattenere gli eventi; va chiamato prima di eseguire la query di caricamento
+     */
+    void start() {
+        events.clear();
+        buffering = true;
+    }
+
+    boolean isBuffering() {
+        return buffering;
+    }
+
+    /**
+     * Trattiene l'evento se è in corso un caricamento
+     *
+     * @return false se nessun caricamento è in corso e l'evento va applicato subito
+     */
+    boolean offer(DomainEvent event) {
+        if (buffering) {
+            events.add(event);
+        }
+        return buffering;
+    }
+
+    /**
+     * Restituisce in ordine di arrivo gli eventi non inclusi nello snapshot e termina il caricamento
+     */
+    List<DomainEvent> drain(DatabaseSnapshot snapshot) {
+        List<DomainEvent> missing = events.stream().filter(event -> !snapshot.includes(event)).toList();
+        discard();
+        return missing;
+    }
+
+    /**
+     * Restituisce in ordine di arrivo tutti gli eventi trattenuti e termina il caricamento
+     * Serve ai caricamenti parziali (es. un solo giorno), dove anche un evento incluso nello snapshot
+     * va applicato per la parte che cade fuori dai dati caricati
+     */
+    List<DomainEvent> drainAll() {
+        List<DomainEvent> all = List.copyOf(events);
+        discard();
+        return all;
+    }
+
+    /**
+     * Applica in ordine di arrivo gli eventi non inclusi nello snapshot e termina il caricamento
+     */
+    void replay(DatabaseSnapshot snapshot, Consumer<DomainEvent> apply) {
+        drain(snapshot).forEach(apply);
+    }
+
+    /**
+     * Scarta gli eventi trattenuti (caricamento fallito) e termina il caricamento
+     */
+    void discard() {
+        events.clear();
+        buffering = false;
+    }
+}
@@ -0,0 +1,277 @@
+package it.zaninifrancesco.minio_gallery.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import it.zaninifrancesco.minio_gallery.event.ImageDeletedEvent;
+import it.zaninifrancesco.minio_gallery.event.ImageEvent;
+import it.zaninifrancesco.minio_gallery.event.ImageUploadedEvent;
+import it.zaninifrancesco.minio_gallery.search.SearchHits;
+import it.zaninifrancesco.minio_gallery.search.TagQuery;
+import it.zaninifrancesco.minio_gallery.search.TextAnalyzer;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Cache dei risultati di ricerca (solo ID e totale, in ordine) per ricerca testuale, fuzzy e per tag
+ *
+ * Le chiavi usano la query normalizzata, quindi varianti di maiuscole, spazi o ordine dei tag
+ * condividono la stessa voce. Upload ed eliminazioni invalidano solo le voci che l'immagine
+ * soddisfa, esaminando le sole chiavi globali e quelle dell'utente proprietario (indicizzate per
+ * tipo di ricerca e utente); i campi per utente (like, URL presigned) vengono sempre calcolati a parte.
+ *
+ * I like non invalidano la cache: l'ordine per rilevanza delle ricerche testuali include un boost
+ * per i like, quindi può restare indietro rispetto ai like più recenti al massimo per il TTL
+ * (app.search.cache.ttl-seconds). Invalidare a ogni like renderebbe la cache inutile proprio
+ * sulle immagini più popolari.
+ */
+@Service
+public class SearchCacheService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SearchCacheService.class);
+
+    private static final String SCOPE_TEXT = "text";
+    private static final String SCOPE_FUZZY = "fuzzy";
+    private static final String SCOPE_TAGS = "tags";
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.search.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.search.cache.max-entries:10000}")
+    private long maxEntries;
+
+    @Value("${app.search.cache.ttl-seconds:60}")
+    private long ttlSeconds;
+
+    private Cache<CacheKey, SearchHits> cache;
+
+    // Incrementata a ogni invalidazione: un risultato calcolato prima non viene salvato
+    private final AtomicLong generation = new AtomicLong();
+
+    // Chiavi in cache per tipo di ricerca e utente; le voci scadute o espulse vengono tolte dall'evictionListener
+    private final Map<Partition, Set<CacheKey>> keysByPartition = new ConcurrentHashMap<>();
+
+    /**
+     * Gruppo di chiavi con lo stesso tipo di ricerca e utente (null per le ricerche globali)
+     */
+    private record Partition(String scope, Long userId) {
+    }
+
+    /**
+     * Chiave della cache: tipo di ricerca, utente (null per le ricerche globali), query normalizzata e pagina
+     */
+    private static final class CacheKey {
+        private final String scope;
+        private final Long userId;
+        private final String query;
+        private final long offset;
+        private final int size;
+        private final Predicate<ChangedImage> matcher;
+
+        CacheKey(String scope, Long userId, String query, Pageable pageable, Predicate<ChangedImage> matcher) {
+            this.scope = scope;
+            this.userId = userId;
+            this.query = query;
+            this.offset = pageable.getOffset();
+            this.size = pageable.getPageSize();
+            this.matcher = matcher;
+        }
+
+        Partition partition() {
+            return new Partition(scope, userId);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof CacheKey)) return false;
+            CacheKey other = (CacheKey) o;
+            return offset == other.offset && size == other.size && scope.equals(other.scope)
+                    && Objects.equals(userId, other.userId) && query.equals(other.query);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(scope, userId, query, offset, size);
+        }
+    }
+
+    /**
+     * Termini e tag normalizzati dell'immagine caricata o eliminata, calcolati una volta per invalidazione
+     */
+    private static final class ChangedImage {
+        private final Long userId;
+        private final Set<String> tokens = new HashSet<>();
+        private final Set<String> tagNames = new HashSet<>();
+
+        ChangedImage(ImageEvent event) {
+            this.userId = event.getUserId();
+            tokens.addAll(TextAnalyzer.tokenize(event.getTitle()));
+            tokens.addAll(TextAnalyzer.tokenize(event.getDescription()));
+            tokens.addAll(TextAnalyzer.tokenize(event.getUsername()));
+            for (String tagName : event.getTagNames()) {
+                tokens.addAll(TextAnalyzer.tokenize(tagName));
+                tagNames.add(tagName.trim().toLowerCase(Locale.ROOT));
+            }
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        cache = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .evictionListener((CacheKey key, SearchHits hits, RemovalCause cause) -> {
+                    if (key != null) {
+                        unindex(key);
+                    }
+                })
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "search.results");
+    }
+
+    /**
+     * Risultati di una ricerca testuale, dalla cache o calcolati con il loader
+     */
+    public SearchHits getTextSearch(String query, Long userId, Pageable pageable, Supplier<SearchHits> loader) {
+        List<String> terms = TextAnalyzer.tokenize(query);
+        CacheKey key = new CacheKey(SCOPE_TEXT, userId, String.join(" ", terms), pageable,
+                image -> matchesAllTerms(image, terms));
+        return get(key, loader);
+    }
+
+    /**
+     * Risultati di una ricerca fuzzy: qualsiasi upload o eliminazione può cambiarli, quindi
+     * le voci valgono fino alla prima modifica (o al TTL)
+     */
+    public SearchHits getFuzzySearch(String query, Long userId, Pageable pageable, Supplier<SearchHits> loader) {
+        String normalized = String.join(" ", TextAnalyzer.tokenize(query));
+        return get(new CacheKey(SCOPE_FUZZY, userId, normalized, pageable, image -> true), loader);
+    }
+
+    /**
+     * Risultati di una query sui tag, dalla cache o calcolati con il loader
+     */
+    public SearchHits getTagSearch(TagQuery query, Long userId, Pageable pageable, Supplier<SearchHits> loader) {
+        CacheKey key = new CacheKey(SCOPE_TAGS, userId, query.toCanonicalString(), pageable,
+                image -> query.matches(image.tagNames));
+        return get(key, loader);
+    }
+
+    // Eseguiti dopo gli aggiornamenti degli indici, così un risultato ricalcolato li vede già
+    @TransactionalEventListener
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    public void onImageUploaded(ImageUploadedEvent event) {
+        invalidate(event);
+    }
+
+    @TransactionalEventListener
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    public void onImageDeleted(ImageDeletedEvent event) {
+        invalidate(event);
+    }
+
+    private SearchHits get(CacheKey key, Supplier<SearchHits> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+
+        SearchHits cached = cache.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        long generationBefore = generation.get();
+        SearchHits hits = loader.get();
+        if (generation.get() == generationBefore) {
+            cache.put(key, hits);
+            keysByPartition.compute(key.partition(), (partition, keys) -> {
+                Set<CacheKey> result = keys != null ? keys : ConcurrentHashMap.newKeySet();
+                result.add(key);
+                return result;
+            });
+        }
+        return hits;
+    }
+
+    private void invalidate(ImageEvent event) {
+        generation.incrementAndGet();
+        ChangedImage image = new ChangedImage(event);
+        int removed = 0;
+        for (String scope : List.of(SCOPE_TEXT, SCOPE_FUZZY, SCOPE_TAGS)) {
+            removed += invalidate(new Partition(scope, null), image);
+            if (image.userId != null) {
+                removed += invalidate(new Partition(scope, image.userId), image);
+            }
+        }
+        logger.debug("Search cache invalidated for image {}: {} entries removed", event.getImageId(), removed);
+    }
+
+    private int invalidate(Partition partition, ChangedImage image) {
+        Set<CacheKey> keys = keysByPartition.get(partition);
+        if (keys == null) {
+            return 0;
+        }
+
+        int removed = 0;
+        for (CacheKey key : keys) {
+            if (key.matcher.test(image)) {
+                // Prima dall'indice, poi dalla cache: un put concorrente della stessa chiave resta indicizzato
+                keys.remove(key);
+                cache.invalidate(key);
+                removed++;
+            }
+        }
+        keysByPartition.computeIfPresent(partition, (unused, current) -> current.isEmpty() ? null : current);
+        return removed;
+    }
+
+    private void unindex(CacheKey key) {
+        keysByPartition.computeIfPresent(key.partition(), (partition, keys) -> {
+            keys.remove(key);
+            return keys.isEmpty() ? null : keys;
+        });
+    }
+
+    /**
+     * Stessa semantica dell'indice: tutti i termini presenti, l'ultimo come prefisso
+     */
+    private static boolean matchesAllTerms(ChangedImage image, List<String> terms) {
+        if (terms.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < terms.size() - 1; i++) {
+            if (!image.tokens.contains(terms.get(i))) {
+                return false;
+            }
+        }
+        String prefix = terms.get(terms.size() - 1);
+        return image.tokens.stream().anyMatch(token -> token.startsWith(prefix));
+    }
+}
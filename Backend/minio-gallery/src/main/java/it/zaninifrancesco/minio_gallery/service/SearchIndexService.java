@@ -0,0 +1,412 @@
+package it.zaninifrancesco.minio_gallery.service;
+
+import it.zaninifrancesco.minio_gallery.config.ThreadingConfig;
+import it.zaninifrancesco.minio_gallery.entity.ImageMetadata;
+import it.zaninifrancesco.minio_gallery.entity.Tag;
+import it.zaninifrancesco.minio_gallery.event.ImageDeletedEvent;
+import it.zaninifrancesco.minio_gallery.event.ImageEvent;
+import it.zaninifrancesco.minio_gallery.event.ImageUploadedEvent;
+import it.zaninifrancesco.minio_gallery.event.LikeToggledEvent;
+import it.zaninifrancesco.minio_gallery.repository.ImageLikeRepository;
+import it.zaninifrancesco.minio_gallery.repository.ImageMetadataRepository;
+import it.zaninifrancesco.minio_gallery.search.InvertedIndex;
+import it.zaninifrancesco.minio_gallery.search.SearchDocument;
+import it.zaninifrancesco.minio_gallery.search.SearchHits;
+import it.zaninifrancesco.minio_gallery.search.SearchScoring;
+import it.zaninifrancesco.minio_gallery.search.TextMatcher;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Service che mantiene l'indice di ricerca in memoria sulle immagini
+ *
+ * All'avvio l'indice viene caricato dallo snapshot su disco (e riallineato al database)
+ * oppure ricostruito interamente dal database; poi viene aggiornato dagli eventi di
+ * upload, eliminazione e like. Finché non è pronto la ricerca usa il full-text di PostgreSQL.
+ */
+@Service
+public class SearchIndexService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SearchIndexService.class);
+
+    // Numero di immagini caricate dal database per ogni query durante la ricostruzione
+    private static final int LOAD_BATCH_SIZE = 500;
+
+    @Autowired
+    private ImageMetadataRepository imageMetadataRepository;
+
+    @Autowired
+    private ImageLikeRepository imageLikeRepository;
+
+    @Autowired
+    @Qualifier(ThreadingConfig.FAN_OUT_EXECUTOR)
+    private ExecutorService fanOutExecutor;
+
+    @Value("${app.search.index.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.search.index.snapshot-path:data/search-index.bin}")
+    private String snapshotPath;
+
+    @Value("${app.search.index.recency-half-life-days:30}")
+    private double recencyHalfLifeDays;
+
+    @Value("${app.search.index.recency-boost:0.5}")
+    private double recencyBoost;
+
+    @Value("${app.search.index.like-boost:0.2}")
+    private double likeBoost;
+
+    private SearchScoring scoring;
+
+    private volatile InvertedIndex index;
+    private volatile boolean dirty;
+    private volatile boolean loadFailed;
+
+    // Eventi ricevuti durante il caricamento, applicati appena l'indice è pronto
+    private final ReentrantLock loadLock = new ReentrantLock();
+    private final List<Object> pendingEvents = new ArrayList<>();
+
+    private final ReentrantLock snapshotLock = new ReentrantLock();
+
+    @PostConstruct
+    public void init() {
+        scoring = new SearchScoring(recencyHalfLifeDays, recencyBoost, likeBoost);
+    }
+
+    /**
+     * Carica l'indice in background all'avvio dell'applicazione
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadIndexAsync() {
+        if (enabled) {
+            fanOutExecutor.execute(this::loadIndex);
+        }
+    }
+
+    /**
+     * Indica se l'indice è pronto a servire le ricerche
+     */
+    public boolean isReady() {
+        return index != null;
+    }
+
+    /**
+     * Cerca nell'indice in memoria
+     *
+     * @param query testo della ricerca
+     * @param userId se non null limita la ricerca alle immagini dell'utente
+     * @param pageable paginazione richiesta
+     */
+    public SearchHits search(String query, Long userId, Pageable pageable) {
+        InvertedIndex current = index;
+        if (current == null) {
+            throw new IllegalStateException("Search index is not ready");
+        }
+        return current.search(query, userId, (int) pageable.getOffset(), pageable.getPageSize(), scoring);
+    }
+
+    /**
+     * Ricerca tollerante agli errori di battitura con suggerimenti "forse cercavi"
+     *
+     * @param query testo della ricerca
+     * @param userId se non null limita la ricerca alle immagini dell'utente
+     * @param pageable paginazione richiesta
+     */
+    public SearchHits fuzzySearch(String query, Long userId, Pageable pageable) {
+        InvertedIndex current = index;
+        if (current == null) {
+            throw new IllegalStateException("Search index is not ready");
+        }
+        return current.fuzzySearch(query, userId, (int) pageable.getOffset(), pageable.getPageSize(), scoring);
+    }
+
+    /**
+     * Tutte le immagini che soddisfano la query (per i conteggi per faccette)
+     */
+    public List<UUID> matchingImageIds(String query, Long userId) {
+        InvertedIndex current = index;
+        if (current == null) {
+            throw new IllegalStateException("Search index is not ready");
+        }
+        return current.matchingImageIds(query, userId);
+    }
+
+    /**
+     * Predicato testuale per le ricerche combinate, valutato sull'indice in memoria
+     */
+    public TextMatcher textMatcher(String query) {
+        InvertedIndex current = index;
+        if (current == null) {
+            throw new IllegalStateException("Search index is not ready");
+        }
+        return new TextMatcher() {
+            @Override
+            public long estimate() {
+                return current.estimateMatches(query);
+            }
+
+            @Override
+            public Collection<UUID> matches(Set<UUID> candidates) {
+                List<UUID> matches = current.matchingImageIds(query, null);
+                return candidates == null ? matches : matches.stream().filter(candidates::contains).toList();
+            }
+
+            @Override
+            public SearchHits rank(Set<UUID> candidates, int offset, int limit) {
+                return current.search(query, candidates == null ? imageId -> true : candidates::contains,
+                        offset, limit, scoring);
+            }
+        };
+    }
+
+    @TransactionalEventListener
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void onImageUploaded(ImageUploadedEvent event) {
+        handle(event);
+    }
+
+    @TransactionalEventListener
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void onImageDeleted(ImageDeletedEvent event) {
+        handle(event);
+    }
+
+    @TransactionalEventListener
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void onLikeToggled(LikeToggledEvent event) {
+        handle(event);
+    }
+
+    /**
+     * Salva periodicamente lo snapshot dell'indice se è cambiato
+     */
+    @Scheduled(fixedDelayString = "${app.search.index.snapshot-interval-ms:300000}")
+    public void scheduledSnapshot() {
+        if (dirty) {
+            writeSnapshot();
+        }
+    }
+
+    @PreDestroy
+    public void shutdownSnapshot() {
+        if (dirty) {
+            writeSnapshot();
+        }
+    }
+
+    private void handle(Object event) {
+        if (!enabled || loadFailed) {
+            return;
+        }
+
+        InvertedIndex current = index;
+        if (current == null) {
+            loadLock.lock();
+            try {
+                current = index;
+                if (current == null) {
+                    pendingEvents.add(event);
+                    return;
+                }
+            } finally {
+                loadLock.unlock();
+            }
+        }
+
+        apply(current, event);
+        dirty = true;
+    }
+
+    private void apply(InvertedIndex target, Object event) {
+        if (event instanceof ImageUploadedEvent uploaded) {
+            target.add(toDocument(uploaded));
+        } else if (event instanceof ImageDeletedEvent deleted) {
+            target.remove(deleted.getImageId());
+        } else if (event instanceof LikeToggledEvent like) {
+            target.updateLikeCount(like.getImageId(), like.getLikeCount());
+        }
+    }
+
+    private void loadIndex() {
+        long start = System.currentTimeMillis();
+        try {
+            InvertedIndex snapshot = readSnapshot();
+            if (snapshot != null) {
+                reconcile(snapshot);
+            }
+            InvertedIndex loaded = snapshot != null ? snapshot : rebuild();
+
+            loadLock.lock();
+            try {
+                pendingEvents.forEach(event -> apply(loaded, event));
+                pendingEvents.clear();
+                index = loaded;
+            } finally {
+                loadLock.unlock();
+            }
+            dirty = true;
+
+            logger.info("Search index ready with {} images in {} ms", loaded.size(), System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            logger.error("Failed to load search index, falling back to database full-text search", e);
+            loadLock.lock();
+            try {
+                loadFailed = true;
+                pendingEvents.clear();
+            } finally {
+                loadLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Ricostruisce l'indice leggendo tutte le immagini dal database in ordine di upload
+     */
+    private InvertedIndex rebuild() {
+        logger.info("Rebuilding search index from database");
+        InvertedIndex rebuilt = new InvertedIndex();
+        Map<UUID, Integer> likeCounts = loadLikeCounts();
+        addImages(rebuilt, imageMetadataRepository.findAllIdsOrderByUploadedAtAsc(), likeCounts);
+        return rebuilt;
+    }
+
+    /**
+     * Riallinea uno snapshot al database: rimuove le immagini eliminate,
+     * aggiunge quelle caricate dopo lo snapshot e aggiorna i conteggi dei like
+     */
+    private void reconcile(InvertedIndex loaded) {
+        Set<UUID> indexedIds = loaded.imageIds();
+        List<UUID> databaseIds = imageMetadataRepository.findAllIdsOrderByUploadedAtAsc();
+        Set<UUID> databaseIdSet = new HashSet<>(databaseIds);
+
+        int removed = 0;
+        for (UUID imageId : indexedIds) {
+            if (!databaseIdSet.contains(imageId)) {
+                loaded.remove(imageId);
+                removed++;
+            }
+        }
+
+        List<UUID> missingIds = databaseIds.stream()
+                .filter(imageId -> !indexedIds.contains(imageId))
+                .toList();
+        Map<UUID, Integer> likeCounts = loadLikeCounts();
+        addImages(loaded, missingIds, likeCounts);
+
+        for (UUID imageId : loaded.imageIds()) {
+            loaded.updateLikeCount(imageId, likeCounts.getOrDefault(imageId, 0));
+        }
+
+        logger.info("Search index snapshot reconciled: {} images added, {} removed", missingIds.size(), removed);
+    }
+
+    private void addImages(InvertedIndex target, List<UUID> imageIds, Map<UUID, Integer> likeCounts) {
+        for (int from = 0; from < imageIds.size(); from += LOAD_BATCH_SIZE) {
+            List<UUID> batch = imageIds.subList(from, Math.min(from + LOAD_BATCH_SIZE, imageIds.size()));
+            List<ImageMetadata> images = new ArrayList<>(imageMetadataRepository.findAllWithUserAndTagsByIdIn(batch));
+            images.sort(Comparator.comparing(ImageMetadata::getUploadedAt));
+            for (ImageMetadata image : images) {
+                target.add(toDocument(image, likeCounts.getOrDefault(image.getId(), 0)));
+            }
+        }
+    }
+
+    private Map<UUID, Integer> loadLikeCounts() {
+        Map<UUID, Integer> likeCounts = new HashMap<>();
+        for (Object[] row : imageLikeRepository.countLikesPerImage()) {
+            likeCounts.put((UUID) row[0], ((Number) row[1]).intValue());
+        }
+        return likeCounts;
+    }
+
+    private InvertedIndex readSnapshot() {
+        Path path = Paths.get(snapshotPath);
+        if (!Files.exists(path)) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            InvertedIndex loaded = InvertedIndex.readFrom(in);
+            logger.info("Search index snapshot loaded from {} ({} images)", path, loaded.size());
+            return loaded;
+        } catch (IOException e) {
+            logger.warn("Unable to read search index snapshot {}, rebuilding from database", path, e);
+            return null;
+        }
+    }
+
+    private void writeSnapshot() {
+        InvertedIndex current = index;
+        if (current == null) {
+            return;
+        }
+
+        snapshotLock.lock();
+        try {
+            dirty = false;
+            Path path = Paths.get(snapshotPath).toAbsolutePath();
+            Files.createDirectories(path.getParent());
+            Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempPath)))) {
+                current.writeTo(out);
+            }
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            logger.debug("Search index snapshot written to {}", path);
+        } catch (IOException e) {
+            dirty = true;
+            logger.error("Failed to write search index snapshot", e);
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+
+    private static SearchDocument toDocument(ImageMetadata image, int likeCount) {
+        List<String> tagNames = image.getTags().stream()
+                .map(Tag::getName)
+                .toList();
+        return new SearchDocument(image.getId(), image.getUser().getId(), image.getUser().getUsername(),
+                image.getTitle(), image.getDescription(), tagNames, image.getUploadedAt(), likeCount);
+    }
+
+    private static SearchDocument toDocument(ImageEvent event) {
+        return new SearchDocument(event.getImageId(), event.getUserId(), event.getUsername(),
+                event.getTitle(), event.getDescription(), event.getTagNames(), event.getUploadedAt(), 0);
+    }
+}
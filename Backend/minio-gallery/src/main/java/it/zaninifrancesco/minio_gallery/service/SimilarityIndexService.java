@@ -0,0 +1,421 @@
+package it.zaninifrancesco.minio_gallery.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import it.zaninifrancesco.minio_gallery.event.ImageDeletedEvent;
+import it.zaninifrancesco.minio_gallery.event.ImageUploadedEvent;
+import it.zaninifrancesco.minio_gallery.repository.ImageMetadataRepository;
+import it.zaninifrancesco.minio_gallery.search.HnswIndex;
+import it.zaninifrancesco.minio_gallery.search.ImageFeatureExtractor;
+import it.zaninifrancesco.minio_gallery.search.SearchHits;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Service che mantiene l'indice HNSW dei vettori visivi delle immagini per la ricerca per similarità
+ *
+ * Dopo ogni upload il file viene scaricato da MinIO e il vettore calcolato in background.
+ * All'avvio l'indice viene caricato dallo snapshot su disco, riallineato al database e completato
+ * con le immagini mancanti (backfill); è interrogabile già durante il backfill. Quando le eliminazioni
+ * superano la soglia configurata il grafo viene ricostruito in background dai vettori in memoria.
+ * Calcolo dei vettori e ricostruzione usano un pool proprio di pochi thread, così il backfill di
+ * molte immagini non occupa l'executor di fan-out usato dalle richieste.
+ */
+@Service
+public class SimilarityIndexService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SimilarityIndexService.class);
+
+    @Autowired
+    private ImageMetadataRepository imageMetadataRepository;
+
+    @Autowired
+    private MinioService minioService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.similarity.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.similarity.snapshot-path:data/similarity-index.bin}")
+    private String snapshotPath;
+
+    @Value("${app.similarity.hnsw.m:16}")
+    private int m;
+
+    @Value("${app.similarity.hnsw.ef-construction:200}")
+    private int efConstruction;
+
+    @Value("${app.similarity.hnsw.ef-search:128}")
+    private int efSearch;
+
+    @Value("${app.similarity.max-results:200}")
+    private int maxResults;
+
+    @Value("${app.similarity.compaction-threshold:0.2}")
+    private double compactionThreshold;
+
+    @Value("${app.similarity.backfill-batch-size:64}")
+    private int backfillBatchSize;
+
+    @Value("${app.similarity.backfill-threads:2}")
+    private int backfillThreads;
+
+    private ExecutorService similarityExecutor;
+
+    private volatile HnswIndex index;
+    private volatile boolean dirty;
+
+    // Modifiche ricevute durante il caricamento o la ricostruzione, riapplicate al nuovo indice
+    private final ReentrantLock updateLock = new ReentrantLock();
+    private final List<Consumer<HnswIndex>> pendingUpdates = new ArrayList<>();
+    private boolean rebuilding;
+    private boolean loadFailed;
+
+    // Immagini il cui vettore è in calcolo: un'eliminazione nel frattempo annulla l'inserimento
+    private final Set<UUID> inFlight = ConcurrentHashMap.newKeySet();
+
+    private final ReentrantLock snapshotLock = new ReentrantLock();
+
+    /**
+     * Pool limitato per il calcolo dei vettori e la ricostruzione del grafo
+     * Le metriche sono esposte con prefisso "executor" e tag name=similarity
+     */
+    @PostConstruct
+    public void init() {
+        similarityExecutor = ExecutorServiceMetrics.monitor(meterRegistry,
+                Executors.newFixedThreadPool(Math.max(1, backfillThreads),
+                        Thread.ofPlatform().name("similarity-", 0).daemon(true).factory()),
+                "similarity");
+    }
+
+    /**
+     * Carica l'indice in background all'avvio dell'applicazione
+     * Il caricamento attende i vettori calcolati dal pool, quindi gira su un thread proprio
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadIndexAsync() {
+        if (enabled) {
+            Thread.ofPlatform().name("similarity-load").daemon(true).start(this::loadIndex);
+        }
+    }
+
+    /**
+     * Indica se l'indice è pronto a servire le ricerche
+     */
+    public boolean isReady() {
+        return index != null;
+    }
+
+    /**
+     * Immagini visivamente più simili a quella indicata, in ordine di similarità
+     * I vicini sono calcolati fino a max-results, così la paginazione resta stabile
+     *
+     * @param imageId immagine di riferimento
+     * @param pageable paginazione richiesta
+     */
+    public SearchHits findSimilar(UUID imageId, Pageable pageable) {
+        HnswIndex current = index;
+        if (current == null) {
+            return SearchHits.empty();
+        }
+
+        List<UUID> neighbors = current.nearest(imageId, maxResults, Math.max(efSearch, maxResults));
+        int from = (int) Math.min(pageable.getOffset(), neighbors.size());
+        int to = Math.min(from + pageable.getPageSize(), neighbors.size());
+        return new SearchHits(neighbors.subList(from, to), neighbors.size());
+    }
+
+    @TransactionalEventListener
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void onImageUploaded(ImageUploadedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        UUID imageId = event.getImageId();
+        inFlight.add(imageId);
+        similarityExecutor.execute(() -> {
+            float[] vector = computeFeatures(event.getFileName());
+            if (inFlight.remove(imageId) && vector != null) {
+                update(target -> target.add(imageId, vector));
+            }
+        });
+    }
+
+    @TransactionalEventListener
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void onImageDeleted(ImageDeletedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        UUID imageId = event.getImageId();
+        inFlight.remove(imageId);
+        update(target -> target.remove(imageId));
+    }
+
+    /**
+     * Salva periodicamente lo snapshot dell'indice se è cambiato e avvia la ricostruzione
+     * del grafo se i nodi eliminati superano la soglia
+     */
+    @Scheduled(fixedDelayString = "${app.similarity.snapshot-interval-ms:300000}")
+    public void scheduledMaintenance() {
+        HnswIndex current = index;
+        if (current != null && current.deletedRatio() > compactionThreshold) {
+            rebuild(current);
+        }
+        if (dirty) {
+            writeSnapshot();
+        }
+    }
+
+    @PreDestroy
+    public void shutdownSnapshot() {
+        similarityExecutor.shutdownNow();
+        if (dirty) {
+            writeSnapshot();
+        }
+    }
+
+    /**
+     * Applica una modifica all'indice corrente; durante caricamento o ricostruzione la registra
+     * anche per riapplicarla all'indice che lo sostituirà
+     */
+    private void update(Consumer<HnswIndex> change) {
+        updateLock.lock();
+        try {
+            if (loadFailed) {
+                return;
+            }
+            if (index == null || rebuilding) {
+                pendingUpdates.add(change);
+            }
+            if (index != null) {
+                change.accept(index);
+                dirty = true;
+            }
+        } finally {
+            updateLock.unlock();
+        }
+    }
+
+    /**
+     * Sostituisce l'indice corrente riapplicando le modifiche registrate nel frattempo
+     */
+    private void publish(HnswIndex loaded) {
+        updateLock.lock();
+        try {
+            pendingUpdates.forEach(change -> change.accept(loaded));
+            pendingUpdates.clear();
+            index = loaded;
+            rebuilding = false;
+            dirty = true;
+        } finally {
+            updateLock.unlock();
+        }
+    }
+
+    private void loadIndex() {
+        long start = System.currentTimeMillis();
+        try {
+            HnswIndex snapshot = readSnapshot();
+            HnswIndex loaded = snapshot != null ? snapshot : new HnswIndex(ImageFeatureExtractor.DIMENSIONS, m, efConstruction);
+
+            List<UUID> databaseIds = imageMetadataRepository.findAllIdsOrderByUploadedAtAsc();
+            Set<UUID> databaseIdSet = new HashSet<>(databaseIds);
+            Set<UUID> indexedIds = loaded.imageIds();
+            int removed = 0;
+            for (UUID imageId : indexedIds) {
+                if (!databaseIdSet.contains(imageId)) {
+                    loaded.remove(imageId);
+                    removed++;
+                }
+            }
+            publish(loaded);
+            logger.info("Similarity index ready with {} images ({} removed) in {} ms",
+                    loaded.size(), removed, System.currentTimeMillis() - start);
+
+            List<UUID> missingIds = databaseIds.stream()
+                    .filter(imageId -> !indexedIds.contains(imageId))
+                    .toList();
+            backfill(missingIds);
+        } catch (Exception e) {
+            logger.error("Failed to load similarity index, similar image search disabled", e);
+            updateLock.lock();
+            try {
+                loadFailed = true;
+                pendingUpdates.clear();
+            } finally {
+                updateLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Calcola i vettori delle immagini non ancora indicizzate, scaricandole da MinIO a blocchi in parallelo
+     */
+    private void backfill(List<UUID> imageIds) {
+        if (imageIds.isEmpty()) {
+            return;
+        }
+        logger.info("Backfilling similarity index with {} images", imageIds.size());
+        long start = System.currentTimeMillis();
+        int indexed = 0;
+
+        for (int from = 0; from < imageIds.size(); from += backfillBatchSize) {
+            List<UUID> batch = imageIds.subList(from, Math.min(from + backfillBatchSize, imageIds.size()));
+            Map<UUID, CompletableFuture<float[]>> futures = new LinkedHashMap<>();
+            for (Object[] row : imageMetadataRepository.findFileNamesByIdIn(batch)) {
+                UUID imageId = (UUID) row[0];
+                String fileName = (String) row[1];
+                inFlight.add(imageId);
+                futures.put(imageId, CompletableFuture.supplyAsync(() -> computeFeatures(fileName), similarityExecutor));
+            }
+
+            for (Map.Entry<UUID, CompletableFuture<float[]>> entry : futures.entrySet()) {
+                UUID imageId = entry.getKey();
+                float[] vector = entry.getValue().join();
+                if (inFlight.remove(imageId) && vector != null) {
+                    update(target -> target.add(imageId, vector));
+                    indexed++;
+                }
+            }
+        }
+
+        logger.info("Similarity index backfill completed: {} of {} images indexed in {} ms",
+                indexed, imageIds.size(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Ricostruisce il grafo senza i nodi eliminati; l'indice corrente continua a servire le ricerche
+     */
+    private void rebuild(HnswIndex current) {
+        updateLock.lock();
+        try {
+            if (rebuilding || current != index) {
+                return;
+            }
+            rebuilding = true;
+        } finally {
+            updateLock.unlock();
+        }
+
+        logger.info("Rebuilding similarity index to drop deleted nodes ({}% deleted)",
+                Math.round(current.deletedRatio() * 100));
+        similarityExecutor.execute(() -> {
+            try {
+                publish(current.withoutDeleted());
+                logger.info("Similarity index rebuilt with {} images", index.size());
+            } catch (Exception e) {
+                logger.error("Failed to rebuild similarity index", e);
+                updateLock.lock();
+                try {
+                    rebuilding = false;
+                    pendingUpdates.clear();
+                } finally {
+                    updateLock.unlock();
+                }
+            }
+        });
+    }
+
+    private float[] computeFeatures(String fileName) {
+        try (InputStream in = minioService.downloadFile(fileName)) {
+            if (in == null) {
+                return null;
+            }
+            float[] vector = ImageFeatureExtractor.extract(new BufferedInputStream(in));
+            if (vector == null) {
+                logger.debug("Unsupported image format for similarity features: {}", fileName);
+            }
+            return vector;
+        } catch (Exception e) {
+            logger.warn("Failed to compute similarity features for {}", fileName, e);
+            return null;
+        }
+    }
+
+    private HnswIndex readSnapshot() {
+        Path path = Paths.get(snapshotPath);
+        if (!Files.exists(path)) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            HnswIndex loaded = HnswIndex.readFrom(in);
+            if (loaded.dimensions() != ImageFeatureExtractor.DIMENSIONS) {
+                logger.warn("Similarity index snapshot {} has {} dimensions, expected {}: rebuilding",
+                        path, loaded.dimensions(), ImageFeatureExtractor.DIMENSIONS);
+                return null;
+            }
+            logger.info("Similarity index snapshot loaded from {} ({} images)", path, loaded.size());
+            return loaded;
+        } catch (IOException e) {
+            logger.warn("Unable to read similarity index snapshot {}, rebuilding", path, e);
+            return null;
+        }
+    }
+
+    private void writeSnapshot() {
+        HnswIndex current = index;
+        if (current == null) {
+            return;
+        }
+
+        snapshotLock.lock();
+        try {
+            dirty = false;
+            Path path = Paths.get(snapshotPath).toAbsolutePath();
+            Files.createDirectories(path.getParent());
+            Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempPath)))) {
+                current.writeTo(out);
+            }
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            logger.debug("Similarity index snapshot written to {}", path);
+        } catch (IOException e) {
+            dirty = true;
+            logger.error("Failed to write similarity index snapshot", e);
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package it.zaninifrancesco.minio_gallery.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.function.Supplier;
+
+/**
+ * Esegue una query di caricamento restituendo anche lo snapshot del database con cui è stata letta
+ *
+ * La query gira in una transazione REPEATABLE READ di sola lettura, dove tutte le istruzioni vedono
+ * lo stesso snapshot; lo snapshot serve a decidere quali eventi ricevuti durante il caricamento
+ * vanno riapplicati (vedi PendingEvents).
+ */
+@Component
+public class SnapshotReader {
+
+    /**
+     * Risultato della query con lo snapshot del database
+     */
+    record Result<T>(DatabaseSnapshot snapshot, T value) {
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    <T> Result<T> read(Supplier<T> query) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        transaction.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        transaction.setReadOnly(true);
+        return transaction.execute(status -> {
+            // La prima istruzione fissa lo snapshot della transazione, che vale anche per la query
+            String snapshot = jdbcTemplate.queryForObject("SELECT CAST(pg_current_snapshot() AS text)", String.class);
+            return new Result<>(DatabaseSnapshot.parse(snapshot), query.get());
+        });
+    }
+}
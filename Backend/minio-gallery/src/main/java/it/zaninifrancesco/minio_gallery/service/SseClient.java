@@ -0,0 +1,100 @@
+package it.zaninifrancesco.minio_gallery.service;
+
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Client SSE con una coda limitata di eventi da inviare
+ *
+ * Chi produce gli eventi li accoda senza mai scrivere sul socket; la coda viene svuotata da un task
+ * sull'executor SSE, al più uno per client alla volta. Se la coda è piena il client è troppo lento
+ * e viene disconnesso, senza rallentare chi accoda né gli altri client.
+ */
+final class SseClient {
+
+    private record Event(String name, Object data) {
+    }
+
+    private final UUID id = UUID.randomUUID();
+    private final SseEmitter emitter;
+    private final BlockingQueue<Event> queue;
+    private final Executor executor;
+    private final Consumer<SseClient> onClose;
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    SseClient(long timeoutMs, int queueCapacity, Executor executor, Consumer<SseClient> onClose) {
+        this.emitter = new SseEmitter(timeoutMs);
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.executor = executor;
+        this.onClose = onClose;
+        emitter.onCompletion(this::close);
+        emitter.onTimeout(this::close);
+        emitter.onError(error -> close());
+    }
+
+    UUID id() {
+        return id;
+    }
+
+    SseEmitter emitter() {
+        return emitter;
+    }
+
+    /**
+     * Accoda un evento; se la coda è piena disconnette il client e restituisce false
+     */
+    boolean offer(String name, Object data) {
+        if (closed.get()) {
+            return false;
+        }
+        if (!queue.offer(new Event(name, data))) {
+            close();
+            // complete() attende la scrittura in corso sul socket: non va eseguito sul thread del chiamante
+            executor.execute(emitter::complete);
+            return false;
+        }
+        drain();
+        return true;
+    }
+
+    /**
+     * Rimuove il client; la callback di chiusura viene eseguita una sola volta
+     */
+    void close() {
+        if (closed.compareAndSet(false, true)) {
+            queue.clear();
+            onClose.accept(this);
+        }
+    }
+
+    private void drain() {
+        if (!draining.compareAndSet(false, true)) {
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                Event event;
+                while (!closed.get() && (event = queue.poll()) != null) {
+                    emitter.send(SseEmitter.event().name(event.name()).data(event.data()));
+                }
+            } catch (IOException | IllegalStateException e) {
+                emitter.completeWithError(e);
+                close();
+            } finally {
+                draining.set(false);
+            }
+            // Un evento accodato mentre il task terminava verrebbe altrimenti lasciato in coda
+            if (!closed.get() && !queue.isEmpty()) {
+                drain();
+            }
+        });
+    }
+}
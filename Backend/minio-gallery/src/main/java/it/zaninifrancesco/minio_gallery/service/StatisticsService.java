@@ -1,60 +1,213 @@
 package it.zaninifrancesco.minio_gallery.service;
 
-import it.zaninifrancesco.minio_gallery.entity.User;
-import it.zaninifrancesco.minio_gallery.repository.ImageLikeRepository;
+import it.zaninifrancesco.minio_gallery.config.ThreadingConfig;
+import it.zaninifrancesco.minio_gallery.event.DomainEvent;
+import it.zaninifrancesco.minio_gallery.event.ImageDeletedEvent;
+import it.zaninifrancesco.minio_gallery.event.ImageUploadedEvent;
+import it.zaninifrancesco.minio_gallery.event.LikeToggledEvent;
+import it.zaninifrancesco.minio_gallery.event.UserChangedEvent;
 import it.zaninifrancesco.minio_gallery.repository.ImageMetadataRepository;
-import it.zaninifrancesco.minio_gallery.repository.UserRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Service per statistiche pubbliche
  * Fornisce statistiche generali del sistema visibili a tutti
+ *
+ * I totali sono contatori in memoria aggiornati dagli eventi di upload, eliminazione, like e
+ * registrazione, quindi una richiesta non esegue query. I contatori vengono caricati dal database
+ * al primo accesso o all'avvio e poi riallineati periodicamente, il che recepisce anche le modifiche
+ * fatte dalle altre istanze. Durante un caricamento gli eventi vengono trattenuti e riapplicati solo
+ * se la loro transazione non era visibile alla query (vedi PendingEvents).
  */
 @Service
 public class StatisticsService {
-    
+
     private static final Logger logger = LoggerFactory.getLogger(StatisticsService.class);
-    
-    @Autowired
-    private UserRepository userRepository;
-    
+
+    /**
+     * Totali pubblici
+     */
+    private record Totals(long photos, long likes, long participants) {
+
+        private Totals plus(long photoChange, long likeChange, long participantChange) {
+            return new Totals(photos + photoChange, likes + likeChange, participants + participantChange);
+        }
+    }
+
     @Autowired
     private ImageMetadataRepository imageMetadataRepository;
-    
+
+    @Autowired
+    private SnapshotReader snapshotReader;
+
     @Autowired
-    private ImageLikeRepository imageLikeRepository;
-    
+    @Qualifier(ThreadingConfig.FAN_OUT_EXECUTOR)
+    private ExecutorService fanOutExecutor;
+
+    // Un solo caricamento alla volta; refreshLock protegge i totali e gli eventi in attesa
+    private final ReentrantLock queryLock = new ReentrantLock();
+    private final ReentrantLock refreshLock = new ReentrantLock();
+    private volatile Totals totals;
+
+    // Eventi ricevuti durante un caricamento
+    private final PendingEvents pendingEvents = new PendingEvents();
+
     /**
      * Ottiene statistiche pubbliche del sistema
      * Queste statistiche sono visibili a tutti senza autenticazione
      */
     public Map<String, Object> getPublicStats() {
-        logger.info("Generating public statistics");
-        
+        Totals current = totals;
+        if (current == null) {
+            current = loadIfNeeded();
+        }
+
         Map<String, Object> stats = new HashMap<>();
-        
-        // Conteggio totale foto
-        long totalPhotos = imageMetadataRepository.count();
-        
-        // Conteggio totale likes
-        long totalLikes = imageLikeRepository.count();
-        
-        // Conteggio totale partecipanti (utenti attivi)
-        long totalParticipants = userRepository.countByEnabledTrue();
-        
-        stats.put("totalPhotos", totalPhotos);
-        stats.put("totalLikes", totalLikes);
-        stats.put("totalParticipants", totalParticipants);
-        
-        logger.info("Public stats generated: {} photos, {} likes, {} participants", 
-                   totalPhotos, totalLikes, totalParticipants);
-        
+        stats.put("totalPhotos", current.photos());
+        stats.put("totalLikes", current.likes());
+        stats.put("totalParticipants", current.participants());
         return stats;
     }
+
+    /**
+     * Allinea i contatori in background all'avvio dell'applicazione
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void reconcileAsync() {
+        fanOutExecutor.execute(this::reconcileQuietly);
+    }
+
+    @TransactionalEventListener
+    public void onImageUploaded(ImageUploadedEvent event) {
+        handle(event);
+    }
+
+    @TransactionalEventListener
+    public void onImageDeleted(ImageDeletedEvent event) {
+        handle(event);
+    }
+
+    @TransactionalEventListener
+    public void onLikeToggled(LikeToggledEvent event) {
+        // Un toggle che non ha cambiato nulla (toggle concorrente) non ha data del like
+        if (event.getLikedAt() != null) {
+            handle(event);
+        }
+    }
+
+    @TransactionalEventListener
+    public void onUserChanged(UserChangedEvent event) {
+        handle(event);
+    }
+
+    /**
+     * Riallinea periodicamente i contatori al database (recepisce anche le modifiche delle altre istanze)
+     */
+    @Scheduled(fixedDelayString = "${app.statistics.reconcile-interval-ms:60000}",
+               initialDelayString = "${app.statistics.reconcile-interval-ms:60000}")
+    public void reconcileQuietly() {
+        queryLock.lock();
+        try {
+            refresh();
+        } catch (Exception e) {
+            logger.error("Failed to reconcile public statistics", e);
+        } finally {
+            queryLock.unlock();
+        }
+    }
+
+    private Totals loadIfNeeded() {
+        queryLock.lock();
+        try {
+            // Un caricamento concorrente (avvio o altra richiesta) potrebbe essere appena terminato
+            Totals current = totals;
+            return current != null ? current : refresh();
+        } finally {
+            queryLock.unlock();
+        }
+    }
+
+    private Totals refresh() {
+        refreshLock.lock();
+        try {
+            pendingEvents.start();
+        } finally {
+            refreshLock.unlock();
+        }
+
+        try {
+            // Una sola query: immagini, like (contatori denormalizzati) e utenti abilitati
+            SnapshotReader.Result<Object[]> result = snapshotReader.read(() ->
+                    imageMetadataRepository.aggregateSystemStats().get(0));
+            Object[] row = result.value();
+
+            refreshLock.lock();
+            try {
+                Totals loaded = new Totals(((Number) row[4]).longValue(), ((Number) row[6]).longValue(),
+                        ((Number) row[3]).longValue());
+                // Solo gli eventi delle transazioni non ancora visibili alla query mancano dal risultato
+                for (DomainEvent event : pendingEvents.drain(result.snapshot())) {
+                    loaded = apply(loaded, event);
+                }
+                totals = loaded;
+                logger.debug("Public stats reconciled: {} photos, {} likes, {} participants",
+                        loaded.photos(), loaded.likes(), loaded.participants());
+                return loaded;
+            } finally {
+                refreshLock.unlock();
+            }
+        } catch (RuntimeException e) {
+            refreshLock.lock();
+            try {
+                pendingEvents.discard();
+            } finally {
+                refreshLock.unlock();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Applica subito l'evento, o lo trattiene se è in corso un caricamento
+     * Prima del primo caricamento gli eventi vengono ignorati: il caricamento li include
+     */
+    private void handle(DomainEvent event) {
+        refreshLock.lock();
+        try {
+            if (!pendingEvents.offer(event) && totals != null) {
+                totals = apply(totals, event);
+            }
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    private static Totals apply(Totals current, DomainEvent event) {
+        if (event instanceof ImageUploadedEvent) {
+            return current.plus(1, 0, 0);
+        }
+        if (event instanceof ImageDeletedEvent deleted) {
+            return current.plus(-1, -deleted.getLikeCount(), 0);
+        }
+        if (event instanceof LikeToggledEvent like) {
+            return current.plus(0, like.isLiked() ? 1 : -1, 0);
+        }
+        if (event instanceof UserChangedEvent user) {
+            return current.plus(0, 0, (user.isEnabledAfter() ? 1 : 0) - (user.isEnabledBefore() ? 1 : 0));
+        }
+        return current;
+    }
 }
@@ -0,0 +1,184 @@
+package it.zaninifrancesco.minio_gallery.service;
+
+import it.zaninifrancesco.minio_gallery.event.DomainEvent;
+import it.zaninifrancesco.minio_gallery.event.ImageDeletedEvent;
+import it.zaninifrancesco.minio_gallery.event.ImageUploadedEvent;
+import it.zaninifrancesco.minio_gallery.event.LikeToggledEvent;
+import it.zaninifrancesco.minio_gallery.event.UserChangedEvent;
+import it.zaninifrancesco.minio_gallery.repository.ImageMetadataRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Snapshot delle statistiche di sistema per la dashboard admin
+ *
+ * Lo snapshot viene calcolato con un'unica query aggregata e poi aggiornato dagli eventi di dominio:
+ * upload e like lo modificano in modo incrementale, mentre le modifiche agli utenti e le eliminazioni
+ * di immagini (che si portano via i like) lo invalidano, e la lettura successiva lo ricalcola.
+ * Un riallineamento periodico corregge eventuali scostamenti. Le letture restituiscono lo snapshot
+ * in memoria senza query.
+ */
+@Service
+public class SystemStatsService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SystemStatsService.class);
+
+    /**
+     * Statistiche di sistema con l'istante in cui sono state calcolate (o aggiornate dall'ultimo evento)
+     */
+    public record Snapshot(long totalUsers, long adminUsers, long regularUsers, long enabledUsers,
+                           long totalImages, long totalSizeBytes, long totalLikes, LocalDateTime generatedAt) {
+
+        public long disabledUsers() {
+            return totalUsers - enabledUsers;
+        }
+
+        private Snapshot plus(long images, long sizeBytes, long likes) {
+            return new Snapshot(totalUsers, adminUsers, regularUsers, enabledUsers, totalImages + images,
+                    totalSizeBytes + sizeBytes, totalLikes + likes, LocalDateTime.now());
+        }
+    }
+
+    @Autowired
+    private ImageMetadataRepository imageMetadataRepository;
+
+    @Autowired
+    private SnapshotReader snapshotReader;
+
+    // Un solo ricalcolo alla volta; refreshLock protegge snapshot ed eventi in attesa
+    private final ReentrantLock queryLock = new ReentrantLock();
+    private final ReentrantLock refreshLock = new ReentrantLock();
+    private volatile Snapshot snapshot;
+    private volatile boolean stale = true;
+
+    // Eventi ricevuti durante un ricalcolo
+    private final PendingEvents pendingEvents = new PendingEvents();
+
+    /**
+     * Statistiche correnti; la query viene eseguita solo se lo snapshot è stato invalidato
+     */
+    public Snapshot getSnapshot() {
+        Snapshot current = snapshot;
+        if (current != null && !stale) {
+            return current;
+        }
+        queryLock.lock();
+        try {
+            // Un ricalcolo concorrente potrebbe aver appena aggiornato lo snapshot
+            current = snapshot;
+            return current != null && !stale ? current : refresh();
+        } finally {
+            queryLock.unlock();
+        }
+    }
+
+    @TransactionalEventListener
+    public void onImageUploaded(ImageUploadedEvent event) {
+        handle(event);
+    }
+
+    @TransactionalEventListener
+    public void onImageDeleted(ImageDeletedEvent event) {
+        stale = true;
+    }
+
+    @TransactionalEventListener
+    public void onLikeToggled(LikeToggledEvent event) {
+        // Un toggle che non ha cambiato nulla (toggle concorrente) non ha data del like
+        if (event.getLikedAt() != null) {
+            handle(event);
+        }
+    }
+
+    @TransactionalEventListener
+    public void onUserChanged(UserChangedEvent event) {
+        stale = true;
+    }
+
+    /**
+     * Riallinea periodicamente lo snapshot al database
+     */
+    @Scheduled(fixedDelayString = "${app.admin.stats.reconcile-interval-ms:300000}",
+               initialDelayString = "${app.admin.stats.reconcile-interval-ms:300000}")
+    public void reconcile() {
+        queryLock.lock();
+        try {
+            refresh();
+        } catch (Exception e) {
+            logger.error("Failed to reconcile system statistics", e);
+        } finally {
+            queryLock.unlock();
+        }
+    }
+
+    private Snapshot refresh() {
+        refreshLock.lock();
+        try {
+            pendingEvents.start();
+            stale = false;
+        } finally {
+            refreshLock.unlock();
+        }
+
+        try {
+            SnapshotReader.Result<Object[]> result = snapshotReader.read(() ->
+                    imageMetadataRepository.aggregateSystemStats().get(0));
+            Object[] row = result.value();
+
+            refreshLock.lock();
+            try {
+                Snapshot loaded = new Snapshot(toLong(row[0]), toLong(row[1]), toLong(row[2]), toLong(row[3]),
+                        toLong(row[4]), toLong(row[5]), toLong(row[6]), LocalDateTime.now());
+                // Solo gli eventi delle transazioni non ancora visibili alla query mancano dal risultato
+                for (DomainEvent event : pendingEvents.drain(result.snapshot())) {
+                    loaded = apply(loaded, event);
+                }
+                snapshot = loaded;
+                return loaded;
+            } finally {
+                refreshLock.unlock();
+            }
+        } catch (RuntimeException e) {
+            refreshLock.lock();
+            try {
+                pendingEvents.discard();
+                stale = true;
+            } finally {
+                refreshLock.unlock();
+            }
+            throw e;
+        }
+    }
+
+    private void handle(DomainEvent event) {
+        refreshLock.lock();
+        try {
+            if (!pendingEvents.offer(event) && snapshot != null) {
+                snapshot = apply(snapshot, event);
+            }
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    private static Snapshot apply(Snapshot current, DomainEvent event) {
+        if (event instanceof ImageUploadedEvent uploaded) {
+            return current.plus(1, uploaded.getSize(), 0);
+        }
+        if (event instanceof LikeToggledEvent like) {
+            return current.plus(0, 0, like.isLiked() ? 1 : -1);
+        }
+        return current;
+    }
+
+    private static long toLong(Object value) {
+        return ((Number) value).longValue();
+    }
+}
@@ -0,0 +1,183 @@
+package it.zaninifrancesco.minio_gallery.service;
+
+import it.zaninifrancesco.minio_gallery.dto.TagSuggestion;
+import it.zaninifrancesco.minio_gallery.event.ImageDeletedEvent;
+import it.zaninifrancesco.minio_gallery.event.ImageUploadedEvent;
+import it.zaninifrancesco.minio_gallery.repository.ImageMetadataRepository;
+import it.zaninifrancesco.minio_gallery.repository.TagRepository;
+import it.zaninifrancesco.minio_gallery.search.FacetCounts;
+import it.zaninifrancesco.minio_gallery.search.ImageBitmapIndex;
+import it.zaninifrancesco.minio_gallery.search.ImageQuery;
+import it.zaninifrancesco.minio_gallery.search.PopularTags;
+import it.zaninifrancesco.minio_gallery.search.SearchHits;
+import it.zaninifrancesco.minio_gallery.search.TagQuery;
+import it.zaninifrancesco.minio_gallery.search.TagTrie;
+import it.zaninifrancesco.minio_gallery.search.TextMatcher;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Service per i tag: autocompletamento servito dal trie in memoria, classifica dei tag
+ * più popolari e query booleane servite dall'indice a bitmap. Le strutture vengono caricate
+ * all'avvio e aggiornate dagli eventi di upload ed eliminazione, quindi le letture non
+ * interrogano il database (la classifica solo quando va ricaricata)
+ */
+@Service
+@DependsOn("databaseSchemaInitializer") // contatori usage_count riallineati prima del caricamento
+public class TagService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(TagService.class);
+    
+    @Autowired
+    private TagRepository tagRepository;
+    
+    @Autowired
+    private ImageMetadataRepository imageMetadataRepository;
+    
+    @Value("${app.tags.autocomplete.max-completions:10}")
+    private int maxCompletions;
+    
+    @Value("${app.search.facets.tag-limit:10}")
+    private int facetTagLimit;
+    
+    @Value("${app.tags.popular.capacity:50}")
+    private int popularCapacity;
+    
+    private TagTrie tagTrie;
+    
+    private PopularTags popularTags;
+    
+    private ImageBitmapIndex bitmapIndex;
+    
+    @PostConstruct
+    public void loadTagTrie() {
+        long start = System.currentTimeMillis();
+        TagTrie trie = new TagTrie(maxCompletions);
+        for (Object[] row : tagRepository.findAllNamesAndUsageCounts()) {
+            trie.put((String) row[0], ((Number) row[1]).intValue());
+        }
+        tagTrie = trie;
+        popularTags = new PopularTags(popularCapacity);
+        logger.info("Tag autocomplete trie loaded with {} tags in {} ms", trie.size(), System.currentTimeMillis() - start);
+    }
+    
+    @PostConstruct
+    public void loadBitmapIndex() {
+        long start = System.currentTimeMillis();
+        ImageBitmapIndex index = new ImageBitmapIndex();
+        for (Object[] row : imageMetadataRepository.findAllBitmapFieldsOrderByUploadedAtAsc()) {
+            long size = row[4] != null ? ((Number) row[4]).longValue() : 0L;
+            index.add((UUID) row[0], (Long) row[1], (String) row[2], (LocalDateTime) row[3], size, List.of());
+        }
+        for (Object[] row : imageMetadataRepository.findAllImageTagNames()) {
+            index.addTag((UUID) row[0], (String) row[1]);
+        }
+        bitmapIndex = index;
+        logger.info("Tag bitmap index loaded with {} images in {} ms", index.size(), System.currentTimeMillis() - start);
+    }
+    
+    /**
+     * Suggerisce i tag che iniziano con il prefisso, ordinati per numero di immagini
+     */
+    public List<TagSuggestion> autocomplete(String prefix, int limit) {
+        int boundedLimit = Math.max(1, Math.min(limit, maxCompletions));
+        return tagTrie.complete(prefix, boundedLimit).stream()
+                .map(completion -> new TagSuggestion(completion.getTagName(), completion.getUsageCount()))
+                .toList();
+    }
+    
+    /**
+     * Tag più usati, dal più popolare (al massimo app.tags.popular.capacity)
+     * La classifica è mantenuta in memoria e ricaricata dal database solo quando non è più affidabile
+     */
+    public List<TagSuggestion> getPopularTags(int limit) {
+        // La generazione va letta prima della query: un aggiornamento arrivato durante la lettura la scarta
+        long generation = popularTags.generation();
+        if (popularTags.isStale()) {
+            List<PopularTags.Entry> topEntries = tagRepository.findTopPopularTags(PageRequest.of(0, popularCapacity)).stream()
+                    .map(tag -> new PopularTags.Entry(tag.getName(), tag.getUsageCount()))
+                    .toList();
+            if (!popularTags.reload(generation, topEntries)) {
+                logger.debug("Popular tags changed while reloading, keeping the incremental ranking");
+            }
+        }
+        
+        int boundedLimit = Math.max(1, Math.min(limit, popularCapacity));
+        return popularTags.top(boundedLimit).stream()
+                .map(entry -> new TagSuggestion(entry.getTagName(), entry.getUsageCount()))
+                .toList();
+    }
+    
+    /**
+     * Cerca le immagini che soddisfano la query sui tag, in ordine di recenza
+     *
+     * @param query query booleana (vedi {@link TagQuery})
+     * @param userId se non null limita la ricerca alle immagini dell'utente
+     * @param pageable paginazione richiesta
+     */
+    public SearchHits searchByTags(TagQuery query, Long userId, Pageable pageable) {
+        return bitmapIndex.search(query, userId, (int) pageable.getOffset(), pageable.getPageSize());
+    }
+    
+    /**
+     * Valuta una ricerca combinata con l'indice a bitmap, partendo dal predicato più selettivo
+     *
+     * @param query criteri della ricerca
+     * @param text predicato testuale, null se la ricerca non contiene testo
+     * @param pageable paginazione richiesta
+     */
+    public SearchHits queryImages(ImageQuery query, TextMatcher text, Pageable pageable) {
+        return bitmapIndex.query(query, text, (int) pageable.getOffset(), pageable.getPageSize());
+    }
+    
+    /**
+     * Conteggi per faccette (tag co-occorrenti, tipo di contenuto, mese) dei risultati di una query sui tag
+     */
+    public FacetCounts facetsForTagQuery(TagQuery query, Long userId) {
+        return bitmapIndex.facets(query, userId, facetTagLimit);
+    }
+    
+    /**
+     * Conteggi per faccette di un insieme di immagini già filtrato (es. ricerca testuale)
+     */
+    public FacetCounts facetsForImages(Collection<UUID> imageIds) {
+        return bitmapIndex.facets(imageIds, facetTagLimit);
+    }
+    
+    /**
+     * Analizza un'espressione booleana sui tag riconoscendo i tag esistenti con trattino
+     */
+    public TagQuery parseTagQuery(String expression) {
+        return TagQuery.parse(expression, bitmapIndex::hasTag);
+    }
+    
+    @TransactionalEventListener
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void onImageUploaded(ImageUploadedEvent event) {
+        event.getTagNames().forEach(tagName -> popularTags.update(tagName, tagTrie.increment(tagName, 1)));
+        bitmapIndex.add(event.getImageId(), event.getUserId(), event.getContentType(), event.getUploadedAt(),
+                event.getSize(), event.getTagNames());
+    }
+    
+    @TransactionalEventListener
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void onImageDeleted(ImageDeletedEvent event) {
+        event.getTagNames().forEach(tagName -> popularTags.update(tagName, tagTrie.increment(tagName, -1)));
+        bitmapIndex.remove(event.getImageId(), event.getUserId(), event.getContentType(), event.getUploadedAt(), event.getTagNames());
+    }
+}
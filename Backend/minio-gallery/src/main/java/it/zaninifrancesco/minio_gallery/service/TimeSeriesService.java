@@ -0,0 +1,397 @@
+package it.zaninifrancesco.minio_gallery.service;
+
+import it.zaninifrancesco.minio_gallery.config.ThreadingConfig;
+import it.zaninifrancesco.minio_gallery.event.DomainEvent;
+import it.zaninifrancesco.minio_gallery.event.ImageDeletedEvent;
+import it.zaninifrancesco.minio_gallery.event.ImageUploadedEvent;
+import it.zaninifrancesco.minio_gallery.event.LikeToggledEvent;
+import it.zaninifrancesco.minio_gallery.event.UserChangedEvent;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Serie temporali orarie e giornaliere di upload, like, nuovi utenti e byte caricati
+ *
+ * I valori contano le righe ancora presenti nelle tabelle di origine per istante di creazione
+ * (un'immagine eliminata o un like rimosso escono dall'ora in cui erano stati creati), così
+ * l'aggiornamento incrementale e il ricalcolo dai dati grezzi coincidono. Gli eventi di dominio
+ * accumulano le variazioni in memoria per ora, scritte a blocchi in stats_hourly e stats_daily;
+ * il backfill ricalcola un intervallo di giorni dalle tabelle di origine, per intero al primo
+ * avvio e ogni notte per i giorni più recenti (corregge le variazioni perse in un arresto).
+ * Il backfill procede un giorno per transazione, così la scrittura periodica delle variazioni
+ * non resta bloccata per tutta la sua durata. Durante il ricalcolo di un giorno gli eventi vengono
+ * trattenuti: quelli delle transazioni già visibili alla lettura dei dati grezzi non contano più
+ * per quel giorno (vedi PendingEvents), gli altri vengono accumulati per intero.
+ */
+@Service
+public class TimeSeriesService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TimeSeriesService.class);
+
+    public enum Metric {
+        UPLOADS, LIKES, USERS, BYTES;
+
+        private String key() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    public enum Granularity {
+        HOUR, DAY
+    }
+
+    /**
+     * Valore di una metrica nell'intervallo che inizia a bucket (ora o giorno)
+     */
+    public record Point(LocalDateTime bucket, long value) {
+    }
+
+    private record BucketKey(Metric metric, LocalDateTime hour) {
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private SnapshotReader snapshotReader;
+
+    @Autowired
+    @Qualifier(ThreadingConfig.FAN_OUT_EXECUTOR)
+    private ExecutorService fanOutExecutor;
+
+    @Value("${app.admin.timeseries.max-points:5000}")
+    private int maxPoints;
+
+    @Value("${app.admin.timeseries.backfill-days:2}")
+    private int backfillDays;
+
+    // Variazioni non ancora scritte per (metrica, ora); merge e remove sono atomici per chiave
+    private final Map<BucketKey, Long> pending = new ConcurrentHashMap<>();
+
+    // Scrittura delle variazioni e backfill di un giorno non si sovrappongono
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    // Eventi ricevuti durante il ricalcolo di un giorno, protetti da eventLock
+    private final ReentrantLock eventLock = new ReentrantLock();
+    private final PendingEvents pendingEvents = new PendingEvents();
+
+    /**
+     * Serie di una metrica tra due giorni (inclusi), con i bucket senza dati a zero
+     */
+    public List<Point> getSeries(Metric metric, LocalDate from, LocalDate to, Granularity granularity) {
+        if (to.isBefore(from)) {
+            throw new IllegalArgumentException("'from' must not be after 'to'");
+        }
+        LocalDateTime start = from.atStartOfDay();
+        LocalDateTime end = to.plusDays(1).atStartOfDay();
+        ChronoUnit unit = granularity == Granularity.HOUR ? ChronoUnit.HOURS : ChronoUnit.DAYS;
+        long points = unit.between(start, end);
+        if (points > maxPoints) {
+            throw new IllegalArgumentException("Range too large: at most " + maxPoints + " points per request");
+        }
+
+        Map<LocalDateTime, Long> values = new HashMap<>();
+        if (granularity == Granularity.HOUR) {
+            jdbcTemplate.query("SELECT bucket, value FROM stats_hourly WHERE metric = ? AND bucket >= ? AND bucket < ?",
+                    rs -> {
+                        values.put(rs.getTimestamp(1).toLocalDateTime(), rs.getLong(2));
+                    }, metric.key(), Timestamp.valueOf(start), Timestamp.valueOf(end));
+        } else {
+            jdbcTemplate.query("SELECT bucket, value FROM stats_daily WHERE metric = ? AND bucket >= ? AND bucket < ?",
+                    rs -> {
+                        values.put(rs.getDate(1).toLocalDate().atStartOfDay(), rs.getLong(2));
+                    }, metric.key(), Date.valueOf(from), Date.valueOf(to.plusDays(1)));
+        }
+
+        List<Point> series = new ArrayList<>((int) points);
+        for (LocalDateTime bucket = start; bucket.isBefore(end); bucket = bucket.plus(1, unit)) {
+            series.add(new Point(bucket, values.getOrDefault(bucket, 0L)));
+        }
+        return series;
+    }
+
+    @TransactionalEventListener
+    public void onImageUploaded(ImageUploadedEvent event) {
+        handle(event);
+    }
+
+    @TransactionalEventListener
+    public void onImageDeleted(ImageDeletedEvent event) {
+        handle(event);
+    }
+
+    @TransactionalEventListener
+    public void onLikeToggled(LikeToggledEvent event) {
+        handle(event);
+    }
+
+    @TransactionalEventListener
+    public void onUserChanged(UserChangedEvent event) {
+        handle(event);
+    }
+
+    /**
+     * Scrive le variazioni accumulate in un'unica transazione
+     */
+    @Scheduled(fixedDelayString = "${app.admin.timeseries.flush-interval-ms:10000}")
+    public void flush() {
+        // Se è in corso il backfill di un giorno le variazioni restano in coda fino al prossimo intervallo
+        if (!writeLock.tryLock()) {
+            return;
+        }
+        try {
+            writePending();
+        } catch (Exception e) {
+            logger.error("Failed to write time series rollups", e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        writeLock.lock();
+        try {
+            writePending();
+        } catch (Exception e) {
+            logger.error("Failed to write time series rollups", e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Ricalcola dai dati grezzi i giorni più recenti
+     */
+    @Scheduled(cron = "${app.admin.timeseries.backfill-cron:0 30 3 * * *}")
+    public void backfillRecent() {
+        LocalDate today = LocalDate.now();
+        try {
+            backfill(today.minusDays(backfillDays), today);
+        } catch (Exception e) {
+            logger.error("Failed to backfill recent time series", e);
+        }
+    }
+
+    /**
+     * Al primo avvio (rollup vuoti) ricalcola in background l'intera storia, dal primo giorno con dati
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillIfEmptyAsync() {
+        fanOutExecutor.execute(() -> {
+            try {
+                Boolean empty = jdbcTemplate.queryForObject("SELECT NOT EXISTS (SELECT 1 FROM stats_daily)", Boolean.class);
+                if (!Boolean.TRUE.equals(empty)) {
+                    return;
+                }
+                Date firstDay = jdbcTemplate.queryForObject(
+                        "SELECT CAST(LEAST((SELECT MIN(uploaded_at) FROM image_metadata), " +
+                        "(SELECT MIN(liked_at) FROM image_likes), (SELECT MIN(created_at) FROM users)) AS date)",
+                        Date.class);
+                if (firstDay != null) {
+                    backfill(firstDay.toLocalDate(), LocalDate.now());
+                }
+            } catch (Exception e) {
+                logger.error("Failed to backfill time series", e);
+            }
+        });
+    }
+
+    /**
+     * Ricalcola tutte le metriche tra due giorni (inclusi) dalle tabelle di origine, un giorno per transazione
+     */
+    public void backfill(LocalDate from, LocalDate to) {
+        for (LocalDate day = from; !day.isAfter(to); day = day.plusDays(1)) {
+            backfillDay(day);
+        }
+        logger.info("Time series backfilled from {} to {}", from, to);
+    }
+
+    private void backfillDay(LocalDate day) {
+        Timestamp start = Timestamp.valueOf(day.atStartOfDay());
+        Timestamp end = Timestamp.valueOf(day.plusDays(1).atStartOfDay());
+
+        writeLock.lock();
+        try {
+            eventLock.lock();
+            try {
+                pendingEvents.start();
+            } finally {
+                eventLock.unlock();
+            }
+
+            SnapshotReader.Result<List<Object[]>> result;
+            try {
+                // Le variazioni accumulate prima del caricamento vengono scritte: per il giorno le sostituisce il ricalcolo
+                writePending();
+                result = snapshotReader.read(() -> readDay(start, end));
+                new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+                    jdbcTemplate.update("DELETE FROM stats_hourly WHERE bucket >= ? AND bucket < ?", start, end);
+                    jdbcTemplate.batchUpdate("INSERT INTO stats_hourly (metric, bucket, value) VALUES (?, ?, ?)",
+                            result.value());
+
+                    jdbcTemplate.update("DELETE FROM stats_daily WHERE bucket >= CAST(? AS date) AND bucket < CAST(? AS date)",
+                            start, end);
+                    jdbcTemplate.update(
+                            "INSERT INTO stats_daily (metric, bucket, value) " +
+                            "SELECT metric, CAST(bucket AS date), SUM(value) FROM stats_hourly " +
+                            "WHERE bucket >= ? AND bucket < ? GROUP BY 1, 2", start, end);
+                });
+            } catch (RuntimeException e) {
+                // Il giorno non è stato ricalcolato: le variazioni trattenute valgono per intero
+                replay(null, null);
+                throw e;
+            }
+            replay(result.snapshot(), day);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Valori orari di tutte le metriche di un giorno, calcolati dalle tabelle di origine
+     */
+    private List<Object[]> readDay(Timestamp start, Timestamp end) {
+        return jdbcTemplate.query(
+                "SELECT 'uploads', date_trunc('hour', uploaded_at), COUNT(*) FROM image_metadata " +
+                "WHERE uploaded_at >= ? AND uploaded_at < ? GROUP BY 2 " +
+                "UNION ALL " +
+                "SELECT 'bytes', date_trunc('hour', uploaded_at), COALESCE(SUM(size), 0) FROM image_metadata " +
+                "WHERE uploaded_at >= ? AND uploaded_at < ? GROUP BY 2 " +
+                "UNION ALL " +
+                "SELECT 'likes', date_trunc('hour', liked_at), COUNT(*) FROM image_likes " +
+                "WHERE liked_at >= ? AND liked_at < ? GROUP BY 2 " +
+                "UNION ALL " +
+                "SELECT 'users', date_trunc('hour', created_at), COUNT(*) FROM users " +
+                "WHERE created_at >= ? AND created_at < ? GROUP BY 2",
+                (rs, rowNum) -> new Object[]{rs.getString(1), rs.getTimestamp(2), rs.getLong(3)},
+                start, end, start, end, start, end, start, end);
+    }
+
+    /**
+     * Accumula gli eventi trattenuti durante il ricalcolo di un giorno; per quelli inclusi nello snapshot
+     * vengono scartate le variazioni del giorno ricalcolato
+     */
+    private void replay(DatabaseSnapshot snapshot, LocalDate rebuiltDay) {
+        eventLock.lock();
+        try {
+            for (DomainEvent event : pendingEvents.drainAll()) {
+                apply(event, snapshot != null && snapshot.includes(event) ? rebuiltDay : null);
+            }
+        } finally {
+            eventLock.unlock();
+        }
+    }
+
+    private void handle(DomainEvent event) {
+        eventLock.lock();
+        try {
+            if (!pendingEvents.offer(event)) {
+                apply(event, null);
+            }
+        } finally {
+            eventLock.unlock();
+        }
+    }
+
+    /**
+     * Accumula le variazioni dell'evento, tranne quelle che cadono nel giorno escluso
+     */
+    private void apply(DomainEvent event, LocalDate excludedDay) {
+        if (event instanceof ImageUploadedEvent uploaded) {
+            record(Metric.UPLOADS, uploaded.getUploadedAt(), 1, excludedDay);
+            record(Metric.BYTES, uploaded.getUploadedAt(), uploaded.getSize(), excludedDay);
+        } else if (event instanceof ImageDeletedEvent deleted) {
+            record(Metric.UPLOADS, deleted.getUploadedAt(), -1, excludedDay);
+            record(Metric.BYTES, deleted.getUploadedAt(), -deleted.getSize(), excludedDay);
+            // I like dell'immagine vengono eliminati con lei: escono dalle ore in cui erano stati messi
+            deleted.getLikesByHour().forEach((hour, likes) -> record(Metric.LIKES, hour, -likes, excludedDay));
+        } else if (event instanceof LikeToggledEvent like) {
+            // Per gli unlike likedAt è la data del like rimosso
+            record(Metric.LIKES, like.getLikedAt(), like.isLiked() ? 1 : -1, excludedDay);
+        } else if (event instanceof UserChangedEvent user) {
+            if (user.getChange() == UserChangedEvent.Change.REGISTERED) {
+                record(Metric.USERS, user.getCreatedAt(), 1, excludedDay);
+            } else if (user.getChange() == UserChangedEvent.Change.DELETED) {
+                record(Metric.USERS, user.getCreatedAt(), -1, excludedDay);
+            }
+        }
+    }
+
+    private void record(Metric metric, LocalDateTime at, long delta, LocalDate excludedDay) {
+        if (at != null && delta != 0 && !at.toLocalDate().equals(excludedDay)) {
+            pending.merge(new BucketKey(metric, at.truncatedTo(ChronoUnit.HOURS)), delta, Long::sum);
+        }
+    }
+
+    private void writePending() {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        Map<BucketKey, Long> hourly = new HashMap<>();
+        for (BucketKey key : List.copyOf(pending.keySet())) {
+            Long delta = pending.remove(key);
+            if (delta != null && delta != 0) {
+                hourly.put(key, delta);
+            }
+        }
+        Map<BucketKey, Long> daily = new HashMap<>();
+        hourly.forEach((key, delta) -> daily.merge(
+                new BucketKey(key.metric(), key.hour().truncatedTo(ChronoUnit.DAYS)), delta, Long::sum));
+
+        List<Object[]> hourlyRows = hourly.entrySet().stream()
+                .map(entry -> new Object[]{entry.getKey().metric().key(), Timestamp.valueOf(entry.getKey().hour()), entry.getValue()})
+                .toList();
+        List<Object[]> dailyRows = daily.entrySet().stream()
+                .map(entry -> new Object[]{entry.getKey().metric().key(),
+                        Date.valueOf(entry.getKey().hour().toLocalDate()), entry.getValue()})
+                .toList();
+
+        try {
+            new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+                jdbcTemplate.batchUpdate(
+                        "INSERT INTO stats_hourly (metric, bucket, value) VALUES (?, ?, ?) " +
+                        "ON CONFLICT (metric, bucket) DO UPDATE SET value = stats_hourly.value + EXCLUDED.value",
+                        hourlyRows);
+                jdbcTemplate.batchUpdate(
+                        "INSERT INTO stats_daily (metric, bucket, value) VALUES (?, ?, ?) " +
+                        "ON CONFLICT (metric, bucket) DO UPDATE SET value = stats_daily.value + EXCLUDED.value",
+                        dailyRows);
+            });
+        } catch (RuntimeException e) {
+            // Rimette le variazioni in coda per il prossimo tentativo
+            hourly.forEach((key, delta) -> pending.merge(key, delta, Long::sum));
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package it.zaninifrancesco.minio_gallery.service;
+
+import it.zaninifrancesco.minio_gallery.event.DomainEvent;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Optional;
+
+/**
+ * Registra sugli eventi di dominio l'ID della transazione PostgreSQL che li ha pubblicati
+ *
+ * Viene eseguito prima del commit, quindi prima di qualsiasi listener dopo il commit. L'ID viene letto
+ * una sola volta per transazione, dopo aver scritto le modifiche ancora in sospeso di JPA: una
+ * transazione che non ha scritto nulla non ha ID e i suoi eventi restano senza.
+ */
+@Component
+public class TransactionIdStamper {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT)
+    public void stamp(DomainEvent event) {
+        if (event.getTransactionId() == null) {
+            event.setTransactionId(currentTransactionId().orElse(null));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Optional<Long> currentTransactionId() {
+        Optional<Long> cached = (Optional<Long>) TransactionSynchronizationManager.getResource(this);
+        if (cached != null) {
+            return cached;
+        }
+
+        entityManager.flush();
+        Optional<Long> transactionId = Optional.ofNullable(jdbcTemplate.queryForObject(
+                "SELECT CAST(CAST(pg_current_xact_id_if_assigned() AS text) AS bigint)", Long.class));
+        TransactionSynchronizationManager.bindResource(this, transactionId);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(TransactionIdStamper.this);
+            }
+        });
+        return transactionId;
+    }
+}
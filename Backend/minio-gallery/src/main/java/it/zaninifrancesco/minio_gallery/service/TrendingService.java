@@ -0,0 +1,398 @@
+package it.zaninifrancesco.minio_gallery.service;
+
+import it.zaninifrancesco.minio_gallery.config.ThreadingConfig;
+import it.zaninifrancesco.minio_gallery.event.DomainEvent;
+import it.zaninifrancesco.minio_gallery.event.ImageDeletedEvent;
+import it.zaninifrancesco.minio_gallery.event.ImageUploadedEvent;
+import it.zaninifrancesco.minio_gallery.event.LikeToggledEvent;
+import it.zaninifrancesco.minio_gallery.repository.ImageMetadataRepository;
+import it.zaninifrancesco.minio_gallery.search.SearchHits;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Feed delle immagini di tendenza con punteggio a gravità (stile Hacker News)
+ *
+ * Il punteggio è (like recenti + 1) / (ore dall'upload + 2)^gravità, dove i like recenti sono una somma
+ * con decadimento esponenziale (emivita configurabile): ogni like vale 2^(-età/emivita) e un unlike
+ * sottrae esattamente il contributo del like rimosso. Sono tracciate solo le immagini con attività
+ * nella finestra (upload o like recenti), in array primitivi indicizzati per slot; gli eventi aggiornano
+ * la somma in O(1) e un job periodico ricalcola i punteggi delle sole immagini attive, seleziona le
+ * prime con un heap e pubblica la classifica per le letture senza lock.
+ */
+@Service
+public class TrendingService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TrendingService.class);
+
+    private static final long UNKNOWN_UPLOAD = Long.MIN_VALUE;
+    private static final double MILLIS_PER_HOUR = 3_600_000.0;
+
+    @Autowired
+    private ImageMetadataRepository imageMetadataRepository;
+
+    @Autowired
+    private SnapshotReader snapshotReader;
+
+    @Autowired
+    @Qualifier(ThreadingConfig.FAN_OUT_EXECUTOR)
+    private ExecutorService fanOutExecutor;
+
+    @Value("${app.trending.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.trending.gravity:1.8}")
+    private double gravity;
+
+    @Value("${app.trending.like-half-life-hours:24}")
+    private double likeHalfLifeHours;
+
+    @Value("${app.trending.window-days:7}")
+    private int windowDays;
+
+    @Value("${app.trending.max-results:500}")
+    private int maxResults;
+
+    // Decadimento per millisecondo dei like e somma minima sotto la quale un'immagine non è più attiva
+    private double decayPerMilli;
+    private double minActivity;
+
+    // Stato per slot, protetto dal lock; gli slot liberati vengono riutilizzati
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<UUID, Integer> slots = new HashMap<>();
+    private UUID[] imageIds = new UUID[1024];
+    private long[] uploadedAtMillis = new long[1024];
+    private double[] decayedLikes = new double[1024];
+    private long[] decayedAtMillis = new long[1024];
+    private int[] freeSlots = new int[64];
+    private int freeCount;
+    private int slotLimit;
+
+    // Eventi ricevuti durante il caricamento, protetti dal lock
+    private final PendingEvents pendingEvents = new PendingEvents();
+
+    // Classifica pubblicata dall'ultimo ricalcolo, null finché non è pronta
+    private volatile List<UUID> trending;
+
+    @PostConstruct
+    public void init() {
+        decayPerMilli = Math.log(2) / (likeHalfLifeHours * MILLIS_PER_HOUR);
+        minActivity = Math.pow(2, -windowDays * 24 / likeHalfLifeHours);
+    }
+
+    /**
+     * Carica le immagini attive in background all'avvio dell'applicazione
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadAsync() {
+        if (!enabled) {
+            return;
+        }
+        lock.lock();
+        try {
+            pendingEvents.start();
+        } finally {
+            lock.unlock();
+        }
+        fanOutExecutor.execute(this::load);
+    }
+
+    /**
+     * Pagina del feed di tendenza, oppure null se la classifica non è ancora pronta
+     */
+    public SearchHits findTrending(Pageable pageable) {
+        List<UUID> current = trending;
+        if (current == null) {
+            return null;
+        }
+        int from = (int) Math.min(pageable.getOffset(), current.size());
+        int to = Math.min(from + pageable.getPageSize(), current.size());
+        return new SearchHits(current.subList(from, to), current.size());
+    }
+
+    @TransactionalEventListener
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void onImageUploaded(ImageUploadedEvent event) {
+        handle(event);
+    }
+
+    @TransactionalEventListener
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void onImageDeleted(ImageDeletedEvent event) {
+        handle(event);
+    }
+
+    @TransactionalEventListener
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void onLikeToggled(LikeToggledEvent event) {
+        handle(event);
+    }
+
+    /**
+     * Ricalcola i punteggi delle immagini attive e pubblica la nuova classifica
+     */
+    @Scheduled(fixedDelayString = "${app.trending.recompute-interval-ms:60000}")
+    public void recompute() {
+        if (!enabled || trending == null) {
+            return;
+        }
+        resolveUploadDates();
+
+        long now = System.currentTimeMillis();
+        lock.lock();
+        try {
+            double[] scores = new double[slotLimit];
+            int[] heap = new int[Math.min(maxResults, slotLimit)];
+            int heapSize = 0;
+
+            for (int slot = 0; slot < slotLimit; slot++) {
+                if (imageIds[slot] == null || uploadedAtMillis[slot] == UNKNOWN_UPLOAD) {
+                    continue;
+                }
+                double likes = decayedLikes(slot, now);
+                double ageHours = Math.max(0, (now - uploadedAtMillis[slot]) / MILLIS_PER_HOUR);
+                if (likes < minActivity && ageHours > windowDays * 24) {
+                    release(slot);
+                    continue;
+                }
+
+                scores[slot] = (likes + 1) / Math.pow(ageHours + 2, gravity);
+                if (heap.length == 0) {
+                    continue;
+                }
+                if (heapSize < heap.length) {
+                    heap[heapSize] = slot;
+                    siftUp(heap, heapSize++, scores);
+                } else if (scores[slot] > scores[heap[0]]) {
+                    heap[0] = slot;
+                    siftDown(heap, heapSize, scores);
+                }
+            }
+
+            // Estrae dal min-heap in ordine crescente e riempie la classifica dal fondo
+            UUID[] ranked = new UUID[heapSize];
+            for (int i = heapSize - 1; i >= 0; i--) {
+                ranked[i] = imageIds[heap[0]];
+                heap[0] = heap[i];
+                siftDown(heap, i, scores);
+            }
+            trending = List.of(ranked);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void load() {
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            SnapshotReader.Result<List<Object[]>> loaded = snapshotReader.read(() ->
+                    imageMetadataRepository.findTrendingCandidates(now.minusDays(windowDays), now, decayPerMilli * 1000));
+            List<Object[]> candidates = loaded.value();
+
+            lock.lock();
+            try {
+                long nowMillis = toMillis(now);
+                for (Object[] row : candidates) {
+                    int slot = slotFor((UUID) row[0]);
+                    uploadedAtMillis[slot] = toMillis(LikeService.toLocalDateTime(row[1]));
+                    decayedLikes[slot] = ((Number) row[2]).doubleValue();
+                    decayedAtMillis[slot] = nowMillis;
+                }
+                // Solo gli eventi delle transazioni non ancora visibili alla query mancano dai dati caricati
+                pendingEvents.replay(loaded.snapshot(), this::apply);
+                trending = List.of();
+            } finally {
+                lock.unlock();
+            }
+
+            recompute();
+            logger.info("Trending feed loaded ({} active images)", candidates.size());
+        } catch (Exception e) {
+            lock.lock();
+            try {
+                pendingEvents.discard();
+            } finally {
+                lock.unlock();
+            }
+            logger.error("Failed to load trending feed, falling back to newest images", e);
+        }
+    }
+
+    private void handle(DomainEvent event) {
+        if (!enabled) {
+            return;
+        }
+        lock.lock();
+        try {
+            // Durante il caricamento l'evento viene trattenuto e riapplicato solo se manca dai dati caricati
+            if (!pendingEvents.offer(event) && trending != null) {
+                apply(event);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void apply(DomainEvent event) {
+        if (event instanceof ImageUploadedEvent uploaded) {
+            int slot = slotFor(uploaded.getImageId());
+            uploadedAtMillis[slot] = uploaded.getUploadedAt() != null
+                    ? toMillis(uploaded.getUploadedAt()) : System.currentTimeMillis();
+        } else if (event instanceof ImageDeletedEvent deleted) {
+            Integer slot = slots.get(deleted.getImageId());
+            if (slot != null) {
+                release(slot);
+            }
+        } else if (event instanceof LikeToggledEvent like && like.getLikedAt() != null) {
+            long now = System.currentTimeMillis();
+            double contribution = Math.exp(-decayPerMilli * Math.max(0, now - toMillis(like.getLikedAt())));
+            Integer slot = slots.get(like.getImageId());
+            if (slot == null) {
+                // Un unlike su un'immagine non attiva non cambia nulla; un like la rende attiva
+                if (!like.isLiked()) {
+                    return;
+                }
+                slot = slotFor(like.getImageId());
+            }
+            double likes = decayedLikes(slot, now) + (like.isLiked() ? contribution : -contribution);
+            decayedLikes[slot] = Math.max(0, likes);
+            decayedAtMillis[slot] = now;
+        }
+    }
+
+    /**
+     * Completa con un'unica query la data di upload delle immagini diventate attive per un like
+     */
+    private void resolveUploadDates() {
+        List<UUID> unknown = new ArrayList<>();
+        lock.lock();
+        try {
+            for (int slot = 0; slot < slotLimit; slot++) {
+                if (imageIds[slot] != null && uploadedAtMillis[slot] == UNKNOWN_UPLOAD) {
+                    unknown.add(imageIds[slot]);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (unknown.isEmpty()) {
+            return;
+        }
+
+        List<Object[]> rows = imageMetadataRepository.findUploadedAtByIdIn(unknown);
+        lock.lock();
+        try {
+            for (Object[] row : rows) {
+                Integer slot = slots.get((UUID) row[0]);
+                if (slot != null && uploadedAtMillis[slot] == UNKNOWN_UPLOAD) {
+                    uploadedAtMillis[slot] = toMillis((LocalDateTime) row[1]);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private double decayedLikes(int slot, long now) {
+        return decayedLikes[slot] * Math.exp(-decayPerMilli * Math.max(0, now - decayedAtMillis[slot]));
+    }
+
+    private int slotFor(UUID imageId) {
+        Integer existing = slots.get(imageId);
+        if (existing != null) {
+            return existing;
+        }
+
+        int slot;
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            slot = slotLimit++;
+            if (slot == imageIds.length) {
+                int capacity = imageIds.length * 2;
+                imageIds = Arrays.copyOf(imageIds, capacity);
+                uploadedAtMillis = Arrays.copyOf(uploadedAtMillis, capacity);
+                decayedLikes = Arrays.copyOf(decayedLikes, capacity);
+                decayedAtMillis = Arrays.copyOf(decayedAtMillis, capacity);
+            }
+        }
+        slots.put(imageId, slot);
+        imageIds[slot] = imageId;
+        uploadedAtMillis[slot] = UNKNOWN_UPLOAD;
+        decayedLikes[slot] = 0;
+        decayedAtMillis[slot] = System.currentTimeMillis();
+        return slot;
+    }
+
+    private void release(int slot) {
+        slots.remove(imageIds[slot]);
+        imageIds[slot] = null;
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        }
+        freeSlots[freeCount++] = slot;
+    }
+
+    private static void siftUp(int[] heap, int index, double[] scores) {
+        int slot = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (scores[heap[parent]] <= scores[slot]) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = slot;
+    }
+
+    private static void siftDown(int[] heap, int size, double[] scores) {
+        if (size == 0) {
+            return;
+        }
+        int index = 0;
+        int slot = heap[0];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && scores[heap[child + 1]] < scores[heap[child]]) {
+                child++;
+            }
+            if (scores[slot] <= scores[heap[child]]) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = slot;
+    }
+
+    private static long toMillis(LocalDateTime dateTime) {
+        return dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
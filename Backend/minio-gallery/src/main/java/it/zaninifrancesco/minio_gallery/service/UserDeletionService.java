@@ -0,0 +1,259 @@
+package it.zaninifrancesco.minio_gallery.service;
+
+import it.zaninifrancesco.minio_gallery.config.ThreadingConfig;
+import it.zaninifrancesco.minio_gallery.entity.ImageMetadata;
+import it.zaninifrancesco.minio_gallery.entity.User;
+import it.zaninifrancesco.minio_gallery.event.ImageDeletedEvent;
+import it.zaninifrancesco.minio_gallery.event.LikeToggledEvent;
+import it.zaninifrancesco.minio_gallery.event.UserChangedEvent;
+import it.zaninifrancesco.minio_gallery.repository.ImageLikeRepository;
+import it.zaninifrancesco.minio_gallery.repository.ImageMetadataRepository;
+import it.zaninifrancesco.minio_gallery.repository.TagRepository;
+import it.zaninifrancesco.minio_gallery.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Eliminazione asincrona di un utente con tutte le sue immagini
+ *
+ * L'utente viene subito disabilitato, poi un job in background rifiuta i suoi toggle, scrive i like
+ * ancora in sospeso nel write-behind ed elimina a blocchi i like che ha messo
+ * e le sue immagini: ogni blocco è una transazione breve con istruzioni SQL sull'intero blocco,
+ * seguita da un'unica richiesta di eliminazione multipla su MinIO. Lo stato del job è consultabile
+ * tramite il suo ID finché non scade.
+ */
+@Service
+public class UserDeletionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserDeletionService.class);
+
+    public enum Status {
+        RUNNING, COMPLETED, FAILED
+    }
+
+    /**
+     * Stato di un job di eliminazione: immagini eliminate finora su quelle presenti all'avvio
+     */
+    public record JobStatus(UUID jobId, Long userId, Status status, int totalImages, int deletedImages,
+                            int deletedLikes, int failedFiles, LocalDateTime startedAt, LocalDateTime finishedAt,
+                            String error) {
+    }
+
+    private static final class Job {
+        private final UUID id = UUID.randomUUID();
+        private final Long userId;
+        private final int totalImages;
+        private final LocalDateTime startedAt = LocalDateTime.now();
+        private final AtomicInteger deletedImages = new AtomicInteger();
+        private final AtomicInteger deletedLikes = new AtomicInteger();
+        private final AtomicInteger failedFiles = new AtomicInteger();
+        private volatile Status status = Status.RUNNING;
+        private volatile LocalDateTime finishedAt;
+        private volatile String error;
+
+        private Job(Long userId, int totalImages) {
+            this.userId = userId;
+            this.totalImages = totalImages;
+        }
+
+        private JobStatus toStatus() {
+            return new JobStatus(id, userId, status, totalImages, deletedImages.get(), deletedLikes.get(),
+                    failedFiles.get(), startedAt, finishedAt, error);
+        }
+    }
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ImageMetadataRepository imageMetadataRepository;
+
+    @Autowired
+    private ImageLikeRepository imageLikeRepository;
+
+    @Autowired
+    private TagRepository tagRepository;
+
+    @Autowired
+    private MinioService minioService;
+
+    @Autowired
+    private LikeWriteBehindService likeWriteBehindService;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    @Qualifier(ThreadingConfig.FAN_OUT_EXECUTOR)
+    private ExecutorService fanOutExecutor;
+
+    @Value("${app.admin.user-deletion.chunk-size:500}")
+    private int chunkSize;
+
+    @Value("${app.admin.user-deletion.job-retention-minutes:1440}")
+    private long jobRetentionMinutes;
+
+    private final Map<UUID, Job> jobs = new ConcurrentHashMap<>();
+
+    // Job in corso per utente, per non avviarne due sullo stesso utente
+    private final Map<Long, Job> runningJobs = new ConcurrentHashMap<>();
+
+    /**
+     * Disabilita l'utente e avvia l'eliminazione in background; se è già in corso restituisce quel job
+     */
+    public JobStatus startDeletion(Long userId) {
+        Job running = runningJobs.get(userId);
+        if (running != null) {
+            return running.toStatus();
+        }
+
+        Job job = new TransactionTemplate(transactionManager).execute(status -> {
+            User user = userRepository.findById(userId)
+                    .orElseThrow(() -> new RuntimeException("User not found: " + userId));
+            boolean wasEnabled = user.isEnabled();
+            user.setEnabled(false);
+            userRepository.save(user);
+            eventPublisher.publishEvent(new UserChangedEvent(userId, UserChangedEvent.Change.UPDATED,
+                    wasEnabled, false, user.getCreatedAt()));
+            return new Job(userId, (int) imageMetadataRepository.countByUserId(userId));
+        });
+
+        Job existing = runningJobs.putIfAbsent(userId, job);
+        if (existing != null) {
+            return existing.toStatus();
+        }
+        jobs.put(job.id, job);
+        fanOutExecutor.execute(() -> run(job));
+        logger.info("User deletion job {} started for user {} ({} images)", job.id, userId, job.totalImages);
+        return job.toStatus();
+    }
+
+    /**
+     * Stato di un job di eliminazione
+     */
+    public Optional<JobStatus> getStatus(UUID jobId) {
+        return Optional.ofNullable(jobs.get(jobId)).map(Job::toStatus);
+    }
+
+    /**
+     * Rimuove lo stato dei job terminati da più del periodo di conservazione
+     */
+    @Scheduled(fixedDelayString = "${app.admin.user-deletion.cleanup-interval-ms:600000}")
+    public void removeExpiredJobs() {
+        LocalDateTime cutoff = LocalDateTime.now().minusMinutes(jobRetentionMinutes);
+        jobs.values().removeIf(job -> job.finishedAt != null && job.finishedAt.isBefore(cutoff));
+    }
+
+    private void run(Job job) {
+        try {
+            // Nessun nuovo toggle dall'utente e i like in sospeso (write-behind) scritti su image_likes,
+            // così da essere rimossi e notificati insieme agli altri
+            likeWriteBehindService.blockUser(job.userId);
+
+            // Prima i like messi dall'utente, poi le sue immagini, a blocchi finché non ne restano
+            int processed;
+            do {
+                processed = removeLikesChunk(job);
+            } while (processed > 0);
+            do {
+                processed = deleteImagesChunk(job);
+            } while (processed > 0);
+            deleteUser(job);
+            job.status = Status.COMPLETED;
+            logger.info("User deletion job {} completed: user {} deleted with {} images ({} files not removed)",
+                    job.id, job.userId, job.deletedImages.get(), job.failedFiles.get());
+        } catch (Exception e) {
+            job.status = Status.FAILED;
+            job.error = e.getMessage();
+            logger.error("User deletion job {} failed for user {}", job.id, job.userId, e);
+        } finally {
+            job.finishedAt = LocalDateTime.now();
+            likeWriteBehindService.unblockUser(job.userId);
+            runningJobs.remove(job.userId, job);
+        }
+    }
+
+    /**
+     * Rimuove un blocco di like messi dall'utente; i listener li ricevono come unlike
+     */
+    private int removeLikesChunk(Job job) {
+        Integer removed = new TransactionTemplate(transactionManager).execute(status -> {
+            List<Object[]> rows = imageLikeRepository.removeLikesByUser(job.userId, chunkSize);
+            for (Object[] row : rows) {
+                eventPublisher.publishEvent(new LikeToggledEvent((UUID) row[0], job.userId, false,
+                        ((Number) row[2]).intValue(), LikeService.toLocalDateTime(row[1])));
+            }
+            return rows.size();
+        });
+        job.deletedLikes.addAndGet(removed);
+        return removed;
+    }
+
+    /**
+     * Elimina un blocco di immagini dell'utente: database in una transazione, poi i file su MinIO
+     * (un file non eliminato resta orfano ma non è più raggiungibile)
+     */
+    private int deleteImagesChunk(Job job) {
+        List<String> fileNames = new TransactionTemplate(transactionManager).execute(status -> {
+            List<UUID> imageIds = imageMetadataRepository.findIdsByUserId(job.userId, chunkSize);
+            if (imageIds.isEmpty()) {
+                return List.of();
+            }
+            List<ImageMetadata> images = imageMetadataRepository.findAllWithUserAndTagsByIdIn(imageIds);
+            Map<UUID, Map<LocalDateTime, Integer>> likesByHour =
+                    ImageService.likesByHour(imageLikeRepository.countLikesByHour(imageIds));
+            List<ImageDeletedEvent> events = images.stream()
+                    .map(image -> new ImageDeletedEvent(image, likesByHour.getOrDefault(image.getId(), Map.of())))
+                    .toList();
+
+            tagRepository.unlinkImages(imageIds);
+            imageLikeRepository.deleteByImageIdIn(imageIds);
+            imageMetadataRepository.deleteAllByIdInBatch(imageIds);
+            userRepository.adjustStats(job.userId, -events.size(),
+                    -events.stream().mapToLong(ImageDeletedEvent::getSize).sum(),
+                    -events.stream().mapToLong(ImageDeletedEvent::getLikeCount).sum());
+
+            events.forEach(eventPublisher::publishEvent);
+            return events.stream().map(ImageDeletedEvent::getFileName).toList();
+        });
+        if (fileNames.isEmpty()) {
+            return 0;
+        }
+
+        List<String> failedFiles = minioService.deleteFiles(fileNames);
+        failedFiles.forEach(fileName -> logger.warn("Failed to delete file from MinIO: {}", fileName));
+        job.failedFiles.addAndGet(failedFiles.size());
+        job.deletedImages.addAndGet(fileNames.size());
+        return fileNames.size();
+    }
+
+    private void deleteUser(Job job) {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            User user = userRepository.findById(job.userId)
+                    .orElseThrow(() -> new RuntimeException("User not found: " + job.userId));
+            userRepository.delete(user);
+            eventPublisher.publishEvent(new UserChangedEvent(job.userId, UserChangedEvent.Change.DELETED,
+                    user.isEnabled(), false, user.getCreatedAt()));
+        });
+    }
+}
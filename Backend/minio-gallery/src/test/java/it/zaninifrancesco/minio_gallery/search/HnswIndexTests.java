@@ -0,0 +1,214 @@
+package it.zaninifrancesco.minio_gallery.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Inserimenti, eliminazioni, ricostruzione, snapshot e recall dell'indice HNSW
+ */
+class HnswIndexTests {
+
+    private static final int DIMENSIONS = 16;
+    private static final int M = 16;
+    private static final int EF_CONSTRUCTION = 200;
+    private static final int EF_SEARCH = 128;
+
+    private final Random random = new Random(7);
+
+    @Test
+    void nearestReturnsClosestImagesExcludingQuery() {
+        HnswIndex index = new HnswIndex(3, M, EF_CONSTRUCTION);
+        UUID red = UUID.randomUUID();
+        UUID darkRed = UUID.randomUUID();
+        UUID orange = UUID.randomUUID();
+        UUID blue = UUID.randomUUID();
+        index.add(red, new float[] {1f, 0f, 0f});
+        index.add(darkRed, new float[] {0.9f, 0.05f, 0f});
+        index.add(orange, new float[] {0.8f, 0.4f, 0f});
+        index.add(blue, new float[] {0f, 0f, 1f});
+
+        assertEquals(List.of(darkRed, orange, blue), index.nearest(red, 3, EF_SEARCH));
+        assertEquals(List.of(darkRed), index.nearest(red, 1, EF_SEARCH));
+        assertEquals(List.of(), index.nearest(UUID.randomUUID(), 3, EF_SEARCH));
+    }
+
+    @Test
+    void addRejectsWrongDimensions() {
+        HnswIndex index = new HnswIndex(DIMENSIONS, M, EF_CONSTRUCTION);
+
+        assertThrows(IllegalArgumentException.class, () -> index.add(UUID.randomUUID(), new float[DIMENSIONS + 1]));
+    }
+
+    @Test
+    void removedImageDisappearsFromResults() {
+        HnswIndex index = new HnswIndex(DIMENSIONS, M, EF_CONSTRUCTION);
+        Map<UUID, float[]> vectors = fill(index, 200);
+        List<UUID> ids = new ArrayList<>(vectors.keySet());
+        Set<UUID> removed = new HashSet<>(ids.subList(0, 50));
+
+        removed.forEach(imageId -> assertTrue(index.remove(imageId)));
+
+        assertFalse(index.remove(ids.get(0)));
+        assertFalse(index.contains(ids.get(0)));
+        assertEquals(150, index.size());
+        assertEquals(0.25, index.deletedRatio(), 1e-9);
+        for (UUID query : ids.subList(50, 70)) {
+            List<UUID> neighbors = index.nearest(query, 20, EF_SEARCH);
+            assertEquals(20, neighbors.size());
+            assertTrue(neighbors.stream().noneMatch(removed::contains));
+        }
+    }
+
+    @Test
+    void addingSameImageReplacesItsVector() {
+        HnswIndex index = new HnswIndex(3, M, EF_CONSTRUCTION);
+        UUID image = UUID.randomUUID();
+        UUID red = UUID.randomUUID();
+        UUID blue = UUID.randomUUID();
+        index.add(red, new float[] {1f, 0f, 0f});
+        index.add(blue, new float[] {0f, 0f, 1f});
+        index.add(image, new float[] {0.9f, 0f, 0.1f});
+
+        index.add(image, new float[] {0.1f, 0f, 0.9f});
+
+        assertEquals(3, index.size());
+        assertEquals(List.of(blue, red), index.nearest(image, 2, EF_SEARCH));
+        assertTrue(index.deletedRatio() > 0);
+    }
+
+    @Test
+    void withoutDeletedKeepsOnlyLiveImages() {
+        HnswIndex index = new HnswIndex(DIMENSIONS, M, EF_CONSTRUCTION);
+        Map<UUID, float[]> vectors = fill(index, 300);
+        List<UUID> ids = new ArrayList<>(vectors.keySet());
+        ids.subList(0, 100).forEach(index::remove);
+        ids.subList(0, 100).forEach(vectors::remove);
+
+        HnswIndex rebuilt = index.withoutDeleted();
+
+        assertEquals(0, rebuilt.deletedRatio());
+        assertEquals(vectors.keySet(), rebuilt.imageIds());
+        assertTrue(recall(rebuilt, vectors, 10) >= 0.9);
+    }
+
+    @Test
+    void snapshotRoundTripPreservesGraph() throws IOException {
+        HnswIndex index = new HnswIndex(DIMENSIONS, M, EF_CONSTRUCTION);
+        Map<UUID, float[]> vectors = fill(index, 300);
+        List<UUID> ids = new ArrayList<>(vectors.keySet());
+        ids.subList(0, 30).forEach(index::remove);
+
+        HnswIndex restored = roundTrip(index);
+
+        assertEquals(DIMENSIONS, restored.dimensions());
+        assertEquals(index.imageIds(), restored.imageIds());
+        assertEquals(index.deletedRatio(), restored.deletedRatio());
+        for (UUID query : ids.subList(30, 80)) {
+            assertEquals(index.nearest(query, 10, EF_SEARCH), restored.nearest(query, 10, EF_SEARCH));
+        }
+
+        // L'indice letto resta modificabile
+        UUID added = UUID.randomUUID();
+        restored.add(added, vectors.get(ids.get(40)));
+        assertTrue(restored.nearest(ids.get(40), 1, EF_SEARCH).contains(added));
+    }
+
+    @Test
+    void readFromRejectsUnknownFormat() {
+        byte[] garbage = new byte[] {0, 0, 0, 1, 0, 0, 0, 1};
+
+        assertThrows(IOException.class,
+                () -> HnswIndex.readFrom(new DataInputStream(new ByteArrayInputStream(garbage))));
+    }
+
+    @Test
+    void recallMatchesBruteForce() {
+        HnswIndex index = new HnswIndex(DIMENSIONS, M, EF_CONSTRUCTION);
+        Map<UUID, float[]> vectors = fill(index, 2000);
+
+        assertTrue(recall(index, vectors, 10) >= 0.9);
+
+        // Dopo molte eliminazioni il grafo ricollegato resta navigabile
+        List<UUID> ids = new ArrayList<>(vectors.keySet());
+        for (int i = 0; i < ids.size(); i += 3) {
+            index.remove(ids.get(i));
+            vectors.remove(ids.get(i));
+        }
+        assertTrue(recall(index, vectors, 10) >= 0.85);
+    }
+
+    private Map<UUID, float[]> fill(HnswIndex index, int count) {
+        Map<UUID, float[]> vectors = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            float[] vector = new float[DIMENSIONS];
+            for (int d = 0; d < DIMENSIONS; d++) {
+                vector[d] = random.nextFloat();
+            }
+            UUID imageId = new UUID(0, i);
+            vectors.put(imageId, vector);
+            index.add(imageId, vector);
+        }
+        return vectors;
+    }
+
+    /**
+     * Quota media dei k vicini esatti (forza bruta sui vettori quantizzati) trovati dall'indice
+     */
+    private static double recall(HnswIndex index, Map<UUID, float[]> vectors, int k) {
+        List<UUID> ids = new ArrayList<>(vectors.keySet());
+        int queries = Math.min(100, ids.size());
+        int found = 0;
+        for (int q = 0; q < queries; q++) {
+            UUID query = ids.get(q * ids.size() / queries);
+            float[] queryVector = vectors.get(query);
+            Set<UUID> exact = new HashSet<>(ids.stream()
+                    .filter(imageId -> !imageId.equals(query))
+                    .sorted(Comparator.comparingDouble(imageId -> cosineDistance(queryVector, vectors.get(imageId))))
+                    .limit(k)
+                    .toList());
+            found += (int) index.nearest(query, k, EF_SEARCH).stream().filter(exact::contains).count();
+        }
+        return (double) found / (queries * k);
+    }
+
+    private static double cosineDistance(float[] a, float[] b) {
+        double dot = 0;
+        double normA = 0;
+        double normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            int x = Math.round(a[i] * 255);
+            int y = Math.round(b[i] * 255);
+            dot += x * y;
+            normA += x * x;
+            normB += y * y;
+        }
+        return 1 - dot / Math.sqrt(normA * normB);
+    }
+
+    private static HnswIndex roundTrip(HnswIndex index) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            index.writeTo(out);
+        }
+        return HnswIndex.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+}
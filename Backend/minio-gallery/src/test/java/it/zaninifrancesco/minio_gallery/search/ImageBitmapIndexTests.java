@@ -0,0 +1,178 @@
+package it.zaninifrancesco.minio_gallery.search;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Query sui tag e gestione degli ordinali dell'indice a bitmap
+ */
+class ImageBitmapIndexTests {
+
+    private static final LocalDateTime START = LocalDateTime.of(2025, 1, 10, 12, 0);
+
+    private final ImageBitmapIndex index = new ImageBitmapIndex();
+    private final UUID first = UUID.randomUUID();
+    private final UUID second = UUID.randomUUID();
+    private final UUID third = UUID.randomUUID();
+
+    @BeforeEach
+    void setUp() {
+        add(first, 1L, 0, "nature", "sunset");
+        add(second, 2L, 1, "nature", "black-and-white");
+        add(third, 1L, 2, "city", "night");
+    }
+
+    @Test
+    void searchReturnsNewestFirst() {
+        SearchHits hits = index.search(parse("nature"), null, 0, 10);
+
+        assertEquals(List.of(second, first), hits.getImageIds());
+        assertEquals(2, hits.getTotalHits());
+    }
+
+    @Test
+    void searchEvaluatesOrGroupsExclusionsAndUser() {
+        assertEquals(List.of(third, first), index.search(parse("sunset|night"), null, 0, 10).getImageIds());
+        assertEquals(List.of(first), index.search(parse("nature-black-and-white"), null, 0, 10).getImageIds());
+        assertEquals(List.of(second), index.search(parse("a|black-and-white"), null, 0, 10).getImageIds());
+        assertEquals(List.of(first), index.search(parse("nature"), 1L, 0, 10).getImageIds());
+    }
+
+    @Test
+    void searchPagesWithOffsetAndLimit() {
+        SearchHits page = index.search(parse("nature|city"), null, 1, 1);
+
+        assertEquals(List.of(second), page.getImageIds());
+        assertEquals(3, page.getTotalHits());
+    }
+
+    @Test
+    void removedImageDisappearsFromResults() {
+        assertTrue(index.remove(second, 2L, "image/jpeg", START.plusDays(1), List.of("nature", "black-and-white")));
+        assertFalse(index.remove(second, 2L, "image/jpeg", START.plusDays(1), List.of("nature", "black-and-white")));
+
+        assertEquals(List.of(first), index.search(parse("nature"), null, 0, 10).getImageIds());
+        assertEquals(0, index.search(parse("black-and-white"), null, 0, 10).getTotalHits());
+        assertEquals(2, index.size());
+        // Il tag resta noto anche senza immagini
+        assertTrue(index.hasTag("black-and-white"));
+    }
+
+    @Test
+    void ordinalsAreNotReusedAfterDelete() {
+        index.remove(first, 1L, "image/jpeg", START, List.of("nature", "sunset"));
+        UUID fourth = UUID.randomUUID();
+        add(fourth, 3L, 3, "nature");
+
+        // La nuova immagine non eredita l'ordinale (né i tag) di quella eliminata
+        assertEquals(List.of(fourth, second), index.search(parse("nature"), null, 0, 10).getImageIds());
+        assertEquals(0, index.search(parse("sunset"), null, 0, 10).getTotalHits());
+        assertEquals(3, index.size());
+    }
+
+    @Test
+    void readdedImageGetsNewestOrdinal() {
+        index.remove(first, 1L, "image/jpeg", START, List.of("nature", "sunset"));
+        add(first, 1L, 3, "nature");
+
+        assertEquals(List.of(first, second), index.search(parse("nature"), null, 0, 10).getImageIds());
+        assertEquals(0, index.search(parse("sunset"), null, 0, 10).getTotalHits());
+    }
+
+    @Test
+    void facetsCountCoOccurringTags() {
+        FacetCounts facets = index.facets(parse("nature"), null, 10);
+
+        List<String> tags = facets.getTags().stream().map(FacetCounts.Bucket::getValue).toList();
+        assertEquals(List.of("black-and-white", "sunset"), tags);
+    }
+
+    @Test
+    void textIsEvaluatedOutsideTheLockOnBitmapCandidates() {
+        RecordingText text = new RecordingText(100, List.of(third, second, first));
+        ImageQuery query = new ImageQuery(1L, null, null, null, null, null, null, "sunset", ImageQuery.Sort.RELEVANCE);
+
+        SearchHits hits = index.query(query, text, 0, 10);
+
+        // Le bitmap sono più selettive: il testo riceve le immagini dell'utente come candidati
+        assertEquals(Set.of(first, third), text.candidates);
+        assertEquals(List.of(third, first), hits.getImageIds());
+        assertFalse(text.calledUnderLock);
+    }
+
+    @Test
+    void selectiveTextIsCheckedAgainstBitmaps() {
+        RecordingText text = new RecordingText(1, List.of(second, first));
+        ImageQuery query = new ImageQuery(null, parse("nature"), null, null, null, null, null, "sunset", ImageQuery.Sort.NEWEST);
+
+        SearchHits hits = index.query(query, text, 0, 10);
+
+        assertEquals(List.of(second, first), hits.getImageIds());
+        assertFalse(text.calledUnderLock);
+
+        text = new RecordingText(1, List.of(third, first));
+        assertEquals(List.of(first), index.query(query, text, 0, 10).getImageIds());
+    }
+
+    private void add(UUID imageId, Long userId, int day, String... tags) {
+        index.add(imageId, userId, "image/jpeg", START.plusDays(day), 1024, List.of(tags));
+    }
+
+    private TagQuery parse(String expression) {
+        return TagQuery.parse(expression, index::hasTag);
+    }
+
+    /**
+     * Predicato testuale fisso che registra i candidati ricevuti e se il lock dell'indice era tenuto
+     */
+    private class RecordingText implements TextMatcher {
+
+        private final long estimate;
+        private final List<UUID> ranked;
+        private Set<UUID> candidates;
+        private boolean calledUnderLock;
+
+        private RecordingText(long estimate, List<UUID> ranked) {
+            this.estimate = estimate;
+            this.ranked = ranked;
+        }
+
+        @Override
+        public long estimate() {
+            record();
+            return estimate;
+        }
+
+        @Override
+        public Collection<UUID> matches(Set<UUID> candidates) {
+            record();
+            this.candidates = candidates;
+            return ranked.stream().filter(imageId -> candidates == null || candidates.contains(imageId)).toList();
+        }
+
+        @Override
+        public SearchHits rank(Set<UUID> candidates, int offset, int limit) {
+            List<UUID> matches = (List<UUID>) matches(candidates);
+            return new SearchHits(matches.subList(Math.min(offset, matches.size()),
+                    Math.min(offset + limit, matches.size())), matches.size());
+        }
+
+        private void record() {
+            ReentrantReadWriteLock lock = (ReentrantReadWriteLock) ReflectionTestUtils.getField(index, "lock");
+            calledUnderLock |= lock.getReadLockCount() > 0 || lock.isWriteLocked();
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package it.zaninifrancesco.minio_gallery.search;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Ranking BM25, espansione del prefisso, tombstone e compattazione, snapshot e ricerca fuzzy dell'indice invertito
+ */
+class InvertedIndexTests {
+
+    // Solo BM25: nessun boost per recenza o like
+    private static final SearchScoring BM25_ONLY = new SearchScoring(30, 0, 0);
+
+    private static final LocalDateTime UPLOADED_AT = LocalDateTime.of(2025, 1, 10, 12, 0);
+
+    private final InvertedIndex index = new InvertedIndex();
+
+    @Test
+    void titleMatchesOutrankDescriptionMatches() {
+        UUID inDescription = add(1L, "beach", "sunset at the sea", 0);
+        UUID inTitle = add(1L, "sunset", "beach at the sea", 0);
+
+        SearchHits hits = index.search("sunset", (Long) null, 0, 10, BM25_ONLY);
+
+        assertEquals(List.of(inTitle, inDescription), hits.getImageIds());
+        assertEquals(2, hits.getTotalHits());
+    }
+
+    @Test
+    void shorterDocumentsOutrankLongerOnesWithTheSameFrequency() {
+        UUID longer = add(1L, "sunset", "golden light over the quiet harbour at dusk", 0);
+        UUID shorter = add(1L, "sunset", "harbour", 0);
+
+        assertEquals(List.of(shorter, longer), index.search("sunset", (Long) null, 0, 10, BM25_ONLY).getImageIds());
+    }
+
+    @Test
+    void rarerTermsWeighMore() {
+        // "harbour" è in due documenti, "sea" in tre: vince chi ha nel titolo il termine più raro
+        UUID rareInTitle = add(1L, "harbour", "sea", 0);
+        UUID commonInTitle = add(1L, "sea", "harbour", 0);
+        add(1L, "sea", "waves", 0);
+
+        assertEquals(List.of(rareInTitle, commonInTitle),
+                index.search("harbour sea", (Long) null, 0, 10, BM25_ONLY).getImageIds());
+    }
+
+    @Test
+    void onlyTheLastTermIsExpandedAsPrefix() {
+        UUID sunset = add(1L, "sunset", "beach", 0);
+        UUID sunflower = add(1L, "sunflower", "field", 0);
+
+        assertEquals(Set.of(sunset, sunflower), Set.copyOf(index.search("sun", (Long) null, 0, 10, BM25_ONLY).getImageIds()));
+        assertEquals(List.of(sunset), index.search("sunset bea", (Long) null, 0, 10, BM25_ONLY).getImageIds());
+        // Un termine non finale deve corrispondere esattamente
+        assertEquals(0, index.search("sun beach", (Long) null, 0, 10, BM25_ONLY).getTotalHits());
+        assertEquals(2, index.estimateMatches("sun"));
+    }
+
+    @Test
+    void likeBoostBreaksTextTies() {
+        UUID popular = add(1L, "sunset", "beach", 50);
+        UUID unpopular = add(1L, "sunset", "beach", 0);
+
+        SearchScoring likes = new SearchScoring(30, 0, 0.2);
+        assertEquals(List.of(popular, unpopular), index.search("sunset", (Long) null, 0, 10, likes).getImageIds());
+
+        index.updateLikeCount(unpopular, 500);
+        assertEquals(List.of(unpopular, popular), index.search("sunset", (Long) null, 0, 10, likes).getImageIds());
+    }
+
+    @Test
+    void searchFiltersByUserAndPages() {
+        UUID first = add(1L, "sunset", "one", 0);
+        UUID second = add(2L, "sunset", "two", 0);
+        UUID third = add(1L, "sunset", "three", 0);
+
+        SearchHits byUser = index.search("sunset", 1L, 0, 10, BM25_ONLY);
+        assertEquals(Set.of(first, third), Set.copyOf(byUser.getImageIds()));
+        assertEquals(2, byUser.getTotalHits());
+
+        SearchHits page = index.search("sunset", (Long) null, 1, 1, BM25_ONLY);
+        assertEquals(1, page.getImageIds().size());
+        assertEquals(3, page.getTotalHits());
+        assertEquals(List.of(second), index.search("sunset", id -> id.equals(second), 0, 10, BM25_ONLY).getImageIds());
+    }
+
+    @Test
+    void removedDocumentsAreTombstoned() {
+        UUID kept = add(1L, "sunset", "beach", 0);
+        UUID removed = add(1L, "sunset", "harbour", 0);
+
+        assertTrue(index.remove(removed));
+        assertFalse(index.remove(removed));
+
+        assertEquals(List.of(kept), index.search("sunset", (Long) null, 0, 10, BM25_ONLY).getImageIds());
+        assertEquals(0, index.search("harbour", (Long) null, 0, 10, BM25_ONLY).getTotalHits());
+        assertFalse(index.contains(removed));
+        assertEquals(1, index.size());
+        // Il tombstone resta finché non si raggiunge la soglia di compattazione
+        assertEquals(1, ReflectionTestUtils.getField(index, "deletedCount"));
+    }
+
+    @Test
+    void compactionRenumbersLiveDocuments() {
+        List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i < 1100; i++) {
+            ids.add(add(1L, "photo" + i, i % 2 == 0 ? "even" : "odd", 0));
+        }
+        UUID lonely = add(1L, "lighthouse", "odd", 0);
+
+        // 1024 eliminazioni superano sia il minimo assoluto sia il 25% dei documenti
+        for (int i = 0; i < 1024; i++) {
+            index.remove(ids.get(i));
+        }
+        index.remove(lonely);
+
+        assertEquals(1, ReflectionTestUtils.getField(index, "deletedCount"));
+        assertEquals(77, ((List<?>) ReflectionTestUtils.getField(index, "imageIds")).size());
+        assertEquals(76, index.size());
+        assertEquals(List.of(ids.get(1099)), index.search("photo1099", (Long) null, 0, 10, BM25_ONLY).getImageIds());
+        assertEquals(38, index.search("even", (Long) null, 0, 100, BM25_ONLY).getTotalHits());
+        assertEquals(0, index.search("photo5", (Long) null, 0, 10, BM25_ONLY).getTotalHits());
+
+        // I termini rimasti senza documenti escono dal dizionario e dai suggerimenti
+        assertFalse(index.fuzzySearch("photo10", null, 0, 10, BM25_ONLY).getSuggestions().contains("photo100"));
+        UUID added = add(1L, "photo1099", "even", 0);
+        assertEquals(Set.of(ids.get(1099), added),
+                Set.copyOf(index.search("photo1099", (Long) null, 0, 10, BM25_ONLY).getImageIds()));
+    }
+
+    @Test
+    void snapshotRoundTripKeepsDocumentsAndTombstones() throws IOException {
+        UUID sunset = add(1L, "sunset", "beach", 3);
+        UUID harbour = add(2L, "harbour", "night", 0);
+        UUID removed = add(1L, "sunset", "removed", 0);
+        index.remove(removed);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        index.writeTo(new DataOutputStream(bytes));
+        InvertedIndex restored = InvertedIndex.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(Set.of(sunset, harbour), restored.imageIds());
+        assertEquals(List.of(sunset), restored.search("sunset", (Long) null, 0, 10, BM25_ONLY).getImageIds());
+        assertEquals(List.of(harbour), restored.search("night", 2L, 0, 10, BM25_ONLY).getImageIds());
+        assertEquals(index.search("sunset beach", (Long) null, 0, 10, new SearchScoring(30, 0.5, 0.2)).getImageIds(),
+                restored.search("sunset beach", (Long) null, 0, 10, new SearchScoring(30, 0.5, 0.2)).getImageIds());
+
+        // Dopo il ripristino i nuovi documenti proseguono gli ordinali
+        SearchDocument added = document(3L, "sunset", "again", 0);
+        restored.add(added);
+        assertEquals(2, restored.search("sunset", (Long) null, 0, 10, BM25_ONLY).getTotalHits());
+        assertTrue(restored.contains(added.getImageId()));
+    }
+
+    @Test
+    void fuzzySearchCorrectsTyposAndSuggestsAlternatives() {
+        UUID sunset = add(1L, "sunset", "beach", 0);
+        UUID sunsets = add(1L, "sunsets", "chart", 0);
+
+        SearchHits hits = index.fuzzySearch("sunsett beach", null, 0, 10, BM25_ONLY);
+
+        assertEquals(List.of(sunset), hits.getImageIds());
+        assertEquals("sunset beach", hits.getCorrectedQuery());
+        assertEquals("sunset beach", hits.getSuggestions().get(0));
+        assertTrue(hits.getSuggestions().contains("sunsets beach"));
+        assertEquals(Set.of(sunset, sunsets), Set.copyOf(index.fuzzySearch("sunsett", null, 0, 10, BM25_ONLY).getImageIds()));
+    }
+
+    @Test
+    void fuzzySearchWithoutTyposHasNoCorrection() {
+        UUID sunset = add(1L, "sunset", "beach", 0);
+
+        SearchHits hits = index.fuzzySearch("sunset", null, 0, 10, BM25_ONLY);
+
+        assertEquals(List.of(sunset), hits.getImageIds());
+        assertNull(hits.getCorrectedQuery());
+        assertTrue(hits.getSuggestions().isEmpty());
+    }
+
+    private UUID add(Long userId, String title, String description, int likeCount) {
+        SearchDocument document = document(userId, title, description, likeCount);
+        index.add(document);
+        return document.getImageId();
+    }
+
+    private static SearchDocument document(Long userId, String title, String description, int likeCount) {
+        return new SearchDocument(UUID.randomUUID(), userId, "user" + userId, title, description, List.of(),
+                UPLOADED_AT, likeCount);
+    }
+}
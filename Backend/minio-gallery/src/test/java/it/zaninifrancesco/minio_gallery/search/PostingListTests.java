@@ -0,0 +1,88 @@
+package it.zaninifrancesco.minio_gallery.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Codifica delta + varint delle liste di posting, snapshot e serializzazione
+ */
+class PostingListTests {
+
+    @Test
+    void cursorDecodesDeltasOfEveryWidth() {
+        PostingList list = new PostingList();
+        // Delta da uno a quattro byte di varint
+        list.add(0, 1);
+        list.add(1, 300);
+        list.add(200, 2);
+        list.add(100_000, 7);
+        list.add(30_000_000, 1);
+
+        assertEquals(List.of(List.of(0, 1), List.of(1, 300), List.of(200, 2), List.of(100_000, 7),
+                List.of(30_000_000, 1)), postings(list));
+        assertEquals(5, list.documentCount());
+    }
+
+    @Test
+    void rejectsOrdinalsOutOfOrder() {
+        PostingList list = new PostingList();
+        list.add(5, 1);
+
+        assertThrows(IllegalArgumentException.class, () -> list.add(5, 1));
+        assertThrows(IllegalArgumentException.class, () -> list.add(3, 1));
+    }
+
+    @Test
+    void snapshotIgnoresLaterAppends() {
+        PostingList list = new PostingList();
+        list.add(1, 1);
+        list.add(2, 1);
+        PostingList snapshot = list.snapshot();
+
+        // Oltre la capacità iniziale il buffer viene riallocato: lo snapshot tiene il vecchio
+        for (int ordinal = 3; ordinal < 100; ordinal++) {
+            list.add(ordinal, 1);
+        }
+
+        assertEquals(List.of(List.of(1, 1), List.of(2, 1)), postings(snapshot));
+        assertEquals(2, snapshot.documentCount());
+        assertEquals(99, list.documentCount());
+    }
+
+    @Test
+    void writeToAndReadFromRoundTrip() throws IOException {
+        PostingList list = new PostingList();
+        list.add(3, 2);
+        list.add(1_000, 5);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        list.writeTo(new DataOutputStream(bytes));
+        PostingList restored = PostingList.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(postings(list), postings(restored));
+        assertEquals(list.sizeInBytes(), restored.sizeInBytes());
+        // Le aggiunte proseguono dall'ultimo ordinale salvato
+        assertThrows(IllegalArgumentException.class, () -> restored.add(1_000, 1));
+        restored.add(1_001, 1);
+        assertEquals(3, restored.documentCount());
+    }
+
+    private static List<List<Integer>> postings(PostingList list) {
+        List<List<Integer>> postings = new ArrayList<>();
+        PostingList.Cursor cursor = list.cursor();
+        while (cursor.next()) {
+            postings.add(List.of(cursor.ordinal(), cursor.frequency()));
+        }
+        return postings;
+    }
+}
@@ -0,0 +1,116 @@
+package it.zaninifrancesco.minio_gallery.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Analisi delle espressioni booleane sui tag
+ */
+class TagQueryTests {
+
+    private static final Predicate<String> KNOWN_TAGS = Set.of("black-and-white", "black", "white", "long-exposure")::contains;
+
+    @Test
+    void separatorsCombineGroupsWithAndOrAndNot() {
+        TagQuery query = TagQuery.parse("Nature+sunset|sunrise-night", KNOWN_TAGS);
+
+        assertEquals(List.of(List.of("nature"), List.of("sunset", "sunrise")), query.getRequired());
+        assertEquals(List.of(List.of("night")), query.getExcluded());
+    }
+
+    @Test
+    void spacesAndCommasAreAndAndOrSeparators() {
+        TagQuery query = TagQuery.parse("  nature   sunset,sunrise ", KNOWN_TAGS);
+
+        assertEquals(List.of(List.of("nature"), List.of("sunset", "sunrise")), query.getRequired());
+        assertTrue(query.getExcluded().isEmpty());
+    }
+
+    @Test
+    void hyphenatedKnownTagStaysSingleTag() {
+        TagQuery query = TagQuery.parse("black-and-white", KNOWN_TAGS);
+
+        assertEquals(List.of(List.of("black-and-white")), query.getRequired());
+        assertTrue(query.getExcluded().isEmpty());
+    }
+
+    @Test
+    void longestKnownTagWinsBeforeExclusion() {
+        TagQuery query = TagQuery.parse("black-and-white-long-exposure-night", KNOWN_TAGS);
+
+        assertEquals(List.of(List.of("black-and-white")), query.getRequired());
+        assertEquals(List.of(List.of("long-exposure"), List.of("night")), query.getExcluded());
+    }
+
+    @Test
+    void hyphenatedKnownTagInsideOrGroup() {
+        TagQuery query = TagQuery.parse("a|black-and-white", KNOWN_TAGS);
+
+        assertEquals(List.of(List.of("a", "black-and-white")), query.getRequired());
+        assertTrue(query.getExcluded().isEmpty());
+    }
+
+    @Test
+    void hyphenatedKnownTagStartingAnOrGroup() {
+        TagQuery query = TagQuery.parse("black-and-white|color-night", KNOWN_TAGS);
+
+        assertEquals(List.of(List.of("black-and-white", "color")), query.getRequired());
+        assertEquals(List.of(List.of("night")), query.getExcluded());
+    }
+
+    @Test
+    void unknownHyphenatedNameIsSplitIntoExclusions() {
+        TagQuery query = TagQuery.parse("sea-storm", KNOWN_TAGS);
+
+        assertEquals(List.of(List.of("sea")), query.getRequired());
+        assertEquals(List.of(List.of("storm")), query.getExcluded());
+    }
+
+    @Test
+    void leadingMinusNegatesWholeTerm() {
+        TagQuery query = TagQuery.parse("nature -night|black-and-white", KNOWN_TAGS);
+
+        assertEquals(List.of(List.of("nature")), query.getRequired());
+        assertEquals(List.of(List.of("night", "black-and-white")), query.getExcluded());
+    }
+
+    @Test
+    void emptyGroupsAreIgnored() {
+        TagQuery query = TagQuery.parse("nature||sunset+ - |,| -night-", KNOWN_TAGS);
+
+        assertEquals(List.of(List.of("nature", "sunset")), query.getRequired());
+        assertEquals(List.of(List.of("night")), query.getExcluded());
+    }
+
+    @Test
+    void blankExpressionIsEmpty() {
+        assertTrue(TagQuery.parse("   ", KNOWN_TAGS).isEmpty());
+        assertTrue(TagQuery.parse(null, KNOWN_TAGS).isEmpty());
+        assertTrue(TagQuery.parse("-|,", KNOWN_TAGS).isEmpty());
+    }
+
+    @Test
+    void matchesRequiresEveryGroupAndNoExclusion() {
+        TagQuery query = TagQuery.parse("nature+sunset|sunrise-night", KNOWN_TAGS);
+
+        assertTrue(query.matches(Set.of("nature", "sunrise")));
+        assertFalse(query.matches(Set.of("nature")));
+        assertFalse(query.matches(Set.of("nature", "sunset", "night")));
+        assertFalse(TagQuery.parse("", KNOWN_TAGS).matches(Set.of("nature")));
+    }
+
+    @Test
+    void canonicalStringIgnoresOrderAndCase() {
+        assertEquals(TagQuery.parse("nature+sunset", KNOWN_TAGS).toCanonicalString(),
+                TagQuery.parse("Sunset nature", KNOWN_TAGS).toCanonicalString());
+        assertEquals(TagQuery.parse("a|b-c", KNOWN_TAGS).toCanonicalString(),
+                TagQuery.parse("b,a-c", KNOWN_TAGS).toCanonicalString());
+    }
+}
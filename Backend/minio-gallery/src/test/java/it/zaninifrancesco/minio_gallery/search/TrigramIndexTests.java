@@ -0,0 +1,60 @@
+package it.zaninifrancesco.minio_gallery.search;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Similarità a trigrammi sul dizionario dei termini
+ */
+class TrigramIndexTests {
+
+    private final TrigramIndex index = new TrigramIndex();
+
+    @BeforeEach
+    void setUp() {
+        List.of("sunset", "sunrise", "subset", "night", "nights").forEach(index::add);
+    }
+
+    @Test
+    void similarRanksClosestTermsFirst() {
+        List<String> terms = terms(index.similar("sunsett", 0.3, 5));
+
+        assertEquals("sunset", terms.get(0));
+        assertFalse(terms.contains("night"));
+    }
+
+    @Test
+    void similarExcludesTheQueryTermAndAppliesThresholdAndLimit() {
+        assertEquals(List.of("nights"), terms(index.similar("night", 0.3, 5)));
+        assertEquals(1, index.similar("sunsett", 0.0, 1).size());
+        assertTrue(index.similar("sunsett", 0.99, 5).isEmpty());
+    }
+
+    @Test
+    void similarityIsJaccardOnPaddedTrigrams() {
+        // "night" ha 6 trigrammi, "nights" 7; in comune i 5 senza la fine parola
+        TrigramIndex.Candidate candidate = index.similar("night", 0.0, 1).get(0);
+
+        assertEquals("nights", candidate.getTerm());
+        assertEquals(5.0 / 8.0, candidate.getSimilarity(), 1e-9);
+    }
+
+    @Test
+    void removedTermsAreNotSuggestedUntilAddedAgain() {
+        index.remove("sunset");
+        assertFalse(terms(index.similar("sunsett", 0.3, 5)).contains("sunset"));
+
+        index.add("sunset");
+        assertEquals("sunset", terms(index.similar("sunsett", 0.3, 5)).get(0));
+    }
+
+    private static List<String> terms(List<TrigramIndex.Candidate> candidates) {
+        return candidates.stream().map(TrigramIndex.Candidate::getTerm).toList();
+    }
+}
@@ -0,0 +1,104 @@
+package it.zaninifrancesco.minio_gallery.service;
+
+import io.minio.MinioClient;
+import io.minio.RemoveObjectsArgs;
+import io.minio.Result;
+import io.minio.messages.DeleteError;
+import it.zaninifrancesco.minio_gallery.config.ThreadingConfig;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Benchmark di thread platform e virtual thread con latenza MinIO simulata
+ * Ogni "richiesta" elimina i file di più blocchi tramite MinioService: ogni blocco è una richiesta
+ * di eliminazione multipla bloccante, eseguita sull'executor di fan-out
+ * Escluso dalla build normale, si esegue con mvn test -Pbenchmark
+ */
+@Tag("benchmark")
+class FanOutBenchmarkTests {
+
+    private static final int REQUESTS = 64;
+    private static final int BATCHES_PER_REQUEST = 4;
+    private static final int BATCH_SIZE = 1000;
+    private static final long MINIO_LATENCY_MS = 20;
+
+    // Dimensioni dei pool in modalità platform (richieste e fan-out)
+    private static final int REQUEST_POOL_SIZE = 8;
+    private static final int FAN_OUT_POOL_SIZE = 16;
+
+    @Test
+    void virtualThreadsOutperformPlatformPoolsUnderMinioLatency() throws Exception {
+        long platformMillis = runScenario(false);
+        long virtualMillis = runScenario(true);
+
+        assertTrue(virtualMillis < platformMillis,
+                () -> "Virtual threads should complete faster than bounded platform pools under blocking latency"
+                        + " (platform=" + platformMillis + " ms, virtual=" + virtualMillis + " ms)");
+    }
+
+    private long runScenario(boolean virtual) throws Exception {
+        ExecutorService requestExecutor = ThreadingConfig.newFanOutExecutor(virtual, REQUEST_POOL_SIZE);
+        ExecutorService fanOutExecutor = ThreadingConfig.newFanOutExecutor(virtual, FAN_OUT_POOL_SIZE);
+        try {
+            MinioService minioService = newMinioServiceWithLatency(fanOutExecutor);
+
+            long start = System.nanoTime();
+            List<Future<List<String>>> responses = new ArrayList<>();
+            for (int request = 0; request < REQUESTS; request++) {
+                List<String> fileNames = fileNames(request);
+                responses.add(requestExecutor.submit(() -> minioService.deleteFiles(fileNames)));
+            }
+            for (Future<List<String>> response : responses) {
+                assertEquals(List.of(), response.get());
+            }
+            return (System.nanoTime() - start) / 1_000_000;
+        } finally {
+            requestExecutor.shutdownNow();
+            fanOutExecutor.shutdownNow();
+        }
+    }
+
+    private MinioService newMinioServiceWithLatency(ExecutorService fanOutExecutor) {
+        MinioClient baseClient = MinioClient.builder()
+                .endpoint("http://minio.local")
+                .credentials("access", "secret")
+                .build();
+        MinioClient slowClient = new MinioClient(baseClient) {
+            @Override
+            public Iterable<Result<DeleteError>> removeObjects(RemoveObjectsArgs args) {
+                // Come nel client reale la richiesta parte scorrendo i risultati (nessun errore)
+                return () -> {
+                    try {
+                        Thread.sleep(MINIO_LATENCY_MS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return Collections.emptyIterator();
+                };
+            }
+        };
+
+        MinioService minioService = new MinioService();
+        ReflectionTestUtils.setField(minioService, "minioClient", slowClient);
+        ReflectionTestUtils.setField(minioService, "bucketName", "bucket");
+        ReflectionTestUtils.setField(minioService, "fanOutExecutor", fanOutExecutor);
+        return minioService;
+    }
+
+    private List<String> fileNames(int request) {
+        return IntStream.range(0, BATCHES_PER_REQUEST * BATCH_SIZE)
+                .mapToObj(i -> "image-" + request + "-" + i + ".jpg")
+                .toList();
+    }
+}
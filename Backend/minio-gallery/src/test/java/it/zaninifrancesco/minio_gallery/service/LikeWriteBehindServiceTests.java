@@ -0,0 +1,345 @@
+package it.zaninifrancesco.minio_gallery.service;
+
+import it.zaninifrancesco.minio_gallery.event.LikeToggledEvent;
+import it.zaninifrancesco.minio_gallery.repository.ImageLikeRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Write-ahead log dei like: riapplicazione all'avvio, record troncati e contabilità di flush
+ * Il database è simulato: image_likes è una mappa in memoria, contatori e rollup sono verificati
+ * sugli aggiornamenti inviati
+ */
+class LikeWriteBehindServiceTests {
+
+    @TempDir
+    Path walDir;
+
+    private final UUID imageId = UUID.randomUUID();
+    private final List<LikeWriteBehindService> services = new ArrayList<>();
+
+    // image_likes simulata: (immagine, utente) → data del like
+    private final Map<List<Object>, Timestamp> likes = new HashMap<>();
+    private final Set<UUID> deletedImages = new HashSet<>();
+    private Runnable beforeInsert = () -> { };
+    private boolean failWrites;
+
+    private ImageLikeRepository imageLikeRepository;
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        imageLikeRepository = mock(ImageLikeRepository.class);
+        when(imageLikeRepository.findLikeCountAndState(any(), any())).thenAnswer(invocation -> {
+            UUID image = invocation.getArgument(0);
+            Long user = invocation.getArgument(1);
+            long count = likes.keySet().stream().filter(key -> key.get(0).equals(image)).count();
+            return Collections.singletonList(new Object[]{count, likes.get(List.of(image, user))});
+        });
+        jdbcTemplate = newJdbcTemplate();
+    }
+
+    @AfterEach
+    void tearDown() {
+        failWrites = false;
+        services.forEach(LikeWriteBehindService::shutdown);
+    }
+
+    @Test
+    void toggleAppliesPendingStateBeforeFlush() {
+        LikeWriteBehindService service = start(true);
+        like(2L, LocalDateTime.of(2025, 3, 1, 10, 0));
+
+        LikeToggledEvent liked = service.toggle(imageId, 1L);
+        LikeToggledEvent unliked = service.toggle(imageId, 2L);
+
+        assertTrue(liked.isLiked());
+        assertEquals(2, liked.getLikeCount());
+        assertFalse(unliked.isLiked());
+        assertEquals(1, unliked.getLikeCount());
+        assertEquals(LocalDateTime.of(2025, 3, 1, 10, 0), unliked.getLikedAt());
+        assertEquals(Boolean.TRUE, service.pendingState(imageId, 1L));
+        assertEquals(Boolean.FALSE, service.pendingState(imageId, 2L));
+        assertEquals(0, service.pendingDelta(imageId));
+        verify(jdbcTemplate, never()).queryForList(anyString(), any(Object[].class));
+    }
+
+    @Test
+    void flushWritesStateAndClearsPendingLikes() throws IOException {
+        LikeWriteBehindService service = start(true);
+        service.toggle(imageId, 1L);
+        service.toggle(imageId, 2L);
+        service.toggle(imageId, 2L);
+
+        service.flush();
+
+        assertEquals(Set.of(List.of(imageId, 1L)), likes.keySet());
+        assertNull(service.pendingState(imageId, 1L));
+        assertNull(service.pendingState(imageId, 2L));
+        assertEquals(0, service.pendingDelta(imageId));
+        // Resta solo il segmento aperto dalla rotazione
+        assertEquals(1, segments().size());
+    }
+
+    @Test
+    void mixedBatchAppliesNetDeltasToRollups() {
+        LocalDateTime march = LocalDateTime.of(2025, 3, 14, 9, 30);
+        like(2L, march);
+        like(4L, march);
+        UUID deletedImage = UUID.randomUUID();
+        LikeWriteBehindService service = start(true);
+
+        service.toggle(imageId, 1L);
+        service.toggle(imageId, 3L);
+        service.toggle(imageId, 2L);
+        service.toggle(imageId, 4L);
+        service.toggle(deletedImage, 1L);
+        // Prima del flush il like di 4 viene rimosso da un'altra transazione e l'altra immagine eliminata
+        likes.remove(List.of(imageId, 4L));
+        deletedImages.add(deletedImage);
+        LocalDateTime now = LocalDateTime.now();
+
+        service.flush();
+
+        assertEquals(Set.of(List.of(imageId, 1L), List.of(imageId, 3L)), likes.keySet());
+        // +2 like inseriti, -1 eliminato; l'unlike di 4 e il like sull'immagine eliminata non contano
+        assertEquals(List.of(List.of(1, imageId)), rows(captureBatch("UPDATE image_metadata")));
+        assertEquals(List.of(List.of(1, imageId)), rows(captureBatch("UPDATE user_stats")));
+        assertEquals(Set.of(List.of(now.getYear(), now.getMonthValue(), imageId, 2), List.of(2025, 3, imageId, -1)),
+                new HashSet<>(rows(captureBatch("INSERT INTO monthly_image_likes"))));
+        assertEquals(0, service.pendingDelta(imageId));
+        assertEquals(0, service.pendingDelta(deletedImage));
+    }
+
+    @Test
+    void toggleDuringFlushIsRebasedOnWrittenState() {
+        LikeWriteBehindService service = start(true);
+        service.toggle(imageId, 1L);
+
+        // Un unlike arriva mentre il like è in scrittura su database
+        beforeInsert = () -> service.toggle(imageId, 1L);
+        service.flush();
+        beforeInsert = () -> { };
+
+        assertEquals(Set.of(List.of(imageId, 1L)), likes.keySet());
+        assertEquals(Boolean.FALSE, service.pendingState(imageId, 1L));
+        assertEquals(-1, service.pendingDelta(imageId));
+
+        // Il flush successivo scrive l'unlike e azzera il delta
+        service.flush();
+
+        assertTrue(likes.isEmpty());
+        assertNull(service.pendingState(imageId, 1L));
+        assertEquals(0, service.pendingDelta(imageId));
+    }
+
+    @Test
+    void failedFlushKeepsStateAndSegments() throws IOException {
+        LikeWriteBehindService service = start(true);
+        service.toggle(imageId, 1L);
+        failWrites = true;
+
+        service.flush();
+
+        assertEquals(Boolean.TRUE, service.pendingState(imageId, 1L));
+        assertEquals(1, service.pendingDelta(imageId));
+        assertEquals(2, segments().size());
+    }
+
+    @Test
+    void blockedUserIsFlushedAndRejected() {
+        LikeWriteBehindService service = start(true);
+        service.toggle(imageId, 1L);
+
+        service.blockUser(1L);
+
+        // Il like in sospeso è su image_likes, pronto per l'eliminazione dell'utente
+        assertEquals(Set.of(List.of(imageId, 1L)), likes.keySet());
+        assertNull(service.pendingState(imageId, 1L));
+        assertThrows(IllegalStateException.class, () -> service.toggle(imageId, 1L));
+        service.toggle(imageId, 2L);
+
+        service.unblockUser(1L);
+        assertFalse(service.toggle(imageId, 1L).isLiked());
+    }
+
+    @Test
+    void blockUserFailsWhenPendingLikesCannotBeWritten() {
+        LikeWriteBehindService service = start(true);
+        service.toggle(imageId, 1L);
+        failWrites = true;
+
+        assertThrows(IllegalStateException.class, () -> service.blockUser(1L));
+        assertEquals(Boolean.TRUE, service.pendingState(imageId, 1L));
+    }
+
+    @Test
+    void recoveryReplaysLastStateOfEveryPair() throws IOException {
+        LikeWriteBehindService crashed = start(true);
+        crashed.toggle(imageId, 1L);
+        crashed.toggle(imageId, 2L);
+        crashed.toggle(imageId, 2L);
+        crashed.toggle(imageId, 3L);
+        services.remove(crashed);
+
+        jdbcTemplate = newJdbcTemplate();
+        start(false);
+
+        assertEquals(Set.of(List.of(imageId, 1L), List.of(imageId, 3L)), likes.keySet());
+        assertEquals(List.of(List.of(2, imageId)), rows(captureBatch("UPDATE image_metadata")));
+        assertTrue(segments().isEmpty());
+    }
+
+    @Test
+    void recoveryIgnoresTornTrailingRecord() throws IOException {
+        LikeWriteBehindService crashed = start(true);
+        crashed.toggle(imageId, 1L);
+        crashed.toggle(imageId, 2L);
+        services.remove(crashed);
+
+        // Crash a metà della scrittura del terzo record
+        Files.write(segments().get(segments().size() - 1), new byte[]{0, 0, 0, 0, 0, 0, 0, 3, 1, 2, 3},
+                StandardOpenOption.APPEND);
+
+        jdbcTemplate = newJdbcTemplate();
+        start(false);
+
+        assertEquals(Set.of(List.of(imageId, 1L), List.of(imageId, 2L)), likes.keySet());
+        assertTrue(segments().isEmpty());
+    }
+
+    @Test
+    void recoveryIgnoresSegmentWithTornHeader() throws IOException {
+        Files.write(walDir.resolve(String.format("likes-%020d.wal", 1)), new byte[]{0x4D, 0x47});
+
+        start(false);
+
+        assertTrue(likes.isEmpty());
+        assertTrue(segments().isEmpty());
+    }
+
+    @Test
+    void failedRecoveryKeepsSegments() throws IOException {
+        LikeWriteBehindService crashed = start(true);
+        crashed.toggle(imageId, 1L);
+        services.remove(crashed);
+
+        failWrites = true;
+        jdbcTemplate = newJdbcTemplate();
+
+        assertThrows(IllegalStateException.class, () -> start(false));
+        assertEquals(1, segments().size());
+    }
+
+    private LikeWriteBehindService start(boolean enabled) {
+        LikeWriteBehindService service = new LikeWriteBehindService();
+        ReflectionTestUtils.setField(service, "imageLikeRepository", imageLikeRepository);
+        ReflectionTestUtils.setField(service, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(service, "transactionManager", mock(PlatformTransactionManager.class));
+        ReflectionTestUtils.setField(service, "enabled", enabled);
+        ReflectionTestUtils.setField(service, "walDir", walDir.toString());
+        try {
+            service.init();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        services.add(service);
+        return service;
+    }
+
+    private void like(Long userId, LocalDateTime likedAt) {
+        likes.put(List.of(imageId, userId), Timestamp.valueOf(likedAt));
+    }
+
+    /**
+     * JdbcTemplate che esegue inserimenti ed eliminazioni di image_likes sulla mappa in memoria
+     * e restituisce le righe cambiate, come RETURNING
+     */
+    private JdbcTemplate newJdbcTemplate() {
+        JdbcTemplate jdbc = mock(JdbcTemplate.class);
+        when(jdbc.queryForList(anyString(), any(Object[].class))).thenAnswer(invocation -> {
+            String sql = invocation.getArgument(0);
+            Object[] args = (Object[]) invocation.getRawArguments()[1];
+            if (failWrites) {
+                throw new IllegalStateException("database down");
+            }
+            List<Map<String, Object>> changed = new ArrayList<>();
+            if (sql.startsWith("INSERT INTO image_likes")) {
+                beforeInsert.run();
+                for (int i = 0; i < args.length; i += 4) {
+                    List<Object> key = List.of(args[i + 2], args[i + 3]);
+                    if (!deletedImages.contains(args[i + 2]) && !likes.containsKey(key)) {
+                        likes.put(key, (Timestamp) args[i + 1]);
+                        changed.add(Map.of("image_id", args[i + 2], "liked_at", args[i + 1]));
+                    }
+                }
+            } else if (sql.startsWith("DELETE FROM image_likes")) {
+                for (int i = 0; i < args.length; i += 2) {
+                    Timestamp likedAt = likes.remove(List.of(args[i], args[i + 1]));
+                    if (likedAt != null) {
+                        changed.add(Map.of("image_id", args[i], "liked_at", likedAt));
+                    }
+                }
+            }
+            return changed;
+        });
+        return jdbc;
+    }
+
+    private List<Object[]> captureBatch(String sqlPrefix) {
+        ArgumentCaptor<List<Object[]>> captor = batchCaptor();
+        verify(jdbcTemplate).batchUpdate(startsWith(sqlPrefix), captor.capture());
+        return captor.getValue();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ArgumentCaptor<List<Object[]>> batchCaptor() {
+        return ArgumentCaptor.forClass(List.class);
+    }
+
+    private static List<List<Object>> rows(List<Object[]> batch) {
+        return batch.stream().map(List::of).toList();
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(walDir)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".wal")).sorted().toList();
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package it.zaninifrancesco.minio_gallery.service;
+
+import it.zaninifrancesco.minio_gallery.dto.LeaderboardRankChange;
+import it.zaninifrancesco.minio_gallery.entity.ImageMetadata;
+import it.zaninifrancesco.minio_gallery.entity.User;
+import it.zaninifrancesco.minio_gallery.event.ImageDeletedEvent;
+import it.zaninifrancesco.minio_gallery.event.LikeToggledEvent;
+import it.zaninifrancesco.minio_gallery.service.LiveLeaderboardService.RankedImage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Classifica live: spostamenti nella skip list e variazioni di posizione inviate ai client
+ * Il caricamento iniziale è saltato: la classifica del mese parte vuota e viene riempita dagli eventi
+ */
+class LiveLeaderboardServiceTests {
+
+    private final UUID first = new UUID(0, 1);
+    private final UUID second = new UUID(0, 2);
+    private final UUID third = new UUID(0, 3);
+
+    private LiveLeaderboardService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new LiveLeaderboardService();
+        ReflectionTestUtils.setField(service, "streamSize", 10);
+        ReflectionTestUtils.setField(service, "month", YearMonth.now());
+        ReflectionTestUtils.setField(service, "ready", true);
+    }
+
+    @Test
+    void likesMoveImagesInTheRanking() {
+        like(first, 1);
+        like(second, 3);
+        like(third, 2);
+        assertEquals(List.of(new RankedImage(second, 3), new RankedImage(third, 2), new RankedImage(first, 1)),
+                service.top(10));
+
+        like(first, 3);
+        assertEquals(List.of(new RankedImage(first, 4), new RankedImage(second, 3), new RankedImage(third, 2)),
+                service.top(10));
+        assertEquals(List.of(new RankedImage(first, 4)), service.top(1));
+
+        // A parità di like vale l'ordine degli ID; ogni immagine compare una sola volta
+        unlike(first, 1);
+        assertEquals(List.of(new RankedImage(first, 3), new RankedImage(second, 3), new RankedImage(third, 2)),
+                service.top(10));
+        assertEquals(3, ((Set<?>) ReflectionTestUtils.getField(service, "ranking")).size());
+    }
+
+    @Test
+    void imagesWithoutLikesLeaveTheRanking() {
+        like(first, 2);
+        like(second, 1);
+
+        unlike(second, 1);
+        assertEquals(List.of(new RankedImage(first, 2)), service.top(10));
+
+        service.onImageDeleted(new ImageDeletedEvent(image(first), Map.of()));
+        assertTrue(service.top(10).isEmpty());
+        assertTrue(((Map<?, ?>) ReflectionTestUtils.getField(service, "likesByImage")).isEmpty());
+    }
+
+    @Test
+    void likesFromPreviousMonthsAreIgnored() {
+        like(first, 2);
+        LocalDateTime lastMonth = LocalDateTime.now().minusMonths(1);
+
+        service.onLikeToggled(new LikeToggledEvent(second, 1L, true, 1, lastMonth));
+        service.onLikeToggled(new LikeToggledEvent(first, 1L, false, 1, lastMonth));
+
+        assertEquals(List.of(new RankedImage(first, 2)), service.top(10));
+    }
+
+    @Test
+    void diffReportsOnlyRankChanges() {
+        List<RankedImage> previous = List.of(new RankedImage(first, 5), new RankedImage(second, 4), new RankedImage(third, 3));
+        UUID entering = new UUID(0, 4);
+        List<RankedImage> current = List.of(new RankedImage(second, 6), new RankedImage(first, 5), new RankedImage(entering, 3));
+
+        List<LeaderboardRankChange> changes = diff(previous, current);
+
+        assertEquals(4, changes.size());
+        assertChange(changes.get(0), second, 1, 2, 6);
+        assertChange(changes.get(1), first, 2, 1, 5);
+        assertChange(changes.get(2), entering, 3, null, 3);
+        // Le uscite dalla classifica arrivano in fondo, senza posizione
+        assertChange(changes.get(3), third, null, 3, 3);
+    }
+
+    @Test
+    void diffReportsLikeChangesAtTheSameRank() {
+        List<RankedImage> previous = List.of(new RankedImage(first, 5), new RankedImage(second, 4));
+        List<RankedImage> current = List.of(new RankedImage(first, 7), new RankedImage(second, 4));
+
+        List<LeaderboardRankChange> changes = diff(previous, current);
+
+        assertEquals(1, changes.size());
+        assertChange(changes.get(0), first, 1, 1, 7);
+        assertTrue(diff(current, current).isEmpty());
+    }
+
+    @Test
+    void broadcastRemembersTheLastSentRanking() {
+        like(first, 2);
+        like(second, 1);
+        service.broadcastChanges();
+        assertEquals(List.of(new RankedImage(first, 2), new RankedImage(second, 1)),
+                ReflectionTestUtils.getField(service, "lastBroadcast"));
+
+        like(second, 2);
+        service.broadcastChanges();
+        assertEquals(List.of(new RankedImage(second, 3), new RankedImage(first, 2)),
+                ReflectionTestUtils.getField(service, "lastBroadcast"));
+        assertFalse(((AtomicBoolean) ReflectionTestUtils.getField(service, "changed")).get());
+    }
+
+    private void like(UUID imageId, int count) {
+        for (int i = 0; i < count; i++) {
+            service.onLikeToggled(new LikeToggledEvent(imageId, (long) i, true, i + 1, LocalDateTime.now()));
+        }
+    }
+
+    private void unlike(UUID imageId, int count) {
+        for (int i = 0; i < count; i++) {
+            service.onLikeToggled(new LikeToggledEvent(imageId, (long) i, false, 0, LocalDateTime.now()));
+        }
+    }
+
+    private static List<LeaderboardRankChange> diff(List<RankedImage> previous, List<RankedImage> current) {
+        return ReflectionTestUtils.invokeMethod(LiveLeaderboardService.class, "diff", previous, current);
+    }
+
+    private static void assertChange(LeaderboardRankChange change, UUID imageId, Integer rank, Integer previousRank,
+                                     int likeCount) {
+        assertEquals(imageId, change.getImageId());
+        assertEquals(rank, change.getRank());
+        assertEquals(previousRank, change.getPreviousRank());
+        assertEquals(likeCount, change.getLikeCount());
+    }
+
+    private static ImageMetadata image(UUID imageId) {
+        User user = new User("owner", "owner@example.com", "secret");
+        user.setId(1L);
+        ImageMetadata image = new ImageMetadata("title", imageId + ".jpg", "images", user);
+        image.setId(imageId);
+        return image;
+    }
+}
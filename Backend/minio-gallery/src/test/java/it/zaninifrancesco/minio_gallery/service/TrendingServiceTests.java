@@ -0,0 +1,173 @@
+package it.zaninifrancesco.minio_gallery.service;
+
+import it.zaninifrancesco.minio_gallery.entity.ImageMetadata;
+import it.zaninifrancesco.minio_gallery.entity.User;
+import it.zaninifrancesco.minio_gallery.event.ImageDeletedEvent;
+import it.zaninifrancesco.minio_gallery.event.ImageUploadedEvent;
+import it.zaninifrancesco.minio_gallery.event.LikeToggledEvent;
+import it.zaninifrancesco.minio_gallery.repository.ImageMetadataRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Feed di tendenza: ordine della classifica estratta dal min-heap, decadimento dei like e riuso degli slot
+ * Il caricamento iniziale è saltato: la classifica parte vuota e viene riempita dagli eventi
+ */
+class TrendingServiceTests {
+
+    private ImageMetadataRepository imageMetadataRepository;
+    private TrendingService service;
+
+    @BeforeEach
+    void setUp() {
+        imageMetadataRepository = mock(ImageMetadataRepository.class);
+        service = new TrendingService();
+        ReflectionTestUtils.setField(service, "imageMetadataRepository", imageMetadataRepository);
+        ReflectionTestUtils.setField(service, "enabled", true);
+        ReflectionTestUtils.setField(service, "gravity", 1.8);
+        ReflectionTestUtils.setField(service, "likeHalfLifeHours", 24.0);
+        ReflectionTestUtils.setField(service, "windowDays", 7);
+        ReflectionTestUtils.setField(service, "maxResults", 500);
+        service.init();
+        ReflectionTestUtils.setField(service, "trending", List.of());
+    }
+
+    @Test
+    void recomputeRanksByGravityScore() {
+        LocalDateTime now = LocalDateTime.now();
+        // Caricate dalla peggiore alla migliore, così il min-heap deve sostituire la radice più volte
+        UUID twoDaysOld = upload(now.minusHours(48));
+        UUID likedButOlder = upload(now.minusHours(20));
+        UUID fiveHoursOld = upload(now.minusHours(5));
+        UUID threeHoursOld = upload(now.minusHours(3));
+        UUID oneHourOld = upload(now.minusHours(1));
+        UUID likedAndFresh = upload(now.minusHours(2));
+        // Punteggi: (like + 1) / (ore + 2)^1.8
+        like(likedButOlder, now, 4);
+        like(likedAndFresh, now, 2);
+
+        service.recompute();
+        assertEquals(List.of(likedAndFresh, oneHourOld, threeHoursOld, fiveHoursOld, likedButOlder, twoDaysOld),
+                service.findTrending(PageRequest.of(0, 10)).getImageIds());
+        assertEquals(List.of(threeHoursOld, fiveHoursOld), service.findTrending(PageRequest.of(1, 2)).getImageIds());
+
+        // Con un limite solo le prime restano nell'heap, sempre in ordine decrescente
+        ReflectionTestUtils.setField(service, "maxResults", 3);
+        service.recompute();
+        assertEquals(List.of(likedAndFresh, oneHourOld, threeHoursOld),
+                service.findTrending(PageRequest.of(0, 10)).getImageIds());
+        assertEquals(3, service.findTrending(PageRequest.of(0, 10)).getTotalHits());
+
+        // Abbastanza like recenti riportano in cima anche l'immagine più vecchia
+        like(twoDaysOld, now, 500);
+        service.recompute();
+        assertEquals(twoDaysOld, service.findTrending(PageRequest.of(0, 1)).getImageIds().get(0));
+    }
+
+    @Test
+    void likesDecayWithTheHalfLife() {
+        LocalDateTime now = LocalDateTime.now();
+        UUID imageId = upload(now.minusHours(50));
+
+        like(imageId, now.minusHours(24), 1);
+        assertEquals(0.5, decayedLikes(imageId), 1e-3);
+        like(imageId, now.minusHours(48), 1);
+        assertEquals(0.75, decayedLikes(imageId), 1e-3);
+
+        // Un unlike sottrae esattamente il contributo del like rimosso
+        service.onLikeToggled(new LikeToggledEvent(imageId, 1L, false, 1, now.minusHours(24)));
+        assertEquals(0.25, decayedLikes(imageId), 1e-3);
+
+        // La somma non scende mai sotto zero
+        service.onLikeToggled(new LikeToggledEvent(imageId, 1L, false, 0, now));
+        assertEquals(0.0, decayedLikes(imageId), 0.0);
+    }
+
+    @Test
+    void releasedSlotsAreReused() {
+        LocalDateTime now = LocalDateTime.now();
+        upload(now);
+        UUID deleted = upload(now);
+        upload(now);
+        int deletedSlot = slot(deleted);
+
+        service.onImageDeleted(new ImageDeletedEvent(image(deleted, now), Map.of()));
+        assertNull(slot(deleted));
+        UUID replacement = upload(now);
+        assertEquals(deletedSlot, slot(replacement));
+        assertEquals(3, ReflectionTestUtils.getField(service, "slotLimit"));
+
+        // Un'immagine fuori finestra e senza like recenti lascia lo slot al ricalcolo
+        UUID stale = upload(now.minusDays(10));
+        int staleSlot = slot(stale);
+        service.recompute();
+        assertFalse(service.findTrending(PageRequest.of(0, 10)).getImageIds().contains(stale));
+        assertNull(slot(stale));
+        assertEquals(staleSlot, slot(upload(now)));
+
+        // Un unlike su un'immagine non tracciata non occupa slot
+        UUID untracked = UUID.randomUUID();
+        service.onLikeToggled(new LikeToggledEvent(untracked, 1L, false, 0, now));
+        assertNull(slot(untracked));
+    }
+
+    @Test
+    void likedImagesGetTheirUploadDateBeforeRanking() {
+        LocalDateTime now = LocalDateTime.now();
+        UUID recent = upload(now.minusHours(1));
+        UUID likedOnly = UUID.randomUUID();
+        like(likedOnly, now, 3);
+        when(imageMetadataRepository.findUploadedAtByIdIn(anyCollection()))
+                .thenReturn(Collections.singletonList(new Object[]{likedOnly, now.minusHours(1)}));
+
+        service.recompute();
+
+        assertEquals(List.of(likedOnly, recent), service.findTrending(PageRequest.of(0, 10)).getImageIds());
+    }
+
+    private UUID upload(LocalDateTime uploadedAt) {
+        UUID imageId = UUID.randomUUID();
+        service.onImageUploaded(new ImageUploadedEvent(image(imageId, uploadedAt)));
+        return imageId;
+    }
+
+    private void like(UUID imageId, LocalDateTime likedAt, int count) {
+        for (int i = 0; i < count; i++) {
+            service.onLikeToggled(new LikeToggledEvent(imageId, (long) i, true, i + 1, likedAt));
+        }
+    }
+
+    private Integer slot(UUID imageId) {
+        Map<?, ?> slots = (Map<?, ?>) ReflectionTestUtils.getField(service, "slots");
+        return (Integer) slots.get(imageId);
+    }
+
+    private double decayedLikes(UUID imageId) {
+        double[] decayedLikes = (double[]) ReflectionTestUtils.getField(service, "decayedLikes");
+        return decayedLikes[slot(imageId)];
+    }
+
+    private static ImageMetadata image(UUID imageId, LocalDateTime uploadedAt) {
+        User user = new User("owner", "owner@example.com", "secret");
+        user.setId(1L);
+        ImageMetadata image = new ImageMetadata("title", imageId + ".jpg", "images", user);
+        image.setId(imageId);
+        image.setUploadedAt(uploadedAt);
+        return image;
+    }
+}
@@ -95,7 +95,8 @@ class AdminService {
         headers: headers,
       );
 
-      return response.statusCode == 200;
+      // 202: l'eliminazione prosegue in background sul server
+      return response.statusCode == 200 || response.statusCode == 202;
     } catch (e) {
       throw Exception('Network error: $e');
     }